@@ -6,12 +6,17 @@ import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Binder;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 
+import com.lelloman.audiostreamlistener.discovery.ServerRegistry;
+import com.lelloman.audiostreamlistener.sink.AudioTrackSink;
 import com.lelloman.audiostreamlistener.threading.AudioClient;
+import com.lelloman.audiostreamlistener.threading.StartupTimer;
 import com.lelloman.audiostreamlistener.ui.MainActivity;
 
 import java.text.SimpleDateFormat;
@@ -26,16 +31,20 @@ public class AudioClientService extends Service implements AudioClient.AudioClie
 
 	public static final String ARG_ADDRESS = "address";
 	public static final String ARG_PORT = "port";
+	public static final String ARG_AUTO_DRIFT = "autoDrift";
+	public static final String ARG_SKIP_FRAME = "skipFrame";
 	public static final String EXTRA_LOG_STRING = "logString";
 	public static final String EVENT_CONNECTION_CLOSED = "com.lelloman.audiostreamlistener.AudioClientService.EVENT_CONNECTION_CLOSED";
 	public static final String EVENT_UPDATE_LOG = "com.lelloman.audiostreamlistener.AudioClientService.EVENT_UPDATE_LOG";
 
-	public static Intent makeStartIntent(Context caller, String address, int port) {
+	public static Intent makeStartIntent(Context caller, String address, int port, boolean autoDrift, int skipFrameEveryTot) {
 
 		Intent intent = new Intent(caller, AudioClientService.class);
 
 		intent.putExtra(ARG_ADDRESS, address);
 		intent.putExtra(ARG_PORT, port);
+		intent.putExtra(ARG_AUTO_DRIFT, autoDrift);
+		intent.putExtra(ARG_SKIP_FRAME, skipFrameEveryTot);
 
 		return intent;
 	}
@@ -47,6 +56,9 @@ public class AudioClientService extends Service implements AudioClient.AudioClie
 	// needed to set skip frame from the activity
 	private final MyBinder mBinder = new MyBinder();
 
+	// the registry is updated here rather than on the AudioClient thread
+	private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
 	// a log stored in shared prefs and broadcast
 	// by an Intent
 	private String mLog = "";
@@ -58,6 +70,26 @@ public class AudioClientService extends Service implements AudioClient.AudioClie
 	// stream stat displayed in the notification
 	private long mByteCount;
 	private long mDuration;
+	private float mLatencyMs = -1;
+
+	// the core logs through android.util.Log
+	private static final Logger.Output ANDROID_LOG = new Logger.Output() {
+		@Override
+		public void d(String tag, String msg) {
+			Log.d(tag, msg);
+		}
+
+		@Override
+		public void w(String tag, String msg) {
+			Log.w(tag, msg);
+		}
+	};
+
+	@Override
+	public void onCreate() {
+		super.onCreate();
+		Logger.setOutput(ANDROID_LOG);
+	}
 
 	@Override
 	public int onStartCommand(Intent intent, int flags, int startId) {
@@ -79,7 +111,18 @@ public class AudioClientService extends Service implements AudioClient.AudioClie
 		makeNotification();
 
 		if (mAudioClient == null) {
-			mAudioClient = new AudioClient(mAddress, mPort, this);
+			// the sink can be prepared while the handshake is in flight,
+			// which isn't waited for if discovery just heard the server
+			// in the same session
+			ServerRegistry.Entry server = SharedPrefsUtil.getServerRegistry(this).get(mAddress);
+			boolean known = server != null && server.port == mPort && server.streamConfig != null;
+			if (known)
+				AudioClient.setLastStreamConfig(mAddress, mPort, server.streamConfig, server.sessionToken);
+			mAudioClient = new AudioClient(mAddress, mPort, new AudioTrackSink(), this);
+			if (known && server.isSessionFresh(System.currentTimeMillis()))
+				mAudioClient.setSessionToken(server.sessionToken);
+			mAudioClient.setAutoDrift(intent.getBooleanExtra(ARG_AUTO_DRIFT, Constants.DEFAULT_AUTO_DRIFT));
+			mAudioClient.setSkipFrameEveryTot(intent.getIntExtra(ARG_SKIP_FRAME, Constants.DEFAULT_SKIP_FRAME));
 			mAudioClient.start();
 		}
 	}
@@ -101,6 +144,11 @@ public class AudioClientService extends Service implements AudioClient.AudioClie
 		startForeground(NOTIFICATION_ID, notification);
 	}
 
+	public void setAutoDrift(boolean autoDrift){
+		if(mAudioClient != null)
+			mAudioClient.setAutoDrift(autoDrift);
+	}
+
 	public void setSkipFrameEveryTot(int i){
 		if(mAudioClient != null)
 			mAudioClient.setSkipFrameEveryTot(i);
@@ -135,17 +183,36 @@ public class AudioClientService extends Service implements AudioClient.AudioClie
 
 	/**
 	 * {@link AudioClient} notify this and it will start playing
-	 * the stream so just log a message here
+	 * the stream so just log a message here, and remember the config
+	 * of the server. that's decoding and encoding the registry, so
+	 * it's posted to the main thread not to hold up the stream
 	 */
 	@Override
-	public void onStreamConfigReceived(AudioClient.StreamConfig streamConfig) {
-		updateLog("StreamConfig received - buffer size: %s bit depth: %s sample rate: %s", streamConfig.bufferSize, streamConfig.bitDepth, streamConfig.sampleRate);
+	public void onStreamConfigReceived(final AudioClient.StreamConfig streamConfig) {
+		updateLog("StreamConfig received - buffer size: %s bit depth: %s channels: %s sample rate: %s header: %s codec: %s", streamConfig.bufferSize, streamConfig.bitDepth, streamConfig.channels, streamConfig.sampleRate, streamConfig.headerVersion, streamConfig.codec);
+		AudioClient audioClient = mAudioClient;
+		final int sessionToken = audioClient == null ? 0 : audioClient.getSessionToken();
+		final long now = System.currentTimeMillis();
+		mMainHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				ServerRegistry registry = SharedPrefsUtil.getServerRegistry(AudioClientService.this);
+				registry.onConnected(mAddress, mPort, streamConfig, sessionToken, now);
+				SharedPrefsUtil.setServerRegistry(AudioClientService.this, registry);
+			}
+		});
+	}
+
+	@Override
+	public void onFirstAudio(StartupTimer startupTimer) {
+		updateLog("time to first audio %.0f ms - %s", startupTimer.getTimeToFirstAudioMs(), startupTimer);
 	}
 
 	@Override
-	public void onStatsUpdate(long byteCount, long duration) {
+	public void onStatsUpdate(long byteCount, long duration, float latencyMs) {
 		mByteCount = byteCount;
 		mDuration = duration;
+		mLatencyMs = latencyMs;
 		makeNotification();
 	}
 
@@ -168,7 +235,9 @@ public class AudioClientService extends Service implements AudioClient.AudioClie
 
 		long s = mDuration / 1000;
 		String duration = String.format("%d:%02d:%02d", s / 3600, (s % 3600) / 60, (s % 60));
-		return String.format("\n%s %s - %s", amount, unit, duration);
+		if (mLatencyMs < 0)
+			return String.format("\n%s %s - %s", amount, unit, duration);
+		return String.format("\n%s %s - %s - %.0f ms latency", amount, unit, duration, mLatencyMs);
 	}
 
 	private void updateLog(String msg, Object...args){
@@ -3,6 +3,8 @@ package com.lelloman.audiostreamlistener;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import com.lelloman.audiostreamlistener.discovery.ServerRegistry;
+
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -16,9 +18,11 @@ public class SharedPrefsUtil {
 	public static final String SHARED_PREFS_PORT = "port";
 	public static final String SHARED_PREFS_ADDRESS = "address";
 	public static final String SHARED_PREFS_SKIP_FRAME = "skipFrame";
+	public static final String SHARED_PREFS_AUTO_DRIFT = "autoDrift";
 	public static final String SHARED_PREFS_ADDRESSES = "addresses";
 	public static final String SHARED_PREFS_LOG = "log";
 	public static final String SHARED_PREFS_VOLUME = "volume";
+	public static final String SHARED_PREFS_SERVERS = "servers";
 
 	private SharedPrefsUtil(){}
 
@@ -43,6 +47,22 @@ public class SharedPrefsUtil {
 		return new ArrayList<>(sharedPrefs(context).getStringSet(SHARED_PREFS_ADDRESSES,new HashSet<>()));
 	}
 
+	/**
+	 * 	without the expired servers
+	 */
+	public static synchronized ServerRegistry getServerRegistry(Context context){
+		ServerRegistry registry = ServerRegistry.decode(sharedPrefs(context).getString(SHARED_PREFS_SERVERS, ""),
+				Constants.REGISTRY_TTL_MS, Constants.REGISTRY_MAX_SERVERS);
+		registry.expire(System.currentTimeMillis());
+		return registry;
+	}
+	/**
+	 * 	the next get sees it straight away, it goes to disk in the background
+	 */
+	public static synchronized void setServerRegistry(Context context, ServerRegistry registry){
+		sharedPrefs(context).edit().putString(SHARED_PREFS_SERVERS, registry.encode()).apply();
+	}
+
 	public static void setLastAddressSelected(Context context, String address) {
 		sharedPrefs(context).edit().putString(SHARED_PREFS_ADDRESS, address).commit();
 	}
@@ -57,6 +77,13 @@ public class SharedPrefsUtil {
 		return sharedPrefs(context).getInt(SHARED_PREFS_SKIP_FRAME, Constants.DEFAULT_SKIP_FRAME);
 	}
 
+	public static void setAutoDrift(Context context, boolean autoDrift) {
+		sharedPrefs(context).edit().putBoolean(SHARED_PREFS_AUTO_DRIFT, autoDrift).commit();
+	}
+	public static boolean getAutoDrift(Context context) {
+		return sharedPrefs(context).getBoolean(SHARED_PREFS_AUTO_DRIFT, Constants.DEFAULT_AUTO_DRIFT);
+	}
+
 	public static void setLastPortSelected(Context context,int port) {
 		sharedPrefs(context).edit().putInt(SHARED_PREFS_PORT, port).commit();
 	}
@@ -0,0 +1,101 @@
+package com.lelloman.audiostreamlistener.sink;
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+
+import com.lelloman.audiostreamlistener.threading.AudioClient;
+
+import java.nio.ByteBuffer;
+
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_FLOAT;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_16;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_8;
+
+/**
+ * 	plays the stream through an {@link AudioTrack} in stream
+ * 	mode, written with {@link AudioTrack#WRITE_NON_BLOCKING}.
+ * 	the track takes 8 and 16 bit and float, mono or stereo, 24 bit
+ * 	streams are converted to float and more channels mixed down.
+ * 	from nougat on the track counts its underruns and can use only
+ * 	part of its buffer, before that the buffer is all used
+ */
+public class AudioTrackSink implements AudioSink {
+
+	// this is a wild guess
+	public static final int STREAM_TYPE = AudioManager.STREAM_VOICE_CALL;
+
+	private AudioTrack mAudioTrack;
+	private int mSampleFrameSize;
+	private int mBufferSize;
+
+	@Override
+	public boolean supports(int bitDepth, int channels) {
+		return (bitDepth == FORMAT_PCM_8 || bitDepth == FORMAT_PCM_16 || bitDepth == FORMAT_FLOAT)
+				&& (channels == 1 || channels == 2);
+	}
+
+	@Override
+	public void open(AudioClient.StreamConfig streamConfig, int minBufferSize) {
+		int encoding;
+		switch (streamConfig.bitDepth) {
+			case FORMAT_PCM_8:
+				encoding = AudioFormat.ENCODING_PCM_8BIT;
+				break;
+			case FORMAT_FLOAT:
+				encoding = AudioFormat.ENCODING_PCM_FLOAT;
+				break;
+			default:
+				encoding = AudioFormat.ENCODING_PCM_16BIT;
+		}
+		int channelMask = streamConfig.channels == 2 ? AudioFormat.CHANNEL_OUT_STEREO : AudioFormat.CHANNEL_OUT_MONO;
+		int trackMinBufferSize = AudioTrack.getMinBufferSize(streamConfig.sampleRate, channelMask, encoding);
+		int bufferSize = Math.max(trackMinBufferSize, minBufferSize);
+		mSampleFrameSize = streamConfig.getSampleFrameSize();
+		mBufferSize = bufferSize;
+
+		mAudioTrack = new AudioTrack(STREAM_TYPE, streamConfig.sampleRate,
+				channelMask,
+				encoding, bufferSize,
+				AudioTrack.MODE_STREAM);
+
+		mAudioTrack.setVolume(AudioTrack.getMaxVolume());
+	}
+
+	@Override
+	public void play() {
+		mAudioTrack.play();
+	}
+
+	@Override
+	public int write(ByteBuffer data, int size) {
+		return mAudioTrack.write(data, size, AudioTrack.WRITE_NON_BLOCKING);
+	}
+
+	@Override
+	public int getPlaybackHeadPosition() {
+		return mAudioTrack.getPlaybackHeadPosition();
+	}
+
+	@Override
+	public int getUnderrunCount() {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N)
+			return -1;
+		return mAudioTrack.getUnderrunCount();
+	}
+
+	@Override
+	public int setBufferSize(int size) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N)
+			return mBufferSize;
+		int frames = mAudioTrack.setBufferSizeInFrames(size / mSampleFrameSize);
+		return frames > 0 ? frames * mSampleFrameSize : mBufferSize;
+	}
+
+	@Override
+	public void close() {
+		mAudioTrack.stop();
+		mAudioTrack.release();
+	}
+}
@@ -1,33 +1,45 @@
 package com.lelloman.audiostreamlistener.threading;
 
+import android.content.Context;
+import android.net.wifi.WifiManager;
 import android.os.AsyncTask;
 import android.util.Log;
 
 import com.lelloman.audiostreamlistener.Constants;
+import com.lelloman.audiostreamlistener.SharedPrefsUtil;
+import com.lelloman.audiostreamlistener.discovery.AnnouncementListener;
+import com.lelloman.audiostreamlistener.discovery.NetworkScanner;
+import com.lelloman.audiostreamlistener.discovery.ServerProber;
+import com.lelloman.audiostreamlistener.discovery.ServerRegistry;
+import com.lelloman.audiostreamlistener.discovery.ServerTable;
+import com.lelloman.audiostreamlistener.discovery.Subnet;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.Inet4Address;
 import java.net.InetAddress;
-import java.net.NetworkInterface;
-import java.net.SocketException;
-import java.net.UnknownHostException;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
- * 	Makes a list of addresses based on the local one and
- * 	spam them with ping messages, at the same time listen
- * 	for a pong message and if it receives one it consider the
- * 	task successful
+ * 	the servers in the {@link ServerRegistry} are pinged first, if any
+ * 	answers there's no need to look any further. otherwise it
+ * 	pings the local subnets with a {@link NetworkScanner}, by broadcast
+ * 	and multicast first, while an {@link AnnouncementListener} waits
+ * 	for the servers that announce themselves. the servers found either
+ * 	way are ranked by round trip with a {@link ServerProber}, the
+ * 	fastest one is the server. the ones that answer are saved in the
+ * 	registry
  */
-public class NetworkPingBroadcaster extends AsyncTask<Void, Object, Void> {
+public class NetworkPingBroadcaster extends AsyncTask<Void, Object, Void>
+		implements NetworkScanner.Listener, AnnouncementListener.Listener {
 
 	public interface NetworkProbeListener {
 		void onProgressUpdate(float progress);
@@ -38,71 +50,172 @@ public class NetworkPingBroadcaster extends AsyncTask<Void, Object, Void> {
 
 	public static final String TAG = NetworkPingBroadcaster.class.getSimpleName();
 
-	// if a pong message is received
-	// it will stop spamming
-	private boolean mRunning = true;
+	private final NetworkScanner mScanner = new NetworkScanner(Constants.DISCOVERY_PORT);
+	private final AnnouncementListener mAnnouncementListener = new AnnouncementListener(Constants.ANNOUNCE_PORT, this);
+	private final ServerProber mProber = new ServerProber(Constants.DISCOVERY_PORT);
+	// the wifi drops multicast packets without it
+	private final WifiManager.MulticastLock mMulticastLock;
+	private final Context mContext;
 
 	private WeakReference<NetworkProbeListener> mWeakListener;
-	private InetAddress mServerAddress;
-
-	public NetworkPingBroadcaster(NetworkProbeListener listener) {
+	// found by the scan or announced, in the order they were found
+	private final Set<InetAddress> mFound = new LinkedHashSet<>();
+	private volatile List<ServerProber.Result> mServers = Collections.emptyList();
+	private volatile InetAddress mServerAddress;
+
+	public NetworkPingBroadcaster(Context context, NetworkProbeListener listener) {
+		mContext = context.getApplicationContext();
+		WifiManager wifiManager = (WifiManager) mContext.getSystemService(Context.WIFI_SERVICE);
+		mMulticastLock = wifiManager.createMulticastLock(TAG);
+		mMulticastLock.setReferenceCounted(false);
 		mWeakListener = new WeakReference<>(listener);
 		execute();
 	}
 
 	@Override
 	protected Void doInBackground(Void... voids) {
+		mMulticastLock.acquire();
+		try {
+			ServerRegistry registry = SharedPrefsUtil.getServerRegistry(mContext);
+			if (probeKnownServers(registry))
+				return null;
+
+			mAnnouncementListener.start();
+			List<Subnet> subnets = NetworkScanner.getLocalSubnets();
+			publishProgress(String.format("scanning %s", subnets));
+			mScanner.scan(subnets, this);
+			rank(registry);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			mAnnouncementListener.kill();
+			mMulticastLock.release();
+		}
+		return null;
+	}
 
-		NetworkPongReceiver networkPongReceiver = null;
+	/**
+	 * 	a single ping each, all at once, so it takes a round trip
+	 * 	unless one of them doesn't answer
+	 *
+	 * @return true if any did
+	 */
+	private boolean probeKnownServers(ServerRegistry registry) throws IOException {
+		Map<InetAddress, String> hosts = resolve(registry.getEntries());
+		if (hosts.isEmpty())
+			return false;
+
+		publishProgress(String.format("probing %s known servers", hosts.size()));
+		mProber.setProbes(1);
+		List<ServerProber.Result> results = mProber.probe(hosts.keySet());
+		mProber.setProbes(Constants.DISCOVERY_PROBES);
+		if (results.get(0).replies == 0)
+			return false;
+
+		List<ServerProber.Result> answered = new ArrayList<>();
+		for (ServerProber.Result result : results) {
+			if (result.replies > 0)
+				answered.add(result);
+		}
+		setServers(answered, hosts, registry);
+		return true;
+	}
 
-		try {
-			Thread.sleep(500);
-			InetAddress localAddress = getLocalAddress();
-			publishProgress(localAddress.getHostName() + "    " + Arrays.toString(localAddress.getAddress()));
-
-			DatagramSocket socket = new DatagramSocket();
-
-			// listen for a pong message
-			// lambdas are so cool <_>
-			networkPongReceiver = new NetworkPongReceiver(socket, (InetAddress address) -> {
-				mServerAddress = address; // this will be used in onPostExecute
-				mRunning = false;
-			});
-			networkPongReceiver.start();
-
-
-			byte[] intBytes = new byte[Integer.SIZE / 8];
-			DatagramPacket intPacket = new DatagramPacket(intBytes, intBytes.length, localAddress, 8383);
-			ByteBuffer.wrap(intBytes).asIntBuffer().put(Constants.MSG_PING);
-
-			List<InetAddress> addresses = getTargetAddresses(localAddress);
-
-			// spam all the list 2 times and update the listener
-			for (int i = 0, j = 0; i < 2; i++, j = 0) {
-				publishProgress(String.format("broadcast round %s", i + 1));
-
-				for (InetAddress address : addresses) {
-					intPacket.setAddress(address);
-					socket.send(intPacket);
-					Thread.sleep(1); // the update looks weird without it
-					publishProgress(j++ / (float) addresses.size());
-					if(!mRunning)
-						throw new InterruptedException();
+	/**
+	 * 	the hosts as they were saved, which could be names, each on a
+	 * 	thread of its own so that a stale one doesn't hold up the others
+	 *
+	 * @return the ones resolved within REGISTRY_RESOLVE_TIMEOUT_MS
+	 */
+	private static Map<InetAddress, String> resolve(List<ServerRegistry.Entry> entries) {
+		final Map<InetAddress, String> hosts = new ConcurrentHashMap<>();
+		final CountDownLatch resolved = new CountDownLatch(entries.size());
+		for (final ServerRegistry.Entry entry : entries) {
+			Thread thread = new Thread(TAG + " resolve") {
+				@Override
+				public void run() {
+					try {
+						hosts.put(InetAddress.getByName(entry.host), entry.host);
+					} catch (IOException e) {
+						// not on this network
+					} finally {
+						resolved.countDown();
+					}
 				}
-			}
-
+			};
+			// the lookup can't be interrupted, it's left to time out
+			thread.setDaemon(true);
+			thread.start();
+		}
+		try {
+			resolved.await(Constants.REGISTRY_RESOLVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
 		} catch (InterruptedException e) {
-			e.printStackTrace();
-		} catch (SocketException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
+			// the ones so far
+		}
+		return new HashMap<>(hosts);
+	}
+
+	private void rank(ServerRegistry registry) throws IOException {
+		List<InetAddress> found;
+		synchronized (this) {
+			found = new ArrayList<>(mFound);
+		}
+		if (found.isEmpty())
+			return;
+		publishProgress(String.format("ranking %s servers", found.size()));
+		setServers(mProber.probe(found), Collections.<InetAddress, String>emptyMap(), registry);
+	}
+
+	private void setServers(List<ServerProber.Result> servers, Map<InetAddress, String> hosts, ServerRegistry registry) {
+		mServers = servers;
+		// the first found if the probes got lost, the ranking keeps the order
+		mServerAddress = servers.get(0).address;
+		publishProgress(String.format("found %s", servers));
+
+		long now = System.currentTimeMillis();
+		for (ServerProber.Result server : servers) {
+			if (server.replies == 0)
+				continue;
+			String host = hosts.get(server.address);
+			registry.onSeen(host == null ? server.address.getHostAddress() : host, server.rttMs, server.session, now);
 		}
+		SharedPrefsUtil.setServerRegistry(mContext, registry);
+	}
 
-		if(networkPongReceiver != null)
-			networkPongReceiver.kill();
+	/**
+	 * 	all the servers found, the fastest first
+	 */
+	public List<ServerProber.Result> getServers() {
+		return mServers;
+	}
 
-		return null;
+	/**
+	 * 	from the background thread, a few times a second
+	 */
+	@Override
+	public void onProgress(float progress) {
+		publishProgress(progress);
+	}
+
+	/**
+	 * 	the scan collects the others that answer in its window
+	 */
+	@Override
+	public synchronized void onServerFound(InetAddress address) {
+		mFound.add(address);
+	}
+
+	/**
+	 * 	from the announcement thread, the servers announce themselves
+	 * 	all in the same interval so there's no need to scan any further
+	 */
+	@Override
+	public void onServersChanged(List<ServerTable.Server> servers) {
+		for (ServerTable.Server server : servers) {
+			onServerFound(server.address);
+		}
+		if (!servers.isEmpty())
+			mScanner.stop();
 	}
 
 	/**
@@ -144,51 +257,9 @@ public class NetworkPingBroadcaster extends AsyncTask<Void, Object, Void> {
 	}
 
 	public void kill() {
-		mRunning = false;
-	}
-
-	/**
-	 * retrieve the first ipv4 InetAddress which is not a loopback
-	 * among the available network interfaces
-	 * which should be something like 192.168.0.100 and not 127.0.0.1
-	 */
-	public InetAddress getLocalAddress() {
-		InetAddress localAddress = null;
-		try {
-			Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
-
-			for (NetworkInterface networkInterface : Collections.list(interfaces)) {
-				//log("interface <%s>", networkInterface.getDisplayName());
-
-				for (InetAddress address : Collections.list(networkInterface.getInetAddresses())) {
-					//log("\taddress: %s", address.getHostAddress());
-					if (address instanceof Inet4Address && !address.isLoopbackAddress())
-						localAddress = address;
-				}
-			}
-
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-
-		return localAddress;
-	}
-
-	/**
-		create a list of target ip given the local address,
-	 	it enumerate from 0 to 255 and create a list of ip
-	 	like x.x.x.0-255 where x is the local address
-	 */
-	private List<InetAddress> getTargetAddresses(InetAddress localAddress) throws UnknownHostException {
-		List<InetAddress> output = new ArrayList<>(256);
-		byte[] b = localAddress.getAddress();
-
-		for (int i = 0; i < 256; i++) {
-			byte[] bytes = new byte[]{b[0], b[1], b[2], (byte) i};
-			output.add(InetAddress.getByAddress(bytes));
-		}
-
-		return output;
+		mScanner.stop();
+		mProber.stop();
+		mAnnouncementListener.kill();
 	}
 
 	private void log(String msg, Object... args) {
@@ -22,7 +22,9 @@ import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.ArrayAdapter;
 import android.widget.AutoCompleteTextView;
+import android.widget.CompoundButton;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ScrollView;
 import android.widget.SeekBar;
@@ -32,7 +34,7 @@ import android.widget.Toast;
 import com.lelloman.audiostreamlistener.AudioClientService;
 import com.lelloman.audiostreamlistener.R;
 import com.lelloman.audiostreamlistener.SharedPrefsUtil;
-import com.lelloman.audiostreamlistener.threading.AudioClient;
+import com.lelloman.audiostreamlistener.sink.AudioTrackSink;
 
 import java.net.InetAddress;
 import java.util.ArrayList;
@@ -45,6 +47,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 	Button mButton;
 	EditText mPortEditText;
 	AutoCompleteTextView mAddressView;
+	CheckBox mAutoDriftCheckBox;
 	SeekBar mSkipFrameSeekBar;
 	SeekBar mVolumeSeekBar;
 	TextView mLogTextView;
@@ -86,6 +89,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 		mButton = (Button) findViewById(R.id.button);
 		mPortEditText = (EditText) findViewById(R.id.port_edit_text);
 		mAddressView = (AutoCompleteTextView) findViewById(R.id.address_autocomplete_text_view);
+		mAutoDriftCheckBox = (CheckBox) findViewById(R.id.auto_drift_check_box);
 		mSkipFrameSeekBar = (SeekBar) findViewById(R.id.skip_frame_seek_bar);
 		mVolumeSeekBar = (SeekBar) findViewById(R.id.volume_seek_bar);
 		mLogTextView = (TextView) findViewById(R.id.text_view_log);
@@ -116,6 +120,18 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 		mAddressesAdapter = new ArrayAdapter<>(this, android.R.layout.simple_dropdown_item_1line, mAddresses);
 		mAddressView.setAdapter(mAddressesAdapter);
 
+		// skipping frames is the fallback when the resampling doesn't cut it
+		mAutoDriftCheckBox.setChecked(SharedPrefsUtil.getAutoDrift(this));
+		mAutoDriftCheckBox.setOnCheckedChangeListener((CompoundButton buttonView, boolean isChecked) -> {
+			SharedPrefsUtil.setAutoDrift(MainActivity.this, isChecked);
+			mSkipFrameSeekBar.setEnabled(!isChecked && isMyServiceRunning(AudioClientService.class));
+
+			if (isMyServiceRunning(AudioClientService.class))
+				sendAutoDrift(isChecked);
+
+			log("setAutoDrift %s", isChecked);
+		});
+
 		mSkipFrameSeekBar = (SeekBar) findViewById(R.id.skip_frame_seek_bar);
 		mSkipFrameSeekBar.setProgress(SharedPrefsUtil.getLastSkipFrameEveryTot(this));
 		mSkipFrameSeekBar.setOnSeekBarChangeListener(new OnSeekBarChangedListener() {
@@ -139,11 +155,11 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 				if (audioManager == null)
 					return;
 
-				int volume = (int) (v * audioManager.getStreamMaxVolume(AudioClient.STREAM_TYPE));
-				audioManager.setStreamVolume(AudioClient.STREAM_TYPE, volume, AudioManager.FLAG_PLAY_SOUND);
+				int volume = (int) (v * audioManager.getStreamMaxVolume(AudioTrackSink.STREAM_TYPE));
+				audioManager.setStreamVolume(AudioTrackSink.STREAM_TYPE, volume, AudioManager.FLAG_PLAY_SOUND);
 				SharedPrefsUtil.setVolume(MainActivity.this, v);
 
-				log("setVolume() %.2f of %s", v, audioManager.getStreamMaxVolume(AudioClient.STREAM_TYPE));
+				log("setVolume() %.2f of %s", v, audioManager.getStreamMaxVolume(AudioTrackSink.STREAM_TYPE));
 			}
 		});
 		mVolumeSeekBar.setProgress((int) (SharedPrefsUtil.getVolume(this) * mVolumeSeekBar.getMax()));
@@ -184,7 +200,8 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 		SharedPrefsUtil.setAddresses(this, mAddresses);
 		mAddressesAdapter.notifyDataSetChanged();
 
-		Intent intent = AudioClientService.makeStartIntent(this, address, port);
+		Intent intent = AudioClientService.makeStartIntent(this, address, port,
+				mAutoDriftCheckBox.isChecked(), SharedPrefsUtil.getLastSkipFrameEveryTot(this));
 		startService(intent);
 		bindService(intent, mServiceConnection, Context.BIND_AUTO_CREATE);
 	}
@@ -225,6 +242,11 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 		return false;
 	}
 
+	private void sendAutoDrift(boolean autoDrift) {
+		if (mServiceBound && mBoundService != null)
+			mBoundService.setAutoDrift(autoDrift);
+	}
+
 	private void sendSkipFrameEveryTot(int i) {
 		if (mServiceBound && mBoundService != null)
 			mBoundService.setSkipFrameEveryTot(i);
@@ -269,7 +291,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
 		mButton.setText(connected ? "STOP" : "START");
 		mAddressView.setEnabled(!connected);
-		mSkipFrameSeekBar.setEnabled(connected);
+		mSkipFrameSeekBar.setEnabled(connected && !mAutoDriftCheckBox.isChecked());
 		mPortEditText.setEnabled(!connected);
 
 		// prevent or close AutoCompleteTextView's drop down
@@ -49,7 +49,7 @@ public class ProbeNetworkDialogFragment extends DialogFragment implements Networ
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 		setRetainInstance(true);
-		mNetworkPingBroadcaster = new NetworkPingBroadcaster(this);
+		mNetworkPingBroadcaster = new NetworkPingBroadcaster(getActivity(), this);
 	}
 
 	@Override
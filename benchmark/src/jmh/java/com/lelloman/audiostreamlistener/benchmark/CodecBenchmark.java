@@ -0,0 +1,80 @@
+package com.lelloman.audiostreamlistener.benchmark;
+
+import com.lelloman.audiostreamlistener.codec.FrameDecoder;
+import com.lelloman.audiostreamlistener.codec.FrameEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 	cost of decoding one frame of each codec, the decode runs on the
+ * 	player thread for every frame so it eats into the frame period,
+ * 	20 ms at 48 kHz is 20000 us. the encode side is the server's
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+
+	// CODEC_MULAW, CODEC_ALAW, CODEC_IMA_ADPCM, CODEC_LOSSLESS
+	@Param({"1", "2", "3", "4"})
+	public int codec;
+
+	@Param({"48000"})
+	public int sampleRate;
+
+	@Param({"20"})
+	public int frameMs;
+
+	private FrameEncoder mEncoder;
+	private FrameDecoder mDecoder;
+	private byte[] mPcm;
+	private byte[] mEncoded;
+	private ByteBuffer mSrc;
+	private ByteBuffer mDst;
+
+	@Setup
+	public void setup() {
+		int samples = sampleRate * frameMs / 1000;
+		ByteBuffer pcm = ByteBuffer.allocate(samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+		// a tone with some noise on it, so the adpcm step size moves
+		Random random = new Random(42);
+		for (int i = 0; i < samples; i++) {
+			double s = .5 * Math.sin(2 * Math.PI * 440 * i / sampleRate) + .05 * random.nextGaussian();
+			pcm.putShort((short) (Math.max(-1, Math.min(1, s)) * Short.MAX_VALUE));
+		}
+		mPcm = pcm.array();
+
+		mEncoder = FrameEncoder.create(codec);
+		mDecoder = FrameDecoder.create(codec, samples);
+		mEncoded = new byte[FrameDecoder.getEncodedSize(codec, mPcm.length)];
+		int size = mEncoder.encode(mPcm, 0, mPcm.length, mEncoded, 0);
+
+		mSrc = ByteBuffer.allocateDirect(size);
+		mSrc.put(mEncoded, 0, size).flip();
+		mDst = ByteBuffer.allocateDirect(mPcm.length);
+	}
+
+	@Benchmark
+	public ByteBuffer decode() {
+		mDecoder.decode(mSrc, mDst);
+		return mDst;
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		mEncoder.encode(mPcm, 0, mPcm.length, mEncoded, 0);
+		return mEncoded;
+	}
+}
@@ -0,0 +1,119 @@
+package com.lelloman.audiostreamlistener.benchmark;
+
+import com.lelloman.audiostreamlistener.discovery.NetworkScanner;
+import com.lelloman.audiostreamlistener.discovery.Subnet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.MSG_PING;
+import static com.lelloman.audiostreamlistener.Constants.MSG_PONG;
+
+/**
+ * 	a whole {@link NetworkScanner} scan against the size of the subnet
+ * 	and the ping rate. the subnets are carved out of 127.0.0.0/8, which
+ * 	is all loopback on linux without setting up any alias, and a pong
+ * 	responder listens on the last host of each, so the scan finds it
+ * 	after pinging all the others. every host is pinged once, the time
+ * 	should follow hosts / rate plus the wait for the late pongs. the
+ * 	broadcast pings are left out, the responder wouldn't get them
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class DiscoveryBenchmark {
+
+	@Param({"24", "20", "16"})
+	public int prefix;
+
+	// pings per second
+	@Param({"20000", "100000"})
+	public int rate;
+
+	private List<Subnet> mSubnets;
+	private DatagramChannel mResponder;
+	private Thread mResponderThread;
+	private int mPort;
+
+	@Setup
+	public void setup() throws IOException {
+		Subnet subnet = new Subnet(Subnet.toInt((Inet4Address) InetAddress.getByName("127.1.0.0")), prefix);
+		mSubnets = Collections.singletonList(subnet);
+		InetAddress last = Subnet.toAddress(subnet.getHost(subnet.getHostCount() - 1));
+
+		mResponder = DatagramChannel.open();
+		mResponder.bind(new InetSocketAddress(last, 0));
+		mPort = mResponder.socket().getLocalPort();
+		mResponderThread = new Thread() {
+			@Override
+			public void run() {
+				ByteBuffer buffer = ByteBuffer.allocate(16);
+				try {
+					while (true) {
+						buffer.clear();
+						SocketAddress sender = mResponder.receive(buffer);
+						buffer.flip();
+						if (buffer.remaining() >= 4 && buffer.getInt(0) == MSG_PING) {
+							buffer.clear();
+							buffer.putInt(MSG_PONG).flip();
+							mResponder.send(buffer, sender);
+						}
+					}
+				} catch (IOException e) {
+					// closed in tearDown
+				}
+			}
+		};
+		mResponderThread.start();
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		mResponder.close();
+		mResponderThread.join();
+	}
+
+	@Benchmark
+	public int scan() throws IOException {
+		final int[] found = new int[1];
+		NetworkScanner scanner = new NetworkScanner(mPort);
+		scanner.setRate(rate);
+		scanner.setRounds(1);
+		scanner.setBroadcast(false);
+		scanner.scan(mSubnets, new NetworkScanner.Listener() {
+			@Override
+			public void onProgress(float progress) {
+			}
+
+			@Override
+			public void onServerFound(InetAddress address) {
+				found[0]++;
+			}
+		});
+		if (found[0] != 1)
+			throw new IllegalStateException("the responder wasn't found");
+		return found[0];
+	}
+}
@@ -0,0 +1,199 @@
+package com.lelloman.audiostreamlistener.benchmark;
+
+import com.lelloman.audiostreamlistener.fec.Fec;
+import com.lelloman.audiostreamlistener.fec.FecDecoder;
+import com.lelloman.audiostreamlistener.fec.FecEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.FEC_REED_SOLOMON;
+import static com.lelloman.audiostreamlistener.Constants.FEC_XOR;
+
+/**
+ * 	the fec schemes under simulated loss, the setup streams a minute of
+ * 	frames through a loss model and prints the share of lost frames
+ * 	rebuilt against the bandwidth the parity adds. the loss is either
+ * 	random or in bursts, a two state gilbert model with the same average
+ * 	loss and bursts of 3 packets on average.
+ * 	the benchmarks are the cost of a frame on the server and of
+ * 	rebuilding a group with as many losses as parity packets
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FecBenchmark {
+
+	private static final int SIMULATED_FRAMES = 6000;
+
+	// scheme-data frames-parity frames
+	@Param({"xor-4-1", "xor-8-1", "rs-8-2", "rs-10-4"})
+	public String fec;
+
+	@Param({"random-2", "random-5", "burst-5"})
+	public String loss;
+
+	@Param({"1024"})
+	public int payloadSize;
+
+	private FecEncoder mEncoder;
+	private FecDecoder mDecoder;
+	private int mDataFrames;
+	private int mParityFrames;
+	private byte[][] mFrames;
+	private ByteBuffer[] mFrameBuffers;
+	private ByteBuffer[] mParityBuffers;
+	private byte[] mParity;
+	private ByteBuffer mDst;
+	private int mSequence;
+
+	@Setup
+	public void setup() {
+		String[] parts = fec.split("-");
+		int scheme = "xor".equals(parts[0]) ? FEC_XOR : FEC_REED_SOLOMON;
+		mDataFrames = Integer.parseInt(parts[1]);
+		mParityFrames = Integer.parseInt(parts[2]);
+		mEncoder = new FecEncoder(scheme, mDataFrames, mParityFrames, payloadSize);
+		mDecoder = new FecDecoder(scheme, mDataFrames, mParityFrames, payloadSize);
+		mDst = ByteBuffer.allocateDirect(payloadSize);
+
+		Random random = new Random(42);
+		mFrames = new byte[mDataFrames][payloadSize];
+		mFrameBuffers = new ByteBuffer[mDataFrames];
+		for (int i = 0; i < mDataFrames; i++) {
+			random.nextBytes(mFrames[i]);
+			mFrameBuffers[i] = ByteBuffer.allocateDirect(payloadSize);
+			mFrameBuffers[i].put(mFrames[i]).flip();
+		}
+		mParityBuffers = new ByteBuffer[mParityFrames];
+		mParity = new byte[Fec.getMaxParitySize(payloadSize)];
+		for (int i = 0; i < mDataFrames; i++) {
+			mEncoder.add(i, mFrames[i], 0, payloadSize);
+		}
+		for (int r = 0; r < mParityFrames; r++) {
+			int length = mEncoder.writeParity(r, mParity, 0);
+			mParityBuffers[r] = ByteBuffer.allocateDirect(length);
+			mParityBuffers[r].put(mParity, 0, length).flip();
+		}
+
+		simulate(scheme, random);
+	}
+
+	/**
+	 * 	one frame through the encoder, a group's worth of ops writes
+	 * 	its parity too
+	 */
+	@Benchmark
+	public int encode() {
+		int column = mSequence % mDataFrames;
+		int length = 0;
+		if (mEncoder.add(mSequence++, mFrames[column], 0, payloadSize)) {
+			for (int r = 0; r < mParityFrames; r++) {
+				length += mEncoder.writeParity(r, mParity, 0);
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * 	a group losing its first frames, as many as the parity packets,
+	 * 	rebuilt from the rest
+	 */
+	@Benchmark
+	public ByteBuffer recover() {
+		int sequence = mSequence;
+		mSequence += mDataFrames;
+		for (int i = mParityFrames; i < mDataFrames; i++) {
+			mDecoder.addData(sequence + i, mFrameBuffers[i]);
+		}
+		int recovered = 0;
+		for (int r = 0; r < mParityFrames; r++) {
+			recovered = mDecoder.addParity(sequence, r, mParityBuffers[r]);
+		}
+		for (int i = 0; i < recovered; i++) {
+			mDst.clear();
+			mDecoder.getRecovered(i, mDst);
+		}
+		return mDst;
+	}
+
+	/**
+	 * 	stream frames of random length, up to the payload size like the
+	 * 	lossless codec makes, through the loss model and a fresh decoder
+	 */
+	private void simulate(int scheme, Random random) {
+		FecEncoder encoder = new FecEncoder(scheme, mDataFrames, mParityFrames, payloadSize);
+		FecDecoder decoder = new FecDecoder(scheme, mDataFrames, mParityFrames, payloadSize);
+		LossModel lossModel = new LossModel(loss, random);
+		byte[] frame = new byte[payloadSize];
+		byte[] parity = new byte[Fec.getMaxParitySize(payloadSize)];
+		long dataBytes = 0, parityBytes = 0;
+		int lost = 0;
+
+		for (int sequence = 0; sequence < SIMULATED_FRAMES; sequence++) {
+			int length = payloadSize / 2 + random.nextInt(payloadSize / 2);
+			random.nextBytes(frame);
+			dataBytes += length;
+			boolean groupDone = encoder.add(sequence, frame, 0, length);
+			if (lossModel.lose()) {
+				lost++;
+			} else {
+				decoder.addData(sequence, ByteBuffer.wrap(frame, 0, length));
+			}
+			if (!groupDone)
+				continue;
+			for (int r = 0; r < mParityFrames; r++) {
+				int parityLength = encoder.writeParity(r, parity, 0);
+				parityBytes += parityLength;
+				if (!lossModel.lose())
+					decoder.addParity(sequence - mDataFrames + 1, r, ByteBuffer.wrap(parity, 0, parityLength));
+			}
+		}
+
+		long recovered = decoder.getRecoveredTotal();
+		System.out.println(String.format("%s %s: lost %.2f%% of the frames, rebuilt %.1f%% of them, "
+						+ "residual loss %.2f%%, parity adds %.1f%% to the bandwidth",
+				fec, loss, 100d * lost / SIMULATED_FRAMES, lost == 0 ? 100d : 100d * recovered / lost,
+				100d * (lost - recovered) / SIMULATED_FRAMES, 100d * parityBytes / dataBytes));
+	}
+
+	/**
+	 * 	random loss with the given percentage, or a gilbert model that
+	 * 	goes from good to bad and back with bursts of 3 on average
+	 */
+	private static class LossModel {
+
+		private final Random mRandom;
+		private final boolean mBursty;
+		private final double mLoss;
+		private boolean mBad;
+
+		LossModel(String pattern, Random random) {
+			String[] parts = pattern.split("-");
+			mRandom = random;
+			mBursty = "burst".equals(parts[0]);
+			mLoss = Integer.parseInt(parts[1]) / 100d;
+		}
+
+		boolean lose() {
+			if (!mBursty)
+				return mRandom.nextDouble() < mLoss;
+			// leaving the bad state with 1/3 makes bursts of 3, entering
+			// it as often as it takes for the average to be the loss
+			double leave = 1 / 3d;
+			double enter = leave * mLoss / (1 - mLoss);
+			mBad = mRandom.nextDouble() < (mBad ? 1 - leave : enter);
+			return mBad;
+		}
+	}
+}
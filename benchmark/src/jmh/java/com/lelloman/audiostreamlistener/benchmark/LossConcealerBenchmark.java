@@ -0,0 +1,99 @@
+package com.lelloman.audiostreamlistener.benchmark;
+
+import com.lelloman.audiostreamlistener.audio.LossConcealer;
+import com.lelloman.audiostreamlistener.audio.Samples;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 	cost of a good frame going through the concealer and of a
+ * 	loss, the first concealed frame is the expensive one since
+ * 	that's when the pitch is searched
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LossConcealerBenchmark {
+
+	@Param({"0", "1", "2"})
+	public int strategy;
+
+	@Param({"1", "2"})
+	public int bitDepth;
+
+	@Param({"44100"})
+	public int sampleRate;
+
+	// 20 ms frames
+	@Param({"20"})
+	public int frameMs;
+
+	private LossConcealer mLossConcealer;
+	// the concealer cross fades good frames in place, so
+	// every op works on a fresh copy of mSource
+	private ByteBuffer mSource;
+	private ByteBuffer mFrame;
+	private ByteBuffer mOut;
+
+	@Setup
+	public void setup() {
+		int samples = sampleRate * frameMs / 1000;
+		mSource = ByteBuffer.allocateDirect(samples * bitDepth);
+		mFrame = ByteBuffer.allocateDirect(mSource.capacity());
+		mOut = ByteBuffer.allocateDirect(mSource.capacity());
+
+		// a vowel-ish tone, 150 Hz with a couple of harmonics
+		for (int i = 0; i < samples; i++) {
+			double t = i / (double) sampleRate;
+			double s = .5 * Math.sin(2 * Math.PI * 150 * t)
+					+ .25 * Math.sin(2 * Math.PI * 300 * t)
+					+ .1 * Math.sin(2 * Math.PI * 450 * t);
+			Samples.set(mSource, 0, i, bitDepth, (float) s);
+		}
+		mFrame.put(mSource.duplicate()).flip();
+
+		mLossConcealer = LossConcealer.create(strategy, sampleRate, bitDepth, mFrame.capacity());
+		for (int i = 0; i < 4; i++) {
+			mLossConcealer.onFrame(mFrame);
+		}
+	}
+
+	@Benchmark
+	public ByteBuffer goodFrame() {
+		refill();
+		mLossConcealer.onFrame(mFrame);
+		return mFrame;
+	}
+
+	@Benchmark
+	public ByteBuffer lossEvent() {
+		refill();
+		mLossConcealer.onFrame(mFrame);
+		mOut.clear();
+		mLossConcealer.conceal(mOut, mOut.capacity());
+		return mOut;
+	}
+
+	@Benchmark
+	public ByteBuffer consecutiveLoss() {
+		mOut.clear();
+		mLossConcealer.conceal(mOut, mOut.capacity());
+		return mOut;
+	}
+
+	private void refill() {
+		mSource.clear();
+		mFrame.clear();
+		mFrame.put(mSource).flip();
+	}
+}
@@ -0,0 +1,163 @@
+package com.lelloman.audiostreamlistener.benchmark;
+
+import com.lelloman.audiostreamlistener.codec.FrameDecoder;
+import com.lelloman.audiostreamlistener.codec.FrameEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.CODEC_LOSSLESS;
+
+/**
+ * 	the lossless codec over a few seconds of synthetic speech and
+ * 	music, one frame per op cycling through all of them. the frame
+ * 	duration over the us/op is how many times faster than real time
+ * 	the decoder is, the setup prints how big the frames are compared
+ * 	to the pcm
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LosslessBenchmark {
+
+	private static final int SECONDS = 5;
+
+	@Param({"speech", "music"})
+	public String signal;
+
+	@Param({"44100", "48000"})
+	public int sampleRate;
+
+	@Param({"1024"})
+	public int bufferSize;
+
+	private FrameEncoder mEncoder;
+	private FrameDecoder mDecoder;
+	private byte[][] mPcmFrames;
+	private ByteBuffer[] mEncodedFrames;
+	private byte[] mEncoded;
+	private ByteBuffer mDst;
+	private int mIndex;
+
+	@Setup
+	public void setup() {
+		short[] samples = "speech".equals(signal) ? speech(sampleRate) : music(sampleRate);
+		int frameSamples = bufferSize / 2;
+		int frames = samples.length / frameSamples;
+
+		mEncoder = FrameEncoder.create(CODEC_LOSSLESS);
+		mDecoder = FrameDecoder.create(CODEC_LOSSLESS, frameSamples);
+		mEncoded = new byte[FrameDecoder.getEncodedSize(CODEC_LOSSLESS, bufferSize)];
+		mDst = ByteBuffer.allocateDirect(bufferSize);
+		mPcmFrames = new byte[frames][];
+		mEncodedFrames = new ByteBuffer[frames];
+
+		long encodedBytes = 0;
+		for (int i = 0; i < frames; i++) {
+			ByteBuffer pcm = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+			pcm.asShortBuffer().put(samples, i * frameSamples, frameSamples);
+			mPcmFrames[i] = pcm.array();
+			int size = mEncoder.encode(mPcmFrames[i], 0, bufferSize, mEncoded, 0);
+			mEncodedFrames[i] = ByteBuffer.allocateDirect(size);
+			mEncodedFrames[i].put(mEncoded, 0, size).flip();
+			encodedBytes += size;
+		}
+		System.out.println(String.format("%s %s Hz: frames %.1f%% of the pcm, %.0f us of audio per frame",
+				signal, sampleRate, 100d * encodedBytes / ((long) frames * bufferSize),
+				frameSamples * 1e6 / sampleRate));
+	}
+
+	@Benchmark
+	public ByteBuffer decode() {
+		ByteBuffer frame = mEncodedFrames[mIndex];
+		mIndex = (mIndex + 1) % mEncodedFrames.length;
+		mDecoder.decode(frame, mDst);
+		return mDst;
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		byte[] frame = mPcmFrames[mIndex];
+		mIndex = (mIndex + 1) % mPcmFrames.length;
+		mEncoder.encode(frame, 0, frame.length, mEncoded, 0);
+		return mEncoded;
+	}
+
+	/**
+	 * 	a pulse train at a wandering pitch through two resonances, in
+	 * 	syllables with short pauses, over a noise floor
+	 */
+	private static short[] speech(int sampleRate) {
+		Random random = new Random(42);
+		short[] samples = new short[SECONDS * sampleRate];
+		double y1 = 0, y2 = 0, z1 = 0, z2 = 0;
+		double phase = 0;
+		for (int i = 0; i < samples.length; i++) {
+			double t = i / (double) sampleRate;
+			double pitch = 120 + 30 * Math.sin(2 * Math.PI * .7 * t);
+			phase += pitch / sampleRate;
+			double pulse = 0;
+			if (phase >= 1) {
+				phase -= 1;
+				pulse = 1;
+			}
+			double syllable = Math.max(0, Math.sin(2 * Math.PI * 3 * t));
+			double formant = 500 + 300 * Math.sin(2 * Math.PI * 1.3 * t);
+			double y = resonate(pulse, y1, y2, formant, sampleRate);
+			y2 = y1;
+			y1 = y;
+			double z = resonate(pulse, z1, z2, 3 * formant, sampleRate);
+			z2 = z1;
+			z1 = z;
+			double s = syllable * (y1 + .3 * z1) * 3000 + random.nextGaussian() * 6;
+			samples[i] = clip(s);
+		}
+		return samples;
+	}
+
+	private static double resonate(double in, double y1, double y2, double frequency, int sampleRate) {
+		double r = .97;
+		return in + 2 * r * Math.cos(2 * Math.PI * frequency / sampleRate) * y1 - r * r * y2;
+	}
+
+	/**
+	 * 	chords of decaying harmonic notes, with a little noise as
+	 * 	recordings have
+	 */
+	private static short[] music(int sampleRate) {
+		Random random = new Random(42);
+		double[] notes = {220, 261.63, 329.63, 392, 174.61, 440, 293.66, 349.23};
+		short[] samples = new short[SECONDS * sampleRate];
+		double beat = .5;
+		for (int i = 0; i < samples.length; i++) {
+			double t = i / (double) sampleRate;
+			int bar = (int) (t / beat);
+			double sinceBeat = t - bar * beat;
+			double s = 0;
+			for (int voice = 0; voice < 3; voice++) {
+				double f = notes[(bar + voice * 2) % notes.length];
+				for (int harmonic = 1; harmonic <= 4; harmonic++) {
+					s += Math.sin(2 * Math.PI * f * harmonic * t) / (harmonic * harmonic);
+				}
+			}
+			s *= Math.exp(-3 * sinceBeat) * 5000;
+			samples[i] = clip(s + random.nextGaussian() * 12);
+		}
+		return samples;
+	}
+
+	private static short clip(double s) {
+		return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(s)));
+	}
+}
@@ -0,0 +1,135 @@
+package com.lelloman.audiostreamlistener.benchmark;
+
+import com.lelloman.audiostreamlistener.audio.LossConcealer;
+import com.lelloman.audiostreamlistener.sink.AudioSink;
+import com.lelloman.audiostreamlistener.sink.CountingSink;
+import com.lelloman.audiostreamlistener.sink.NullSink;
+import com.lelloman.audiostreamlistener.threading.AudioClient;
+import com.lelloman.audiostreamlistener.threading.FrameHeader;
+import com.lelloman.audiostreamlistener.threading.FramePool;
+import com.lelloman.audiostreamlistener.threading.FrameReceiver;
+import com.lelloman.audiostreamlistener.threading.JitterBuffer;
+import com.lelloman.audiostreamlistener.threading.UdpChannel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.FRAME_POOL_SPARE;
+import static com.lelloman.audiostreamlistener.Constants.JITTER_BUFFER_CAPACITY;
+import static com.lelloman.audiostreamlistener.Constants.REORDER_WINDOW;
+
+/**
+ * 	one packet from the socket to the sink: it's sent over loopback
+ * 	with a frame header, received by {@link FrameReceiver} in a pooled
+ * 	buffer, slotted in the {@link JitterBuffer}, taken out, passed
+ * 	through the {@link LossConcealer} and written to a null or counting
+ * 	sink in place of the AudioTrack.
+ *
+ * 	throughput is packets/s, sample time gives the per packet latency
+ * 	percentiles and the gc profiler, on by default in the jmh block of
+ * 	build.gradle, the allocation rate which should stay at ~0 B/op.
+ * 	everything runs in the benchmark thread so the numbers don't depend
+ * 	on thread scheduling, the sender side is a plain DatagramChannel
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReceivePipelineBenchmark {
+
+	private static final long RECEIVE_TIMEOUT_MS = 1000;
+
+	@Param({"44100", "48000"})
+	public int sampleRate;
+
+	@Param({"1", "2"})
+	public int bitDepth;
+
+	// pcm bytes per packet
+	@Param({"256", "1024", "4096"})
+	public int bufferSize;
+
+	@Param({"null", "counting"})
+	public String sink;
+
+	private DatagramChannel mSender;
+	private ByteBuffer mPacket;
+	private byte[] mPacketData;
+	private int mSequence;
+
+	private UdpChannel mChannel;
+	private JitterBuffer mJitterBuffer;
+	private FramePool mFramePool;
+	private FrameReceiver mFrameReceiver;
+	private LossConcealer mLossConcealer;
+	private AudioSink mSink;
+
+	@Setup
+	public void setup() throws IOException {
+		int datagramSize = bufferSize + FrameHeader.SIZE;
+		long frameDurationNanos = bufferSize * 1000000000L / ((long) sampleRate * bitDepth);
+
+		mChannel = new UdpChannel();
+		mChannel.setReceiveBufferSize(datagramSize * JITTER_BUFFER_CAPACITY);
+		mFramePool = new FramePool(JITTER_BUFFER_CAPACITY + FRAME_POOL_SPARE, datagramSize);
+		// no latency target, the frames are taken as soon as they're in
+		mJitterBuffer = new JitterBuffer(JITTER_BUFFER_CAPACITY, mFramePool, frameDurationNanos, 0, REORDER_WINDOW);
+		mFrameReceiver = new FrameReceiver(mChannel, mFramePool, mJitterBuffer, datagramSize, FrameHeader.VERSION);
+		mLossConcealer = LossConcealer.create(LossConcealer.WSOLA, sampleRate, bitDepth, bufferSize);
+		mSink = "counting".equals(sink) ? new CountingSink() : new NullSink();
+		mSink.open(new AudioClient.StreamConfig(sampleRate, bitDepth, bufferSize, FrameHeader.VERSION), bufferSize);
+
+		mSender = DatagramChannel.open();
+		mSender.connect(mChannel.getLocalAddress());
+		mPacketData = new byte[datagramSize];
+		for (int i = FrameHeader.SIZE; i < datagramSize; i++) {
+			mPacketData[i] = (byte) (Math.sin(i * .05) * 100);
+		}
+		mPacket = ByteBuffer.wrap(mPacketData);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		mSender.close();
+		mChannel.close();
+		mJitterBuffer.close();
+		mSink.close();
+	}
+
+	/**
+	 * @return the bytes written to the sink
+	 */
+	@Benchmark
+	public int packet() throws IOException, InterruptedException {
+		// the timestamps follow the send time, so the jitter buffer
+		// sees no jitter and doesn't hold the frames back
+		FrameHeader.write(mPacketData, 0, 0, mSequence++, System.nanoTime() / 1000);
+		mPacket.clear();
+		mSender.write(mPacket);
+
+		if (mFrameReceiver.receive(RECEIVE_TIMEOUT_MS) < 0)
+			throw new IllegalStateException("packet lost on loopback");
+
+		int written = 0;
+		ByteBuffer frame;
+		while ((frame = mJitterBuffer.take(0)) != null) {
+			if (frame == JitterBuffer.LOST)
+				continue;
+			mLossConcealer.onFrame(frame);
+			written += mSink.write(frame, frame.remaining());
+			mFramePool.release(frame);
+		}
+		return written;
+	}
+}
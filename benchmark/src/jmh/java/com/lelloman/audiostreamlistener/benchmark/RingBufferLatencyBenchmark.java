@@ -0,0 +1,138 @@
+package com.lelloman.audiostreamlistener.benchmark;
+
+import com.lelloman.audiostreamlistener.threading.PcmRingBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Control;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 	handoff latency, a frame goes to the other thread and comes back,
+ * 	the ping score is the round trip so one handoff is half of it.
+ * 	both sides spin, so it's the cost of the buffer and of moving the
+ * 	cache lines, without any wake up.
+ *
+ * 	the pong side of the direct ring reads in place with
+ * 	{@link PcmRingBuffer#peek()} and copies straight into the other ring
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RingBufferLatencyBenchmark {
+
+	@Param({"heap", "direct", "queue"})
+	public String buffer;
+
+	@Param({"256", "1764"})
+	public int frameBytes;
+
+	private PcmRingBuffer mPing;
+	private PcmRingBuffer mPong;
+	private ArrayBlockingQueue<byte[]> mPingQueue;
+	private ArrayBlockingQueue<byte[]> mPongQueue;
+
+	private byte[] mPingArray;
+	private byte[] mPongArray;
+	private ByteBuffer mPingDirect;
+
+	// a fresh pair every iteration, so that a frame left in flight
+	// when the last one stopped doesn't come back as an answer
+	@Setup(Level.Iteration)
+	public void setup() {
+		int capacity = frameBytes * 4;
+		boolean direct = "direct".equals(buffer);
+		mPing = direct ? PcmRingBuffer.allocateDirect(capacity) : PcmRingBuffer.allocate(capacity);
+		mPong = direct ? PcmRingBuffer.allocateDirect(capacity) : PcmRingBuffer.allocate(capacity);
+		mPingQueue = new ArrayBlockingQueue<>(4);
+		mPongQueue = new ArrayBlockingQueue<>(4);
+
+		mPingArray = new byte[frameBytes];
+		mPongArray = new byte[frameBytes];
+		mPingDirect = ByteBuffer.allocateDirect(frameBytes);
+	}
+
+	@Benchmark
+	@Group("roundTrip")
+	@GroupThreads(1)
+	public void ping(Control control) {
+		switch (buffer) {
+			case "heap":
+				mPing.write(mPingArray, 0, frameBytes);
+				while (mPong.available() < frameBytes) {
+					if (control.stopMeasurement)
+						return;
+				}
+				mPong.read(mPingArray, 0, frameBytes);
+				break;
+			case "direct":
+				mPingDirect.clear();
+				mPing.write(mPingDirect);
+				while (mPong.available() < frameBytes) {
+					if (control.stopMeasurement)
+						return;
+				}
+				mPingDirect.clear();
+				mPong.read(mPingDirect);
+				break;
+			default:
+				mPingQueue.offer(mPingArray.clone());
+				while (mPongQueue.poll() == null) {
+					if (control.stopMeasurement)
+						return;
+				}
+				break;
+		}
+	}
+
+	@Benchmark
+	@Group("roundTrip")
+	@GroupThreads(1)
+	public void pong(Control control) {
+		switch (buffer) {
+			case "heap":
+				while (mPing.available() < frameBytes) {
+					if (control.stopMeasurement)
+						return;
+				}
+				mPing.read(mPongArray, 0, frameBytes);
+				mPong.write(mPongArray, 0, frameBytes);
+				break;
+			case "direct":
+				while (mPing.available() < frameBytes) {
+					if (control.stopMeasurement)
+						return;
+				}
+				// the frame can wrap, then it takes two regions
+				int copied = 0;
+				while (copied < frameBytes) {
+					ByteBuffer region = mPing.peek();
+					region.limit(Math.min(region.limit(), region.position() + frameBytes - copied));
+					int length = mPong.write(region);
+					mPing.commitRead(length);
+					copied += length;
+				}
+				break;
+			default:
+				byte[] frame;
+				while ((frame = mPingQueue.poll()) == null) {
+					if (control.stopMeasurement)
+						return;
+				}
+				mPongQueue.offer(frame);
+				break;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.lelloman.audiostreamlistener.benchmark;
+
+import com.lelloman.audiostreamlistener.threading.PcmRingBuffer;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 	bytes per second moved from one producer thread to one consumer
+ * 	thread, see the written and read counters, the ops are attempts
+ * 	and include the ones that found the buffer full or empty.
+ *
+ * 	heap copies byte[] in and out of an on heap {@link PcmRingBuffer},
+ * 	direct copies direct ByteBuffers through an off heap one, like the
+ * 	socket to AudioTrack path does. queue is the usual
+ * 	ArrayBlockingQueue&lt;byte[]&gt; with a new array for each frame
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RingBufferThroughputBenchmark {
+
+	@Param({"heap", "direct", "queue"})
+	public String buffer;
+
+	// 256 bytes and 20 ms of 16 bit 44.1 kHz mono
+	@Param({"256", "1764"})
+	public int frameBytes;
+
+	@Param({"65536"})
+	public int capacity;
+
+	private PcmRingBuffer mRing;
+	private ArrayBlockingQueue<byte[]> mQueue;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters {
+		public long written;
+		public long read;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			written = 0;
+			read = 0;
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Frames {
+		byte[] array;
+		ByteBuffer direct;
+
+		@Setup
+		public void setup(RingBufferThroughputBenchmark benchmark) {
+			array = new byte[benchmark.frameBytes];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = (byte) i;
+			}
+			direct = ByteBuffer.allocateDirect(benchmark.frameBytes);
+			direct.put(array).clear();
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		mRing = "direct".equals(buffer)
+				? PcmRingBuffer.allocateDirect(capacity)
+				: PcmRingBuffer.allocate(capacity);
+		mQueue = new ArrayBlockingQueue<>(Math.max(1, capacity / frameBytes));
+	}
+
+	@Benchmark
+	@Group("transfer")
+	@GroupThreads(1)
+	public void produce(Frames frames, Counters counters) {
+		switch (buffer) {
+			case "heap":
+				counters.written += mRing.write(frames.array, 0, frameBytes);
+				break;
+			case "direct":
+				frames.direct.clear();
+				counters.written += mRing.write(frames.direct);
+				break;
+			default:
+				if (mQueue.offer(frames.array.clone()))
+					counters.written += frameBytes;
+				break;
+		}
+	}
+
+	@Benchmark
+	@Group("transfer")
+	@GroupThreads(1)
+	public void consume(Frames frames, Counters counters) {
+		switch (buffer) {
+			case "heap":
+				counters.read += mRing.read(frames.array, 0, frameBytes);
+				break;
+			case "direct":
+				frames.direct.clear();
+				counters.read += mRing.read(frames.direct);
+				break;
+			default:
+				byte[] frame = mQueue.poll();
+				if (frame != null)
+					counters.read += frame.length;
+				break;
+		}
+	}
+}
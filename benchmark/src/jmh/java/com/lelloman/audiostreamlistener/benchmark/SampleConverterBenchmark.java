@@ -0,0 +1,104 @@
+package com.lelloman.audiostreamlistener.benchmark;
+
+import com.lelloman.audiostreamlistener.audio.SampleConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_FLOAT;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_16;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_24;
+
+/**
+ * 	each converter over a 20 ms frame of noise, the us/op against the
+ * 	20000 us of audio is the share of real time it takes. the
+ * 	conversion is named source-destination, with the channels as
+ * 	format x channels when they change
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SampleConverterBenchmark {
+
+	private static final int FRAME_MS = 20;
+
+	@Param({"48000", "96000"})
+	public int sampleRate;
+
+	@Param({"s16-f32", "s24-f32", "s24-s16", "f32-s16", "s16-s24", "s16x2-s16x1", "f32x6-f32x2", "s24x6-s16x1"})
+	public String conversion;
+
+	private SampleConverter mConverter;
+	private ByteBuffer mSrc;
+	private ByteBuffer mDst;
+	private float[] mChannel;
+	private int mFrames;
+	private int mSrcFormat;
+	private int mSrcChannels;
+
+	@Setup
+	public void setup() {
+		String[] formats = conversion.split("-");
+		int srcFormat = mSrcFormat = parseFormat(formats[0]);
+		int srcChannels = mSrcChannels = parseChannels(formats[0]);
+		mFrames = sampleRate * FRAME_MS / 1000;
+		mConverter = new SampleConverter(srcFormat, srcChannels, parseFormat(formats[1]), parseChannels(formats[1]));
+
+		int srcBytes = mFrames * srcChannels * srcFormat;
+		mSrc = ByteBuffer.allocateDirect(srcBytes).order(ByteOrder.LITTLE_ENDIAN);
+		mDst = ByteBuffer.allocateDirect(mConverter.getWorkSize(srcBytes));
+		Random random = new Random(42);
+		for (int i = 0; i < srcBytes / srcFormat; i++) {
+			float sample = (float) random.nextGaussian() * .2f;
+			if (srcFormat == FORMAT_FLOAT) {
+				mSrc.putFloat(sample);
+			} else if (srcFormat == FORMAT_PCM_24) {
+				int value = (int) (sample * 8388607);
+				mSrc.put((byte) value).put((byte) (value >> 8)).put((byte) (value >> 16));
+			} else {
+				mSrc.putShort((short) (sample * 32767));
+			}
+		}
+		mSrc.flip();
+		mChannel = new float[mFrames];
+	}
+
+	@Benchmark
+	public int convert() {
+		return mConverter.convert(mSrc, mDst);
+	}
+
+	/**
+	 * 	what the player does around the resampler of each channel
+	 */
+	@Benchmark
+	public ByteBuffer deinterleaveInterleave() {
+		for (int c = 0; c < mSrcChannels; c++) {
+			SampleConverter.deinterleave(mSrc, 0, mSrcFormat, mSrcChannels, c, mChannel, mFrames);
+			SampleConverter.interleave(mChannel, mFrames, mSrc, 0, mSrcFormat, mSrcChannels, c);
+		}
+		return mSrc;
+	}
+
+	private static int parseFormat(String format) {
+		if (format.startsWith("f32"))
+			return FORMAT_FLOAT;
+		return format.startsWith("s24") ? FORMAT_PCM_24 : FORMAT_PCM_16;
+	}
+
+	private static int parseChannels(String format) {
+		int x = format.indexOf('x');
+		return x < 0 ? 1 : Integer.parseInt(format.substring(x + 1));
+	}
+}
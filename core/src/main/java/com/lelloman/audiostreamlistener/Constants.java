@@ -0,0 +1,175 @@
+package com.lelloman.audiostreamlistener;
+
+import java.util.concurrent.TimeUnit;
+
+public class Constants {
+	private Constants(){}
+
+	// shared with the server
+	public static final int MSG_PING = 0xd00b;
+	public static final int MSG_PONG = 0xbebbe;
+	public static final int MSG_STREAM_INFO = 123;
+	public static final int MSG_START_STREAM = 321;
+	// from the stream socket, followed by pairs of ints: a missing
+	// sequence and a mask of the 32 after it, bit i for sequence + 1 + i
+	public static final int MSG_NACK = 456;
+	// the one round trip handshake, MSG_HELLO is followed by the
+	// handshake version, a nonce and the optional features, MSG_WELCOME
+	// by the version, the nonce, sample rate, buffer size, bit depth and
+	// the accepted features, then the stream starts to the same socket
+	public static final int MSG_HELLO = 0x48454c4f;
+	public static final int MSG_WELCOME = 0x57454c43;
+	// from the stream socket, followed by the client clock in us, the
+	// server replies MSG_CLOCK_REPLY with the same clock, its own when
+	// the request arrived and when the reply left, in us on the clock
+	// of the frame timestamps
+	public static final int MSG_CLOCK = 0x434c4f43;
+	public static final int MSG_CLOCK_REPLY = 0x434c4b52;
+	// the server answers MSG_PING on this port too
+	public static final int DISCOVERY_PORT = 8383;
+	// pings per second, in batches, every host is pinged this many times
+	public static final int DISCOVERY_RATE = 20000;
+	public static final int DISCOVERY_BATCH = 64;
+	public static final int DISCOVERY_ROUNDS = 2;
+	// wider subnets are scanned as the /16 around the address
+	public static final int DISCOVERY_MIN_PREFIX = 16;
+	// the pongs are waited for this long after the last ping
+	public static final int DISCOVERY_GRACE_MS = 500;
+	public static final int DISCOVERY_PROGRESS_MS = 100;
+	// the server joins this group on the discovery port, MSG_PING goes
+	// there and to the broadcast addresses first, the sweep starts if
+	// nobody answered within DISCOVERY_BROADCAST_WAIT_MS
+	public static final String DISCOVERY_GROUP = "239.255.83.83";
+	public static final int DISCOVERY_BROADCAST_WAIT_MS = 300;
+	// once a server answered, the pongs are collected for this long
+	// after the broadcast wait or the sweep instead of DISCOVERY_GRACE_MS
+	public static final int DISCOVERY_WINDOW_MS = 200;
+	// the servers found are pinged this many times to be ranked by round
+	// trip, a probe id after MSG_PING comes back after MSG_PONG followed
+	// by the same as MSG_ANNOUNCE
+	public static final int DISCOVERY_PROBES = 5;
+	public static final int DISCOVERY_PROBE_INTERVAL_MS = 20;
+	public static final int DISCOVERY_PROBE_TIMEOUT_MS = 250;
+	// the servers used or found are remembered for this long since they
+	// were last seen, the known ones are probed before scanning
+	public static final long REGISTRY_TTL_MS = TimeUnit.DAYS.toMillis(7);
+	public static final int REGISTRY_MAX_SERVERS = 16;
+	// the known servers saved by name are resolved all at once, the ones
+	// that take longer than this aren't probed
+	public static final int REGISTRY_RESOLVE_TIMEOUT_MS = 250;
+	// sent by the server every now and then to the group and the
+	// broadcast addresses on this port, followed by the stream port,
+	// the session token and the config after the nonce of MSG_WELCOME,
+	// a server not heard for a few intervals is gone
+	public static final int MSG_ANNOUNCE = 0x414e4e43;
+	public static final int ANNOUNCE_PORT = 8384;
+	public static final int DEFAULT_ANNOUNCE_INTERVAL_MS = 2000;
+	public static final int ANNOUNCE_EXPIRY_MS = 3 * DEFAULT_ANNOUNCE_INTERVAL_MS;
+	// a session heard in a pong or an announcement lets the stream start
+	// without waiting for MSG_WELCOME for this long, like a server that
+	// announces itself, after that the server might have restarted
+	public static final int SESSION_FRESH_MS = ANNOUNCE_EXPIRY_MS;
+
+	// optional features asked for in the MSG_STREAM_INFO request as
+	// key/value ints, the server appends the accepted ones to the
+	// bit depth reply
+	public static final int EXT_FRAME_HEADER = 1;
+	// the client offers one pair for every codec it can decode, the
+	// server appends the one it picked, nothing means plain pcm
+	public static final int EXT_CODEC = 2;
+	// one pair for every sample format the client reads and the most
+	// channels it takes, the server appends what it sends if it's not
+	// 16 bit mono, nothing means the bit depth reply and one channel
+	public static final int EXT_SAMPLE_FORMAT = 3;
+	public static final int EXT_CHANNELS = 4;
+	// one pair for every fec scheme the client can decode, the server
+	// appends the one it uses followed by EXT_FEC_GROUP, data frames
+	// << 8 | parity frames, needs EXT_FRAME_HEADER
+	public static final int EXT_FEC = 5;
+	public static final int EXT_FEC_GROUP = 6;
+	// the client can send MSG_NACK, the server appends how many
+	// frames back it can retransmit, needs EXT_FRAME_HEADER
+	public static final int EXT_NACK = 7;
+	// the biggest datagram the client wants, the server appends the
+	// size it splits the bigger frames to, see FrameHeader.FLAG_FRAGMENT,
+	// needs EXT_FRAME_HEADER
+	public static final int EXT_MAX_DATAGRAM = 8;
+	// the server always appends its session token, which stays the same
+	// with its config, a client that has the config of the session
+	// doesn't wait for MSG_WELCOME
+	public static final int EXT_SESSION = 9;
+
+	// the codecs, all but pcm carry 16 bit samples
+	public static final int CODEC_PCM = 0;
+	public static final int CODEC_MULAW = 1;
+	public static final int CODEC_ALAW = 2;
+	public static final int CODEC_IMA_ADPCM = 3;
+	// see codec.Lossless, bit exact
+	public static final int CODEC_LOSSLESS = 4;
+
+	// the fec schemes, see fec.Fec, xor has a single parity frame
+	public static final int FEC_NONE = 0;
+	public static final int FEC_XOR = 1;
+	public static final int FEC_REED_SOLOMON = 2;
+
+	// the sample formats, little endian and 8 bit unsigned as in wav
+	// files, the ids are the bytes per sample so the bit depth reply
+	// of a server that doesn't know about formats reads as one
+	public static final int FORMAT_PCM_8 = 1;
+	public static final int FORMAT_PCM_16 = 2;
+	public static final int FORMAT_PCM_24 = 3;
+	public static final int FORMAT_FLOAT = 4;
+	public static final int MAX_CHANNELS = 8;
+
+	// MSG_HELLO is sent again after this, doubling every time
+	public static final int HANDSHAKE_VERSION = 1;
+	public static final int HANDSHAKE_TIMEOUT_MS = 25;
+	public static final int HANDSHAKE_ATTEMPTS = 6;
+	// big enough for the requests with all their extensions, and the
+	// replies, the welcome among them comes in on the stream socket
+	public static final int STREAM_INFO_MAX_SIZE = 256;
+
+	// stream receiving parameters
+	public static final int SO_TIMEOUT = 500;
+	public static final int MAX_SO_TIMEOUT_COUNT = 5;
+
+	// jitter buffer, capacity is in frames
+	public static final int JITTER_BUFFER_CAPACITY = 64;
+	// buffers in use by the socket and the player on top of those
+	public static final int FRAME_POOL_SPARE = 4;
+	public static final int DEFAULT_TARGET_LATENCY_MS = 100;
+	// playback starts with this much buffered, then builds up to the target
+	public static final int START_LATENCY_MS = 40;
+	public static final int REORDER_WINDOW = 4;
+
+	// a hole is asked for once this many newer frames arrived, before
+	// it could just be reordered
+	public static final int NACK_REORDER_GAP = 2;
+	// pairs in a MSG_NACK, up to 33 frames each
+	public static final int MAX_NACK_PAIRS = 16;
+	// until the first retransmission is measured
+	public static final int NACK_INITIAL_RTT_MS = 20;
+
+	// the clock is synced this often, faster until there are enough samples
+	public static final int CLOCK_SYNC_INTERVAL_MS = 1000;
+	public static final int CLOCK_SYNC_FAST_INTERVAL_MS = 50;
+	// the offset comes from the fastest round trip of the last samples
+	public static final int CLOCK_SYNC_SAMPLES = 8;
+
+	// when the interface one can't be read
+	public static final int DEFAULT_MTU = 1500;
+	// ip and udp headers
+	public static final int IPV4_UDP_OVERHEAD = 28;
+	public static final int IPV6_UDP_OVERHEAD = 48;
+	// frames assembled at once from their fragments
+	public static final int FRAGMENT_SLOTS = 8;
+
+	// small frames are coalesced in writes of this duration at least
+	public static final int WRITE_BATCH_MS = 20;
+	// the sink buffer starts as small as it can and grows up to this on underruns
+	public static final int MAX_OUTPUT_LATENCY_MS = 100;
+
+	public static final boolean DEFAULT_AUTO_DRIFT = true;
+	public static final int DEFAULT_SKIP_FRAME = 500;
+	public static final int DEFAULT_PORT = 8080;
+}
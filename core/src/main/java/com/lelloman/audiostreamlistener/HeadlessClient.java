@@ -0,0 +1,88 @@
+package com.lelloman.audiostreamlistener;
+
+import com.lelloman.audiostreamlistener.sink.AudioSink;
+import com.lelloman.audiostreamlistener.sink.CountingSink;
+import com.lelloman.audiostreamlistener.sink.JavaSoundSink;
+import com.lelloman.audiostreamlistener.sink.NullSink;
+import com.lelloman.audiostreamlistener.sink.WavFileSink;
+import com.lelloman.audiostreamlistener.threading.AudioClient;
+import com.lelloman.audiostreamlistener.threading.StartupTimer;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 	the client without the phone, for soak tests on a plain jvm
+ *
+ * 	HeadlessClient host [port] [null|counting|sound|file.wav] [seconds] [mtu]
+ */
+public class HeadlessClient implements AudioClient.AudioClientListener {
+
+	public static final String TAG = HeadlessClient.class.getSimpleName();
+
+	private final CountDownLatch mClosed = new CountDownLatch(1);
+
+	@Override
+	public void onConnectionClosed() {
+		Logger.d(TAG, "connection closed");
+		mClosed.countDown();
+	}
+
+	@Override
+	public void onStreamConfigReceived(AudioClient.StreamConfig streamConfig) {
+		Logger.d(TAG, String.format("stream %s Hz %s bit%s %s channels %s bytes frames",
+				streamConfig.sampleRate, streamConfig.bitDepth * 8,
+				streamConfig.bitDepth == Constants.FORMAT_FLOAT ? " float" : "",
+				streamConfig.channels, streamConfig.bufferSize));
+	}
+
+	@Override
+	public void onStatsUpdate(long byteCount, long durationMs, float latencyMs) {
+	}
+
+	@Override
+	public void onFirstAudio(StartupTimer startupTimer) {
+		Logger.d(TAG, String.format("time to first audio %.1f ms", startupTimer.getTimeToFirstAudioMs()));
+	}
+
+	private static AudioSink makeSink(String name) {
+		switch (name) {
+			case "null":
+				return new NullSink();
+			case "counting":
+				return new CountingSink();
+			case "sound":
+				return new JavaSoundSink();
+			default:
+				return new WavFileSink(new File(name));
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length < 1) {
+			System.err.println("HeadlessClient host [port] [null|counting|sound|file.wav] [seconds] [mtu]");
+			System.exit(1);
+		}
+		String host = args[0];
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : Constants.DEFAULT_PORT;
+		AudioSink sink = makeSink(args.length > 2 ? args[2] : "counting");
+		long seconds = args.length > 3 ? Long.parseLong(args[3]) : Long.MAX_VALUE / 1000;
+
+		HeadlessClient headlessClient = new HeadlessClient();
+		AudioClient audioClient = new AudioClient(host, port, sink, headlessClient);
+		if (args.length > 4)
+			audioClient.setMtu(Integer.parseInt(args[4]));
+		audioClient.start();
+
+		if (!headlessClient.mClosed.await(seconds, TimeUnit.SECONDS)) {
+			audioClient.kill();
+			audioClient.join();
+		}
+
+		if (sink instanceof CountingSink) {
+			CountingSink countingSink = (CountingSink) sink;
+			Logger.d(TAG, String.format("played %s bytes in %s writes", countingSink.getBytes(), countingSink.getWrites()));
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.lelloman.audiostreamlistener;
+
+/**
+ * 	the core doesn't know about android.util.Log, the app plugs
+ * 	it in with {@link #setOutput(Output)}, by default everything
+ * 	goes to the standard output
+ */
+public final class Logger {
+
+	public interface Output {
+		void d(String tag, String msg);
+		void w(String tag, String msg);
+	}
+
+	private static final Output STANDARD_OUTPUT = new Output() {
+		@Override
+		public void d(String tag, String msg) {
+			System.out.println(tag + ": " + msg);
+		}
+
+		@Override
+		public void w(String tag, String msg) {
+			System.err.println(tag + ": " + msg);
+		}
+	};
+
+	private static volatile Output sOutput = STANDARD_OUTPUT;
+
+	private Logger(){}
+
+	/**
+	 * @param output null to go back to the standard output
+	 */
+	public static void setOutput(Output output) {
+		sOutput = output == null ? STANDARD_OUTPUT : output;
+	}
+
+	public static void d(String tag, String msg) {
+		sOutput.d(tag, msg);
+	}
+
+	public static void w(String tag, String msg) {
+		sOutput.w(tag, msg);
+	}
+}
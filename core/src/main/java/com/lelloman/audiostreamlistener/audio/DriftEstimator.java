@@ -0,0 +1,86 @@
+package com.lelloman.audiostreamlistener.audio;
+
+/**
+ * 	works out the resampling step that keeps the receive buffer at
+ * 	its target level while sender and playback clocks drift apart.
+ * 	the long term ratio comes from the samples that arrived against the
+ * 	ones the playback head went through, on top of that the smoothed
+ * 	buffer level nudges the step towards the target.
+ * 	the step never deviates from 1 more than {@link #MAX_DEVIATION}
+ * 	so the pitch change is inaudible
+ */
+public class DriftEstimator {
+
+	public static final double MAX_DEVIATION = .005;
+
+	// rates are measured over windows this long
+	private static final long WINDOW_NANOS = 2000000000L;
+	// a window further than this from 1 is a burst, not drift
+	private static final double MAX_WINDOW_RATIO_DEVIATION = .02;
+	private static final double RATIO_SMOOTHING = .1;
+	private static final double LEVEL_SMOOTHING = .02;
+	// relative level error to step correction
+	private static final double LEVEL_GAIN = .01;
+
+	private long mWindowStartNanos;
+	private long mWindowReceived;
+	private long mWindowPlayed;
+
+	private double mRatio = 1;
+	private double mLevel = -1;
+	private double mStep = 1;
+
+	/**
+	 * @param receivedSamples total samples that arrived so far
+	 * @param playedSamples total samples the playback head went through
+	 * @param level samples buffered right now
+	 * @param targetLevel samples that should be buffered
+	 * @return the new step, input samples per output sample
+	 */
+	public double update(long nowNanos, long receivedSamples, long playedSamples, double level, double targetLevel) {
+		if (mWindowStartNanos == 0) {
+			startWindow(nowNanos, receivedSamples, playedSamples);
+		} else if (nowNanos - mWindowStartNanos >= WINDOW_NANOS) {
+			long received = receivedSamples - mWindowReceived;
+			long played = playedSamples - mWindowPlayed;
+			if (received > 0 && played > 0) {
+				double ratio = received / (double) played;
+				if (Math.abs(ratio - 1) < MAX_WINDOW_RATIO_DEVIATION)
+					mRatio += (ratio - mRatio) * RATIO_SMOOTHING;
+			}
+			startWindow(nowNanos, receivedSamples, playedSamples);
+		}
+
+		mLevel = mLevel < 0 ? level : mLevel + (level - mLevel) * LEVEL_SMOOTHING;
+		double error = targetLevel > 0 ? (mLevel - targetLevel) / targetLevel : 0;
+		double step = mRatio * (1 + LEVEL_GAIN * error);
+
+		mStep = Math.max(1 - MAX_DEVIATION, Math.min(1 + MAX_DEVIATION, step));
+		return mStep;
+	}
+
+	public double getStep() {
+		return mStep;
+	}
+
+	/**
+	 * 	estimated drift between the clocks in parts per million,
+	 * 	positive when the sender runs faster
+	 */
+	public double getDriftPpm() {
+		return (mRatio - 1) * 1000000;
+	}
+
+	public void reset() {
+		mWindowStartNanos = 0;
+		mRatio = 1;
+		mLevel = -1;
+		mStep = 1;
+	}
+
+	private void startWindow(long nowNanos, long receivedSamples, long playedSamples) {
+		mWindowStartNanos = nowNanos;
+		mWindowReceived = receivedSamples;
+		mWindowPlayed = playedSamples;
+	}
+}
@@ -0,0 +1,30 @@
+package com.lelloman.audiostreamlistener.audio;
+
+/**
+ * 	loops the last good frame while fading it out
+ */
+public class FadeRepeatConcealer extends LossConcealer {
+
+	private int mPeriod;
+	private int mPosition;
+
+	public FadeRepeatConcealer(int sampleRate, int bitDepth, int channels, int maxFrameSize) {
+		super(sampleRate, bitDepth, channels, maxFrameSize, 0);
+	}
+
+	@Override
+	protected void startConcealment() {
+		mPeriod = Math.max(1, mLastFrameSamples);
+		mPosition = 0;
+	}
+
+	@Override
+	protected void synthesize(float[] out, int count) {
+		int start = mHistory.length - mPeriod;
+		for (int i = 0; i < count; i++) {
+			out[i] = mHistory[start + mPosition];
+			if (++mPosition == mPeriod)
+				mPosition = 0;
+		}
+	}
+}
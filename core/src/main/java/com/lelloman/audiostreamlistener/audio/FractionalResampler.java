@@ -0,0 +1,132 @@
+package com.lelloman.audiostreamlistener.audio;
+
+/**
+ * 	streaming resampler with a ratio that can change at any time,
+ * 	it interpolates a windowed sinc (blackman, 16 taps) from a table of
+ * 	128 phases, linearly interpolated in between.
+ * 	the step is how many input samples each output sample advances,
+ * 	so a step above 1 makes the stream shorter. an output that falls
+ * 	right on an input sample is that sample, a step of 1 is a passthrough
+ * 	one sample late
+ */
+public class FractionalResampler {
+
+	private static final int TAPS = 16;
+	private static final int HALF = TAPS / 2;
+	private static final int PHASES = 128;
+	// a bit below nyquist so that small ratio changes don't alias
+	private static final double CUTOFF = .95;
+
+	// shared by every instance, (PHASES + 1) rows of TAPS
+	private static final float[] TABLE = makeTable();
+
+	// the samples not consumed yet
+	private final float[] mInput;
+	private int mInputCount;
+	// fractional read position in mInput
+	private double mPosition;
+	private double mStep = 1;
+
+	public FractionalResampler(int maxInputSamples) {
+		mInput = new float[maxInputSamples + 2 * TAPS];
+		reset();
+	}
+
+	public void setStep(double step) {
+		mStep = step;
+	}
+
+	public double getStep() {
+		return mStep;
+	}
+
+	/**
+	 * 	forget the buffered input, the filter starts from silence
+	 */
+	public void reset() {
+		for (int i = 0; i < HALF; i++) {
+			mInput[i] = 0;
+		}
+		mInputCount = HALF;
+		mPosition = HALF - 1;
+	}
+
+	/**
+	 * 	append some input and write as many output samples as possible
+	 * 	but no more than out.length, out should be sized for the smallest
+	 * 	step that is going to be used otherwise the input piles up
+	 *
+	 * @return the number of samples written in out
+	 */
+	public int process(float[] in, int inCount, float[] out) {
+		if (mInputCount + inCount > mInput.length) {
+			// the caller didn't drain enough, start over rather than overflow
+			reset();
+		}
+		System.arraycopy(in, 0, mInput, mInputCount, inCount);
+		mInputCount += inCount;
+
+		int produced = 0;
+		while (produced < out.length) {
+			int base = (int) mPosition;
+			if (base + HALF >= mInputCount)
+				break;
+
+			if (mPosition == base) {
+				out[produced++] = mInput[base];
+				mPosition += mStep;
+				continue;
+			}
+
+			double phase = (mPosition - base) * PHASES;
+			int row = (int) phase;
+			float w = (float) (phase - row);
+			int row0 = row * TAPS;
+			int row1 = row0 + TAPS;
+			int start = base - HALF + 1;
+
+			float acc = 0;
+			for (int k = 0; k < TAPS; k++) {
+				float c0 = TABLE[row0 + k];
+				float c = c0 + (TABLE[row1 + k] - c0) * w;
+				acc += mInput[start + k] * c;
+			}
+			out[produced++] = acc;
+			mPosition += mStep;
+		}
+
+		// drop the samples that are behind the filter
+		int discard = (int) mPosition - HALF + 1;
+		if (discard > 0) {
+			System.arraycopy(mInput, discard, mInput, 0, mInputCount - discard);
+			mInputCount -= discard;
+			mPosition -= discard;
+		}
+
+		return produced;
+	}
+
+	private static float[] makeTable() {
+		float[] table = new float[(PHASES + 1) * TAPS];
+
+		for (int j = 0; j <= PHASES; j++) {
+			double frac = j / (double) PHASES;
+			double sum = 0;
+			for (int k = 0; k < TAPS; k++) {
+				double t = k - (HALF - 1) - frac;
+				double x = Math.PI * CUTOFF * t;
+				double sinc = t == 0 ? 1 : Math.sin(x) / x;
+				double window = .42 + .5 * Math.cos(Math.PI * t / HALF) + .08 * Math.cos(2 * Math.PI * t / HALF);
+				double value = sinc * window;
+				table[j * TAPS + k] = (float) value;
+				sum += value;
+			}
+			// unity gain at dc for every phase
+			for (int k = 0; k < TAPS; k++) {
+				table[j * TAPS + k] /= sum;
+			}
+		}
+
+		return table;
+	}
+}
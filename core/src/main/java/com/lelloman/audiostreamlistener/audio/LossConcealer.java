@@ -0,0 +1,164 @@
+package com.lelloman.audiostreamlistener.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 	synthesize a replacement when a frame is lost, the good frames go
+ * 	through {@link #onFrame(ByteBuffer)} so it keeps a short history
+ * 	of what was played. the replacement is attenuated the longer the loss
+ * 	lasts and the first good frame after a loss is cross faded with it.
+ *
+ * 	with more channels the history is their mix and the replacement
+ * 	goes to all of them.
+ *
+ * 	everything is allocated in the constructor so it's fine to call this
+ * 	for every frame
+ */
+public abstract class LossConcealer {
+
+	public static final int SILENCE = 0;
+	public static final int FADE_REPEAT = 1;
+	public static final int WSOLA = 2;
+
+	// full volume for a little while, then fade out
+	private static final int HOLD_MS = 10;
+	private static final int FADE_OUT_MS = 50;
+	// cross fade with the first good frame after a loss
+	private static final int MERGE_MS = 4;
+
+	public static LossConcealer create(int strategy, int sampleRate, int bitDepth, int maxFrameSize) {
+		return create(strategy, sampleRate, bitDepth, 1, maxFrameSize);
+	}
+
+	public static LossConcealer create(int strategy, int sampleRate, int bitDepth, int channels, int maxFrameSize) {
+		switch (strategy) {
+			case SILENCE:
+				return new SilenceConcealer(sampleRate, bitDepth, channels, maxFrameSize);
+			case FADE_REPEAT:
+				return new FadeRepeatConcealer(sampleRate, bitDepth, channels, maxFrameSize);
+			case WSOLA:
+				return new WsolaConcealer(sampleRate, bitDepth, channels, maxFrameSize);
+			default:
+				throw new IllegalArgumentException("unknown strategy " + strategy);
+		}
+	}
+
+	protected final int mSampleRate;
+	protected final int mBitDepth;
+	protected final int mChannels;
+
+	// the most recent good samples, the last one is at the end
+	protected final float[] mHistory;
+	// how many samples of the last good frame
+	protected int mLastFrameSamples;
+
+	private final float[] mWork;
+	private final int mHoldSamples;
+	private final int mFadeOutSamples;
+	private final int mMergeSamples;
+
+	private int mConcealedSamples;
+	private boolean mConcealing;
+
+	protected LossConcealer(int sampleRate, int bitDepth, int channels, int maxFrameSize, int historySamples) {
+		mSampleRate = sampleRate;
+		mBitDepth = bitDepth;
+		mChannels = channels;
+		int maxFrameSamples = maxFrameSize / (bitDepth * channels);
+		mHistory = new float[Math.max(historySamples, maxFrameSamples)];
+		mWork = new float[maxFrameSamples];
+		mHoldSamples = sampleRate * HOLD_MS / 1000;
+		mFadeOutSamples = Math.max(1, sampleRate * FADE_OUT_MS / 1000);
+		mMergeSamples = sampleRate * MERGE_MS / 1000;
+	}
+
+	/**
+	 * 	a good frame is about to be played, from its position to its limit,
+	 * 	if it comes right after a loss its beginning is cross faded in place
+	 * 	with the replacement. the position is left untouched
+	 */
+	public final void onFrame(ByteBuffer frame) {
+		int offset = frame.position();
+		int samples = Math.min(frame.remaining() / (mBitDepth * mChannels), mWork.length);
+
+		if (mConcealing) {
+			int n = Math.min(mMergeSamples, samples);
+			synthesize(mWork, n);
+			for (int i = 0; i < n; i++) {
+				float w = (i + 1) / (float) (n + 1);
+				float replacement = mWork[i] * gain(mConcealedSamples + i);
+				for (int c = 0; c < mChannels; c++) {
+					int index = i * mChannels + c;
+					float sample = Samples.get(frame, offset, index, mBitDepth);
+					Samples.set(frame, offset, index, mBitDepth, replacement * (1 - w) + sample * w);
+				}
+			}
+			mConcealing = false;
+		}
+
+		// shift the history and append the frame
+		int keep = mHistory.length - samples;
+		if (keep > 0)
+			System.arraycopy(mHistory, samples, mHistory, 0, keep);
+		for (int i = Math.max(0, -keep); i < samples; i++) {
+			mHistory[keep + i] = mix(frame, offset, i);
+		}
+		mLastFrameSamples = samples;
+	}
+
+	/**
+	 * 	write a replacement for a lost frame of the given length at the
+	 * 	position of dst, its limit is set at the end of the replacement
+	 */
+	public final void conceal(ByteBuffer dst, int length) {
+		int offset = dst.position();
+		int samples = Math.min(length / (mBitDepth * mChannels), mWork.length);
+		dst.limit(offset + samples * mBitDepth * mChannels);
+
+		if (!mConcealing) {
+			mConcealing = true;
+			mConcealedSamples = 0;
+			startConcealment();
+		}
+
+		synthesize(mWork, samples);
+		for (int i = 0; i < samples; i++) {
+			float sample = mWork[i] * gain(mConcealedSamples++);
+			for (int c = 0; c < mChannels; c++) {
+				Samples.set(dst, offset, i * mChannels + c, mBitDepth, sample);
+			}
+		}
+	}
+
+	/**
+	 * 	a loss begins, the history holds the last good samples
+	 */
+	protected abstract void startConcealment();
+
+	/**
+	 * 	continue the replacement signal, the gain is applied afterwards
+	 */
+	protected abstract void synthesize(float[] out, int count);
+
+	/**
+	 * 	the average of the channels of the i-th sample
+	 */
+	private float mix(ByteBuffer frame, int offset, int i) {
+		if (mChannels == 1)
+			return Samples.get(frame, offset, i, mBitDepth);
+
+		float sum = 0;
+		for (int c = 0; c < mChannels; c++) {
+			sum += Samples.get(frame, offset, i * mChannels + c, mBitDepth);
+		}
+		return sum / mChannels;
+	}
+
+	private float gain(int concealedSamples) {
+		if (concealedSamples < mHoldSamples)
+			return 1;
+
+		float gain = 1 - (concealedSamples - mHoldSamples) / (float) mFadeOutSamples;
+		return gain > 0 ? gain : 0;
+	}
+}
@@ -0,0 +1,111 @@
+package com.lelloman.audiostreamlistener.audio;
+
+/**
+ * 	works out how much of its buffer the sink should use. it starts from
+ * 	the minimum that works at all and grows by half every time the sink
+ * 	runs dry, up to the maximum, which is the latency the output is
+ * 	allowed to add. after a while without underruns it shrinks back a
+ * 	step at a time, until the next underrun shows where the floor is.
+ * 	the underruns come from the sink when it counts them, otherwise
+ * 	they're inferred from the playback head catching up with the
+ * 	samples written by the previous update. an underrun while there was nothing to write is
+ * 	the network's fault and a bigger buffer wouldn't help, it's ignored.
+ * 	sizes are in samples of each channel, it doesn't touch the sink
+ * 	so it can be driven by a simulated one.
+ * 	it's updated by a single thread, the size and the counters can be
+ * 	read from any thread
+ */
+public class OutputBufferController {
+
+	private static final double GROWTH = .5;
+	private static final double SHRINK = .125;
+	// no underruns for this long and it shrinks
+	private static final long QUIET_NANOS = 5000000000L;
+
+	private final int mMinSize;
+	private final int mMaxSize;
+
+	private volatile int mSize;
+	private long mLastChangeNanos;
+	// the last underrun count of the sink, -1 before the first update
+	private int mSinkUnderruns = -1;
+	private long mLastWrittenSamples;
+
+	private volatile long mUnderrunCount;
+	private volatile long mGrowCount;
+	private volatile long mShrinkCount;
+
+	public OutputBufferController(int minSize, int maxSize) {
+		mMinSize = minSize;
+		mMaxSize = Math.max(minSize, maxSize);
+		mSize = mMinSize;
+	}
+
+	/**
+	 * @param playedSamples total samples the playback head went through
+	 * @param writtenSamples total samples the sink accepted
+	 * @param sinkUnderruns the underruns the sink counted, -1 if it can't tell
+	 * @param starved whether the sink went without writes since the last
+	 * 	update because there was nothing to write
+	 * @return the size the sink should use from now on
+	 */
+	public int update(long nowNanos, long playedSamples, long writtenSamples, int sinkUnderruns, boolean starved) {
+		if (mLastChangeNanos == 0)
+			mLastChangeNanos = nowNanos;
+
+		int underruns;
+		if (sinkUnderruns >= 0) {
+			underruns = mSinkUnderruns < 0 ? 0 : sinkUnderruns - mSinkUnderruns;
+			mSinkUnderruns = sinkUnderruns;
+		} else {
+			// everything written by the last update was played, the
+			// sink ran dry in between
+			underruns = mLastWrittenSamples > 0 && playedSamples >= mLastWrittenSamples ? 1 : 0;
+			mLastWrittenSamples = writtenSamples;
+		}
+		if (starved)
+			underruns = 0;
+
+		if (underruns > 0) {
+			mUnderrunCount += underruns;
+			if (mSize < mMaxSize) {
+				mSize = (int) Math.min(mMaxSize, Math.ceil(mSize * (1 + GROWTH)));
+				mGrowCount++;
+			}
+			mLastChangeNanos = nowNanos;
+		} else if (nowNanos - mLastChangeNanos >= QUIET_NANOS) {
+			if (mSize > mMinSize) {
+				mSize = Math.max(mMinSize, (int) (mSize * (1 - SHRINK)));
+				mShrinkCount++;
+			}
+			mLastChangeNanos = nowNanos;
+		}
+		return mSize;
+	}
+
+	/**
+	 * 	the sink couldn't take the size asked for, it uses this one instead
+	 */
+	public void onResized(int size) {
+		mSize = Math.max(mMinSize, Math.min(mMaxSize, size));
+	}
+
+	public int getSize() {
+		return mSize;
+	}
+
+	/**
+	 * 	underruns that weren't the network's fault
+	 */
+	public long getUnderrunCount() {
+		return mUnderrunCount;
+	}
+
+	public long getGrowCount() {
+		return mGrowCount;
+	}
+
+	public long getShrinkCount() {
+		return mShrinkCount;
+	}
+}
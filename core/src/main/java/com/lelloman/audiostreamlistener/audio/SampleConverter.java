@@ -0,0 +1,358 @@
+package com.lelloman.audiostreamlistener.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_FLOAT;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_16;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_24;
+
+/**
+ * 	turns interleaved pcm of a format and channel count into another,
+ * 	the bit depth first and then the channels, mixed down in place.
+ * 	the static converters are the building blocks, each is a plain
+ * 	loop over one pair of formats so the jit gets small monomorphic
+ * 	bodies, nothing is allocated.
+ * 	the buffers are temporarily switched to little endian for the
+ * 	bulk accessors and put back as they were
+ */
+public class SampleConverter {
+
+	private final int mSrcFormat;
+	private final int mSrcChannels;
+	private final int mDstFormat;
+	private final int mDstChannels;
+
+	public SampleConverter(int srcFormat, int srcChannels, int dstFormat, int dstChannels) {
+		if (dstChannels > srcChannels)
+			throw new IllegalArgumentException("can't mix " + srcChannels + " channels up to " + dstChannels);
+		mSrcFormat = srcFormat;
+		mSrcChannels = srcChannels;
+		mDstFormat = dstFormat;
+		mDstChannels = dstChannels;
+	}
+
+	/**
+	 * 	bytes of dst needed for the given bytes of src, it has to hold
+	 * 	all the channels in the destination format before the mix down
+	 */
+	public int getWorkSize(int srcBytes) {
+		return srcBytes / mSrcFormat * mDstFormat;
+	}
+
+	/**
+	 * 	convert src from its position to its limit, which are left
+	 * 	untouched, into dst from 0, dst's limit is set at the end
+	 *
+	 * @return the bytes in dst
+	 */
+	public int convert(ByteBuffer src, ByteBuffer dst) {
+		int frames = src.remaining() / (mSrcFormat * mSrcChannels);
+		int samples = frames * mSrcChannels;
+		dst.clear();
+		convert(src, src.position(), mSrcFormat, dst, 0, mDstFormat, samples);
+		if (mDstChannels != mSrcChannels)
+			downmix(dst, 0, mDstFormat, mSrcChannels, mDstChannels, frames);
+		int length = frames * mDstChannels * mDstFormat;
+		dst.limit(length);
+		return length;
+	}
+
+	/**
+	 * 	convert samples from a format to another, src and dst can be the
+	 * 	same buffer at the same offset, then a wider format is written
+	 * 	from the end backwards so nothing is overwritten before it's read
+	 */
+	public static void convert(ByteBuffer src, int srcOffset, int srcFormat,
+							   ByteBuffer dst, int dstOffset, int dstFormat, int samples) {
+		ByteOrder srcOrder = src.order();
+		ByteOrder dstOrder = dst.order();
+		src.order(ByteOrder.LITTLE_ENDIAN);
+		dst.order(ByteOrder.LITTLE_ENDIAN);
+		boolean backwards = src == dst && dstFormat > srcFormat;
+
+		if (srcFormat == dstFormat) {
+			copy(src, srcOffset, dst, dstOffset, samples * srcFormat);
+		} else if (srcFormat == FORMAT_PCM_16 && dstFormat == FORMAT_FLOAT) {
+			pcm16ToFloat(src, srcOffset, dst, dstOffset, samples, backwards);
+		} else if (srcFormat == FORMAT_PCM_24 && dstFormat == FORMAT_FLOAT) {
+			pcm24ToFloat(src, srcOffset, dst, dstOffset, samples, backwards);
+		} else if (srcFormat == FORMAT_FLOAT && dstFormat == FORMAT_PCM_16) {
+			floatToPcm16(src, srcOffset, dst, dstOffset, samples);
+		} else if (srcFormat == FORMAT_PCM_24 && dstFormat == FORMAT_PCM_16) {
+			pcm24ToPcm16(src, srcOffset, dst, dstOffset, samples);
+		} else if (srcFormat == FORMAT_PCM_16 && dstFormat == FORMAT_PCM_24) {
+			pcm16ToPcm24(src, srcOffset, dst, dstOffset, samples, backwards);
+		} else {
+			// 8 bit and float to 24, rare enough to go through the floats
+			for (int n = 0; n < samples; n++) {
+				int i = backwards ? samples - 1 - n : n;
+				Samples.set(dst, dstOffset, i, dstFormat, Samples.get(src, srcOffset, i, srcFormat));
+			}
+		}
+
+		src.order(srcOrder);
+		dst.order(dstOrder);
+	}
+
+	/**
+	 * 	mix interleaved frames down to fewer channels in place, the
+	 * 	frames are packed at the offset. to one channel it's the average,
+	 * 	to two the even channels go left and the odd ones right except
+	 * 	the third one, the center in the usual layouts, which goes to both
+	 */
+	public static void downmix(ByteBuffer data, int offset, int format, int channels, int toChannels, int frames) {
+		if (toChannels == channels)
+			return;
+		if (toChannels != 1 && toChannels != 2)
+			throw new IllegalArgumentException("can only mix down to 1 or 2 channels");
+
+		ByteOrder order = data.order();
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		if (format == FORMAT_PCM_16 && channels == 2) {
+			stereoToMonoPcm16(data, offset, frames);
+		} else if (format == FORMAT_FLOAT && channels == 2) {
+			stereoToMonoFloat(data, offset, frames);
+		} else if (format == FORMAT_PCM_16) {
+			downmixPcm16(data, offset, channels, toChannels, frames);
+		} else if (format == FORMAT_FLOAT) {
+			downmixFloat(data, offset, channels, toChannels, frames);
+		} else {
+			// the output frame is never bigger than the input one, going
+			// forward never overwrites what's still to be read
+			for (int f = 0; f < frames; f++) {
+				int in = f * channels;
+				if (toChannels == 1) {
+					float sum = 0;
+					for (int c = 0; c < channels; c++) {
+						sum += Samples.get(data, offset, in + c, format);
+					}
+					Samples.set(data, offset, f, format, sum / channels);
+				} else {
+					float left = 0, right = 0;
+					int leftCount = 0, rightCount = 0;
+					for (int c = 0; c < channels; c++) {
+						float sample = Samples.get(data, offset, in + c, format);
+						if (c == 2 || c % 2 == 0) {
+							left += sample;
+							leftCount++;
+						}
+						if (c == 2 || c % 2 == 1) {
+							right += sample;
+							rightCount++;
+						}
+					}
+					Samples.set(data, offset, f * 2, format, left / leftCount);
+					Samples.set(data, offset, f * 2 + 1, format, right / rightCount);
+				}
+			}
+		}
+		data.order(order);
+	}
+
+	/**
+	 * 	one channel of interleaved pcm into floats
+	 */
+	public static void deinterleave(ByteBuffer src, int offset, int format, int channels, int channel,
+									float[] dst, int frames) {
+		if (format == FORMAT_FLOAT) {
+			ByteOrder order = src.order();
+			src.order(ByteOrder.LITTLE_ENDIAN);
+			for (int f = 0, i = offset + channel * 4; f < frames; f++, i += channels * 4) {
+				dst[f] = src.getFloat(i);
+			}
+			src.order(order);
+		} else if (format == FORMAT_PCM_16) {
+			ByteOrder order = src.order();
+			src.order(ByteOrder.LITTLE_ENDIAN);
+			for (int f = 0, i = offset + channel * 2; f < frames; f++, i += channels * 2) {
+				dst[f] = src.getShort(i) / 32768f;
+			}
+			src.order(order);
+		} else {
+			for (int f = 0; f < frames; f++) {
+				dst[f] = Samples.get(src, offset, f * channels + channel, format);
+			}
+		}
+	}
+
+	/**
+	 * 	floats into one channel of interleaved pcm, the other channels
+	 * 	are left as they are
+	 */
+	public static void interleave(float[] src, int frames, ByteBuffer dst, int offset, int format,
+								  int channels, int channel) {
+		if (format == FORMAT_FLOAT) {
+			ByteOrder order = dst.order();
+			dst.order(ByteOrder.LITTLE_ENDIAN);
+			for (int f = 0, i = offset + channel * 4; f < frames; f++, i += channels * 4) {
+				dst.putFloat(i, src[f]);
+			}
+			dst.order(order);
+		} else if (format == FORMAT_PCM_16) {
+			ByteOrder order = dst.order();
+			dst.order(ByteOrder.LITTLE_ENDIAN);
+			for (int f = 0, i = offset + channel * 2; f < frames; f++, i += channels * 2) {
+				dst.putShort(i, (short) toPcm16(src[f]));
+			}
+			dst.order(order);
+		} else {
+			for (int f = 0; f < frames; f++) {
+				Samples.set(dst, offset, f * channels + channel, format, src[f]);
+			}
+		}
+	}
+
+	private static void copy(ByteBuffer src, int srcOffset, ByteBuffer dst, int dstOffset, int length) {
+		if (src == dst)
+			return;
+		int srcPosition = src.position();
+		int srcLimit = src.limit();
+		int dstPosition = dst.position();
+		int dstLimit = dst.limit();
+		src.limit(src.capacity()).position(srcOffset);
+		src.limit(srcOffset + length);
+		dst.limit(dst.capacity()).position(dstOffset);
+		dst.put(src);
+		src.position(0);
+		src.limit(srcLimit).position(srcPosition);
+		dst.position(0);
+		dst.limit(dstLimit).position(dstPosition);
+	}
+
+	private static void pcm16ToFloat(ByteBuffer src, int srcOffset, ByteBuffer dst, int dstOffset,
+									 int samples, boolean backwards) {
+		if (backwards) {
+			for (int i = samples - 1; i >= 0; i--) {
+				dst.putFloat(dstOffset + i * 4, src.getShort(srcOffset + i * 2) / 32768f);
+			}
+		} else {
+			for (int i = 0; i < samples; i++) {
+				dst.putFloat(dstOffset + i * 4, src.getShort(srcOffset + i * 2) / 32768f);
+			}
+		}
+	}
+
+	private static void pcm24ToFloat(ByteBuffer src, int srcOffset, ByteBuffer dst, int dstOffset,
+									 int samples, boolean backwards) {
+		if (backwards) {
+			for (int i = samples - 1; i >= 0; i--) {
+				dst.putFloat(dstOffset + i * 4, Samples.getPcm24(src, srcOffset + i * 3) / 8388608f);
+			}
+		} else {
+			for (int i = 0; i < samples; i++) {
+				dst.putFloat(dstOffset + i * 4, Samples.getPcm24(src, srcOffset + i * 3) / 8388608f);
+			}
+		}
+	}
+
+	private static void floatToPcm16(ByteBuffer src, int srcOffset, ByteBuffer dst, int dstOffset, int samples) {
+		for (int i = 0; i < samples; i++) {
+			dst.putShort(dstOffset + i * 2, (short) toPcm16(src.getFloat(srcOffset + i * 4)));
+		}
+	}
+
+	private static void pcm24ToPcm16(ByteBuffer src, int srcOffset, ByteBuffer dst, int dstOffset, int samples) {
+		for (int i = 0; i < samples; i++) {
+			// rounded to the nearest, the top one would wrap
+			int value = (Samples.getPcm24(src, srcOffset + i * 3) + 128) >> 8;
+			dst.putShort(dstOffset + i * 2, (short) Math.min(value, Short.MAX_VALUE));
+		}
+	}
+
+	private static void pcm16ToPcm24(ByteBuffer src, int srcOffset, ByteBuffer dst, int dstOffset,
+									 int samples, boolean backwards) {
+		if (backwards) {
+			for (int i = samples - 1; i >= 0; i--) {
+				Samples.setPcm24(dst, dstOffset + i * 3, src.getShort(srcOffset + i * 2) << 8);
+			}
+		} else {
+			for (int i = 0; i < samples; i++) {
+				Samples.setPcm24(dst, dstOffset + i * 3, src.getShort(srcOffset + i * 2) << 8);
+			}
+		}
+	}
+
+	private static void stereoToMonoPcm16(ByteBuffer data, int offset, int frames) {
+		for (int f = 0; f < frames; f++) {
+			int i = offset + f * 4;
+			data.putShort(offset + f * 2, (short) ((data.getShort(i) + data.getShort(i + 2)) >> 1));
+		}
+	}
+
+	private static void stereoToMonoFloat(ByteBuffer data, int offset, int frames) {
+		for (int f = 0; f < frames; f++) {
+			int i = offset + f * 8;
+			data.putFloat(offset + f * 4, (data.getFloat(i) + data.getFloat(i + 4)) * .5f);
+		}
+	}
+
+	private static void downmixPcm16(ByteBuffer data, int offset, int channels, int toChannels, int frames) {
+		int leftCount = toChannels == 1 ? channels : countLeft(channels);
+		int rightCount = countRight(channels);
+		for (int f = 0; f < frames; f++) {
+			int in = offset + f * channels * 2;
+			int left = 0, right = 0;
+			for (int c = 0; c < channels; c++) {
+				int sample = data.getShort(in + c * 2);
+				if (toChannels == 1 || isLeft(c))
+					left += sample;
+				if (toChannels == 2 && isRight(c))
+					right += sample;
+			}
+			if (toChannels == 1) {
+				data.putShort(offset + f * 2, (short) (left / leftCount));
+			} else {
+				data.putShort(offset + f * 4, (short) (left / leftCount));
+				data.putShort(offset + f * 4 + 2, (short) (right / rightCount));
+			}
+		}
+	}
+
+	private static void downmixFloat(ByteBuffer data, int offset, int channels, int toChannels, int frames) {
+		float leftGain = 1f / (toChannels == 1 ? channels : countLeft(channels));
+		float rightGain = 1f / countRight(channels);
+		for (int f = 0; f < frames; f++) {
+			int in = offset + f * channels * 4;
+			float left = 0, right = 0;
+			for (int c = 0; c < channels; c++) {
+				float sample = data.getFloat(in + c * 4);
+				if (toChannels == 1 || isLeft(c))
+					left += sample;
+				if (toChannels == 2 && isRight(c))
+					right += sample;
+			}
+			if (toChannels == 1) {
+				data.putFloat(offset + f * 4, left * leftGain);
+			} else {
+				data.putFloat(offset + f * 8, left * leftGain);
+				data.putFloat(offset + f * 8 + 4, right * rightGain);
+			}
+		}
+	}
+
+	private static boolean isLeft(int channel) {
+		return channel == 2 || channel % 2 == 0;
+	}
+
+	private static boolean isRight(int channel) {
+		return channel == 2 || channel % 2 == 1;
+	}
+
+	/**
+	 * 	the even channels, the center among them, go left, the odd
+	 * 	ones and the center go right
+	 */
+	private static int countLeft(int channels) {
+		return (channels + 1) / 2;
+	}
+
+	private static int countRight(int channels) {
+		return channels / 2 + (channels > 2 ? 1 : 0);
+	}
+
+	private static int toPcm16(float sample) {
+		int value = (int) (sample * 32768f);
+		return value < Short.MIN_VALUE ? Short.MIN_VALUE : (value > Short.MAX_VALUE ? Short.MAX_VALUE : value);
+	}
+}
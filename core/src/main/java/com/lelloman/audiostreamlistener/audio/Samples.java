@@ -0,0 +1,90 @@
+package com.lelloman.audiostreamlistener.audio;
+
+import java.nio.ByteBuffer;
+
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_FLOAT;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_16;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_24;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_8;
+
+/**
+ * 	read and write pcm samples as floats in [-1, 1), the bit depth is
+ * 	in bytes like in the stream config and it's one of the FORMAT_
+ * 	constants: 1 is unsigned 8 bit, 2 and 3 are signed 16 and 24 bit
+ * 	little endian and 4 is 32 bit float.
+ * 	the buffers are accessed by absolute index, whatever their order,
+ * 	with more channels the index is the one of the interleaved sample
+ */
+public class Samples {
+
+	private Samples(){}
+
+	public static float get(ByteBuffer data, int offset, int index, int bitDepth) {
+		switch (bitDepth) {
+			case FORMAT_PCM_8:
+				return ((data.get(offset + index) & 0xff) - 128) / 128f;
+			case FORMAT_PCM_16:
+				return getPcm16(data, offset + index * 2) / 32768f;
+			case FORMAT_PCM_24:
+				return getPcm24(data, offset + index * 3) / 8388608f;
+			default:
+				return getFloat(data, offset + index * 4);
+		}
+	}
+
+	public static void set(ByteBuffer data, int offset, int index, int bitDepth, float sample) {
+		switch (bitDepth) {
+			case FORMAT_PCM_8:
+				data.put(offset + index, (byte) (clamp(Math.round(sample * 128f), -128, 127) + 128));
+				break;
+			case FORMAT_PCM_16:
+				setPcm16(data, offset + index * 2, clamp(Math.round(sample * 32768f), Short.MIN_VALUE, Short.MAX_VALUE));
+				break;
+			case FORMAT_PCM_24:
+				setPcm24(data, offset + index * 3, clamp(Math.round(sample * 8388608f), -8388608, 8388607));
+				break;
+			default:
+				setFloat(data, offset + index * 4, sample);
+		}
+	}
+
+	/**
+	 * 	the raw accessors at a byte position, little endian whatever
+	 * 	the order of the buffer
+	 */
+	static int getPcm16(ByteBuffer data, int i) {
+		return (short) ((data.get(i + 1) << 8) | (data.get(i) & 0xff));
+	}
+
+	static void setPcm16(ByteBuffer data, int i, int value) {
+		data.put(i, (byte) value);
+		data.put(i + 1, (byte) (value >> 8));
+	}
+
+	static int getPcm24(ByteBuffer data, int i) {
+		return (data.get(i + 2) << 16) | ((data.get(i + 1) & 0xff) << 8) | (data.get(i) & 0xff);
+	}
+
+	static void setPcm24(ByteBuffer data, int i, int value) {
+		data.put(i, (byte) value);
+		data.put(i + 1, (byte) (value >> 8));
+		data.put(i + 2, (byte) (value >> 16));
+	}
+
+	static float getFloat(ByteBuffer data, int i) {
+		return Float.intBitsToFloat((data.get(i + 3) << 24) | ((data.get(i + 2) & 0xff) << 16)
+				| ((data.get(i + 1) & 0xff) << 8) | (data.get(i) & 0xff));
+	}
+
+	static void setFloat(ByteBuffer data, int i, float sample) {
+		int bits = Float.floatToRawIntBits(sample);
+		data.put(i, (byte) bits);
+		data.put(i + 1, (byte) (bits >> 8));
+		data.put(i + 2, (byte) (bits >> 16));
+		data.put(i + 3, (byte) (bits >> 24));
+	}
+
+	static int clamp(int value, int min, int max) {
+		return value < min ? min : (value > max ? max : value);
+	}
+}
@@ -0,0 +1,23 @@
+package com.lelloman.audiostreamlistener.audio;
+
+/**
+ * 	plays silence, the cross fade with the next good frame
+ * 	still saves us a click
+ */
+public class SilenceConcealer extends LossConcealer {
+
+	public SilenceConcealer(int sampleRate, int bitDepth, int channels, int maxFrameSize) {
+		super(sampleRate, bitDepth, channels, maxFrameSize, 0);
+	}
+
+	@Override
+	protected void startConcealment() {
+	}
+
+	@Override
+	protected void synthesize(float[] out, int count) {
+		for (int i = 0; i < count; i++) {
+			out[i] = 0;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.lelloman.audiostreamlistener.audio;
+
+/**
+ * 	looks for the pitch period of the last good samples by waveform
+ * 	similarity (normalized cross correlation) and keeps repeating the
+ * 	last period, the end of the period is overlap-added with the one
+ * 	before so that the loop joins smoothly
+ */
+public class WsolaConcealer extends LossConcealer {
+
+	// pitch search range, roughly 66 to 400 Hz
+	private static final int MIN_PITCH_MS_X10 = 25;
+	private static final int MAX_PITCH_MS_X10 = 150;
+	// samples compared while searching
+	private static final int TEMPLATE_MS_X10 = 50;
+
+	private final int mMinPitch;
+	private final int mMaxPitch;
+	private final int mTemplate;
+
+	// one pitch period, ready to be looped
+	private final float[] mPeriodBuffer;
+	private int mPeriod;
+	private int mPosition;
+
+	public WsolaConcealer(int sampleRate, int bitDepth, int channels, int maxFrameSize) {
+		super(sampleRate, bitDepth, channels, maxFrameSize, 2 * msX10ToSamples(sampleRate, MAX_PITCH_MS_X10) + msX10ToSamples(sampleRate, TEMPLATE_MS_X10));
+		mMinPitch = Math.max(1, msX10ToSamples(sampleRate, MIN_PITCH_MS_X10));
+		mMaxPitch = Math.max(mMinPitch, msX10ToSamples(sampleRate, MAX_PITCH_MS_X10));
+		mTemplate = Math.max(1, msX10ToSamples(sampleRate, TEMPLATE_MS_X10));
+		mPeriodBuffer = new float[mMaxPitch];
+	}
+
+	@Override
+	protected void startConcealment() {
+		float[] h = mHistory;
+		int end = h.length;
+		mPeriod = findPeriod();
+		mPosition = 0;
+
+		// the last period, its tail is cross faded with the samples that
+		// precede it so that looping back to the start is seamless
+		System.arraycopy(h, end - mPeriod, mPeriodBuffer, 0, mPeriod);
+		int overlap = mPeriod / 4;
+		for (int i = 0; i < overlap; i++) {
+			int j = mPeriod - overlap + i;
+			float w = (i + 1) / (float) (overlap + 1);
+			mPeriodBuffer[j] = mPeriodBuffer[j] * (1 - w) + h[end - 2 * mPeriod + j] * w;
+		}
+	}
+
+	@Override
+	protected void synthesize(float[] out, int count) {
+		for (int i = 0; i < count; i++) {
+			out[i] = mPeriodBuffer[mPosition];
+			if (++mPosition == mPeriod)
+				mPosition = 0;
+		}
+	}
+
+	/**
+	 * 	the lag whose window best matches the last template samples,
+	 * 	a coarse pass on every other lag and sample then a fine one
+	 * 	around the winner
+	 */
+	private int findPeriod() {
+		int coarse = bestLag(mMinPitch, mMaxPitch, 2);
+		return bestLag(Math.max(mMinPitch, coarse - 1), Math.min(mMaxPitch, coarse + 1), 1);
+	}
+
+	private int bestLag(int minLag, int maxLag, int step) {
+		float[] h = mHistory;
+		int templateStart = h.length - mTemplate;
+
+		int bestLag = maxLag;
+		float bestScore = -Float.MAX_VALUE;
+
+		for (int lag = minLag; lag <= maxLag; lag += step) {
+			float correlation = 0;
+			float energy = 0;
+			int start = templateStart - lag;
+			for (int i = 0; i < mTemplate; i += step) {
+				float s = h[start + i];
+				correlation += s * h[templateStart + i];
+				energy += s * s;
+			}
+			if (energy <= 0)
+				continue;
+
+			float score = correlation / (float) Math.sqrt(energy);
+			if (score > bestScore) {
+				bestScore = score;
+				bestLag = lag;
+			}
+		}
+
+		return bestLag;
+	}
+
+	private static int msX10ToSamples(int sampleRate, int msX10) {
+		return (int) ((long) sampleRate * msX10 / 10000);
+	}
+}
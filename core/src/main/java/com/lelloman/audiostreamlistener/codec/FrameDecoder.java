@@ -0,0 +1,262 @@
+package com.lelloman.audiostreamlistener.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.lelloman.audiostreamlistener.Constants.CODEC_ALAW;
+import static com.lelloman.audiostreamlistener.Constants.CODEC_IMA_ADPCM;
+import static com.lelloman.audiostreamlistener.Constants.CODEC_LOSSLESS;
+import static com.lelloman.audiostreamlistener.Constants.CODEC_MULAW;
+import static com.lelloman.audiostreamlistener.Constants.CODEC_PCM;
+
+/**
+ * 	turns the payload of a compressed frame back into 16 bit little
+ * 	endian pcm, a stage between the jitter buffer and the sink.
+ * 	nothing is allocated per frame
+ */
+public abstract class FrameDecoder {
+
+	/**
+	 * 	the codecs the client can offer, in order of preference
+	 */
+	public static final int[] SUPPORTED_CODECS = {CODEC_LOSSLESS, CODEC_IMA_ADPCM, CODEC_MULAW, CODEC_ALAW};
+
+	public static boolean isSupported(int codec) {
+		return codec == CODEC_PCM || codec == CODEC_MULAW || codec == CODEC_ALAW || codec == CODEC_IMA_ADPCM
+				|| codec == CODEC_LOSSLESS;
+	}
+
+	/**
+	 * @param frameSamples samples in a frame
+	 * @return null for pcm, which doesn't need decoding
+	 */
+	public static FrameDecoder create(int codec, int frameSamples) {
+		switch (codec) {
+			case CODEC_PCM:
+				return null;
+			case CODEC_MULAW:
+				return new G711Decoder(G711.MULAW_TO_LINEAR);
+			case CODEC_ALAW:
+				return new G711Decoder(G711.ALAW_TO_LINEAR);
+			case CODEC_IMA_ADPCM:
+				return new ImaAdpcmDecoder(frameSamples);
+			case CODEC_LOSSLESS:
+				return new LosslessDecoder(frameSamples);
+			default:
+				throw new IllegalArgumentException("unknown codec " + codec);
+		}
+	}
+
+	/**
+	 * 	payload bytes of a frame holding pcmBytes once decoded, at
+	 * 	most for the codecs with variable size frames
+	 */
+	public static int getEncodedSize(int codec, int pcmBytes) {
+		switch (codec) {
+			case CODEC_MULAW:
+			case CODEC_ALAW:
+				return pcmBytes / 2;
+			case CODEC_IMA_ADPCM:
+				return ImaAdpcm.getFrameSize(pcmBytes / 2);
+			case CODEC_LOSSLESS:
+				return Lossless.getMaxFrameSize(pcmBytes);
+			default:
+				return pcmBytes;
+		}
+	}
+
+	/**
+	 * 	decode the frame from the position to the limit of src, which
+	 * 	is left untouched, into dst from 0, dst's limit is set at the
+	 * 	end of the pcm
+	 *
+	 * @return the pcm bytes
+	 */
+	public final int decode(ByteBuffer src, ByteBuffer dst) {
+		dst.clear();
+		dst.order(ByteOrder.LITTLE_ENDIAN);
+		int length = decode(src, src.position(), src.remaining(), dst);
+		dst.limit(length);
+		return length;
+	}
+
+	/**
+	 * @return the pcm bytes written in dst from 0, with absolute puts
+	 */
+	protected abstract int decode(ByteBuffer src, int offset, int length, ByteBuffer dst);
+
+	private static class G711Decoder extends FrameDecoder {
+
+		private final short[] mTable;
+
+		G711Decoder(short[] table) {
+			mTable = table;
+		}
+
+		@Override
+		protected int decode(ByteBuffer src, int offset, int length, ByteBuffer dst) {
+			length = Math.min(length, dst.capacity() / 2);
+			for (int i = 0; i < length; i++) {
+				dst.putShort(i * 2, mTable[src.get(offset + i) & 0xff]);
+			}
+			return length * 2;
+		}
+	}
+
+	private static class ImaAdpcmDecoder extends FrameDecoder {
+
+		private final ImaAdpcm mState = new ImaAdpcm();
+		private final int mFrameSamples;
+
+		ImaAdpcmDecoder(int frameSamples) {
+			mFrameSamples = frameSamples;
+		}
+
+		@Override
+		protected int decode(ByteBuffer src, int offset, int length, ByteBuffer dst) {
+			if (length < ImaAdpcm.HEADER_SIZE)
+				return 0;
+
+			// every frame starts from its own state, a lost
+			// one doesn't corrupt the ones after it
+			mState.predictor = (short) ((src.get(offset) & 0xff) | (src.get(offset + 1) << 8));
+			mState.index = Math.min(src.get(offset + 2) & 0xff, 88);
+
+			int samples = Math.min(Math.min(mFrameSamples, (length - ImaAdpcm.HEADER_SIZE) * 2), dst.capacity() / 2);
+			int codes = offset + ImaAdpcm.HEADER_SIZE;
+			for (int i = 0; i < samples; i++) {
+				int code = src.get(codes + (i >> 1));
+				code = (i & 1) == 0 ? code & 0xf : (code >> 4) & 0xf;
+				dst.putShort(i * 2, (short) mState.decode(code));
+			}
+			return samples * 2;
+		}
+	}
+
+	private static class LosslessDecoder extends FrameDecoder {
+
+		private final int mFrameSamples;
+
+		// the bit reader, the next bits are the top ones of mBits
+		private ByteBuffer mSrc;
+		private int mPosition;
+		private int mEnd;
+		private long mBits;
+		private int mBitCount;
+
+		LosslessDecoder(int frameSamples) {
+			mFrameSamples = frameSamples;
+		}
+
+		@Override
+		protected int decode(ByteBuffer src, int offset, int length, ByteBuffer dst) {
+			if (length < Lossless.HEADER_SIZE)
+				return 0;
+
+			int order = src.get(offset) & 0xff;
+			int partitionOrder = src.get(offset + 1) & 0xff;
+			int maxSamples = Math.min(mFrameSamples, dst.capacity() / 2);
+			if (order == Lossless.VERBATIM) {
+				int samples = Math.min((length - Lossless.HEADER_SIZE) / 2, maxSamples);
+				for (int i = 0; i < samples; i++) {
+					int at = offset + Lossless.HEADER_SIZE + i * 2;
+					dst.putShort(i * 2, (short) ((src.get(at) & 0xff) | (src.get(at + 1) << 8)));
+				}
+				return samples * 2;
+			}
+			if (order > Lossless.MAX_ORDER || partitionOrder > Lossless.MAX_PARTITION_ORDER
+					|| length < Lossless.HEADER_SIZE + order * 2)
+				return 0;
+
+			int partitionSamples = mFrameSamples >> partitionOrder;
+			int samples = partitionSamples << partitionOrder;
+			if (samples > maxSamples || partitionSamples <= order)
+				return 0;
+
+			int s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+			int warmUp = offset + Lossless.HEADER_SIZE;
+			for (int i = 0; i < order; i++) {
+				int x = (short) ((src.get(warmUp + i * 2) & 0xff) | (src.get(warmUp + i * 2 + 1) << 8));
+				dst.putShort(i * 2, (short) x);
+				s4 = s3;
+				s3 = s2;
+				s2 = s1;
+				s1 = x;
+			}
+
+			mSrc = src;
+			mPosition = warmUp + order * 2;
+			mEnd = offset + length;
+			mBits = 0;
+			mBitCount = 0;
+			int i = order;
+			try {
+				for (int j = 0; j < 1 << partitionOrder; j++) {
+					int k = readBits(Lossless.RICE_PARAMETER_BITS);
+					int end = (j + 1) * partitionSamples;
+					for (; i < end; i++) {
+						int quotient = readUnary();
+						if (quotient < 0)
+							return i * 2;
+						int value = (quotient << k) | readBits(k);
+						int x = Lossless.predict(order, s1, s2, s3, s4) + Lossless.unZigZag(value);
+						dst.putShort(i * 2, (short) x);
+						s4 = s3;
+						s3 = s2;
+						s2 = s1;
+						s1 = x;
+					}
+				}
+			} finally {
+				mSrc = null;
+			}
+			return samples * 2;
+		}
+
+		private void refill() {
+			while (mBitCount <= 56 && mPosition < mEnd) {
+				mBits |= (mSrc.get(mPosition++) & 0xffL) << (56 - mBitCount);
+				mBitCount += 8;
+			}
+		}
+
+		private void skip(int count) {
+			mBits = count == 64 ? 0 : mBits << count;
+			mBitCount -= count;
+		}
+
+		/**
+		 * 	up to 32 bits, zeros past the end of the frame
+		 */
+		private int readBits(int count) {
+			if (count == 0)
+				return 0;
+			if (mBitCount < count)
+				refill();
+			int value = (int) (mBits >>> (64 - count));
+			skip(Math.min(count, mBitCount));
+			return value;
+		}
+
+		/**
+		 * @return the zeros before the next one, -1 if the frame ends first
+		 */
+		private int readUnary() {
+			int zeros = 0;
+			while (true) {
+				if (mBitCount == 0) {
+					refill();
+					if (mBitCount == 0)
+						return -1;
+				}
+				int leading = Long.numberOfLeadingZeros(mBits);
+				if (leading < mBitCount) {
+					skip(leading + 1);
+					return zeros + leading;
+				}
+				zeros += mBitCount;
+				skip(mBitCount);
+			}
+		}
+	}
+}
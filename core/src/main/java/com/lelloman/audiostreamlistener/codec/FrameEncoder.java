@@ -0,0 +1,264 @@
+package com.lelloman.audiostreamlistener.codec;
+
+import java.util.Arrays;
+
+import static com.lelloman.audiostreamlistener.Constants.CODEC_ALAW;
+import static com.lelloman.audiostreamlistener.Constants.CODEC_IMA_ADPCM;
+import static com.lelloman.audiostreamlistener.Constants.CODEC_LOSSLESS;
+import static com.lelloman.audiostreamlistener.Constants.CODEC_MULAW;
+import static com.lelloman.audiostreamlistener.Constants.CODEC_PCM;
+
+/**
+ * 	the server side of {@link FrameDecoder}, from 16 bit little
+ * 	endian pcm to the payload of a frame
+ */
+public abstract class FrameEncoder {
+
+	/**
+	 * @return null for pcm, which is sent as it is
+	 */
+	public static FrameEncoder create(int codec) {
+		switch (codec) {
+			case CODEC_PCM:
+				return null;
+			case CODEC_MULAW:
+				return new G711Encoder(false);
+			case CODEC_ALAW:
+				return new G711Encoder(true);
+			case CODEC_IMA_ADPCM:
+				return new ImaAdpcmEncoder();
+			case CODEC_LOSSLESS:
+				return new LosslessEncoder();
+			default:
+				throw new IllegalArgumentException("unknown codec " + codec);
+		}
+	}
+
+	/**
+	 * @return the bytes written in dst
+	 */
+	public abstract int encode(byte[] pcm, int offset, int length, byte[] dst, int dstOffset);
+
+	private static int sample(byte[] pcm, int i) {
+		return (short) ((pcm[i] & 0xff) | (pcm[i + 1] << 8));
+	}
+
+	private static class G711Encoder extends FrameEncoder {
+
+		private final boolean mALaw;
+
+		G711Encoder(boolean aLaw) {
+			mALaw = aLaw;
+		}
+
+		@Override
+		public int encode(byte[] pcm, int offset, int length, byte[] dst, int dstOffset) {
+			int samples = length / 2;
+			for (int i = 0; i < samples; i++) {
+				int sample = sample(pcm, offset + i * 2);
+				dst[dstOffset + i] = (byte) (mALaw ? G711.linearToALaw(sample) : G711.linearToMuLaw(sample));
+			}
+			return samples;
+		}
+	}
+
+	/**
+	 * 	the state goes on from frame to frame, each frame
+	 * 	header tells the decoder where it starts from
+	 */
+	private static class ImaAdpcmEncoder extends FrameEncoder {
+
+		private final ImaAdpcm mState = new ImaAdpcm();
+
+		@Override
+		public int encode(byte[] pcm, int offset, int length, byte[] dst, int dstOffset) {
+			int samples = length / 2;
+			dst[dstOffset] = (byte) mState.predictor;
+			dst[dstOffset + 1] = (byte) (mState.predictor >> 8);
+			dst[dstOffset + 2] = (byte) mState.index;
+			dst[dstOffset + 3] = 0;
+
+			int codes = dstOffset + ImaAdpcm.HEADER_SIZE;
+			for (int i = 0; i < samples; i++) {
+				int code = mState.encode(sample(pcm, offset + i * 2));
+				if ((i & 1) == 0)
+					dst[codes + (i >> 1)] = (byte) code;
+				else
+					dst[codes + (i >> 1)] |= code << 4;
+			}
+			return ImaAdpcm.getFrameSize(samples);
+		}
+	}
+
+	/**
+	 * 	tries every predictor order on the frame and keeps the one
+	 * 	with the smallest residuals, then the partitioning that needs
+	 * 	the fewest bits. the scratch arrays grow with the first frame
+	 */
+	private static class LosslessEncoder extends FrameEncoder {
+
+		private int[] mSamples = new int[0];
+		// zig zag mapped
+		private int[] mResiduals = new int[0];
+		private final long[] mPartitionSums = new long[1 << Lossless.MAX_PARTITION_ORDER];
+		private final long[] mOrderSums = new long[Lossless.MAX_ORDER + 1];
+
+		// the bit writer
+		private byte[] mDst;
+		private int mPosition;
+		private long mBits;
+		private int mBitCount;
+
+		@Override
+		public int encode(byte[] pcm, int offset, int length, byte[] dst, int dstOffset) {
+			int samples = length / 2;
+			if (mSamples.length < samples) {
+				mSamples = new int[samples];
+				mResiduals = new int[samples];
+			}
+			for (int i = 0; i < samples; i++) {
+				mSamples[i] = sample(pcm, offset + i * 2);
+			}
+
+			int order = bestOrder(samples);
+			int s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+			for (int i = 0; i < samples; i++) {
+				int x = mSamples[i];
+				if (i >= order)
+					mResiduals[i] = Lossless.zigZag(x - Lossless.predict(order, s1, s2, s3, s4));
+				s4 = s3;
+				s3 = s2;
+				s2 = s1;
+				s1 = x;
+			}
+
+			// the smallest partitions first, then merged in pairs
+			int maxPartitionOrder = 0;
+			while (maxPartitionOrder < Lossless.MAX_PARTITION_ORDER
+					&& (samples & ((2 << maxPartitionOrder) - 1)) == 0
+					&& samples >> (maxPartitionOrder + 1) >= Lossless.MIN_PARTITION_SAMPLES) {
+				maxPartitionOrder++;
+			}
+			int partitionSamples = samples >> maxPartitionOrder;
+			for (int j = 0; j < 1 << maxPartitionOrder; j++) {
+				mPartitionSums[j] = sum(Math.max(order, j * partitionSamples), (j + 1) * partitionSamples);
+			}
+
+			int partitionOrder = 0;
+			long bits = Long.MAX_VALUE;
+			for (int p = maxPartitionOrder; p >= 0; p--) {
+				int partitions = 1 << p;
+				long pBits = 0;
+				for (int j = 0; j < partitions; j++) {
+					int count = (samples >> p) - (j == 0 ? order : 0);
+					long sum = mPartitionSums[j];
+					pBits += Lossless.partitionBits(sum, count, Lossless.riceParameter(sum, count));
+				}
+				if (pBits <= bits) {
+					bits = pBits;
+					partitionOrder = p;
+				}
+				for (int j = 0; j < partitions / 2; j++) {
+					mPartitionSums[j] = mPartitionSums[j * 2] + mPartitionSums[j * 2 + 1];
+				}
+			}
+
+			if (samples <= order || Lossless.HEADER_SIZE + order * 2 + (bits + 7) / 8 >= Lossless.getMaxFrameSize(samples * 2)) {
+				dst[dstOffset] = (byte) Lossless.VERBATIM;
+				dst[dstOffset + 1] = 0;
+				System.arraycopy(pcm, offset, dst, dstOffset + Lossless.HEADER_SIZE, samples * 2);
+				return Lossless.getMaxFrameSize(samples * 2);
+			}
+
+			dst[dstOffset] = (byte) order;
+			dst[dstOffset + 1] = (byte) partitionOrder;
+			mDst = dst;
+			mPosition = dstOffset + Lossless.HEADER_SIZE;
+			for (int i = 0; i < order; i++) {
+				dst[mPosition++] = (byte) mSamples[i];
+				dst[mPosition++] = (byte) (mSamples[i] >> 8);
+			}
+
+			partitionSamples = samples >> partitionOrder;
+			for (int j = 0; j < 1 << partitionOrder; j++) {
+				int start = Math.max(order, j * partitionSamples);
+				int end = (j + 1) * partitionSamples;
+				int k = Lossless.riceParameter(sum(start, end), end - start);
+				writeBits(k, Lossless.RICE_PARAMETER_BITS);
+				for (int i = start; i < end; i++) {
+					int value = mResiduals[i];
+					int quotient = value >>> k;
+					while (quotient >= 32) {
+						writeBits(0, 32);
+						quotient -= 32;
+					}
+					writeBits(1, quotient + 1);
+					writeBits(value, k);
+				}
+			}
+			if (mBitCount > 0) {
+				dst[mPosition++] = (byte) (mBits << (8 - mBitCount));
+				mBitCount = 0;
+			}
+			mDst = null;
+			return mPosition - dstOffset;
+		}
+
+		/**
+		 * 	the fixed predictor order with the smallest sum of absolute
+		 * 	residuals, the residual of an order is the difference of the
+		 * 	ones of the order below
+		 */
+		private int bestOrder(int samples) {
+			long[] sums = mOrderSums;
+			Arrays.fill(sums, 0);
+			int last0 = 0, last1 = 0, last2 = 0, last3 = 0;
+			for (int i = 0; i < samples; i++) {
+				int e0 = mSamples[i];
+				int e1 = e0 - last0;
+				int e2 = e1 - last1;
+				int e3 = e2 - last2;
+				int e4 = e3 - last3;
+				if (i >= Lossless.MAX_ORDER) {
+					sums[0] += Math.abs(e0);
+					sums[1] += Math.abs(e1);
+					sums[2] += Math.abs(e2);
+					sums[3] += Math.abs(e3);
+					sums[4] += Math.abs(e4);
+				}
+				last0 = e0;
+				last1 = e1;
+				last2 = e2;
+				last3 = e3;
+			}
+			int order = 0;
+			for (int i = 1; i <= Lossless.MAX_ORDER; i++) {
+				if (sums[i] < sums[order])
+					order = i;
+			}
+			return order;
+		}
+
+		private long sum(int start, int end) {
+			long sum = 0;
+			for (int i = start; i < end; i++) {
+				sum += mResiduals[i];
+			}
+			return sum;
+		}
+
+		/**
+		 * 	the low count bits of value, msb first, count up to 32
+		 */
+		private void writeBits(int value, int count) {
+			if (count == 0)
+				return;
+			mBits = (mBits << count) | (value & (0xffffffffL >>> (32 - count)));
+			mBitCount += count;
+			while (mBitCount >= 8) {
+				mBitCount -= 8;
+				mDst[mPosition++] = (byte) (mBits >>> mBitCount);
+			}
+		}
+	}
+}
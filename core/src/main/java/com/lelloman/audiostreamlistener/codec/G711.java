@@ -0,0 +1,92 @@
+package com.lelloman.audiostreamlistener.codec;
+
+/**
+ * 	ITU-T G.711 companding of 16 bit samples into 8 bits, the
+ * 	mu-law and A-law flavours, as in the classic Sun reference code.
+ * 	decoding goes through tables built once
+ */
+public class G711 {
+
+	private static final int MULAW_BIAS = 0x84;
+	private static final int MULAW_CLIP = 8159;
+	private static final int[] MULAW_SEGMENT_END = {0x3f, 0x7f, 0xff, 0x1ff, 0x3ff, 0x7ff, 0xfff, 0x1fff};
+	private static final int[] ALAW_SEGMENT_END = {0x1f, 0x3f, 0x7f, 0xff, 0x1ff, 0x3ff, 0x7ff, 0xfff};
+
+	static final short[] MULAW_TO_LINEAR = new short[256];
+	static final short[] ALAW_TO_LINEAR = new short[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			MULAW_TO_LINEAR[i] = (short) muLawToLinear(i);
+			ALAW_TO_LINEAR[i] = (short) aLawToLinear(i);
+		}
+	}
+
+	private G711(){}
+
+	public static int linearToMuLaw(int sample) {
+		sample >>= 2;
+		int mask;
+		if (sample < 0) {
+			sample = -sample;
+			mask = 0x7f;
+		} else {
+			mask = 0xff;
+		}
+		if (sample > MULAW_CLIP)
+			sample = MULAW_CLIP;
+		sample += MULAW_BIAS >> 2;
+
+		int segment = segment(sample, MULAW_SEGMENT_END);
+		if (segment >= 8)
+			return 0x7f ^ mask;
+		return ((segment << 4) | ((sample >> (segment + 1)) & 0xf)) ^ mask;
+	}
+
+	public static int linearToALaw(int sample) {
+		sample >>= 3;
+		int mask;
+		if (sample >= 0) {
+			mask = 0xd5;
+		} else {
+			mask = 0x55;
+			sample = -sample - 1;
+		}
+
+		int segment = segment(sample, ALAW_SEGMENT_END);
+		if (segment >= 8)
+			return 0x7f ^ mask;
+		int value = segment << 4;
+		value |= segment < 2 ? (sample >> 1) & 0xf : (sample >> segment) & 0xf;
+		return value ^ mask;
+	}
+
+	private static int muLawToLinear(int value) {
+		value = ~value;
+		int t = ((value & 0xf) << 3) + MULAW_BIAS;
+		t <<= (value & 0x70) >> 4;
+		return (value & 0x80) != 0 ? MULAW_BIAS - t : t - MULAW_BIAS;
+	}
+
+	private static int aLawToLinear(int value) {
+		value ^= 0x55;
+		int t = (value & 0xf) << 4;
+		int segment = (value & 0x70) >> 4;
+		if (segment == 0) {
+			t += 8;
+		} else {
+			t += 0x108;
+			if (segment > 1)
+				t <<= segment - 1;
+		}
+		return (value & 0x80) != 0 ? t : -t;
+	}
+
+	private static int segment(int value, int[] segmentEnd) {
+		for (int i = 0; i < segmentEnd.length; i++) {
+			if (value <= segmentEnd[i])
+				return i;
+		}
+		return segmentEnd.length;
+	}
+}
@@ -0,0 +1,101 @@
+package com.lelloman.audiostreamlistener.codec;
+
+/**
+ * 	IMA ADPCM, 16 bit samples in 4 bit codes. every frame starts
+ * 	with the codec state so that it can be decoded on its own:
+ *
+ * 	| 0-1                  | 2          | 3        | 4...                          |
+ * 	| predictor (int16 le) | step index | reserved | codes, low nibble first       |
+ */
+public class ImaAdpcm {
+
+	public static final int HEADER_SIZE = 4;
+
+	private static final int[] INDEX_TABLE = {-1, -1, -1, -1, 2, 4, 6, 8};
+
+	private static final int[] STEP_TABLE = {
+			7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+			50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230,
+			253, 279, 307, 337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963,
+			1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066, 2272, 2499, 2749, 3024, 3327,
+			3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442,
+			11487, 12635, 13899, 15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794,
+			32767
+	};
+
+	// the codec state, carried from one sample to the next
+	int predictor;
+	int index;
+
+	/**
+	 * 	bytes of a frame of the given samples
+	 */
+	public static int getFrameSize(int samples) {
+		return HEADER_SIZE + (samples + 1) / 2;
+	}
+
+	/**
+	 * @return the 4 bit code of the sample
+	 */
+	int encode(int sample) {
+		int step = STEP_TABLE[index];
+		int diff = sample - predictor;
+		int code = 0;
+		if (diff < 0) {
+			code = 8;
+			diff = -diff;
+		}
+
+		int delta = step >> 3;
+		if (diff >= step) {
+			code |= 4;
+			diff -= step;
+			delta += step;
+		}
+		step >>= 1;
+		if (diff >= step) {
+			code |= 2;
+			diff -= step;
+			delta += step;
+		}
+		step >>= 1;
+		if (diff >= step) {
+			code |= 1;
+			delta += step;
+		}
+
+		update(code, delta);
+		return code;
+	}
+
+	/**
+	 * @return the sample of the 4 bit code
+	 */
+	int decode(int code) {
+		int step = STEP_TABLE[index];
+		int delta = step >> 3;
+		if ((code & 4) != 0)
+			delta += step;
+		if ((code & 2) != 0)
+			delta += step >> 1;
+		if ((code & 1) != 0)
+			delta += step >> 2;
+
+		update(code, delta);
+		return predictor;
+	}
+
+	private void update(int code, int delta) {
+		predictor += (code & 8) != 0 ? -delta : delta;
+		if (predictor > Short.MAX_VALUE)
+			predictor = Short.MAX_VALUE;
+		else if (predictor < Short.MIN_VALUE)
+			predictor = Short.MIN_VALUE;
+
+		index += INDEX_TABLE[code & 7];
+		if (index < 0)
+			index = 0;
+		else if (index >= STEP_TABLE.length)
+			index = STEP_TABLE.length - 1;
+	}
+}
@@ -0,0 +1,83 @@
+package com.lelloman.audiostreamlistener.codec;
+
+/**
+ * 	lossless 16 bit frames, flac style: a fixed polynomial predictor
+ * 	of order 0 to 4 and the residuals rice coded in partitions, each
+ * 	partition with its own rice parameter. the first order samples are
+ * 	stored as they are, so every frame decodes on its own:
+ *
+ * 	| 0     | 1               | 2...                 | ...                                  |
+ * 	| order | partition order | warm up (int16 le)   | per partition: k (5 bits), residuals |
+ *
+ * 	the residuals are zig zag mapped and written msb first as the
+ * 	quotient in unary, zeros ended by a one, followed by the low k bits.
+ * 	a frame that wouldn't get smaller has order VERBATIM and the pcm
+ * 	as it is, so a frame is never more than HEADER_SIZE bytes bigger
+ */
+public class Lossless {
+
+	public static final int HEADER_SIZE = 2;
+	public static final int MAX_ORDER = 4;
+	public static final int VERBATIM = 0xff;
+
+	static final int MAX_PARTITION_ORDER = 6;
+	// no partition smaller than this, the parameters would cost more than they save
+	static final int MIN_PARTITION_SAMPLES = 16;
+	static final int RICE_PARAMETER_BITS = 5;
+	static final int MAX_RICE_PARAMETER = 30;
+
+	/**
+	 * 	bytes of the biggest frame of the given pcm bytes
+	 */
+	public static int getMaxFrameSize(int pcmBytes) {
+		return HEADER_SIZE + pcmBytes;
+	}
+
+	/**
+	 * 	the prediction of the next sample from the last four, s1 being
+	 * 	the most recent
+	 */
+	static int predict(int order, int s1, int s2, int s3, int s4) {
+		switch (order) {
+			case 1:
+				return s1;
+			case 2:
+				return 2 * s1 - s2;
+			case 3:
+				return 3 * s1 - 3 * s2 + s3;
+			case 4:
+				return 4 * s1 - 6 * s2 + 4 * s3 - s4;
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * 	the rice parameter for a partition of count residuals adding
+	 * 	up to sum, once zig zag mapped
+	 */
+	static int riceParameter(long sum, int count) {
+		int k = 0;
+		while (k < MAX_RICE_PARAMETER && ((long) count << k) < sum) {
+			k++;
+		}
+		return k;
+	}
+
+	/**
+	 * 	an upper bound of the bits of a rice coded partition, since
+	 * 	the sum of the quotients can't be more than the quotient of
+	 * 	the sum
+	 */
+	static long partitionBits(long sum, int count, int k) {
+		return RICE_PARAMETER_BITS + (long) count * (k + 1) + (sum >> k);
+	}
+
+	static int zigZag(int residual) {
+		return (residual << 1) ^ (residual >> 31);
+	}
+
+	static int unZigZag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
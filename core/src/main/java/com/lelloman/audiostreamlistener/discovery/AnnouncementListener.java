@@ -0,0 +1,130 @@
+package com.lelloman.audiostreamlistener.discovery;
+
+import com.lelloman.audiostreamlistener.Logger;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import static com.lelloman.audiostreamlistener.Constants.ANNOUNCE_EXPIRY_MS;
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_GROUP;
+import static com.lelloman.audiostreamlistener.Constants.MSG_ANNOUNCE;
+
+/**
+ * 	collects the MSG_ANNOUNCE of the servers, from the group and the
+ * 	broadcasts, in a {@link ServerTable}, without sending anything.
+ * 	the port that follows is the start of a {@link StreamSession}.
+ * 	the listener is told about every change of the table, on this
+ * 	thread. on android it needs a WifiManager.MulticastLock to get
+ * 	the group
+ */
+public class AnnouncementListener extends Thread {
+
+	public static final String TAG = AnnouncementListener.class.getSimpleName();
+
+	public interface Listener {
+		void onServersChanged(List<ServerTable.Server> servers);
+	}
+
+	// the expired servers are looked for this often at least
+	private static final int EXPIRE_INTERVAL_MS = 1000;
+
+	private final int mPort;
+	private final Listener mListener;
+	private final ServerTable mTable = new ServerTable(ANNOUNCE_EXPIRY_MS);
+
+	private volatile boolean mRunning = true;
+	private volatile MulticastSocket mSocket;
+
+	/**
+	 * @param port where the servers announce themselves
+	 */
+	public AnnouncementListener(int port, Listener listener) {
+		mPort = port;
+		mListener = listener;
+	}
+
+	@Override
+	public void run() {
+		byte[] data = new byte[128];
+		DatagramPacket packet = new DatagramPacket(data, data.length);
+		try (MulticastSocket socket = new MulticastSocket(mPort)) {
+			mSocket = socket;
+			if (!mRunning)
+				return;
+			joinGroup(socket);
+			socket.setSoTimeout(EXPIRE_INTERVAL_MS);
+
+			while (mRunning) {
+				boolean changed = false;
+				try {
+					packet.setLength(data.length);
+					socket.receive(packet);
+					ByteBuffer announce = ByteBuffer.wrap(data, 0, packet.getLength());
+					if (announce.remaining() >= 8 && announce.getInt() == MSG_ANNOUNCE) {
+						int port = announce.getInt(announce.position());
+						StreamSession session = StreamSession.read(announce);
+						changed = mTable.update(packet.getAddress(), port, session, System.nanoTime());
+						if (changed)
+							log("%s announced %s", packet.getSocketAddress(), session);
+					}
+				} catch (SocketTimeoutException e) {
+					// time to expire
+				}
+				changed |= mTable.expire(System.nanoTime());
+				if (changed)
+					mListener.onServersChanged(mTable.getServers());
+			}
+		} catch (IOException e) {
+			if (mRunning)
+				e.printStackTrace();
+		} finally {
+			mSocket = null;
+		}
+	}
+
+	/**
+	 * 	the table so far
+	 */
+	public List<ServerTable.Server> getServers() {
+		return mTable.getServers();
+	}
+
+	/**
+	 * 	can be called from any thread
+	 */
+	public void kill() {
+		mRunning = false;
+		MulticastSocket socket = mSocket;
+		if (socket != null)
+			socket.close();
+	}
+
+	/**
+	 * 	on every interface that can do multicast, the broadcasts come
+	 * 	anyway
+	 */
+	private static void joinGroup(MulticastSocket socket) throws IOException {
+		InetSocketAddress group = new InetSocketAddress(InetAddress.getByName(DISCOVERY_GROUP), 0);
+		for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+			if (!networkInterface.isUp() || !networkInterface.supportsMulticast())
+				continue;
+			try {
+				socket.joinGroup(group, networkInterface);
+			} catch (IOException e) {
+				log("can't join %s on %s: %s", DISCOVERY_GROUP, networkInterface.getName(), e.getMessage());
+			}
+		}
+	}
+
+	private static void log(String msg, Object... args) {
+		Logger.d(TAG, String.format(msg, args));
+	}
+}
@@ -0,0 +1,326 @@
+package com.lelloman.audiostreamlistener.discovery;
+
+import com.lelloman.audiostreamlistener.Logger;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_BATCH;
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_BROADCAST_WAIT_MS;
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_GRACE_MS;
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_GROUP;
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_MIN_PREFIX;
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_PROGRESS_MS;
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_RATE;
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_ROUNDS;
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_WINDOW_MS;
+import static com.lelloman.audiostreamlistener.Constants.MSG_PING;
+import static com.lelloman.audiostreamlistener.Constants.MSG_PONG;
+
+/**
+ * 	pings the discovery group and the broadcast addresses of the given
+ * 	subnets, which every server on them gets at once, and reports the
+ * 	ones that answer MSG_PONG. if none does in a little while, like
+ * 	where broadcasts and multicast are filtered, it falls back to
+ * 	pinging every host of the subnets from the same non blocking
+ * 	channel. when the broadcast wait or the last round of the sweep is
+ * 	over, and a server answered, the others have a little window to
+ * 	answer too instead of the whole grace period. the pings go
+ * 	in batches paced to the rate, in between the selector waits for
+ * 	the pongs, so a /16 takes a few seconds whatever the network and
+ * 	the socket buffer never overflows. the whole list is pinged a
+ * 	couple of times, after the last ping the pongs are waited for a
+ * 	little longer. the progress is reported a few times a second.
+ * 	scan() blocks the calling thread, stop() can be called from any.
+ * 	once stopped it doesn't scan anymore
+ */
+public class NetworkScanner {
+
+	public static final String TAG = NetworkScanner.class.getSimpleName();
+
+	public interface Listener {
+		// from 0 to 1, the pings sent so far
+		void onProgress(float progress);
+		// once per address
+		void onServerFound(InetAddress address);
+	}
+
+	private final int mPort;
+	private int mRate = DISCOVERY_RATE;
+	private int mRounds = DISCOVERY_ROUNDS;
+	private boolean mBroadcast = true;
+	private int mWindowMs = DISCOVERY_WINDOW_MS;
+
+	private volatile boolean mStopped;
+	private volatile Selector mSelector;
+
+	private long mSentCount;
+	private long mErrorCount;
+
+	/**
+	 * @param port where the servers listen for MSG_PING
+	 */
+	public NetworkScanner(int port) {
+		mPort = port;
+	}
+
+	/**
+	 * 	the subnets of every interface that is up and not a loopback,
+	 * 	the smallest first so the closest servers answer first. a wider
+	 * 	subnet than a /{@link com.lelloman.audiostreamlistener.Constants#DISCOVERY_MIN_PREFIX}
+	 * 	is cut down to the one around the address, the subnets inside
+	 * 	another one are left out
+	 */
+	public static List<Subnet> getLocalSubnets() throws IOException {
+		List<Subnet> subnets = new ArrayList<>();
+		for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+			if (!networkInterface.isUp() || networkInterface.isLoopback())
+				continue;
+			for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
+				if (!(interfaceAddress.getAddress() instanceof Inet4Address))
+					continue;
+				int prefix = interfaceAddress.getNetworkPrefixLength();
+				// some devices get it wrong
+				if (prefix <= 0 || prefix > 32)
+					prefix = 24;
+				subnets.add(Subnet.of((Inet4Address) interfaceAddress.getAddress(), prefix, DISCOVERY_MIN_PREFIX));
+			}
+		}
+		return merge(subnets);
+	}
+
+	/**
+	 * 	the subnets without duplicates and the ones inside others, the
+	 * 	smallest first
+	 */
+	public static List<Subnet> merge(List<Subnet> subnets) {
+		List<Subnet> merged = new ArrayList<>();
+		for (Subnet subnet : subnets) {
+			boolean inside = merged.contains(subnet);
+			for (Subnet other : subnets) {
+				inside |= other.prefix < subnet.prefix && other.contains(subnet);
+			}
+			if (!inside)
+				merged.add(subnet);
+		}
+		Collections.sort(merged, new Comparator<Subnet>() {
+			@Override
+			public int compare(Subnet a, Subnet b) {
+				return b.prefix - a.prefix;
+			}
+		});
+		return merged;
+	}
+
+	/**
+	 * 	pings per second
+	 */
+	public void setRate(int rate) {
+		mRate = Math.max(DISCOVERY_BATCH, rate);
+	}
+
+	/**
+	 * 	how many times every host is pinged
+	 */
+	public void setRounds(int rounds) {
+		mRounds = Math.max(1, rounds);
+	}
+
+	/**
+	 * 	false to go straight to pinging every host
+	 */
+	public void setBroadcast(boolean broadcast) {
+		mBroadcast = broadcast;
+	}
+
+	/**
+	 * 	how long the pongs are still collected after the broadcast wait or
+	 * 	the last round of the sweep, when a server already answered. the
+	 * 	sweep is never cut short, the hosts late in the range are pinged too
+	 */
+	public void setWindow(int windowMs) {
+		mWindowMs = Math.max(0, windowMs);
+	}
+
+	/**
+	 * 	ping the group and the broadcast addresses, then all the hosts if
+	 * 	nobody answered, and wait for the pongs, until it's done or stopped
+	 */
+	public void scan(List<Subnet> subnets, Listener listener) throws IOException {
+		long hosts = 0;
+		for (Subnet subnet : subnets) {
+			hosts += subnet.getHostCount();
+		}
+		long total = hosts * mRounds;
+		log("scanning %s, %s hosts", subnets, hosts);
+
+		mSentCount = 0;
+		mErrorCount = 0;
+		Set<InetAddress> found = new HashSet<>();
+		ByteBuffer ping = ByteBuffer.allocate(4);
+		ping.putInt(MSG_PING).flip();
+		ByteBuffer pong = ByteBuffer.allocate(16);
+		long batchNanos = DISCOVERY_BATCH * 1000000000L / mRate;
+
+		try (DatagramChannel channel = DatagramChannel.open(); Selector selector = Selector.open()) {
+			channel.configureBlocking(false);
+			// DatagramChannel.bind() needs android N
+			channel.socket().bind(null);
+			channel.register(selector, SelectionKey.OP_READ);
+			mSelector = selector;
+
+			int round = 0, subnetIndex = 0, hostIndex = 0;
+			boolean sending = total > 0;
+			boolean sweeping = false;
+			long now = System.nanoTime();
+			long nextBatchNanos = now;
+			if (mBroadcast) {
+				channel.socket().setBroadcast(true);
+				// counted in the progress too
+				total += pingBroadcast(channel, subnets, ping);
+				nextBatchNanos += TimeUnit.MILLISECONDS.toNanos(DISCOVERY_BROADCAST_WAIT_MS);
+			}
+			long deadline = now + TimeUnit.MILLISECONDS.toNanos(DISCOVERY_GRACE_MS);
+			long lastProgressNanos = now;
+
+			while (!mStopped) {
+				now = System.nanoTime();
+				if (sending && now - nextBatchNanos >= 0 && !sweeping && !found.isEmpty()) {
+					log("broadcast answered, no sweep");
+					sending = false;
+					deadline = now + TimeUnit.MILLISECONDS.toNanos(mWindowMs);
+				}
+				if (sending && now - nextBatchNanos >= 0) {
+					sweeping = true;
+					for (int i = 0; i < DISCOVERY_BATCH && sending; i++) {
+						Subnet subnet = subnets.get(subnetIndex);
+						SocketAddress target = new InetSocketAddress(Subnet.toAddress(subnet.getHost(hostIndex)), mPort);
+						ping.rewind();
+						try {
+							// the socket buffer is full, the rest goes with the next batch
+							if (channel.send(ping, target) == 0)
+								break;
+						} catch (IOException e) {
+							mErrorCount++;
+						}
+						mSentCount++;
+						if (++hostIndex == subnet.getHostCount()) {
+							hostIndex = 0;
+							if (++subnetIndex == subnets.size()) {
+								subnetIndex = 0;
+								sending = ++round < mRounds;
+							}
+						}
+					}
+					// don't make up for the time lost with a burst
+					nextBatchNanos = Math.max(nextBatchNanos + batchNanos, now);
+					if (!sending)
+						deadline = now + TimeUnit.MILLISECONDS.toNanos(found.isEmpty() ? DISCOVERY_GRACE_MS : mWindowMs);
+				}
+
+				if (now - lastProgressNanos >= TimeUnit.MILLISECONDS.toNanos(DISCOVERY_PROGRESS_MS)) {
+					listener.onProgress(total == 0 ? 1 : mSentCount / (float) total);
+					lastProgressNanos = now;
+				}
+				if (!sending && now - deadline >= 0)
+					break;
+
+				long wakeup = sending ? nextBatchNanos : deadline;
+				long waitMs = TimeUnit.NANOSECONDS.toMillis(wakeup - now);
+				if (waitMs > 0) {
+					selector.select(waitMs);
+				} else {
+					selector.selectNow();
+				}
+				selector.selectedKeys().clear();
+
+				SocketAddress sender;
+				while ((sender = channel.receive(pong)) != null) {
+					pong.flip();
+					InetAddress address = ((InetSocketAddress) sender).getAddress();
+					if (pong.remaining() >= 4 && pong.getInt(0) == MSG_PONG && found.add(address)) {
+						log("pong from %s", address.getHostAddress());
+						listener.onServerFound(address);
+					}
+					pong.clear();
+				}
+			}
+		} finally {
+			mSelector = null;
+		}
+		listener.onProgress(1);
+		log("sent %s pings, %s errors, %s servers", mSentCount, mErrorCount, found.size());
+	}
+
+	/**
+	 * 	the group, the limited broadcast address, which only goes as far
+	 * 	as the interface of the default route, and the broadcast address
+	 * 	of every subnet
+	 */
+	private int pingBroadcast(DatagramChannel channel, List<Subnet> subnets, ByteBuffer ping) {
+		List<InetAddress> targets = new ArrayList<>();
+		try {
+			targets.add(InetAddress.getByName(DISCOVERY_GROUP));
+			targets.add(InetAddress.getByName("255.255.255.255"));
+		} catch (IOException e) {
+			// literal addresses are never looked up
+			throw new IllegalStateException(e);
+		}
+		for (Subnet subnet : subnets) {
+			if (subnet.prefix < 31)
+				targets.add(Subnet.toAddress(subnet.getBroadcast()));
+		}
+		for (InetAddress target : targets) {
+			ping.rewind();
+			try {
+				channel.send(ping, new InetSocketAddress(target, mPort));
+			} catch (IOException e) {
+				mErrorCount++;
+			}
+			mSentCount++;
+		}
+		log("pinged %s", targets);
+		return targets.size();
+	}
+
+	/**
+	 * 	the scan in progress, or the next one, returns straight away
+	 */
+	public void stop() {
+		mStopped = true;
+		Selector selector = mSelector;
+		if (selector != null)
+			selector.wakeup();
+	}
+
+	public long getSentCount() {
+		return mSentCount;
+	}
+
+	/**
+	 * 	pings that couldn't be sent, like to unreachable addresses
+	 */
+	public long getErrorCount() {
+		return mErrorCount;
+	}
+
+	private static void log(String msg, Object... args) {
+		Logger.d(TAG, String.format(msg, args));
+	}
+}
@@ -0,0 +1,224 @@
+package com.lelloman.audiostreamlistener.discovery;
+
+import com.lelloman.audiostreamlistener.Logger;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_PROBES;
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_PROBE_INTERVAL_MS;
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_PROBE_TIMEOUT_MS;
+import static com.lelloman.audiostreamlistener.Constants.MSG_PING;
+import static com.lelloman.audiostreamlistener.Constants.MSG_PONG;
+
+/**
+ * 	pings a few servers a few times, all of them at once every probe
+ * 	interval, and ranks them by the median round trip. every ping has
+ * 	the probe id after MSG_PING and the servers send it back after
+ * 	MSG_PONG, a server that doesn't is taken to answer the last probe.
+ * 	the {@link StreamSession} that follows is kept with the result.
+ * 	the ones that never answer are ranked last.
+ * 	probe() blocks the calling thread, stop() can be called from any
+ */
+public class ServerProber {
+
+	public static final String TAG = ServerProber.class.getSimpleName();
+
+	public static class Result {
+
+		public final InetAddress address;
+		// the median, -1 if it never answered
+		public final float rttMs;
+		public final int replies;
+		// null if the server doesn't send one
+		public final StreamSession session;
+
+		Result(InetAddress address, float rttMs, int replies, StreamSession session) {
+			this.address = address;
+			this.rttMs = rttMs;
+			this.replies = replies;
+			this.session = session;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s %.1f ms %s replies", address.getHostAddress(), rttMs, replies);
+		}
+	}
+
+	private final int mPort;
+	private int mProbes = DISCOVERY_PROBES;
+
+	private volatile boolean mStopped;
+	private volatile Selector mSelector;
+
+	/**
+	 * @param port where the servers listen for MSG_PING
+	 */
+	public ServerProber(int port) {
+		mPort = port;
+	}
+
+	/**
+	 * 	pings per server
+	 */
+	public void setProbes(int probes) {
+		mProbes = Math.max(1, probes);
+	}
+
+	/**
+	 * 	the servers, the one with the shortest round trip first
+	 */
+	public List<Result> probe(Collection<InetAddress> servers) throws IOException {
+		// the round trip of every probe, in ns, -1 until it's answered
+		Map<InetAddress, long[]> rtts = new LinkedHashMap<>();
+		for (InetAddress server : servers) {
+			long[] serverRtts = new long[mProbes];
+			Arrays.fill(serverRtts, -1);
+			rtts.put(server, serverRtts);
+		}
+		Map<InetAddress, StreamSession> sessions = new LinkedHashMap<>();
+		long[] sentNanos = new long[mProbes];
+		ByteBuffer ping = ByteBuffer.allocate(8);
+		ByteBuffer pong = ByteBuffer.allocate(128);
+
+		try (DatagramChannel channel = DatagramChannel.open(); Selector selector = Selector.open()) {
+			channel.configureBlocking(false);
+			// DatagramChannel.bind() needs android N
+			channel.socket().bind(null);
+			channel.register(selector, SelectionKey.OP_READ);
+			mSelector = selector;
+
+			int probe = 0;
+			long now = System.nanoTime();
+			long nextProbeNanos = now;
+			long deadline = now;
+
+			while (!mStopped && !rtts.isEmpty()) {
+				now = System.nanoTime();
+				if (probe < mProbes && now - nextProbeNanos >= 0) {
+					ping.clear();
+					ping.putInt(MSG_PING).putInt(probe).flip();
+					sentNanos[probe] = now;
+					for (InetAddress server : rtts.keySet()) {
+						ping.rewind();
+						try {
+							channel.send(ping, new InetSocketAddress(server, mPort));
+						} catch (IOException e) {
+							// it'll count as lost
+						}
+					}
+					probe++;
+					nextProbeNanos = now + TimeUnit.MILLISECONDS.toNanos(DISCOVERY_PROBE_INTERVAL_MS);
+					deadline = now + TimeUnit.MILLISECONDS.toNanos(DISCOVERY_PROBE_TIMEOUT_MS);
+				}
+				if (probe == mProbes && (now - deadline >= 0 || allAnswered(rtts.values())))
+					break;
+
+				long waitMs = TimeUnit.NANOSECONDS.toMillis((probe < mProbes ? nextProbeNanos : deadline) - now);
+				if (waitMs > 0) {
+					selector.select(waitMs);
+				} else {
+					selector.selectNow();
+				}
+				selector.selectedKeys().clear();
+
+				SocketAddress sender;
+				while ((sender = channel.receive(pong)) != null) {
+					long received = System.nanoTime();
+					pong.flip();
+					InetAddress address = ((InetSocketAddress) sender).getAddress();
+					long[] serverRtts = rtts.get(address);
+					if (serverRtts != null && pong.remaining() >= 4 && pong.getInt(0) == MSG_PONG) {
+						int id = pong.remaining() >= 8 ? pong.getInt(4) : probe - 1;
+						if (id >= 0 && id < probe && serverRtts[id] < 0)
+							serverRtts[id] = received - sentNanos[id];
+						if (!sessions.containsKey(address) && pong.remaining() > 8) {
+							pong.position(8);
+							sessions.put(address, StreamSession.read(pong));
+						}
+					}
+					pong.clear();
+				}
+			}
+		} finally {
+			mSelector = null;
+		}
+
+		List<Result> results = new ArrayList<>();
+		for (Map.Entry<InetAddress, long[]> entry : rtts.entrySet()) {
+			results.add(toResult(entry.getKey(), entry.getValue(), sessions.get(entry.getKey())));
+		}
+		rank(results);
+		log("ranked %s", results);
+		return results;
+	}
+
+	/**
+	 * 	the probe in progress, or the next one, returns straight away
+	 */
+	public void stop() {
+		mStopped = true;
+		Selector selector = mSelector;
+		if (selector != null)
+			selector.wakeup();
+	}
+
+	/**
+	 * 	the shortest round trip first, the ones that never answered last
+	 */
+	public static void rank(List<Result> results) {
+		Collections.sort(results, new Comparator<Result>() {
+			@Override
+			public int compare(Result a, Result b) {
+				if (a.replies == 0 || b.replies == 0)
+					return b.replies == 0 ? (a.replies == 0 ? 0 : -1) : 1;
+				return Float.compare(a.rttMs, b.rttMs);
+			}
+		});
+	}
+
+	static Result toResult(InetAddress address, long[] rttNanos, StreamSession session) {
+		long[] answered = new long[rttNanos.length];
+		int replies = 0;
+		for (long rtt : rttNanos) {
+			if (rtt >= 0)
+				answered[replies++] = rtt;
+		}
+		if (replies == 0)
+			return new Result(address, -1, 0, session);
+		Arrays.sort(answered, 0, replies);
+		long median = replies % 2 == 1 ? answered[replies / 2]
+				: (answered[replies / 2 - 1] + answered[replies / 2]) / 2;
+		return new Result(address, median / 1e6f, replies, session);
+	}
+
+	private static boolean allAnswered(Collection<long[]> rtts) {
+		for (long[] serverRtts : rtts) {
+			for (long rtt : serverRtts) {
+				if (rtt < 0)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private static void log(String msg, Object... args) {
+		Logger.d(TAG, String.format(msg, args));
+	}
+}
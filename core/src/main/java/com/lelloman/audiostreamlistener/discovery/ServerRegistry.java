@@ -0,0 +1,204 @@
+package com.lelloman.audiostreamlistener.discovery;
+
+import com.lelloman.audiostreamlistener.threading.AudioClient.StreamConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.lelloman.audiostreamlistener.Constants.SESSION_FRESH_MS;
+
+/**
+ * 	the servers found or connected to, by host, with the stream port,
+ * 	the last round trip, stream config and the session it belongs to,
+ * 	and when they were last seen,
+ * 	on the wall clock since it outlives the process. the ones not seen
+ * 	for the ttl are dropped, and the least recently seen when there
+ * 	are too many. it's saved as text, a line per server.
+ * 	it can be used from any thread
+ */
+public class ServerRegistry {
+
+	public static class Entry {
+
+		public final String host;
+		// the stream port, 0 if it was only found by discovery
+		public final int port;
+		// -1 if it wasn't measured
+		public final float rttMs;
+		// null until a stream is received from it or it tells its session
+		public final StreamConfig streamConfig;
+		// of the stream config, 0 if unknown
+		public final int sessionToken;
+		// when the server last told its session, 0 if it never did
+		public final long sessionSeenMs;
+		public final long lastSeenMs;
+
+		public Entry(String host, int port, float rttMs, StreamConfig streamConfig, int sessionToken,
+					 long sessionSeenMs, long lastSeenMs) {
+			this.host = host;
+			this.port = port;
+			this.rttMs = rttMs;
+			this.streamConfig = streamConfig;
+			this.sessionToken = sessionToken;
+			this.sessionSeenMs = sessionSeenMs;
+			this.lastSeenMs = lastSeenMs;
+		}
+
+		/**
+		 * 	the server told the session of the stream config lately, so
+		 * 	it can be taken to be still in it
+		 */
+		public boolean isSessionFresh(long nowMs) {
+			return sessionToken != 0 && sessionSeenMs > 0 && nowMs - sessionSeenMs < SESSION_FRESH_MS;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.US, "%s:%s %.1f ms", host, port, rttMs);
+		}
+	}
+
+	private final long mTtlMs;
+	private final int mMaxEntries;
+	private final Map<String, Entry> mEntries = new LinkedHashMap<>();
+
+	public ServerRegistry(long ttlMs, int maxEntries) {
+		mTtlMs = ttlMs;
+		mMaxEntries = maxEntries;
+	}
+
+	/**
+	 * 	it answered a ping, the port and the config are kept unless
+	 * 	it's in a session they don't belong to
+	 *
+	 * @param session null if the server doesn't send one
+	 */
+	public synchronized void onSeen(String host, float rttMs, StreamSession session, long nowMs) {
+		Entry entry = mEntries.get(host);
+		if (session != null && (entry == null || entry.sessionToken != session.token)) {
+			put(new Entry(host, session.port, rttMs, session.streamConfig, session.token, nowMs, nowMs));
+		} else if (entry == null) {
+			put(new Entry(host, 0, rttMs, null, 0, 0, nowMs));
+		} else {
+			put(new Entry(host, entry.port, rttMs, entry.streamConfig, entry.sessionToken,
+					session != null ? nowMs : entry.sessionSeenMs, nowMs));
+		}
+	}
+
+	/**
+	 * 	a stream was received from it, the round trip is kept, and when
+	 * 	the session was heard if it's the same
+	 *
+	 * @param sessionToken 0 if the server has none
+	 */
+	public synchronized void onConnected(String host, int port, StreamConfig streamConfig, int sessionToken,
+										 long nowMs) {
+		Entry entry = mEntries.get(host);
+		put(new Entry(host, port, entry == null ? -1 : entry.rttMs, streamConfig, sessionToken,
+				entry != null && entry.sessionToken == sessionToken ? entry.sessionSeenMs : 0, nowMs));
+	}
+
+	/**
+	 * @return null if it isn't known
+	 */
+	public synchronized Entry get(String host) {
+		return mEntries.get(host);
+	}
+
+	/**
+	 * @return true if any server was dropped
+	 */
+	public synchronized boolean expire(long nowMs) {
+		List<String> expired = new ArrayList<>();
+		for (Entry entry : mEntries.values()) {
+			if (nowMs - entry.lastSeenMs >= mTtlMs)
+				expired.add(entry.host);
+		}
+		mEntries.keySet().removeAll(expired);
+		return !expired.isEmpty();
+	}
+
+	/**
+	 * 	a copy, the last seen first
+	 */
+	public synchronized List<Entry> getEntries() {
+		List<Entry> entries = new ArrayList<>(mEntries.values());
+		Collections.sort(entries, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry a, Entry b) {
+				return Long.compare(b.lastSeenMs, a.lastSeenMs);
+			}
+		});
+		return entries;
+	}
+
+	/**
+	 * 	a line per server: host, port, round trip, last seen and the
+	 * 	stream config with its session and when that was heard if there
+	 * 	is one, separated by spaces
+	 */
+	public synchronized String encode() {
+		StringBuilder builder = new StringBuilder();
+		for (Entry entry : mEntries.values()) {
+			builder.append(String.format(Locale.US, "%s %s %.3f %s", entry.host, entry.port, entry.rttMs, entry.lastSeenMs));
+			StreamConfig c = entry.streamConfig;
+			if (c != null) {
+				for (int value : new int[]{c.sampleRate, c.bitDepth, c.bufferSize, c.headerVersion, c.codec, c.channels,
+						c.fecScheme, c.fecDataFrames, c.fecParityFrames, c.nackHistory, c.fragmentSize}) {
+					builder.append(' ').append(value);
+				}
+				builder.append(' ').append(entry.sessionToken).append(' ').append(entry.sessionSeenMs);
+			}
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * 	the lines that can't be read are skipped, like the ones saved
+	 * 	by another version, the config of one saved without the session
+	 * 	belongs to none
+	 */
+	public static ServerRegistry decode(String text, long ttlMs, int maxEntries) {
+		ServerRegistry registry = new ServerRegistry(ttlMs, maxEntries);
+		for (String line : text.split("\n")) {
+			String[] fields = line.trim().split(" ");
+			if (fields.length != 4 && fields.length != 15 && fields.length != 17)
+				continue;
+			try {
+				StreamConfig streamConfig = null;
+				int sessionToken = 0;
+				long sessionSeenMs = 0;
+				if (fields.length > 4) {
+					int[] c = new int[11];
+					for (int i = 0; i < c.length; i++) {
+						c[i] = Integer.parseInt(fields[4 + i]);
+					}
+					streamConfig = new StreamConfig(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7], c[8], c[9], c[10]);
+					if (fields.length == 17) {
+						sessionToken = Integer.parseInt(fields[15]);
+						sessionSeenMs = Long.parseLong(fields[16]);
+					}
+				}
+				registry.put(new Entry(fields[0], Integer.parseInt(fields[1]), Float.parseFloat(fields[2]),
+						streamConfig, sessionToken, sessionSeenMs, Long.parseLong(fields[3])));
+			} catch (NumberFormatException e) {
+				// next
+			}
+		}
+		return registry;
+	}
+
+	private void put(Entry entry) {
+		mEntries.put(entry.host, entry);
+		while (mEntries.size() > mMaxEntries) {
+			List<Entry> entries = getEntries();
+			mEntries.remove(entries.get(entries.size() - 1).host);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.lelloman.audiostreamlistener.discovery;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 	the servers heard of lately, in the order they were first heard,
+ * 	with the last session they told about, one that isn't heard again
+ * 	for the expiry time is dropped.
+ * 	it can be used from any thread
+ */
+public class ServerTable {
+
+	public static class Server {
+
+		public final InetAddress address;
+		// the stream port
+		public final int port;
+		// null if the server doesn't send one
+		public final StreamSession session;
+		private long mLastSeenNanos;
+
+		Server(InetAddress address, int port, StreamSession session, long lastSeenNanos) {
+			this.address = address;
+			this.port = port;
+			this.session = session;
+			mLastSeenNanos = lastSeenNanos;
+		}
+
+		@Override
+		public String toString() {
+			return address.getHostAddress() + ":" + port;
+		}
+	}
+
+	private final long mExpiryNanos;
+	private final Map<String, Server> mServers = new LinkedHashMap<>();
+
+	public ServerTable(long expiryMs) {
+		mExpiryNanos = TimeUnit.MILLISECONDS.toNanos(expiryMs);
+	}
+
+	/**
+	 * @return true if the server is new or in another session
+	 */
+	public synchronized boolean update(InetAddress address, int port, StreamSession session, long now) {
+		String key = address.getHostAddress() + ":" + port;
+		Server server = mServers.get(key);
+		if (server != null && getToken(server.session) == getToken(session)) {
+			server.mLastSeenNanos = now;
+			return false;
+		}
+		mServers.put(key, new Server(address, port, session, now));
+		return true;
+	}
+
+	/**
+	 * @return true if any server was dropped
+	 */
+	public synchronized boolean expire(long now) {
+		boolean expired = false;
+		Iterator<Server> iterator = mServers.values().iterator();
+		while (iterator.hasNext()) {
+			if (now - iterator.next().mLastSeenNanos >= mExpiryNanos) {
+				iterator.remove();
+				expired = true;
+			}
+		}
+		return expired;
+	}
+
+	/**
+	 * 	a copy
+	 */
+	public synchronized List<Server> getServers() {
+		return new ArrayList<>(mServers.values());
+	}
+
+	public synchronized int size() {
+		return mServers.size();
+	}
+
+	private static int getToken(StreamSession session) {
+		return session == null ? 0 : session.token;
+	}
+}
@@ -0,0 +1,51 @@
+package com.lelloman.audiostreamlistener.discovery;
+
+import com.lelloman.audiostreamlistener.threading.AudioClient.StreamConfig;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 	what a server says about its stream after MSG_PONG and the probe
+ * 	id or after MSG_ANNOUNCE: the stream port, the session token and
+ * 	the config a client that takes every feature gets, which stays
+ * 	the same for as long as the token does
+ */
+public class StreamSession {
+
+	public final int port;
+	public final int token;
+	public final StreamConfig streamConfig;
+
+	public StreamSession(int port, int token, StreamConfig streamConfig) {
+		this.port = port;
+		this.token = token;
+		this.streamConfig = streamConfig;
+	}
+
+	/**
+	 * 	from the position of the buffer on, which is moved to the end
+	 *
+	 * @return null if there's none, like from an older server
+	 */
+	public static StreamSession read(ByteBuffer buffer) {
+		if (buffer.remaining() < 20)
+			return null;
+		int port = buffer.getInt();
+		int token = buffer.getInt();
+		int sampleRate = buffer.getInt();
+		int bufferSize = buffer.getInt();
+		int bitDepth = buffer.getInt();
+		if (token == 0 || sampleRate <= 0 || bufferSize <= 0)
+			return null;
+		try {
+			return new StreamSession(port, token, StreamConfig.read(buffer, sampleRate, bufferSize, bitDepth));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("port %s session %08x", port, token);
+	}
+}
@@ -0,0 +1,83 @@
+package com.lelloman.audiostreamlistener.discovery;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * 	an ipv4 network and its prefix length, the hosts are the addresses
+ * 	in between the network and the broadcast ones, all of them for a
+ * 	/31 or a /32
+ */
+public class Subnet {
+
+	// the network address as an int, big endian like on the wire
+	public final int network;
+	public final int prefix;
+
+	public Subnet(int address, int prefix) {
+		this.prefix = prefix;
+		this.network = prefix == 0 ? 0 : address & (-1 << (32 - prefix));
+	}
+
+	/**
+	 * 	the subnet of an interface address, if it's wider than minPrefix
+	 * 	only the minPrefix one around the address is taken
+	 */
+	public static Subnet of(Inet4Address address, int prefix, int minPrefix) {
+		return new Subnet(toInt(address), Math.max(prefix, minPrefix));
+	}
+
+	public int getHostCount() {
+		long size = 1L << (32 - prefix);
+		return (int) (prefix >= 31 ? size : size - 2);
+	}
+
+	/**
+	 * @param index from 0 to {@link #getHostCount()} - 1
+	 */
+	public int getHost(int index) {
+		return prefix >= 31 ? network + index : network + 1 + index;
+	}
+
+	/**
+	 * 	the last address, a /31 or a /32 has none
+	 */
+	public int getBroadcast() {
+		return prefix == 0 ? -1 : network | ~(-1 << (32 - prefix));
+	}
+
+	public boolean contains(Subnet other) {
+		return other.prefix >= prefix && (other.network & (prefix == 0 ? 0 : -1 << (32 - prefix))) == network;
+	}
+
+	public static int toInt(Inet4Address address) {
+		byte[] b = address.getAddress();
+		return (b[0] & 0xff) << 24 | (b[1] & 0xff) << 16 | (b[2] & 0xff) << 8 | (b[3] & 0xff);
+	}
+
+	public static InetAddress toAddress(int address) {
+		try {
+			return InetAddress.getByAddress(new byte[]{
+					(byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address});
+		} catch (UnknownHostException e) {
+			// 4 bytes are always fine
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Subnet && ((Subnet) o).network == network && ((Subnet) o).prefix == prefix;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * network + prefix;
+	}
+
+	@Override
+	public String toString() {
+		return toAddress(network).getHostAddress() + "/" + prefix;
+	}
+}
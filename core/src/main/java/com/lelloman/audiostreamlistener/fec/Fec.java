@@ -0,0 +1,126 @@
+package com.lelloman.audiostreamlistener.fec;
+
+import static com.lelloman.audiostreamlistener.Constants.FEC_REED_SOLOMON;
+import static com.lelloman.audiostreamlistener.Constants.FEC_XOR;
+
+/**
+ * 	forward error correction over groups of frames: after every
+ * 	dataFrames frames the server sends parityFrames parity packets,
+ * 	any dataFrames packets of the group are enough to rebuild the rest.
+ * 	each frame is protected as a block, its payload length as a big
+ * 	endian short followed by the payload, and the blocks are zero padded
+ * 	to the longest one of the group, so the codecs with variable size
+ * 	frames are covered too.
+ *
+ * 	parity packet r is the sum over gf(256) of coefficient(r, j) times
+ * 	block j, the coefficients are a cauchy matrix with each column
+ * 	scaled so that the first row is all ones, which keeps every square
+ * 	sub matrix invertible and makes the first parity a plain xor.
+ * 	the xor scheme is the single parity case, reed solomon the general one
+ */
+public class Fec {
+
+	// the payload length in front of each block
+	public static final int LENGTH_SIZE = 2;
+	public static final int MAX_DATA_FRAMES = 64;
+	public static final int MAX_PARITY_FRAMES = 16;
+
+	// gf(256) with the 0x11d polynomial, as most reed solomon codes
+	private static final int[] EXP = new int[512];
+	private static final int[] LOG = new int[256];
+	// the product of a and b at a << 8 | b
+	static final byte[] MUL = new byte[256 * 256];
+
+	static {
+		int x = 1;
+		for (int i = 0; i < 255; i++) {
+			EXP[i] = x;
+			LOG[x] = i;
+			x <<= 1;
+			if (x >= 256)
+				x ^= 0x11d;
+		}
+		for (int i = 255; i < EXP.length; i++) {
+			EXP[i] = EXP[i - 255];
+		}
+		for (int a = 1; a < 256; a++) {
+			for (int b = 1; b < 256; b++) {
+				MUL[a << 8 | b] = (byte) EXP[LOG[a] + LOG[b]];
+			}
+		}
+	}
+
+	private Fec(){}
+
+	public static boolean isSupported(int scheme) {
+		return scheme == FEC_XOR || scheme == FEC_REED_SOLOMON;
+	}
+
+	/**
+	 * 	throws if the scheme can't have that many frames in a group
+	 */
+	public static void checkGroup(int scheme, int dataFrames, int parityFrames) {
+		if (!isSupported(scheme))
+			throw new IllegalArgumentException("unknown fec scheme " + scheme);
+		if (dataFrames < 1 || dataFrames > MAX_DATA_FRAMES)
+			throw new IllegalArgumentException("data frames must be 1 to " + MAX_DATA_FRAMES);
+		if (parityFrames < 1 || parityFrames > (scheme == FEC_XOR ? 1 : MAX_PARITY_FRAMES))
+			throw new IllegalArgumentException("too many parity frames for scheme " + scheme);
+	}
+
+	/**
+	 * 	bytes of the biggest parity payload of the given frame payloads
+	 */
+	public static int getMaxParitySize(int maxPayloadSize) {
+		return LENGTH_SIZE + maxPayloadSize;
+	}
+
+	/**
+	 * 	the group of a sequence, its sequence number is the one of the first frame
+	 */
+	public static int getGroupSequence(int sequence, int dataFrames) {
+		return sequence - (sequence & Integer.MAX_VALUE) % dataFrames;
+	}
+
+	/**
+	 * 	the coefficient of data block column in parity row, row 0 is all ones
+	 */
+	static int coefficient(int row, int column, int dataFrames) {
+		if (row == 0)
+			return 1;
+		return div(cauchy(row, column, dataFrames), cauchy(0, column, dataFrames));
+	}
+
+	static int mul(int a, int b) {
+		return MUL[a << 8 | b] & 0xff;
+	}
+
+	static int div(int a, int b) {
+		if (a == 0)
+			return 0;
+		return EXP[LOG[a] + 255 - LOG[b]];
+	}
+
+	/**
+	 * 	dst += coefficient * src over length bytes
+	 */
+	static void mulAdd(byte[] dst, int dstOffset, byte[] src, int srcOffset, int length, int coefficient) {
+		if (coefficient == 1) {
+			for (int i = 0; i < length; i++) {
+				dst[dstOffset + i] ^= src[srcOffset + i];
+			}
+		} else if (coefficient != 0) {
+			int row = coefficient << 8;
+			for (int i = 0; i < length; i++) {
+				dst[dstOffset + i] ^= MUL[row | (src[srcOffset + i] & 0xff)];
+			}
+		}
+	}
+
+	/**
+	 * 	1 / (x ^ y) with the parity rows after the data columns, all distinct
+	 */
+	private static int cauchy(int row, int column, int dataFrames) {
+		return div(1, (dataFrames + row) ^ column);
+	}
+}
@@ -0,0 +1,265 @@
+package com.lelloman.audiostreamlistener.fec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 	the client side of {@link Fec}, it keeps a copy of the frames and
+ * 	parity of the last few groups and rebuilds the missing frames of a
+ * 	group as soon as it has as many packets as data frames. the missing
+ * 	blocks are solved inverting the matrix of the parity coefficients
+ * 	over gf(256), with the xor scheme it's just a xor of the rest.
+ * 	nothing is allocated after the constructor
+ */
+public class FecDecoder {
+
+	// groups kept at once, the parity of a group can arrive after
+	// the frames of the next one
+	private static final int GROUPS = 4;
+
+	private static class Group {
+		int sequence;
+		boolean active;
+		// rebuilt or nothing to rebuild
+		boolean done;
+		int dataCount;
+		int parityCount;
+		// the data blocks and then the parity ones
+		final byte[][] blocks;
+		final int[] lengths;
+		final boolean[] present;
+
+		Group(int packets, int blockSize) {
+			blocks = new byte[packets][blockSize];
+			lengths = new int[packets];
+			present = new boolean[packets];
+		}
+
+		void reset(int sequence) {
+			this.sequence = sequence;
+			active = true;
+			done = false;
+			dataCount = 0;
+			parityCount = 0;
+			Arrays.fill(present, false);
+		}
+	}
+
+	private final int mDataFrames;
+	private final int mParityFrames;
+	private final int mBlockSize;
+	private final Group[] mGroups = new Group[GROUPS];
+	private final int[][] mCoefficients;
+
+	// the system being solved, the matrix is augmented with its inverse
+	private final int[] mMissing;
+	private final int[] mRows;
+	private final int[][] mMatrix;
+
+	// the frames rebuilt by the last add
+	private Group mRecoveredGroup;
+	private long mRecoveredTotal;
+
+	public FecDecoder(int scheme, int dataFrames, int parityFrames, int maxPayloadSize) {
+		Fec.checkGroup(scheme, dataFrames, parityFrames);
+		mDataFrames = dataFrames;
+		mParityFrames = parityFrames;
+		mBlockSize = Fec.getMaxParitySize(maxPayloadSize);
+		for (int i = 0; i < GROUPS; i++) {
+			mGroups[i] = new Group(dataFrames + parityFrames, mBlockSize);
+		}
+		mCoefficients = new int[parityFrames][dataFrames];
+		for (int r = 0; r < parityFrames; r++) {
+			for (int j = 0; j < dataFrames; j++) {
+				mCoefficients[r][j] = Fec.coefficient(r, j, dataFrames);
+			}
+		}
+		mMissing = new int[parityFrames];
+		mRows = new int[parityFrames];
+		mMatrix = new int[parityFrames][2 * parityFrames];
+	}
+
+	/**
+	 * 	keep a copy of a frame payload, from its position to its limit,
+	 * 	which are left untouched
+	 *
+	 * @return how many frames could be rebuilt because of it
+	 */
+	public int addData(int sequence, ByteBuffer payload) {
+		int length = payload.remaining();
+		if (length > mBlockSize - Fec.LENGTH_SIZE)
+			return 0;
+		Group group = getGroup(Fec.getGroupSequence(sequence, mDataFrames));
+		if (group == null || group.done)
+			return 0;
+		int column = sequence - group.sequence;
+		if (group.present[column])
+			return 0;
+
+		byte[] block = group.blocks[column];
+		block[0] = (byte) (length >> 8);
+		block[1] = (byte) length;
+		int position = payload.position();
+		payload.get(block, Fec.LENGTH_SIZE, length);
+		payload.position(position);
+		group.lengths[column] = Fec.LENGTH_SIZE + length;
+		group.present[column] = true;
+		group.dataCount++;
+		return tryRecover(group);
+	}
+
+	/**
+	 * 	keep a copy of a parity payload, see {@link #addData}
+	 */
+	public int addParity(int groupSequence, int index, ByteBuffer payload) {
+		int length = payload.remaining();
+		if (index < 0 || index >= mParityFrames || length > mBlockSize || length < Fec.LENGTH_SIZE)
+			return 0;
+		Group group = getGroup(groupSequence);
+		int packet = mDataFrames + index;
+		if (group == null || group.done || group.present[packet])
+			return 0;
+
+		int position = payload.position();
+		payload.get(group.blocks[packet], 0, length);
+		payload.position(position);
+		group.lengths[packet] = length;
+		group.present[packet] = true;
+		group.parityCount++;
+		return tryRecover(group);
+	}
+
+	/**
+	 * 	the sequence of a frame rebuilt by the last add, i is less than
+	 * 	what the add returned
+	 */
+	public int getRecoveredSequence(int i) {
+		return mRecoveredGroup.sequence + mMissing[i];
+	}
+
+	/**
+	 * 	copy a frame rebuilt by the last add into dst from its position,
+	 * 	the limit is set at the end of it
+	 */
+	public void getRecovered(int i, ByteBuffer dst) {
+		int column = mMissing[i];
+		byte[] block = mRecoveredGroup.blocks[column];
+		int length = mRecoveredGroup.lengths[column] - Fec.LENGTH_SIZE;
+		dst.limit(dst.position() + length);
+		dst.put(block, Fec.LENGTH_SIZE, length);
+		dst.position(dst.position() - length);
+	}
+
+	/**
+	 * 	frames rebuilt so far
+	 */
+	public long getRecoveredTotal() {
+		return mRecoveredTotal;
+	}
+
+	/**
+	 * @return null if the group is older than the one in its slot
+	 */
+	private Group getGroup(int sequence) {
+		Group group = mGroups[(sequence & Integer.MAX_VALUE) / mDataFrames % GROUPS];
+		if (group.active && group.sequence == sequence)
+			return group;
+		if (group.active && sequence - group.sequence < 0)
+			return null;
+		group.reset(sequence);
+		return group;
+	}
+
+	private int tryRecover(Group group) {
+		int missing = mDataFrames - group.dataCount;
+		if (missing == 0) {
+			group.done = true;
+			return 0;
+		}
+		if (group.parityCount < missing)
+			return 0;
+
+		// the parity is as long as the longest block, the shorter ones
+		// count as zero padded
+		int e = 0;
+		int rows = 0;
+		int length = 0;
+		for (int j = 0; j < mDataFrames; j++) {
+			if (!group.present[j])
+				mMissing[e++] = j;
+		}
+		for (int r = 0; r < mParityFrames && rows < e; r++) {
+			if (group.present[mDataFrames + r]) {
+				mRows[rows++] = r;
+				length = group.lengths[mDataFrames + r];
+			}
+		}
+		for (int j = 0; j < mDataFrames; j++) {
+			if (group.present[j] && group.lengths[j] < length)
+				Arrays.fill(group.blocks[j], group.lengths[j], length, (byte) 0);
+		}
+
+		// take the known frames out of the parity, what's left is the
+		// missing frames times their coefficients
+		for (int a = 0; a < e; a++) {
+			int row = mRows[a];
+			byte[] parity = group.blocks[mDataFrames + row];
+			for (int j = 0; j < mDataFrames; j++) {
+				if (group.present[j])
+					Fec.mulAdd(parity, 0, group.blocks[j], 0, length, mCoefficients[row][j]);
+			}
+			for (int b = 0; b < e; b++) {
+				mMatrix[a][b] = mCoefficients[row][mMissing[b]];
+				mMatrix[a][e + b] = a == b ? 1 : 0;
+			}
+		}
+		invert(e);
+
+		group.done = true;
+		for (int b = 0; b < e; b++) {
+			byte[] block = group.blocks[mMissing[b]];
+			Arrays.fill(block, 0, length, (byte) 0);
+			for (int a = 0; a < e; a++) {
+				Fec.mulAdd(block, 0, group.blocks[mDataFrames + mRows[a]], 0, length, mMatrix[b][e + a]);
+			}
+			int blockLength = Fec.LENGTH_SIZE + (((block[0] & 0xff) << 8) | (block[1] & 0xff));
+			if (blockLength > length)
+				return 0;
+			group.lengths[mMissing[b]] = blockLength;
+		}
+
+		mRecoveredGroup = group;
+		mRecoveredTotal += e;
+		return e;
+	}
+
+	/**
+	 * 	gauss jordan on the e x e matrix, the inverse ends up on the right
+	 * 	half. the cauchy sub matrices are never singular
+	 */
+	private void invert(int e) {
+		for (int c = 0; c < e; c++) {
+			int pivot = c;
+			while (mMatrix[pivot][c] == 0) {
+				pivot++;
+			}
+			int[] swap = mMatrix[pivot];
+			mMatrix[pivot] = mMatrix[c];
+			mMatrix[c] = swap;
+
+			int[] row = mMatrix[c];
+			int scale = Fec.div(1, row[c]);
+			for (int k = 0; k < 2 * e; k++) {
+				row[k] = Fec.mul(row[k], scale);
+			}
+			for (int r = 0; r < e; r++) {
+				int factor = mMatrix[r][c];
+				if (r == c || factor == 0)
+					continue;
+				for (int k = 0; k < 2 * e; k++) {
+					mMatrix[r][k] ^= Fec.mul(factor, row[k]);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.lelloman.audiostreamlistener.fec;
+
+import java.util.Arrays;
+
+/**
+ * 	the server side of {@link Fec}, the frames of a group are added
+ * 	one by one and folded into the parity straight away, nothing is
+ * 	kept of them and nothing is allocated per frame
+ */
+public class FecEncoder {
+
+	private final int mDataFrames;
+	private final int mParityFrames;
+	private final byte[][] mParity;
+	// the coefficients of each parity row
+	private final int[][] mCoefficients;
+	// frames added to the current group, -1 until one starts, and its longest block
+	private int mCount = -1;
+	private int mLength;
+
+	public FecEncoder(int scheme, int dataFrames, int parityFrames, int maxPayloadSize) {
+		Fec.checkGroup(scheme, dataFrames, parityFrames);
+		mDataFrames = dataFrames;
+		mParityFrames = parityFrames;
+		mParity = new byte[parityFrames][Fec.getMaxParitySize(maxPayloadSize)];
+		mCoefficients = new int[parityFrames][dataFrames];
+		for (int r = 0; r < parityFrames; r++) {
+			for (int j = 0; j < dataFrames; j++) {
+				mCoefficients[r][j] = Fec.coefficient(r, j, dataFrames);
+			}
+		}
+	}
+
+	public int getDataFrames() {
+		return mDataFrames;
+	}
+
+	public int getParityFrames() {
+		return mParityFrames;
+	}
+
+	/**
+	 * 	add the payload of a frame, the groups start at the sequences
+	 * 	multiple of the data frames like the client expects, a group
+	 * 	whose first frames were missed is skipped
+	 *
+	 * @return true when the group is complete and the parity can be written
+	 */
+	public boolean add(int sequence, byte[] payload, int offset, int length) {
+		int column = (sequence & Integer.MAX_VALUE) % mDataFrames;
+		if (column == 0) {
+			for (int r = 0; r < mParityFrames; r++) {
+				Arrays.fill(mParity[r], 0, mLength, (byte) 0);
+			}
+			mLength = 0;
+			mCount = 0;
+		}
+		if (mCount != column)
+			return false;
+
+		for (int r = 0; r < mParityFrames; r++) {
+			byte[] parity = mParity[r];
+			int coefficient = mCoefficients[r][column];
+			parity[0] ^= Fec.mul(coefficient, (length >> 8) & 0xff);
+			parity[1] ^= Fec.mul(coefficient, length & 0xff);
+			Fec.mulAdd(parity, Fec.LENGTH_SIZE, payload, offset, length, coefficient);
+		}
+		mLength = Math.max(mLength, Fec.LENGTH_SIZE + length);
+		return ++mCount == mDataFrames;
+	}
+
+	/**
+	 * 	write a parity payload of the complete group at offset
+	 *
+	 * @return the bytes written
+	 */
+	public int writeParity(int index, byte[] dst, int offset) {
+		System.arraycopy(mParity[index], 0, dst, offset, mLength);
+		return mLength;
+	}
+}
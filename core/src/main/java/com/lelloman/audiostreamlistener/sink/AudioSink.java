@@ -0,0 +1,66 @@
+package com.lelloman.audiostreamlistener.sink;
+
+import com.lelloman.audiostreamlistener.threading.AudioClient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 	where the {@link com.lelloman.audiostreamlistener.threading.AudioPlayer}
+ * 	writes the pcm, an AudioTrack on the phone, a file, the sound card or
+ * 	nothing at all on a plain jvm.
+ * 	it's used by the player thread only, from open() to close()
+ */
+public interface AudioSink {
+
+	/**
+	 * 	whether the sink plays the given format, one of the FORMAT_
+	 * 	constants, and channels as they are, the stream is converted
+	 * 	to one that it does
+	 */
+	boolean supports(int bitDepth, int channels);
+
+	/**
+	 * 	get ready for the stream
+	 *
+	 * @param minBufferSize bytes the sink should be able to hold, so that
+	 * 	the non blocking writes have room to land, and the most
+	 * 	{@link #setBufferSize(int)} is asked for
+	 */
+	void open(AudioClient.StreamConfig streamConfig, int minBufferSize) throws IOException;
+
+	void play();
+
+	/**
+	 * 	write up to size bytes from the position of data without
+	 * 	blocking, the position is moved past the bytes accepted
+	 *
+	 * @return the bytes accepted, 0 when the sink is full, negative on error
+	 */
+	int write(ByteBuffer data, int size);
+
+	/**
+	 * 	samples of each channel played since play(), a 32 bit counter
+	 * 	that wraps around like the AudioTrack one
+	 */
+	int getPlaybackHeadPosition();
+
+	/**
+	 * 	times the sink ran out of pcm since open(), -1 if it can't tell
+	 */
+	int getUnderrunCount();
+
+	/**
+	 * 	use only size bytes of the buffer, the writes are accepted as
+	 * 	long as less than that is queued
+	 *
+	 * @return the bytes the sink uses now, which can be different from
+	 * 	the ones asked for, the same as always if it can't resize
+	 */
+	int setBufferSize(int size);
+
+	/**
+	 * 	stop and release everything, the sink can't be used until it's opened again
+	 */
+	void close();
+}
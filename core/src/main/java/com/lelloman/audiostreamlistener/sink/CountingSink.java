@@ -0,0 +1,81 @@
+package com.lelloman.audiostreamlistener.sink;
+
+import com.lelloman.audiostreamlistener.threading.AudioClient;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 	like {@link NullSink} but it reads every byte, like the copy
+ * 	into a real sink would, and counts what it gets.
+ * 	the counters can be read from any thread
+ */
+public class CountingSink implements AudioSink {
+
+	private int mSampleFrameSize = 1;
+	private volatile long mBytes;
+	private volatile long mWrites;
+	private volatile int mChecksum;
+
+	@Override
+	public boolean supports(int bitDepth, int channels) {
+		return true;
+	}
+
+	@Override
+	public void open(AudioClient.StreamConfig streamConfig, int minBufferSize) {
+		mSampleFrameSize = streamConfig.getSampleFrameSize();
+	}
+
+	@Override
+	public void play() {
+	}
+
+	@Override
+	public int write(ByteBuffer data, int size) {
+		int checksum = mChecksum;
+		int end = data.position() + size;
+		for (int i = data.position(); i < end; i++) {
+			checksum = 31 * checksum + data.get(i);
+		}
+		data.position(end);
+
+		mChecksum = checksum;
+		mBytes += size;
+		mWrites++;
+		return size;
+	}
+
+	@Override
+	public int getPlaybackHeadPosition() {
+		return (int) (mBytes / mSampleFrameSize);
+	}
+
+	@Override
+	public int getUnderrunCount() {
+		return 0;
+	}
+
+	@Override
+	public int setBufferSize(int size) {
+		return size;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	public long getBytes() {
+		return mBytes;
+	}
+
+	public long getWrites() {
+		return mWrites;
+	}
+
+	/**
+	 * 	hash of all the bytes written, in order
+	 */
+	public int getChecksum() {
+		return mChecksum;
+	}
+}
@@ -0,0 +1,100 @@
+package com.lelloman.audiostreamlistener.sink;
+
+import com.lelloman.audiostreamlistener.threading.AudioClient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_FLOAT;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_8;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * 	plays through the default javax.sound output, the writes take
+ * 	only what the line has room for so they never block. it's not
+ * 	available on android
+ */
+public class JavaSoundSink implements AudioSink {
+
+	private SourceDataLine mLine;
+	private byte[] mScratch;
+	private int mSampleFrameSize;
+	// the line buffer can't be resized, the writes are capped instead
+	private int mBufferSize;
+
+	@Override
+	public boolean supports(int bitDepth, int channels) {
+		return AudioSystem.isLineSupported(new DataLine.Info(SourceDataLine.class, getFormat(44100, bitDepth, channels)));
+	}
+
+	@Override
+	public void open(AudioClient.StreamConfig streamConfig, int minBufferSize) throws IOException {
+		mSampleFrameSize = streamConfig.getSampleFrameSize();
+		AudioFormat format = getFormat(streamConfig.sampleRate, streamConfig.bitDepth, streamConfig.channels);
+		try {
+			mLine = AudioSystem.getSourceDataLine(format);
+			mLine.open(format, Math.max(minBufferSize, streamConfig.bufferSize) / mSampleFrameSize * mSampleFrameSize);
+		} catch (LineUnavailableException | IllegalArgumentException e) {
+			throw new IOException("can't open the audio line", e);
+		}
+		mScratch = new byte[mLine.getBufferSize()];
+		mBufferSize = mScratch.length;
+	}
+
+	@Override
+	public void play() {
+		mLine.start();
+	}
+
+	@Override
+	public int write(ByteBuffer data, int size) {
+		int available = mLine.available();
+		int queued = mScratch.length - available;
+		int length = Math.min(size, Math.min(available, mBufferSize - queued));
+		length -= length % mSampleFrameSize;
+		if (length <= 0)
+			return 0;
+
+		data.get(mScratch, 0, length);
+		return mLine.write(mScratch, 0, length);
+	}
+
+	@Override
+	public int getPlaybackHeadPosition() {
+		return (int) mLine.getLongFramePosition();
+	}
+
+	@Override
+	public int getUnderrunCount() {
+		return -1;
+	}
+
+	@Override
+	public int setBufferSize(int size) {
+		mBufferSize = Math.max(mSampleFrameSize, Math.min(size, mScratch.length)) / mSampleFrameSize * mSampleFrameSize;
+		return mBufferSize;
+	}
+
+	@Override
+	public void close() {
+		if (mLine == null)
+			return;
+		mLine.stop();
+		mLine.close();
+		mLine = null;
+	}
+
+	/**
+	 * 	8 bit pcm is unsigned, the rest is signed little endian
+	 */
+	private static AudioFormat getFormat(float sampleRate, int bitDepth, int channels) {
+		AudioFormat.Encoding encoding = bitDepth == FORMAT_FLOAT ? AudioFormat.Encoding.PCM_FLOAT
+				: bitDepth == FORMAT_PCM_8 ? AudioFormat.Encoding.PCM_UNSIGNED : AudioFormat.Encoding.PCM_SIGNED;
+		return new AudioFormat(encoding, sampleRate, bitDepth * 8, channels, bitDepth * channels, sampleRate, false);
+	}
+}
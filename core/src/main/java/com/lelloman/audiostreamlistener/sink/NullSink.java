@@ -0,0 +1,55 @@
+package com.lelloman.audiostreamlistener.sink;
+
+import com.lelloman.audiostreamlistener.threading.AudioClient;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 	takes everything at once and throws it away, as if it
+ * 	was played instantly, for benchmarks and soak tests
+ */
+public class NullSink implements AudioSink {
+
+	private int mSampleFrameSize = 1;
+	private long mBytes;
+
+	@Override
+	public boolean supports(int bitDepth, int channels) {
+		return true;
+	}
+
+	@Override
+	public void open(AudioClient.StreamConfig streamConfig, int minBufferSize) {
+		mSampleFrameSize = streamConfig.getSampleFrameSize();
+	}
+
+	@Override
+	public void play() {
+	}
+
+	@Override
+	public int write(ByteBuffer data, int size) {
+		data.position(data.position() + size);
+		mBytes += size;
+		return size;
+	}
+
+	@Override
+	public int getPlaybackHeadPosition() {
+		return (int) (mBytes / mSampleFrameSize);
+	}
+
+	@Override
+	public int getUnderrunCount() {
+		return 0;
+	}
+
+	@Override
+	public int setBufferSize(int size) {
+		return size;
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,121 @@
+package com.lelloman.audiostreamlistener.sink;
+
+import com.lelloman.audiostreamlistener.threading.AudioClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_FLOAT;
+import static com.lelloman.audiostreamlistener.Constants.MAX_CHANNELS;
+
+/**
+ * 	records the stream in a wav file, in the format and channels of
+ * 	the stream, the sizes in the header are filled in on close().
+ * 	it takes everything at once like {@link NullSink}
+ */
+public class WavFileSink implements AudioSink {
+
+	private static final int HEADER_SIZE = 44;
+	private static final short WAVE_FORMAT_PCM = 1;
+	private static final short WAVE_FORMAT_IEEE_FLOAT = 3;
+
+	private final File mFile;
+	private RandomAccessFile mRandomAccessFile;
+	private FileChannel mChannel;
+	private int mSampleRate;
+	private int mBitDepth = 1;
+	private int mChannels = 1;
+	private long mBytes;
+
+	public WavFileSink(File file) {
+		mFile = file;
+	}
+
+	@Override
+	public boolean supports(int bitDepth, int channels) {
+		return channels <= MAX_CHANNELS;
+	}
+
+	@Override
+	public void open(AudioClient.StreamConfig streamConfig, int minBufferSize) throws IOException {
+		mSampleRate = streamConfig.sampleRate;
+		mBitDepth = streamConfig.bitDepth;
+		mChannels = streamConfig.channels;
+		mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+		mRandomAccessFile.setLength(0);
+		mChannel = mRandomAccessFile.getChannel();
+		writeHeader(0);
+	}
+
+	@Override
+	public void play() {
+	}
+
+	@Override
+	public int write(ByteBuffer data, int size) {
+		int limit = data.limit();
+		data.limit(data.position() + size);
+		try {
+			while (data.hasRemaining()) {
+				mChannel.write(data);
+			}
+		} catch (IOException e) {
+			data.limit(limit);
+			return -1;
+		}
+		data.limit(limit);
+		mBytes += size;
+		return size;
+	}
+
+	@Override
+	public int getPlaybackHeadPosition() {
+		return (int) (mBytes / (mBitDepth * mChannels));
+	}
+
+	@Override
+	public int getUnderrunCount() {
+		return 0;
+	}
+
+	@Override
+	public int setBufferSize(int size) {
+		return size;
+	}
+
+	@Override
+	public void close() {
+		if (mChannel == null)
+			return;
+		try {
+			mChannel.position(0);
+			writeHeader(mBytes);
+			mRandomAccessFile.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		mChannel = null;
+	}
+
+	private void writeHeader(long dataSize) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		int blockAlign = mBitDepth * mChannels;
+		int size = (int) Math.min(dataSize, Integer.MAX_VALUE - HEADER_SIZE);
+		header.put("RIFF".getBytes("US-ASCII")).putInt(HEADER_SIZE - 8 + size).put("WAVE".getBytes("US-ASCII"));
+		header.put("fmt ".getBytes("US-ASCII")).putInt(16)
+				.putShort(mBitDepth == FORMAT_FLOAT ? WAVE_FORMAT_IEEE_FLOAT : WAVE_FORMAT_PCM)
+				.putShort((short) mChannels)
+				.putInt(mSampleRate)
+				.putInt(mSampleRate * blockAlign)
+				.putShort((short) blockAlign)
+				.putShort((short) (mBitDepth * 8));
+		header.put("data".getBytes("US-ASCII")).putInt(size);
+		header.flip();
+		mChannel.write(header, 0);
+		mChannel.position(HEADER_SIZE + mBytes);
+	}
+}
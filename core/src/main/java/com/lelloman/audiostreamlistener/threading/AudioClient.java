@@ -0,0 +1,941 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import com.lelloman.audiostreamlistener.Logger;
+import com.lelloman.audiostreamlistener.audio.LossConcealer;
+import com.lelloman.audiostreamlistener.audio.OutputBufferController;
+import com.lelloman.audiostreamlistener.codec.FrameDecoder;
+import com.lelloman.audiostreamlistener.fec.Fec;
+import com.lelloman.audiostreamlistener.fec.FecDecoder;
+import com.lelloman.audiostreamlistener.sink.AudioSink;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.DEFAULT_AUTO_DRIFT;
+import static com.lelloman.audiostreamlistener.Constants.DEFAULT_MTU;
+import static com.lelloman.audiostreamlistener.Constants.DEFAULT_SKIP_FRAME;
+import static com.lelloman.audiostreamlistener.Constants.CODEC_PCM;
+import static com.lelloman.audiostreamlistener.Constants.DEFAULT_TARGET_LATENCY_MS;
+import static com.lelloman.audiostreamlistener.Constants.EXT_CHANNELS;
+import static com.lelloman.audiostreamlistener.Constants.EXT_CODEC;
+import static com.lelloman.audiostreamlistener.Constants.EXT_FEC;
+import static com.lelloman.audiostreamlistener.Constants.EXT_FEC_GROUP;
+import static com.lelloman.audiostreamlistener.Constants.EXT_NACK;
+import static com.lelloman.audiostreamlistener.Constants.EXT_FRAME_HEADER;
+import static com.lelloman.audiostreamlistener.Constants.EXT_MAX_DATAGRAM;
+import static com.lelloman.audiostreamlistener.Constants.EXT_SAMPLE_FORMAT;
+import static com.lelloman.audiostreamlistener.Constants.EXT_SESSION;
+import static com.lelloman.audiostreamlistener.Constants.FEC_NONE;
+import static com.lelloman.audiostreamlistener.Constants.FEC_REED_SOLOMON;
+import static com.lelloman.audiostreamlistener.Constants.FEC_XOR;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_FLOAT;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_16;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_24;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_8;
+import static com.lelloman.audiostreamlistener.Constants.FRAGMENT_SLOTS;
+import static com.lelloman.audiostreamlistener.Constants.HANDSHAKE_ATTEMPTS;
+import static com.lelloman.audiostreamlistener.Constants.HANDSHAKE_TIMEOUT_MS;
+import static com.lelloman.audiostreamlistener.Constants.HANDSHAKE_VERSION;
+import static com.lelloman.audiostreamlistener.Constants.FRAME_POOL_SPARE;
+import static com.lelloman.audiostreamlistener.Constants.IPV4_UDP_OVERHEAD;
+import static com.lelloman.audiostreamlistener.Constants.IPV6_UDP_OVERHEAD;
+import static com.lelloman.audiostreamlistener.Constants.JITTER_BUFFER_CAPACITY;
+import static com.lelloman.audiostreamlistener.Constants.MAX_CHANNELS;
+import static com.lelloman.audiostreamlistener.Constants.MAX_OUTPUT_LATENCY_MS;
+import static com.lelloman.audiostreamlistener.Constants.MSG_HELLO;
+import static com.lelloman.audiostreamlistener.Constants.MSG_START_STREAM;
+import static com.lelloman.audiostreamlistener.Constants.MSG_STREAM_INFO;
+import static com.lelloman.audiostreamlistener.Constants.MSG_WELCOME;
+import static com.lelloman.audiostreamlistener.Constants.REORDER_WINDOW;
+import static com.lelloman.audiostreamlistener.Constants.SO_TIMEOUT;
+import static com.lelloman.audiostreamlistener.Constants.START_LATENCY_MS;
+import static com.lelloman.audiostreamlistener.Constants.STREAM_INFO_MAX_SIZE;
+import static com.lelloman.audiostreamlistener.Constants.WRITE_BATCH_MS;
+import static com.lelloman.audiostreamlistener.Constants.MAX_SO_TIMEOUT_COUNT;
+
+/**
+	Request a {@link StreamConfig} to the given address and
+ 	on success it starts listening on a socket and queue all
+ 	the packets in a {@link JitterBuffer} which is drained into
+ 	an {@link AudioSink} by an {@link AudioPlayer}.
+ 	packets are received in {@link FramePool} direct buffers which
+ 	go all the way to the sink, nothing is allocated per packet
+ */
+public class AudioClient extends Thread {
+
+	public interface AudioClientListener {
+		void onConnectionClosed();
+		void onStreamConfigReceived(StreamConfig streamConfig);
+		// latencyMs is the mouth to ear estimate, -1 until there's one
+		void onStatsUpdate(long byteCount, long durationMs, float latencyMs);
+		// the phases of the startup up to the first pcm written to the sink
+		void onFirstAudio(StartupTimer startupTimer);
+	}
+
+	public static final String TAG = AudioClient.class.getSimpleName();
+
+	private static final int STREAM_INFO_TIMEOUT = 1000;
+	// the stream is converted from any of these
+	private static final int[] SUPPORTED_FORMATS = {FORMAT_PCM_8, FORMAT_PCM_16, FORMAT_PCM_24, FORMAT_FLOAT};
+
+	// the addresses resolved so far, and the config of the last stream
+	// from each server, the next connection to it prepares the sink and
+	// the buffers with that one while the handshake is in flight, and
+	// doesn't wait for the handshake if the server is still in the same
+	// session
+	private static final Map<String, InetAddress> sResolvedAddresses = new ConcurrentHashMap<>();
+	private static final Map<String, StreamConfig> sLastStreamConfigs = new ConcurrentHashMap<>();
+	private static final Map<String, Integer> sLastSessionTokens = new ConcurrentHashMap<>();
+
+	// actually play the PCM stream
+	private final AudioSink mSink;
+	// absorb the network jitter between receiving and playing
+	private JitterBuffer mJitterBuffer;
+	// write the frames to the sink in its own thread
+	private AudioPlayer mAudioPlayer;
+	// batches the writes to the sink
+	private WriteScheduler mWriteScheduler;
+	private OutputBufferController mOutputBufferController;
+	// used to communicate with the server
+	private volatile UdpChannel mChannel;
+	// audio stream configuration values
+	private StreamConfig mStreamConfig;
+	// what the sink plays, the stream converted if it has to
+	private StreamConfig mPlayConfig;
+
+	// target server info
+	private final String mAddress;
+	private InetSocketAddress mServerAddress;
+	private final int mPort;
+
+	// the buffers the packets are received in
+	private FramePool mFramePool;
+	// takes the packets from the channel to the jitter buffer
+	private FrameReceiver mFrameReceiver;
+	// for the control messages
+	private final ByteBuffer mControlBuffer = ByteBuffer.allocate(STREAM_INFO_MAX_SIZE);
+	// compensate the clock drift by resampling or skipping frames
+	private boolean mAutoDrift;
+	// prevent over buffering the sink
+	private int mSkipFrameEveryTot;
+	// the jitter buffer aims for this latency at least
+	private int mTargetLatencyMs;
+	// how lost frames are replaced, one of the LossConcealer strategies
+	private int mLossConcealment = LossConcealer.WSOLA;
+	// the frames bigger than a datagram of this mtu come in fragments,
+	// 0 for the one of the interface the server is reached through
+	private int mMtu;
+	// number of byte received
+	private long byteCount;
+	// when each phase of the startup ended
+	private final StartupTimer mStartupTimer = new StartupTimer();
+	// the stream the sink and the frame pool are ready for, null if none
+	private volatile StreamConfig mPreparedConfig;
+	// the session of the server the stream config belongs to, 0 if unknown
+	private int mSessionToken;
+	// the session the server is in now, just heard in discovery, 0 if unknown
+	private int mCurrentSessionToken;
+
+	private final AudioClientListener mListener;
+
+	public AudioClient(String address, int port, AudioSink sink, AudioClientListener listener) {
+		super();
+		mSink = sink;
+		mListener = listener;
+		mAddress = address;
+		mPort = port;
+		mAutoDrift = DEFAULT_AUTO_DRIFT;
+		mSkipFrameEveryTot = DEFAULT_SKIP_FRAME;
+		mTargetLatencyMs = DEFAULT_TARGET_LATENCY_MS;
+	}
+
+	public void kill() {
+		if (mAudioPlayer != null)
+			mAudioPlayer.kill();
+
+		closeChannel();
+	}
+
+	/**
+	 * the main thing
+	 */
+	@Override
+	public void run() {
+		try {
+			log("attempting connection to %s:%s",mAddress,mPort);
+			// do this here otherwise the constructor throws an error
+			mServerAddress = new InetSocketAddress(resolve(mAddress), mPort);
+			mStartupTimer.mark(StartupTimer.RESOLVED);
+
+			// the sink takes a while to open, it's prepared for the last
+			// stream from this server in the meantime
+			String serverKey = mAddress + ":" + mPort;
+			final StreamConfig lastStreamConfig = sLastStreamConfigs.get(serverKey);
+			Thread prepareThread = null;
+			if (lastStreamConfig != null) {
+				prepareThread = new Thread(TAG + " prepare") {
+					@Override
+					public void run() {
+						prepare(lastStreamConfig);
+					}
+				};
+				prepareThread.start();
+			}
+
+			// the same socket for the handshake and the stream,
+			// the server is streaming as soon as it answers
+			mChannel = new UdpChannel();
+			Integer lastSessionToken = sLastSessionTokens.get(serverKey);
+			SessionResume sessionResume = resumeSession(lastStreamConfig, lastSessionToken);
+			if (sessionResume != null) {
+				// until the welcome tells
+				mStreamConfig = lastStreamConfig;
+				mSessionToken = lastSessionToken;
+			} else {
+				mStreamConfig = handshake();
+			}
+			if (mStreamConfig == null) {
+				// an older server, it starts streaming on request
+				mStreamConfig = getStreamConfig();
+				if (mStreamConfig != null)
+					sendRequestStartStream();
+			}
+			if (prepareThread != null)
+				prepareThread.join();
+			if(mStreamConfig == null) {
+				// a cached address might be stale
+				sResolvedAddresses.remove(mAddress);
+				closeSink();
+				closeChannel();
+				mListener.onConnectionClosed();
+				return;
+			}
+			while (stream(serverKey, sessionResume)) {
+				// the server streams the config of the welcome to this
+				// socket already, the pipeline is built again for it
+				if (sessionResume.getStreamConfig() == null)
+					throw new IOException("can't read the welcome");
+				mAudioPlayer.kill();
+				mAudioPlayer.join();
+				mAudioPlayer = null;
+				// the player closed the sink
+				mPreparedConfig = null;
+				mStreamConfig = sessionResume.getStreamConfig();
+				mSessionToken = sessionResume.getSessionToken();
+				sessionResume = null;
+			}
+
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		closeChannel();
+
+		if (mAudioPlayer != null)
+			mAudioPlayer.kill();
+		else
+			closeSink();
+
+		mListener.onConnectionClosed();
+	}
+
+	/**
+	 * 	build the pipeline for mStreamConfig and receive the stream into
+	 * 	it until the connection ends
+	 *
+	 * @param sessionResume null unless the welcome is still to be checked
+	 * @return true if the welcome has another config, the pipeline is
+	 * left running
+	 */
+	private boolean stream(String serverKey, SessionResume sessionResume) throws IOException {
+		mStartupTimer.mark(StartupTimer.HANDSHAKE);
+		sLastStreamConfigs.put(serverKey, mStreamConfig);
+		if (mSessionToken != 0)
+			sLastSessionTokens.put(serverKey, mSessionToken);
+		else
+			sLastSessionTokens.remove(serverKey);
+		mListener.onStreamConfigReceived(mStreamConfig);
+		mChannel.setReceiveBufferSize(mStreamConfig.getDatagramSize() * JITTER_BUFFER_CAPACITY);
+
+		if (!mStreamConfig.equals(mPreparedConfig)) {
+			if (mPreparedConfig != null)
+				log("the stream changed since last time, preparing again");
+			closeSink();
+			prepare(mStreamConfig);
+		}
+		if (mPreparedConfig == null)
+			throw new IOException("can't open the sink");
+		mStartupTimer.mark(StartupTimer.SINK_READY);
+
+		boolean fragmented = mStreamConfig.fragmentSize > 0;
+		mJitterBuffer = new JitterBuffer(JITTER_BUFFER_CAPACITY, mFramePool,
+				mStreamConfig.getFrameDurationNanos(), mTargetLatencyMs, REORDER_WINDOW);
+		// the parity of a group has to arrive before its first frame is due
+		if (mStreamConfig.fecScheme != FEC_NONE)
+			mJitterBuffer.setMinTargetDepth(mStreamConfig.fecDataFrames + 1);
+		mJitterBuffer.setStartDepth((int) Math.ceil(TimeUnit.MILLISECONDS.toNanos(START_LATENCY_MS)
+				/ (double) mStreamConfig.getFrameDurationNanos()));
+		// the latency needs the frame timestamps
+		ClockSync clockSync = mStreamConfig.headerVersion > 0 ? new ClockSync(mChannel, mServerAddress) : null;
+		LossConcealer lossConcealer = LossConcealer.create(mLossConcealment, mPlayConfig.sampleRate,
+				mPlayConfig.bitDepth, mPlayConfig.channels, mPlayConfig.bufferSize);
+		FrameDecoder decoder = FrameDecoder.create(mStreamConfig.codec, mStreamConfig.bufferSize / mStreamConfig.bitDepth);
+		mAudioPlayer = new AudioPlayer(mSink, mWriteScheduler, mStreamConfig, mPlayConfig,
+				mJitterBuffer, mFramePool, decoder, lossConcealer);
+		mAudioPlayer.setAutoDrift(mAutoDrift);
+		mAudioPlayer.setSkipFrameEveryTot(mSkipFrameEveryTot);
+		mAudioPlayer.setStartupTimer(mStartupTimer);
+		mAudioPlayer.setOutputBufferController(mOutputBufferController);
+		mAudioPlayer.setClockSync(clockSync);
+		mAudioPlayer.start();
+
+		mFrameReceiver = new FrameReceiver(mChannel, mFramePool, mJitterBuffer,
+				mStreamConfig.getDatagramSize(), mStreamConfig.headerVersion);
+		if (mStreamConfig.fecScheme != FEC_NONE)
+			mFrameReceiver.setFecDecoder(new FecDecoder(mStreamConfig.fecScheme, mStreamConfig.fecDataFrames,
+					mStreamConfig.fecParityFrames, mStreamConfig.getPayloadSize()));
+		if (fragmented)
+			mFrameReceiver.setFragmentAssembler(new FragmentAssembler(mFramePool, mStreamConfig.fragmentSize,
+					FRAGMENT_SLOTS), mStreamConfig.fragmentSize);
+		NackScheduler nackScheduler = null;
+		if (mStreamConfig.nackHistory > 0) {
+			nackScheduler = new NackScheduler(mChannel, mServerAddress, mJitterBuffer,
+					mStreamConfig.getFrameDurationNanos());
+			mFrameReceiver.setNackScheduler(nackScheduler);
+		}
+		mFrameReceiver.setClockSync(clockSync);
+		mFrameReceiver.setSessionResume(sessionResume);
+
+		// to send regular updates with stat
+		// to the listener
+		int byteCountCursor = 0;
+
+		// tolerate errors every now and then
+		int errorCount = 0;
+		long lastErrorTime = 0;
+		long startTime = System.currentTimeMillis();
+		boolean firstAudioReported = false;
+
+		// if the connection times out too may times in
+		// a short period of time consider it closed
+		while (errorCount < MAX_SO_TIMEOUT_COUNT) {
+			// listen for incoming packets and queue
+			// them, the player will pick them up
+			int length = mFrameReceiver.receive(SO_TIMEOUT);
+			if (clockSync != null)
+				clockSync.poll(System.nanoTime());
+			if (sessionResume != null) {
+				if (sessionResume.isRejected()) {
+					log("resumeSession() the welcome has another config, starting again");
+					return true;
+				}
+				if (sessionResume.isConfirmed()) {
+					log("resumeSession() welcome after %s hellos", sessionResume.getAttempts());
+					if (sessionResume.getSessionToken() != mSessionToken) {
+						// a new session with the same config
+						mSessionToken = sessionResume.getSessionToken();
+						sLastSessionTokens.put(serverKey, mSessionToken);
+						mListener.onStreamConfigReceived(mStreamConfig);
+					}
+					sessionResume = null;
+				} else {
+					sessionResume.poll(System.nanoTime());
+				}
+			}
+			if (length >= 0) {
+				if (mStartupTimer.mark(StartupTimer.FIRST_FRAME)) {
+					log("%s", mStartupTimer);
+				} else if (!firstAudioReported && mStartupTimer.isMarked(StartupTimer.FIRST_AUDIO)) {
+					firstAudioReported = true;
+					log("%s", mStartupTimer);
+					mListener.onFirstAudio(mStartupTimer);
+				}
+				// update stats
+				byteCount += length;
+				if(++byteCountCursor >= 100){
+					mListener.onStatsUpdate(byteCount, System.currentTimeMillis() - startTime,
+							mAudioPlayer.getLatencyMs());
+					log("jitter %.1f ms depth %s/%s underruns %s dropped %s lost %s late %s dup %s reordered %s",
+							mJitterBuffer.getJitterMs(), mJitterBuffer.getDepth(), mJitterBuffer.getTargetDepth(),
+							mJitterBuffer.getUnderrunCount(), mJitterBuffer.getDroppedCount(), mJitterBuffer.getLostCount(),
+							mJitterBuffer.getLateCount(), mJitterBuffer.getDuplicateCount(), mJitterBuffer.getReorderedCount());
+					log("pool misses %s invalid %s recovered %s incomplete %s", mFrameReceiver.getPoolMissCount(),
+							mFrameReceiver.getInvalidCount(), mFrameReceiver.getRecoveredCount(),
+							mFrameReceiver.getIncompleteCount());
+					if (nackScheduler != null)
+						log("nacks %s asked %s retransmitted %s too late %s rtt %.1f ms",
+								nackScheduler.getNackCount(), nackScheduler.getRequestedCount(),
+								nackScheduler.getRetransmittedCount(), nackScheduler.getTooLateCount(),
+								nackScheduler.getRttMs());
+					if (mAutoDrift)
+						log("drift %.0f ppm", mAudioPlayer.getDriftPpm());
+					log("writes %.0f/s batch %.1f frames %.0f bytes short %s stall %s ms",
+							mWriteScheduler.getWriteCallRate(), mWriteScheduler.getAverageBatchFrames(),
+							mWriteScheduler.getAverageBatchBytes(), mWriteScheduler.getShortWrites(),
+							mWriteScheduler.getStallMs());
+					log("output buffer %.1f ms underruns %s grown %s shrunk %s",
+							mOutputBufferController.getSize() * 1000f / mPlayConfig.sampleRate,
+							mOutputBufferController.getUnderrunCount(), mOutputBufferController.getGrowCount(),
+							mOutputBufferController.getShrinkCount());
+					if (clockSync != null && clockSync.isSynced())
+						log("latency %.1f ms clock offset %.1f ms rtt %.1f ms", mAudioPlayer.getLatencyMs(),
+								clockSync.getOffsetMs(), clockSync.getRttMs());
+					byteCountCursor = 0;
+				}
+
+			}else {
+				long now = System.currentTimeMillis();
+				if(now - lastErrorTime > 1000){
+					errorCount = 1;
+					log("error reset");
+				}else {
+					errorCount++;
+				}
+				lastErrorTime = now;
+				log("mChannel timeout n %s", errorCount);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 	the config of the last stream from the server, like one saved
+	 * 	from a previous run or read from discovery, for the next
+	 * 	connection to prepare for, with the session it belongs to or 0
+	 */
+	public static void setLastStreamConfig(String address, int port, StreamConfig streamConfig, int sessionToken) {
+		sLastStreamConfigs.put(address + ":" + port, streamConfig);
+		if (sessionToken != 0)
+			sLastSessionTokens.put(address + ":" + port, sessionToken);
+		else
+			sLastSessionTokens.remove(address + ":" + port);
+	}
+
+	/**
+	 * 	the session the server is in, from a pong or announcement just
+	 * 	received, not a saved one, the server might have restarted since.
+	 * 	if it's the one of the last stream config the stream starts without
+	 * 	waiting for the handshake. it has to be set before the client starts
+	 */
+	public void setSessionToken(int sessionToken) {
+		mCurrentSessionToken = sessionToken;
+	}
+
+	/**
+	 * 	the session of the current stream, 0 if the server has none
+	 */
+	public int getSessionToken() {
+		return mSessionToken;
+	}
+
+	/**
+	 * 	the startup phases so far
+	 */
+	public StartupTimer getStartupTimer() {
+		return mStartupTimer;
+	}
+
+	/**
+	 * 	the cached address if the host was resolved before
+	 */
+	private static InetAddress resolve(String host) throws IOException {
+		InetAddress address = sResolvedAddresses.get(host);
+		if (address == null) {
+			address = InetAddress.getByName(host);
+			sResolvedAddresses.put(host, address);
+		}
+		return address;
+	}
+
+	/**
+	 * 	open the sink and allocate the frame pool for the stream, it runs
+	 * 	alongside the handshake when the stream is guessed. the welcome
+	 * 	and the clock replies come in the pool buffers too, they can be
+	 * 	bigger than the frames
+	 */
+	private void prepare(StreamConfig streamConfig) {
+		try {
+			mPlayConfig = getPlayConfig(streamConfig);
+			openSink();
+			boolean fragmented = streamConfig.fragmentSize > 0;
+			mFramePool = new FramePool(JITTER_BUFFER_CAPACITY + FRAME_POOL_SPARE + (fragmented ? FRAGMENT_SLOTS : 0),
+					Math.max(streamConfig.getDatagramSize(), STREAM_INFO_MAX_SIZE));
+			mPreparedConfig = streamConfig;
+		} catch (Exception e) {
+			log("prepare() %s", e);
+		}
+	}
+
+	/**
+	 * 	if it was opened and the player didn't take it over
+	 */
+	private void closeSink() {
+		if (mPreparedConfig != null) {
+			mSink.close();
+			mPreparedConfig = null;
+		}
+	}
+
+	/**
+	 * 	the closest to the stream the sink plays: the same channels or
+	 * 	fewer, mixed down to stereo and then mono, the same format or
+	 * 	float for the 24 bit streams, which keeps all of their resolution,
+	 * 	or 16 bit as the last resort
+	 */
+	private StreamConfig getPlayConfig(StreamConfig streamConfig) {
+		int[] formats = {streamConfig.bitDepth, streamConfig.bitDepth > FORMAT_PCM_16 ? FORMAT_FLOAT : FORMAT_PCM_16, FORMAT_PCM_16};
+		int[] channels = {streamConfig.channels, Math.min(streamConfig.channels, 2), 1};
+		for (int c : channels) {
+			for (int format : formats) {
+				if (mSink.supports(format, c)) {
+					StreamConfig playConfig = streamConfig.convertedTo(format, c);
+					log("playing %s channels of format %s", c, format);
+					return playConfig;
+				}
+			}
+		}
+		throw new IllegalStateException("the sink plays none of the formats");
+	}
+
+	/**
+	 * 	open the {@link AudioSink} with the parameters of the
+	 * 	{@link StreamConfig} received by the server, converted to a
+	 * 	format the sink plays
+	 */
+	private void openSink() throws IOException {
+		log("openSink()");
+
+		// the sink has to hold a couple of batches for the
+		// non blocking writes to have room to land, it's
+		// opened with room to grow from there
+		int sampleFrameSize = mPlayConfig.getSampleFrameSize();
+		int bytesPerSecond = mPlayConfig.sampleRate * sampleFrameSize;
+		int batchBytes = Math.max(bytesPerSecond * WRITE_BATCH_MS / 1000 / sampleFrameSize * sampleFrameSize, sampleFrameSize);
+		int bufferSize = Math.max(mPlayConfig.bufferSize, 2 * batchBytes);
+		int maxBufferSize = Math.max(bufferSize, mPlayConfig.sampleRate * MAX_OUTPUT_LATENCY_MS / 1000 * sampleFrameSize);
+
+		mSink.open(mPlayConfig, maxBufferSize);
+		mWriteScheduler = new WriteScheduler(mSink, batchBytes, bytesPerSecond);
+		mOutputBufferController = new OutputBufferController(bufferSize / sampleFrameSize, maxBufferSize / sampleFrameSize);
+	}
+
+	/**
+	 * 	the biggest datagram ip doesn't split on the way to the server,
+	 * 	from the configured mtu or the one of the interface that reaches
+	 * 	it. a smaller mtu further along the path has to be configured
+	 */
+	private int getMaxDatagramSize() {
+		int mtu = mMtu;
+		if (mtu <= 0) {
+			try (DatagramSocket socket = new DatagramSocket()) {
+				socket.connect(mServerAddress);
+				NetworkInterface networkInterface = NetworkInterface.getByInetAddress(socket.getLocalAddress());
+				mtu = networkInterface == null ? DEFAULT_MTU : networkInterface.getMTU();
+			} catch (IOException e) {
+				mtu = DEFAULT_MTU;
+			}
+			if (mtu <= 0)
+				mtu = DEFAULT_MTU;
+		}
+		return mtu - (mServerAddress.getAddress() instanceof Inet6Address ? IPV6_UDP_OVERHEAD : IPV4_UDP_OVERHEAD);
+	}
+
+	/**
+	 *	send a 4 bytes message to the server, 3 times
+	 */
+	private void sendRequestStartStream() throws IOException {
+		log("sendRequestStartStream()");
+
+		for(int i=0;i<3;i++) {
+			mControlBuffer.clear();
+			mControlBuffer.putInt(MSG_START_STREAM).flip();
+			mChannel.send(mControlBuffer, mServerAddress);
+		}
+	}
+
+	/**
+	 * 	one MSG_HELLO with the protocol version, a nonce and the optional
+	 * 	features, the server answers with one MSG_WELCOME carrying the
+	 * 	same nonce and the whole config, and starts streaming to the
+	 * 	same socket. the hello is sent again with an exponential backoff,
+	 * 	anything else that arrives in the meantime is thrown away
+	 *
+	 * @return null if the server never answered, it might not know the handshake
+	 */
+	private StreamConfig handshake() throws IOException {
+		int nonce = new Random().nextInt();
+		int maxDatagramSize = getMaxDatagramSize();
+		long start = System.nanoTime();
+		long timeoutMs = HANDSHAKE_TIMEOUT_MS;
+
+		for (int attempt = 1; attempt <= HANDSHAKE_ATTEMPTS; attempt++, timeoutMs *= 2) {
+			putHello(nonce, maxDatagramSize);
+			mChannel.send(mControlBuffer, mServerAddress);
+
+			long deadline = System.currentTimeMillis() + timeoutMs;
+			long remaining;
+			while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+				if (mChannel.receive(mControlBuffer, remaining) == null)
+					break;
+				if (mControlBuffer.remaining() < 24 || mControlBuffer.getInt() != MSG_WELCOME)
+					continue;
+				int version = mControlBuffer.getInt();
+				if (mControlBuffer.getInt() != nonce || version < 1)
+					continue;
+
+				int sampleRate = mControlBuffer.getInt();
+				int bufferSize = mControlBuffer.getInt();
+				int bitDepth = mControlBuffer.getInt();
+				log("handshake() version %s in %.1f ms, attempt %s", version, (System.nanoTime() - start) / 1e6, attempt);
+				return readStreamConfig(sampleRate, bufferSize, bitDepth, maxDatagramSize);
+			}
+			log("handshake() no welcome in %s ms", timeoutMs);
+		}
+		return null;
+	}
+
+	/**
+	 * 	the first hello of a handshake that isn't waited for, when the
+	 * 	server is in the session of the last stream config and the
+	 * 	frames of that config still fit the datagrams the same way.
+	 * 	the stream is received from then on, the welcome is checked
+	 * 	when it arrives
+	 *
+	 * @return null if the whole handshake is needed
+	 */
+	private SessionResume resumeSession(StreamConfig lastStreamConfig, Integer lastSessionToken) throws IOException {
+		if (lastStreamConfig == null || lastStreamConfig.headerVersion == 0 || mCurrentSessionToken == 0
+				|| lastSessionToken == null || lastSessionToken != mCurrentSessionToken)
+			return null;
+		int maxDatagramSize = getMaxDatagramSize();
+		if (lastStreamConfig.fragmentSize > 0 ? lastStreamConfig.fragmentSize != maxDatagramSize
+				: lastStreamConfig.getDatagramSize() > maxDatagramSize)
+			return null;
+
+		int nonce = new Random().nextInt();
+		putHello(nonce, maxDatagramSize);
+		SessionResume sessionResume = new SessionResume(mChannel, mServerAddress, mControlBuffer, nonce,
+				lastStreamConfig, lastSessionToken);
+		sessionResume.poll(System.nanoTime());
+		log("resumeSession() session %08x, not waiting for the welcome", mCurrentSessionToken);
+		return sessionResume;
+	}
+
+	/**
+	 * 	MSG_HELLO with the version, the nonce and the features, in
+	 * 	mControlBuffer ready to be sent
+	 */
+	private void putHello(int nonce, int maxDatagramSize) {
+		mControlBuffer.clear();
+		mControlBuffer.putInt(MSG_HELLO).putInt(HANDSHAKE_VERSION).putInt(nonce);
+		putFeatures(maxDatagramSize);
+		mControlBuffer.flip();
+	}
+
+	/**
+	 * 	the legacy handshake, for the servers that don't answer MSG_HELLO.
+	 * 	Send a 4 bytes message to the server and read 3 * 4 bytes int
+	 * 	as response, which are then packed in a {@link StreamConfig} object.
+	 * 	The request also carries the optional features as key/value ints,
+	 * 	a server that accepts some of them appends them to the last reply.
+	 */
+	private StreamConfig getStreamConfig() {
+		log("getStreamConfig() ...");
+
+		StreamConfig output = null;
+		try {
+			int maxDatagramSize = getMaxDatagramSize();
+			mControlBuffer.clear();
+			mControlBuffer.putInt(MSG_STREAM_INFO);
+			putFeatures(maxDatagramSize);
+			mControlBuffer.flip();
+			mChannel.send(mControlBuffer, mServerAddress);
+			log("getStreamConfig() request stream info message sent");
+
+			int sampleRate = readInt();
+			int bufferSize = readInt();
+			int bitDepth = readInt();
+			// the extensions follow the bit depth
+			output = readStreamConfig(sampleRate, bufferSize, bitDepth, maxDatagramSize);
+
+		}catch (Exception e){
+			//e.printStackTrace();
+			log("getStreamConfig() something went wrong");
+		}
+
+		return output;
+	}
+
+	/**
+	 * 	the optional features as key/value ints, in mControlBuffer
+	 */
+	private void putFeatures(int maxDatagramSize) {
+		mControlBuffer.putInt(EXT_FRAME_HEADER).putInt(FrameHeader.VERSION);
+		for (int codec : FrameDecoder.SUPPORTED_CODECS) {
+			mControlBuffer.putInt(EXT_CODEC).putInt(codec);
+		}
+		for (int format : SUPPORTED_FORMATS) {
+			mControlBuffer.putInt(EXT_SAMPLE_FORMAT).putInt(format);
+		}
+		mControlBuffer.putInt(EXT_CHANNELS).putInt(MAX_CHANNELS);
+		mControlBuffer.putInt(EXT_FEC).putInt(FEC_XOR);
+		mControlBuffer.putInt(EXT_FEC).putInt(FEC_REED_SOLOMON);
+		mControlBuffer.putInt(EXT_NACK).putInt(1);
+		mControlBuffer.putInt(EXT_MAX_DATAGRAM).putInt(maxDatagramSize);
+	}
+
+	/**
+	 * 	the features the server accepted, the key/value ints left in
+	 * 	mControlBuffer, on top of the basic config
+	 */
+	private StreamConfig readStreamConfig(int sampleRate, int bufferSize, int bitDepth, int maxDatagramSize) {
+		mSessionToken = readSessionToken(mControlBuffer);
+		StreamConfig output = StreamConfig.read(mControlBuffer, sampleRate, bufferSize, bitDepth);
+		log("readStreamConfig() sampleRate = %s bitDepth = %s channels = %s bufferSize = %s headerVersion = %s codec = %s fec = %s %s+%s nack history = %s fragments of %s (max %s) session %08x",
+				sampleRate, output.bitDepth, output.channels, bufferSize, output.headerVersion, output.codec,
+				output.fecScheme, output.fecDataFrames, output.fecParityFrames, output.nackHistory,
+				output.fragmentSize, maxDatagramSize, mSessionToken);
+		return output;
+	}
+
+	/**
+	 * 	the EXT_SESSION among the features from the position of the
+	 * 	buffer, which is left untouched, 0 if there's none
+	 */
+	static int readSessionToken(ByteBuffer features) {
+		for (int i = features.position(); i + 8 <= features.limit(); i += 8) {
+			if (features.getInt(i) == EXT_SESSION)
+				return features.getInt(i + 4);
+		}
+		return 0;
+	}
+
+	/**
+	 * 	true to resample following the measured clock drift,
+	 * 	false to fall back to skipping a frame every tot
+	 */
+	public void setAutoDrift(boolean autoDrift){
+		mAutoDrift = autoDrift;
+		if (mAudioPlayer != null)
+			mAudioPlayer.setAutoDrift(autoDrift);
+	}
+
+	public void setSkipFrameEveryTot(int i){
+		mSkipFrameEveryTot = i;
+		if (mAudioPlayer != null)
+			mAudioPlayer.setSkipFrameEveryTot(i);
+	}
+
+	/**
+	 * 	one of the {@link LossConcealer} strategies, it has to be
+	 * 	set before the client starts
+	 */
+	public void setLossConcealment(int strategy){
+		mLossConcealment = strategy;
+	}
+
+	/**
+	 * 	the mtu of the path to the server, 0 to use the one of the local
+	 * 	interface, it has to be set before the client starts
+	 */
+	public void setMtu(int mtu){
+		mMtu = mtu;
+	}
+
+	public void setTargetLatencyMs(int ms){
+		mTargetLatencyMs = ms;
+		if (mJitterBuffer != null)
+			mJitterBuffer.setTargetLatencyMs(ms);
+	}
+
+	/**
+	 * 	receive a control message in mControlBuffer and read its first int
+	 */
+	private int readInt() throws IOException {
+		if (mChannel.receive(mControlBuffer, STREAM_INFO_TIMEOUT) == null)
+			throw new IOException("no reply from the server");
+		return mControlBuffer.getInt();
+	}
+
+	private void closeChannel() {
+		if (mChannel != null) {
+			try {
+				mChannel.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void log(String msg, Object...args){
+		Logger.d(TAG, String.format(msg, args));
+	}
+
+	public static class StreamConfig {
+		// the pcm a frame decodes to, bufferSize is in pcm bytes and
+		// the bit depth is one of the FORMAT_ constants
+		public final int sampleRate, bitDepth, bufferSize;
+		// 0 if the frames are bare pcm, otherwise a FrameHeader version
+		public final int headerVersion;
+		// how the payload is encoded, one of the CODEC_ constants
+		public final int codec;
+		// interleaved in the pcm
+		public final int channels;
+		// one of the FEC_ schemes, after every fecDataFrames frames
+		// come fecParityFrames parity packets
+		public final int fecScheme, fecDataFrames, fecParityFrames;
+		// how many frames back the server retransmits, 0 for no nack
+		public final int nackHistory;
+		// the frames bigger than this come in fragments of this size, 0 if they come whole
+		public final int fragmentSize;
+
+		public StreamConfig(int sampleRate, int bitDepth, int bufferSize) {
+			this(sampleRate, bitDepth, bufferSize, 0);
+		}
+
+		public StreamConfig(int sampleRate, int bitDepth, int bufferSize, int headerVersion) {
+			this(sampleRate, bitDepth, bufferSize, headerVersion, CODEC_PCM);
+		}
+
+		public StreamConfig(int sampleRate, int bitDepth, int bufferSize, int headerVersion, int codec) {
+			this(sampleRate, bitDepth, bufferSize, headerVersion, codec, 1);
+		}
+
+		public StreamConfig(int sampleRate, int bitDepth, int bufferSize, int headerVersion, int codec, int channels) {
+			this(sampleRate, bitDepth, bufferSize, headerVersion, codec, channels, FEC_NONE, 0, 0, 0, 0);
+		}
+
+		public StreamConfig(int sampleRate, int bitDepth, int bufferSize, int headerVersion, int codec, int channels,
+							int fecScheme, int fecDataFrames, int fecParityFrames, int nackHistory, int fragmentSize) {
+			this.sampleRate = sampleRate;
+			this.bitDepth = bitDepth;
+			this.bufferSize = bufferSize;
+			this.headerVersion = headerVersion;
+			this.codec = codec;
+			this.channels = channels;
+			this.fecScheme = fecScheme;
+			this.fecDataFrames = fecDataFrames;
+			this.fecParityFrames = fecParityFrames;
+			this.nackHistory = nackHistory;
+			this.fragmentSize = fragmentSize;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof StreamConfig))
+				return false;
+			StreamConfig other = (StreamConfig) o;
+			return sampleRate == other.sampleRate && bitDepth == other.bitDepth && bufferSize == other.bufferSize
+					&& headerVersion == other.headerVersion && codec == other.codec && channels == other.channels
+					&& fecScheme == other.fecScheme && fecDataFrames == other.fecDataFrames
+					&& fecParityFrames == other.fecParityFrames && nackHistory == other.nackHistory
+					&& fragmentSize == other.fragmentSize;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = sampleRate;
+			for (int value : new int[]{bitDepth, bufferSize, headerVersion, codec, channels,
+					fecScheme, fecDataFrames, fecParityFrames, nackHistory, fragmentSize}) {
+				hash = 31 * hash + value;
+			}
+			return hash;
+		}
+
+		/**
+		 * 	the basic config and the features the server accepted, the
+		 * 	key/value ints from the position of the buffer on
+		 */
+		public static StreamConfig read(ByteBuffer features, int sampleRate, int bufferSize, int bitDepth) {
+			int headerVersion = 0;
+			int codec = CODEC_PCM;
+			int channels = 1;
+			int fecScheme = FEC_NONE;
+			int fecGroup = 0;
+			int nackHistory = 0;
+			int fragmentSize = 0;
+			while (features.remaining() >= 8) {
+				int key = features.getInt();
+				int value = features.getInt();
+				if (key == EXT_FRAME_HEADER && value == FrameHeader.VERSION)
+					headerVersion = value;
+				else if (key == EXT_CODEC && FrameDecoder.isSupported(value))
+					codec = value;
+				else if (key == EXT_SAMPLE_FORMAT && value >= FORMAT_PCM_8 && value <= FORMAT_FLOAT)
+					bitDepth = value;
+				else if (key == EXT_CHANNELS && value >= 1 && value <= MAX_CHANNELS)
+					channels = value;
+				else if (key == EXT_FEC && Fec.isSupported(value))
+					fecScheme = value;
+				else if (key == EXT_FEC_GROUP)
+					fecGroup = value;
+				else if (key == EXT_NACK && headerVersion > 0)
+					nackHistory = value;
+				else if (key == EXT_MAX_DATAGRAM && headerVersion > 0 && value > FrameHeader.SIZE)
+					fragmentSize = value;
+			}
+			int fecDataFrames = fecGroup >> 8;
+			int fecParityFrames = fecGroup & 0xff;
+			if (fecScheme != FEC_NONE && headerVersion > 0) {
+				Fec.checkGroup(fecScheme, fecDataFrames, fecParityFrames);
+			} else {
+				fecScheme = FEC_NONE;
+			}
+
+			StreamConfig output = new StreamConfig(sampleRate, bitDepth, bufferSize, headerVersion, codec, channels,
+					fecScheme, fecDataFrames, fecParityFrames, nackHistory, fragmentSize);
+			// whole frames when they fit
+			if (output.getDatagramSize() <= fragmentSize)
+				output = new StreamConfig(sampleRate, bitDepth, bufferSize, headerVersion, codec, channels,
+						fecScheme, fecDataFrames, fecParityFrames, nackHistory, 0);
+			return output;
+		}
+
+		/**
+		 * 	the same frames as plain pcm of another format, which is
+		 * 	what the sink is opened with when the stream is converted
+		 */
+		public StreamConfig convertedTo(int bitDepth, int channels) {
+			int bufferSize = this.bufferSize / getSampleFrameSize() * bitDepth * channels;
+			return new StreamConfig(sampleRate, bitDepth, bufferSize, 0, CODEC_PCM, channels);
+		}
+
+		/**
+		 * 	bytes of a sample for every channel, what AudioTrack calls a frame
+		 */
+		public int getSampleFrameSize() {
+			return bitDepth * channels;
+		}
+
+		/**
+		 * 	most bytes of an encoded frame
+		 */
+		public int getPayloadSize() {
+			return FrameDecoder.getEncodedSize(codec, bufferSize);
+		}
+
+		/**
+		 * 	size of a stream packet, the encoded frame or the fec parity,
+		 * 	plus the header if any, before it's split in fragments
+		 */
+		public int getDatagramSize() {
+			int payloadSize = fecScheme != FEC_NONE ? Fec.getMaxParitySize(getPayloadSize()) : getPayloadSize();
+			return payloadSize + (headerVersion > 0 ? FrameHeader.SIZE : 0);
+		}
+
+		/**
+		 * 	how long it takes to play a bufferSize frame
+		 */
+		public long getFrameDurationNanos() {
+			return bufferSize * 1000000000L / Math.max(1, (long) sampleRate * getSampleFrameSize());
+		}
+	}
+}
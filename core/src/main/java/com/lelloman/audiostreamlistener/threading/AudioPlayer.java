@@ -0,0 +1,341 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import com.lelloman.audiostreamlistener.Logger;
+import com.lelloman.audiostreamlistener.audio.DriftEstimator;
+import com.lelloman.audiostreamlistener.audio.FractionalResampler;
+import com.lelloman.audiostreamlistener.audio.LossConcealer;
+import com.lelloman.audiostreamlistener.audio.OutputBufferController;
+import com.lelloman.audiostreamlistener.audio.SampleConverter;
+import com.lelloman.audiostreamlistener.codec.FrameDecoder;
+import com.lelloman.audiostreamlistener.sink.AudioSink;
+
+import java.nio.ByteBuffer;
+
+import static com.lelloman.audiostreamlistener.Constants.SO_TIMEOUT;
+
+/**
+ * 	drains a {@link JitterBuffer} into an {@link AudioSink}, the
+ * 	sink backpressure paces this thread so the socket one never waits.
+ * 	the frames are direct buffers handed to a {@link WriteScheduler}
+ * 	which batches them into the track, then they're released to the
+ * 	{@link FramePool}.
+ * 	compressed frames are decoded by a {@link FrameDecoder} first, then
+ * 	a {@link SampleConverter} turns them into the format and channels
+ * 	the sink plays, from there on everything works in that format.
+ * 	lost frames are replaced by a {@link LossConcealer}.
+ * 	the clock drift between sender and track is compensated either by
+ * 	resampling, driven by a {@link DriftEstimator}, or by skipping a
+ * 	frame every tot.
+ * 	an {@link OutputBufferController} decides how much of its buffer
+ * 	the sink uses.
+ * 	once the {@link ClockSync} has an offset, every frame written tells
+ * 	how long ago the server sent its last sample and how long before
+ * 	it's played, the mouth to ear latency, the part after the playback
+ * 	head, in the device, is left out
+ */
+public class AudioPlayer extends Thread {
+
+	public static final String TAG = AudioPlayer.class.getSimpleName();
+
+	private final AudioSink mSink;
+	private final WriteScheduler mWriteScheduler;
+	private final JitterBuffer mJitterBuffer;
+	private final FramePool mFramePool;
+	private final LossConcealer mLossConcealer;
+	// null when the stream is plain pcm
+	private final FrameDecoder mDecoder;
+	// decoded frames are written in here
+	private final ByteBuffer mPcmFrame;
+	// null when the sink plays the stream as it is
+	private final SampleConverter mConverter;
+	// converted and concealed frames are written in here
+	private final ByteBuffer mPlayFrame;
+	// what the sink plays
+	private final int mBitDepth;
+	private final int mChannels;
+	private final int mFrameSize;
+	private final int mSampleFrameSize;
+	// samples of each channel in a frame
+	private final int mFrameSamples;
+
+	// automatic drift compensation
+	private final DriftEstimator mDriftEstimator = new DriftEstimator();
+	// one for each channel
+	private final FractionalResampler[] mResamplers;
+	private final float[] mResamplerInput;
+	private final float[] mResamplerOutput;
+	private final ByteBuffer mResampledFrame;
+	// the playback head is a 32 bit counter, this one doesn't wrap
+	private long mPlayedSamples;
+	private int mLastHeadPosition;
+
+	private volatile boolean mAutoDrift;
+	// prevent over buffering the sink
+	private volatile int mSkipFrameEveryTot;
+
+	private volatile boolean mRunning = true;
+
+	// marked on the first pcm written, null if nobody's timing it
+	private StartupTimer mStartupTimer;
+
+	// null if the sink size is left alone
+	private OutputBufferController mOutputBufferController;
+	// whether the jitter buffer ran dry since the last update
+	private boolean mStarved;
+	private long mJitterUnderruns;
+
+	// null if the latency isn't measured
+	private ClockSync mClockSync;
+	private final long mFrameDurationNanos;
+	private final int mSampleRate;
+	// smoothed, -1 until there's one
+	private volatile long mLatencyNanos = -1;
+
+	/**
+	 * @param playConfig the format the sink is opened with, the stream
+	 * 	is converted to it when it's different
+	 * @param lossConcealer for the play format
+	 */
+	public AudioPlayer(AudioSink sink, WriteScheduler writeScheduler, AudioClient.StreamConfig streamConfig,
+					   AudioClient.StreamConfig playConfig, JitterBuffer jitterBuffer, FramePool framePool,
+					   FrameDecoder decoder, LossConcealer lossConcealer) {
+		super(TAG);
+		mSink = sink;
+		mWriteScheduler = writeScheduler;
+		mJitterBuffer = jitterBuffer;
+		mFramePool = framePool;
+		mLossConcealer = lossConcealer;
+		mDecoder = decoder;
+		mBitDepth = playConfig.bitDepth;
+		mChannels = playConfig.channels;
+		mFrameSize = playConfig.bufferSize;
+		mSampleFrameSize = playConfig.getSampleFrameSize();
+		mSampleRate = playConfig.sampleRate;
+		mFrameDurationNanos = streamConfig.getFrameDurationNanos();
+		mFrameSamples = mFrameSize / mSampleFrameSize;
+		mPcmFrame = decoder != null ? ByteBuffer.allocateDirect(streamConfig.bufferSize) : null;
+
+		int playFrameSize = mFrameSize;
+		if (streamConfig.bitDepth != mBitDepth || streamConfig.channels != mChannels) {
+			mConverter = new SampleConverter(streamConfig.bitDepth, streamConfig.channels, mBitDepth, mChannels);
+			playFrameSize = Math.max(playFrameSize, mConverter.getWorkSize(streamConfig.bufferSize));
+		} else {
+			mConverter = null;
+		}
+		mPlayFrame = ByteBuffer.allocateDirect(playFrameSize);
+
+		// room for the shortest output step plus the filter delay
+		int maxOutputSamples = (int) Math.ceil(mFrameSamples / (1 - DriftEstimator.MAX_DEVIATION)) + 32;
+		mResamplers = new FractionalResampler[mChannels];
+		for (int i = 0; i < mChannels; i++) {
+			mResamplers[i] = new FractionalResampler(mFrameSamples);
+		}
+		mResamplerInput = new float[mFrameSamples];
+		mResamplerOutput = new float[maxOutputSamples];
+		mResampledFrame = ByteBuffer.allocateDirect(maxOutputSamples * playConfig.getSampleFrameSize());
+	}
+
+	@Override
+	public void run() {
+		try {
+			if (mOutputBufferController != null)
+				resizeSink(mOutputBufferController.getSize());
+			mSink.play();
+
+			// this is use to skip a frame every tot
+			int i = 0;
+
+			while (mRunning) {
+				ByteBuffer frame = mJitterBuffer.take(SO_TIMEOUT);
+				if (frame == null) {
+					mWriteScheduler.flushPending();
+					mStarved = true;
+					continue;
+				}
+
+				long timestampUs = mJitterBuffer.getTakenTimestampUs();
+
+				// the pcm to play, the frame itself unless it
+				// had to be decoded, converted or concealed
+				ByteBuffer pcm = frame;
+				boolean lost = frame == JitterBuffer.LOST;
+				if (!lost && mDecoder != null) {
+					// a frame that can't be decoded is as good as lost
+					lost = mDecoder.decode(frame, mPcmFrame) == 0;
+					mFramePool.release(frame);
+					pcm = mPcmFrame;
+				}
+				if (lost) {
+					pcm = mPlayFrame;
+					pcm.clear();
+					mLossConcealer.conceal(pcm, mFrameSize);
+				} else {
+					if (mConverter != null) {
+						mConverter.convert(pcm, mPlayFrame);
+						if (pcm == frame)
+							mFramePool.release(frame);
+						pcm = mPlayFrame;
+					}
+					mLossConcealer.onFrame(pcm);
+				}
+
+				boolean autoDrift = mAutoDrift;
+				if (autoDrift) {
+					writeResampled(pcm);
+				} else if (i++ > mSkipFrameEveryTot) {
+					i = 0;
+				} else {
+					mWriteScheduler.write(pcm);
+				}
+				if (pcm == frame)
+					mFramePool.release(frame);
+				if (!lost && mStartupTimer != null && !mStartupTimer.isMarked(StartupTimer.FIRST_AUDIO)) {
+					// no batching for the first frame, it's heard right away
+					mWriteScheduler.flushPending();
+					mStartupTimer.mark(StartupTimer.FIRST_AUDIO);
+				}
+
+				// don't sit on a partial batch if nothing else is ready
+				if (mJitterBuffer.getDepth() == 0)
+					mWriteScheduler.flushPending();
+
+				if (mOutputBufferController != null)
+					updateOutputBuffer();
+				if (mClockSync != null && timestampUs != 0 && mClockSync.isSynced())
+					updateLatency(timestampUs);
+			}
+		} catch (InterruptedException e) {
+			Logger.d(TAG, "run() interrupted");
+		} finally {
+			mSink.close();
+		}
+		Logger.d(TAG, "run() end");
+	}
+
+	/**
+	 * 	update the drift estimate and write the frame resampled
+	 * 	with the step that keeps the buffer at its target
+	 */
+	private void writeResampled(ByteBuffer frame) throws InterruptedException {
+		updatePlayedSamples();
+
+		double step = mDriftEstimator.update(System.nanoTime(),
+				mJitterBuffer.getReceivedCount() * mFrameSamples, mPlayedSamples,
+				mJitterBuffer.getDepth() * (double) mFrameSamples,
+				mJitterBuffer.getTargetDepth() * (double) mFrameSamples);
+
+		// the channels are resampled one at a time, with the same
+		// step and history they all come out the same length
+		int offset = frame.position();
+		int samples = Math.min(frame.remaining() / (mBitDepth * mChannels), mResamplerInput.length);
+		int outSamples = 0;
+		// the absolute puts are checked against the limit of the last frame
+		mResampledFrame.clear();
+		for (int c = 0; c < mChannels; c++) {
+			SampleConverter.deinterleave(frame, offset, mBitDepth, mChannels, c, mResamplerInput, samples);
+			mResamplers[c].setStep(step);
+			outSamples = mResamplers[c].process(mResamplerInput, samples, mResamplerOutput);
+			SampleConverter.interleave(mResamplerOutput, outSamples, mResampledFrame, 0, mBitDepth, mChannels, c);
+		}
+		mResampledFrame.limit(outSamples * mBitDepth * mChannels);
+		mWriteScheduler.write(mResampledFrame);
+	}
+
+	/**
+	 * 	let the controller know how the sink is doing, the underruns
+	 * 	while the jitter buffer was empty don't count
+	 */
+	private void updateOutputBuffer() {
+		updatePlayedSamples();
+		long jitterUnderruns = mJitterBuffer.getUnderrunCount();
+		boolean starved = mStarved || jitterUnderruns != mJitterUnderruns;
+		mStarved = false;
+		mJitterUnderruns = jitterUnderruns;
+
+		int size = mOutputBufferController.getSize();
+		int newSize = mOutputBufferController.update(System.nanoTime(), mPlayedSamples,
+				mWriteScheduler.getBytesAccepted() / mSampleFrameSize, mSink.getUnderrunCount(), starved);
+		if (newSize != size)
+			resizeSink(newSize);
+	}
+
+	/**
+	 * 	the last sample of the frame just written was sent at the
+	 * 	timestamp plus a frame and is played once what's queued before
+	 * 	it is, in the write scheduler and in the sink
+	 */
+	private void updateLatency(long timestampUs) {
+		updatePlayedSamples();
+		long now = System.nanoTime();
+		long queuedSamples = (mWriteScheduler.getBytesAccepted() + mWriteScheduler.getStagedBytes()) / mSampleFrameSize
+				- mPlayedSamples;
+		long playedNanos = now + Math.max(0, queuedSamples) * 1000000000L / mSampleRate;
+		long sentNanos = mClockSync.toLocalNanos(timestampUs) + mFrameDurationNanos;
+		long latency = Math.max(0, playedNanos - sentNanos);
+		long smoothed = mLatencyNanos;
+		mLatencyNanos = smoothed < 0 ? latency : smoothed + (latency - smoothed) / 16;
+	}
+
+	private void resizeSink(int samples) {
+		int resized = mSink.setBufferSize(samples * mSampleFrameSize) / mSampleFrameSize;
+		if (resized != samples)
+			mOutputBufferController.onResized(resized);
+	}
+
+	private void updatePlayedSamples() {
+		int headPosition = mSink.getPlaybackHeadPosition();
+		mPlayedSamples += (headPosition - mLastHeadPosition) & 0xffffffffL;
+		mLastHeadPosition = headPosition;
+	}
+
+	/**
+	 * 	estimated clock drift in ppm, 0 until the automatic
+	 * 	compensation has been running for a while
+	 */
+	public double getDriftPpm() {
+		return mDriftEstimator.getDriftPpm();
+	}
+
+	/**
+	 * 	mouth to ear latency, smoothed, -1 until it's known
+	 */
+	public float getLatencyMs() {
+		long latency = mLatencyNanos;
+		return latency < 0 ? -1 : latency / 1e6f;
+	}
+
+	/**
+	 * 	it has to be set before the player starts
+	 */
+	public void setStartupTimer(StartupTimer startupTimer) {
+		mStartupTimer = startupTimer;
+	}
+
+	/**
+	 * 	it has to be set before the player starts
+	 */
+	public void setOutputBufferController(OutputBufferController outputBufferController) {
+		mOutputBufferController = outputBufferController;
+	}
+
+	/**
+	 * 	measure the latency against the server clock, it has to be set
+	 * 	before the player starts
+	 */
+	public void setClockSync(ClockSync clockSync) {
+		mClockSync = clockSync;
+	}
+
+	public void setAutoDrift(boolean autoDrift) {
+		mAutoDrift = autoDrift;
+	}
+
+	public void setSkipFrameEveryTot(int i) {
+		mSkipFrameEveryTot = i;
+	}
+
+	public void kill() {
+		mRunning = false;
+		mJitterBuffer.close();
+	}
+}
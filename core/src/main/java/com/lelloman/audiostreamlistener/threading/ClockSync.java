@@ -0,0 +1,129 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.CLOCK_SYNC_FAST_INTERVAL_MS;
+import static com.lelloman.audiostreamlistener.Constants.CLOCK_SYNC_INTERVAL_MS;
+import static com.lelloman.audiostreamlistener.Constants.CLOCK_SYNC_SAMPLES;
+import static com.lelloman.audiostreamlistener.Constants.MSG_CLOCK;
+import static com.lelloman.audiostreamlistener.Constants.MSG_CLOCK_REPLY;
+
+/**
+ * 	works out the offset between the clock of the server, the one of
+ * 	the frame timestamps, and System.nanoTime() like ntp does: the
+ * 	client sends its clock t1, the server replies with t1, t2 when it
+ * 	got the request and t3 when it replied, the reply arrives at t4.
+ * 	the round trip is (t4 - t1) - (t3 - t2) and the offset
+ * 	((t2 - t1) + (t3 - t4)) / 2, which is off by at most half the round
+ * 	trip, so the one of the fastest round trip of the last few is used.
+ * 	a server that never replies doesn't know the message, it's asked
+ * 	as many times as the samples kept and then left alone.
+ * 	it runs on the socket thread, the offset can be read from any thread
+ */
+public class ClockSync {
+
+	public static final int REPLY_SIZE = 28;
+
+	private final UdpChannel mChannel;
+	private final SocketAddress mServerAddress;
+	private final ByteBuffer mRequest = ByteBuffer.allocate(12);
+
+	// the last samples, in a ring
+	private final long[] mRttUs = new long[CLOCK_SYNC_SAMPLES];
+	private final long[] mOffsetUs = new long[CLOCK_SYNC_SAMPLES];
+	private int mSampleCount;
+
+	private long mNextRequestNanos;
+	private int mRequestCount;
+	private volatile boolean mSynced;
+	// server clock - client clock
+	private volatile long mBestOffsetUs;
+	private volatile long mBestRttUs;
+
+	public ClockSync(UdpChannel channel, SocketAddress serverAddress) {
+		mChannel = channel;
+		mServerAddress = serverAddress;
+	}
+
+	/**
+	 * 	send a request if it's time to
+	 */
+	public void poll(long now) throws IOException {
+		if (now - mNextRequestNanos < 0 || (mSampleCount == 0 && mRequestCount >= CLOCK_SYNC_SAMPLES))
+			return;
+
+		mRequest.clear();
+		mRequest.putInt(MSG_CLOCK).putLong(TimeUnit.NANOSECONDS.toMicros(now));
+		mRequest.flip();
+		mChannel.send(mRequest, mServerAddress);
+		mRequestCount++;
+		mNextRequestNanos = now + TimeUnit.MILLISECONDS.toNanos(
+				mSampleCount < CLOCK_SYNC_SAMPLES ? CLOCK_SYNC_FAST_INTERVAL_MS : CLOCK_SYNC_INTERVAL_MS);
+	}
+
+	/**
+	 * 	read a MSG_CLOCK_REPLY, from the position of the packet which is
+	 * 	left untouched
+	 *
+	 * @return false if the packet isn't one
+	 */
+	public boolean onReply(ByteBuffer packet, long now) {
+		int offset = packet.position();
+		if (packet.remaining() != REPLY_SIZE || packet.getInt(offset) != MSG_CLOCK_REPLY)
+			return false;
+
+		long t1 = packet.getLong(offset + 4);
+		long t2 = packet.getLong(offset + 12);
+		long t3 = packet.getLong(offset + 20);
+		long t4 = TimeUnit.NANOSECONDS.toMicros(now);
+		long rtt = (t4 - t1) - (t3 - t2);
+		if (rtt < 0 || t4 < t1)
+			return true;
+
+		int slot = mSampleCount++ % CLOCK_SYNC_SAMPLES;
+		mRttUs[slot] = rtt;
+		mOffsetUs[slot] = ((t2 - t1) + (t3 - t4)) / 2;
+
+		int best = 0;
+		int samples = Math.min(mSampleCount, CLOCK_SYNC_SAMPLES);
+		for (int i = 1; i < samples; i++) {
+			if (mRttUs[i] < mRttUs[best])
+				best = i;
+		}
+		mBestOffsetUs = mOffsetUs[best];
+		mBestRttUs = mRttUs[best];
+		mSynced = true;
+		return true;
+	}
+
+	/**
+	 * 	whether there's an offset yet
+	 */
+	public boolean isSynced() {
+		return mSynced;
+	}
+
+	/**
+	 * 	the time on the server clock, in us, on the System.nanoTime() one
+	 */
+	public long toLocalNanos(long serverUs) {
+		return TimeUnit.MICROSECONDS.toNanos(serverUs - mBestOffsetUs);
+	}
+
+	/**
+	 * 	server clock - client clock
+	 */
+	public float getOffsetMs() {
+		return mBestOffsetUs / 1e3f;
+	}
+
+	/**
+	 * 	the round trip the offset comes from
+	 */
+	public float getRttMs() {
+		return mBestRttUs / 1e3f;
+	}
+}
@@ -0,0 +1,146 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 	puts the {@link FrameHeader#FLAG_FRAGMENT} packets back together in
+ * 	{@link FramePool} buffers. a few frames are assembled at once, in
+ * 	slots, a frame that needs a slot when they're all taken evicts the
+ * 	oldest one, which is incomplete by then and just goes back to the
+ * 	pool. a lost fragment costs its own frame and nothing else.
+ * 	nothing is allocated per packet
+ */
+public class FragmentAssembler {
+
+	private static class Slot {
+		ByteBuffer frame;
+		int sequence;
+		// 0 for a frame, 1 + the parity index for a parity packet
+		int key;
+		int fragmentCount;
+		// a bit per fragment arrived
+		int received;
+		// known when the last fragment arrives
+		int length;
+	}
+
+	private final FramePool mFramePool;
+	// the payload of every fragment but the last one
+	private final int mFragmentPayloadSize;
+	private final Slot[] mSlots;
+
+	private long mIncompleteCount;
+	private long mPoolMissCount;
+
+	/**
+	 * @param fragmentSize the datagram size the server splits the frames to fit in
+	 * @param slots how many frames can be assembled at once
+	 */
+	public FragmentAssembler(FramePool framePool, int fragmentSize, int slots) {
+		mFramePool = framePool;
+		mFragmentPayloadSize = fragmentSize - FrameHeader.SIZE;
+		mSlots = new Slot[slots];
+		for (int i = 0; i < slots; i++) {
+			mSlots[i] = new Slot();
+		}
+	}
+
+	/**
+	 * 	copy a fragment, from its position to its limit, which are left
+	 * 	untouched, in the frame it belongs to. header is the one of the
+	 * 	fragment, already parsed
+	 *
+	 * @return the frame this fragment completed, header included, or null
+	 */
+	public ByteBuffer add(FrameHeader header, ByteBuffer fragment) {
+		int count = header.fragmentCount;
+		int payloadSize = fragment.remaining() - FrameHeader.SIZE;
+		if (header.fragment >= count || payloadSize > mFragmentPayloadSize
+				|| (header.fragment < count - 1 && payloadSize != mFragmentPayloadSize))
+			return null;
+
+		int key = (header.flags & FrameHeader.FLAG_PARITY) != 0 ? 1 + header.index : 0;
+		Slot slot = getSlot(header.sequence, key, count);
+		if (slot == null || slot.fragmentCount != count || (slot.received & 1 << header.fragment) != 0)
+			return null;
+
+		int offset = FrameHeader.SIZE + header.fragment * mFragmentPayloadSize;
+		ByteBuffer frame = slot.frame;
+		if (offset + payloadSize > frame.capacity())
+			return null;
+
+		// the header of the last fragment in is the one of the frame, a
+		// retransmission that completes it keeps its flag
+		int position = fragment.position();
+		int limit = fragment.limit();
+		frame.limit(frame.capacity()).position(0);
+		fragment.limit(position + FrameHeader.SIZE);
+		frame.put(fragment);
+		frame.position(offset);
+		fragment.limit(limit);
+		frame.put(fragment);
+		fragment.position(position);
+
+		if (header.fragment == count - 1)
+			slot.length = offset + payloadSize;
+		slot.received |= 1 << header.fragment;
+		if (slot.received != (1 << count) - 1)
+			return null;
+
+		frame.limit(slot.length).position(0);
+		slot.frame = null;
+		return frame;
+	}
+
+	/**
+	 * 	frames thrown away with some of their fragments missing
+	 */
+	public long getIncompleteCount() {
+		return mIncompleteCount;
+	}
+
+	/**
+	 * 	frames thrown away because there was no free buffer
+	 */
+	public long getPoolMissCount() {
+		return mPoolMissCount;
+	}
+
+	/**
+	 * 	the slot of the frame, a new one if it's the first fragment in
+	 *
+	 * @return null if it's older than all the frames being assembled
+	 */
+	private Slot getSlot(int sequence, int key, int fragmentCount) {
+		Slot oldest = null;
+		for (Slot slot : mSlots) {
+			if (slot.frame == null) {
+				if (oldest == null || oldest.frame != null)
+					oldest = slot;
+				continue;
+			}
+			if (slot.sequence == sequence && slot.key == key)
+				return slot;
+			if (oldest == null || (oldest.frame != null && slot.sequence - oldest.sequence < 0))
+				oldest = slot;
+		}
+
+		if (oldest.frame != null) {
+			if (sequence - oldest.sequence < 0)
+				return null;
+			mFramePool.release(oldest.frame);
+			mIncompleteCount++;
+		}
+		oldest.frame = mFramePool.acquire();
+		if (oldest.frame == null) {
+			mPoolMissCount++;
+			return null;
+		}
+		oldest.sequence = sequence;
+		oldest.key = key;
+		oldest.fragmentCount = fragmentCount;
+		oldest.received = 0;
+		oldest.length = 0;
+		return oldest;
+	}
+}
@@ -0,0 +1,103 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 	optional header in front of the pcm payload of each datagram,
+ * 	negotiated with {@link com.lelloman.audiostreamlistener.Constants#EXT_FRAME_HEADER}
+ * 	all the values are big endian like the rest of the protocol
+ *
+ * 	| 0       | 1     | 2     | 3         | 4-7      | 8-15                  |
+ * 	| version | flags | index | fragments | sequence | sender timestamp (us) |
+ *
+ * 	a packet flagged FLAG_PARITY carries fec parity instead of a frame,
+ * 	the sequence is the one of the first frame of its group and the
+ * 	index tells which parity packet of the group it is.
+ * 	FLAG_RETRANSMIT marks a frame sent again after a MSG_NACK.
+ * 	a packet flagged FLAG_FRAGMENT carries a piece of a frame or parity
+ * 	packet too big for a datagram, the fragments byte is the fragment
+ * 	index << 4 | the fragment count - 1. every fragment has the whole
+ * 	header and all but the last one the same payload size.
+ * 	one instance is reused for every packet
+ */
+public class FrameHeader {
+
+	public static final int VERSION = 1;
+	public static final int SIZE = 16;
+	public static final int FLAG_PARITY = 1;
+	public static final int FLAG_RETRANSMIT = 2;
+	public static final int FLAG_FRAGMENT = 4;
+	public static final int MAX_FRAGMENTS = 16;
+
+	public int version;
+	public int flags;
+	public int index;
+	// only with FLAG_FRAGMENT
+	public int fragment;
+	public int fragmentCount;
+	public int sequence;
+	public long timestampUs;
+
+	/**
+	 * 	read the header at the position of the datagram, which is left untouched
+	 *
+	 * @return false if the datagram is too short or the version is unknown
+	 */
+	public boolean parse(ByteBuffer datagram) {
+		if (datagram.remaining() < SIZE)
+			return false;
+
+		int offset = datagram.position();
+		version = datagram.get(offset) & 0xff;
+		if (version != VERSION)
+			return false;
+
+		flags = datagram.get(offset + 1) & 0xff;
+		index = datagram.get(offset + 2) & 0xff;
+		int fragments = datagram.get(offset + 3) & 0xff;
+		fragment = fragments >> 4;
+		fragmentCount = (fragments & 0xf) + 1;
+		sequence = readInt(datagram, offset + 4);
+		timestampUs = ((long) readInt(datagram, offset + 8) << 32) | (readInt(datagram, offset + 12) & 0xffffffffL);
+		return true;
+	}
+
+	/**
+	 * 	write a header at the given offset, this is the server side
+	 */
+	public static void write(byte[] data, int offset, int flags, int sequence, long timestampUs) {
+		write(data, offset, flags, 0, sequence, timestampUs);
+	}
+
+	public static void write(byte[] data, int offset, int flags, int index, int sequence, long timestampUs) {
+		data[offset] = VERSION;
+		data[offset + 1] = (byte) flags;
+		data[offset + 2] = (byte) index;
+		data[offset + 3] = 0;
+		writeInt(data, offset + 4, sequence);
+		writeInt(data, offset + 8, (int) (timestampUs >>> 32));
+		writeInt(data, offset + 12, (int) timestampUs);
+	}
+
+	/**
+	 * 	turn the header at the given offset into the one of a fragment
+	 */
+	public static void writeFragment(byte[] data, int offset, int fragment, int fragmentCount) {
+		data[offset + 1] |= FLAG_FRAGMENT;
+		data[offset + 3] = (byte) (fragment << 4 | (fragmentCount - 1));
+	}
+
+	private static int readInt(ByteBuffer data, int offset) {
+		return (data.get(offset) & 0xff) << 24
+				| (data.get(offset + 1) & 0xff) << 16
+				| (data.get(offset + 2) & 0xff) << 8
+				| (data.get(offset + 3) & 0xff);
+	}
+
+	private static void writeInt(byte[] data, int offset, int value) {
+		data[offset] = (byte) (value >>> 24);
+		data[offset + 1] = (byte) (value >>> 16);
+		data[offset + 2] = (byte) (value >>> 8);
+		data[offset + 3] = (byte) value;
+	}
+}
@@ -0,0 +1,45 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 	a fixed set of direct buffers shared by the receive and playback
+ * 	threads, a buffer is filled by the socket, goes through the
+ * 	{@link JitterBuffer} and is written to the sink as it is.
+ * 	nothing is allocated after the constructor
+ */
+public class FramePool {
+
+	private final ByteBuffer[] mFree;
+	private int mFreeCount;
+
+	public FramePool(int size, int bufferSize) {
+		mFree = new ByteBuffer[size];
+		for (int i = 0; i < size; i++) {
+			mFree[i] = ByteBuffer.allocateDirect(bufferSize);
+		}
+		mFreeCount = size;
+	}
+
+	/**
+	 * @return a cleared buffer or null if they're all in use
+	 */
+	public synchronized ByteBuffer acquire() {
+		if (mFreeCount == 0)
+			return null;
+
+		ByteBuffer buffer = mFree[--mFreeCount];
+		mFree[mFreeCount] = null;
+		buffer.clear();
+		return buffer;
+	}
+
+	public synchronized void release(ByteBuffer buffer) {
+		if (buffer != null && mFreeCount < mFree.length)
+			mFree[mFreeCount++] = buffer;
+	}
+
+	public synchronized int getFreeCount() {
+		return mFreeCount;
+	}
+}
@@ -0,0 +1,264 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import com.lelloman.audiostreamlistener.fec.FecDecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.lelloman.audiostreamlistener.Constants.STREAM_INFO_MAX_SIZE;
+
+/**
+ * 	the receiving end of the stream, it takes a datagram from the
+ * 	{@link UdpChannel} into a {@link FramePool} buffer and hands it over
+ * 	to the {@link JitterBuffer}, nothing is allocated per packet.
+ * 	it's the socket thread hot path, kept free of android classes so
+ * 	that it can be measured on a plain jvm.
+ * 	with fec the parity packets go to a {@link FecDecoder} and the
+ * 	frames it rebuilds are queued like the others, in pool buffers.
+ * 	with nack the {@link NackScheduler} looks for holes after every packet.
+ * 	when the frames come in fragments the packets are received in a
+ * 	buffer of their own, the fragments go to a {@link FragmentAssembler}
+ * 	and the whole packets are copied in pool buffers.
+ * 	the {@link ClockSync} replies and the welcome of a {@link SessionResume}
+ * 	come in on the same socket, they're told apart from the frames by
+ * 	the header version. they can be bigger than the frames, so the pool
+ * 	buffers have to hold {@link com.lelloman.audiostreamlistener.Constants#STREAM_INFO_MAX_SIZE}
+ * 	bytes, and a packet longer than a datagram of the stream isn't a frame
+ */
+public class FrameReceiver {
+
+	private final UdpChannel mChannel;
+	private final FramePool mFramePool;
+	private final JitterBuffer mJitterBuffer;
+	private final int mDatagramSize;
+	// 0 if the frames are bare pcm, otherwise a FrameHeader version
+	private final int mHeaderVersion;
+
+	// parsed from the packet if the server sends one
+	private final FrameHeader mFrameHeader = new FrameHeader();
+	// numbers the frames in arrival order when there's no header
+	private int mSequence;
+	// null without fec
+	private FecDecoder mFecDecoder;
+	// null without nack
+	private NackScheduler mNackScheduler;
+	// null if the clock isn't synced
+	private ClockSync mClockSync;
+	// null unless the stream started before the welcome
+	private SessionResume mSessionResume;
+	// null if the frames aren't split, the packets go in mFragment
+	private FragmentAssembler mFragmentAssembler;
+	private ByteBuffer mFragment;
+
+	// the packet being received, when the pool runs dry the
+	// spare one is used and the packet is thrown away
+	private final ByteBuffer mSpareFrame;
+	private ByteBuffer mFrame;
+
+	private long mPoolMissCount;
+	private long mInvalidCount;
+
+	public FrameReceiver(UdpChannel channel, FramePool framePool, JitterBuffer jitterBuffer,
+						 int datagramSize, int headerVersion) {
+		mChannel = channel;
+		mFramePool = framePool;
+		mJitterBuffer = jitterBuffer;
+		mDatagramSize = datagramSize;
+		mHeaderVersion = headerVersion;
+		mSpareFrame = ByteBuffer.allocateDirect(Math.max(datagramSize, STREAM_INFO_MAX_SIZE));
+	}
+
+	/**
+	 * 	rebuild the lost frames from the parity packets, it has to be
+	 * 	set before the first receive
+	 */
+	public void setFecDecoder(FecDecoder fecDecoder) {
+		mFecDecoder = fecDecoder;
+	}
+
+	/**
+	 * 	ask for the missing frames, it has to be set before the first receive
+	 */
+	public void setNackScheduler(NackScheduler nackScheduler) {
+		mNackScheduler = nackScheduler;
+	}
+
+	/**
+	 * 	hand it the clock replies, it has to be set before the first receive
+	 */
+	public void setClockSync(ClockSync clockSync) {
+		mClockSync = clockSync;
+	}
+
+	/**
+	 * 	hand it the welcome, it has to be set before the first receive
+	 */
+	public void setSessionResume(SessionResume sessionResume) {
+		mSessionResume = sessionResume;
+	}
+
+	/**
+	 * 	put the frames split in fragments of up to fragmentSize bytes back
+	 * 	together, it has to be set before the first receive
+	 */
+	public void setFragmentAssembler(FragmentAssembler fragmentAssembler, int fragmentSize) {
+		mFragmentAssembler = fragmentAssembler;
+		mFragment = ByteBuffer.allocateDirect(Math.max(fragmentSize, STREAM_INFO_MAX_SIZE));
+	}
+
+	/**
+	 * 	wait up to timeoutMs for a datagram and queue it
+	 *
+	 * @return the datagram length or -1 if nothing arrived in time
+	 */
+	public int receive(long timeoutMs) throws IOException {
+		if (mFragmentAssembler != null)
+			return receiveFragment(timeoutMs);
+
+		if (mFrame == null || mFrame == mSpareFrame) {
+			mFrame = mFramePool.acquire();
+			if (mFrame == null) {
+				mFrame = mSpareFrame;
+				mPoolMissCount++;
+			}
+		}
+
+		if (mChannel.receive(mFrame, timeoutMs) == null)
+			return -1;
+
+		int length = mFrame.remaining();
+		if (mFrame != mSpareFrame)
+			queueFrame(mFrame);
+		mFrame = null;
+		return length;
+	}
+
+	/**
+	 * 	packets thrown away because there was no free buffer
+	 */
+	public long getPoolMissCount() {
+		return mPoolMissCount + (mFragmentAssembler == null ? 0 : mFragmentAssembler.getPoolMissCount());
+	}
+
+	/**
+	 * 	frames thrown away with some of their fragments missing
+	 */
+	public long getIncompleteCount() {
+		return mFragmentAssembler == null ? 0 : mFragmentAssembler.getIncompleteCount();
+	}
+
+	/**
+	 * 	frames rebuilt from the fec parity
+	 */
+	public long getRecoveredCount() {
+		return mFecDecoder == null ? 0 : mFecDecoder.getRecoveredTotal();
+	}
+
+	/**
+	 * 	packets thrown away because their header couldn't be read
+	 */
+	public long getInvalidCount() {
+		return mInvalidCount;
+	}
+
+	/**
+	 * 	a fragment goes to the assembler and a whole packet is copied
+	 * 	in a pool buffer, either way a complete frame is queued
+	 */
+	private int receiveFragment(long timeoutMs) throws IOException {
+		if (mChannel.receive(mFragment, timeoutMs) == null)
+			return -1;
+
+		int length = mFragment.remaining();
+		if (!mFrameHeader.parse(mFragment)) {
+			if (!onControl(mFragment, System.nanoTime()))
+				mInvalidCount++;
+			return length;
+		}
+		ByteBuffer frame;
+		if ((mFrameHeader.flags & FrameHeader.FLAG_FRAGMENT) != 0) {
+			frame = mFragmentAssembler.add(mFrameHeader, mFragment);
+		} else {
+			frame = mFramePool.acquire();
+			if (frame == null) {
+				mPoolMissCount++;
+			} else if (length > frame.capacity()) {
+				mInvalidCount++;
+				mFramePool.release(frame);
+				frame = null;
+			} else {
+				frame.put(mFragment).flip();
+			}
+		}
+		if (frame != null)
+			queueFrame(frame);
+		return length;
+	}
+
+	/**
+	 * 	read the frame header if the server sends one, otherwise
+	 * 	the frames are numbered in arrival order. the frame is handed
+	 * 	over to the jitter buffer with its position on the pcm payload
+	 */
+	private void queueFrame(ByteBuffer frame) throws IOException {
+		long now = System.nanoTime();
+
+		// only a control packet is longer than the frames
+		if (frame.remaining() > mDatagramSize) {
+			if (!onControl(frame, now))
+				mInvalidCount++;
+			mFramePool.release(frame);
+			return;
+		}
+		if (mHeaderVersion > 0) {
+			if (!mFrameHeader.parse(frame)) {
+				if (!onControl(frame, now))
+					mInvalidCount++;
+				mFramePool.release(frame);
+				return;
+			}
+			frame.position(frame.position() + FrameHeader.SIZE);
+			if ((mFrameHeader.flags & FrameHeader.FLAG_PARITY) != 0) {
+				int recovered = mFecDecoder == null ? 0
+						: mFecDecoder.addParity(mFrameHeader.sequence, mFrameHeader.index, frame);
+				mFramePool.release(frame);
+				queueRecovered(recovered);
+				return;
+			}
+			// the copy has to be taken before the frame is handed over
+			int recovered = mFecDecoder == null ? 0 : mFecDecoder.addData(mFrameHeader.sequence, frame);
+			if ((mFrameHeader.flags & FrameHeader.FLAG_RETRANSMIT) != 0) {
+				mJitterBuffer.putRecovered(mFrameHeader.sequence, frame);
+				if (mNackScheduler != null)
+					mNackScheduler.onRetransmitted(mFrameHeader.sequence, now);
+			} else {
+				mJitterBuffer.put(mFrameHeader.sequence, mFrameHeader.timestampUs, frame, now);
+			}
+			queueRecovered(recovered);
+			if (mNackScheduler != null)
+				mNackScheduler.poll(now);
+		} else {
+			mJitterBuffer.put(mSequence++, 0, frame, now);
+		}
+	}
+
+	/**
+	 * @return false if the packet is neither a clock reply nor the welcome
+	 */
+	private boolean onControl(ByteBuffer packet, long now) {
+		return (mClockSync != null && mClockSync.onReply(packet, now))
+				|| (mSessionResume != null && mSessionResume.onReply(packet));
+	}
+
+	private void queueRecovered(int count) {
+		for (int i = 0; i < count; i++) {
+			ByteBuffer frame = mFramePool.acquire();
+			if (frame == null) {
+				mPoolMissCount++;
+				continue;
+			}
+			mFecDecoder.getRecovered(i, frame);
+			mJitterBuffer.putRecovered(mFecDecoder.getRecoveredSequence(i), frame);
+		}
+	}
+}
@@ -0,0 +1,455 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 	bounded buffer of pcm frames between the socket thread and the
+ * 	playback thread, frames are slotted by sequence number so that
+ * 	they're played in order, duplicates and late frames are dropped
+ * 	and holes are reported as lost.
+ * 	it measures the inter-arrival jitter and holds back playback until
+ * 	enough frames are buffered to absorb it.
+ * 	frames are {@link FramePool} buffers, passed around without copying,
+ * 	the ones that are thrown away go back to the pool
+ */
+public class JitterBuffer {
+
+	// returned by take() when the next frame never arrived
+	public static final ByteBuffer LOST = ByteBuffer.allocate(0);
+
+	// how many times the smoothed jitter we want to cover
+	private static final int JITTER_MULTIPLIER = 4;
+	// late frames in a row that mean the sender started over
+	private static final int RESTART_LATE_FRAMES = 8;
+
+	private final Object mLock = new Object();
+
+	// the frames slots, indexed by sequence, null when empty
+	private final ByteBuffer[] mFrames;
+	private final int[] mSequences;
+	private int mCount;
+	private final FramePool mFramePool;
+
+	// next sequence to be played and highest one received
+	private boolean mStarted;
+	private int mNextSequence;
+	private int mHighestSequence;
+
+	// nominal duration of a frame
+	private final long mFrameDurationNanos;
+	// how far ahead a missing frame can be waited for
+	private final int mReorderWindow;
+
+	// the depth we wait for before (re)starting playback
+	private long mTargetLatencyNanos;
+	private int mTargetDepth;
+	private int mMinTargetDepth = 1;
+	private boolean mBuffering = true;
+	// the very first start waits for this depth only, the player then
+	// builds up to the target, every restart waits for the target
+	private int mStartDepth = Integer.MAX_VALUE;
+	private boolean mPlayed;
+
+	// inter-arrival jitter, smoothed like rfc 3550 does
+	private long mLastArrivalNanos;
+	private long mLastTimestampUs;
+	private int mLastSequence;
+	private double mJitterNanos;
+	// the sender timestamp of the last frame taken, 0 if unknown
+	private long mTakenTimestampUs;
+
+	private long mReceivedBytes;
+	private long mReceivedCount;
+	private long mUnderrunCount;
+	private long mDroppedCount;
+	private long mLostCount;
+	private long mLateCount;
+	private long mDuplicateCount;
+	private long mReorderedCount;
+	private int mLateInARow;
+	private boolean mClosed;
+
+	/**
+	 * @param capacity rounded up to a power of two, so that the slots
+	 *                 follow the sequence when it wraps around
+	 */
+	public JitterBuffer(int capacity, FramePool framePool, long frameDurationNanos, int targetLatencyMs, int reorderWindow) {
+		if (capacity < 2 || capacity > 1 << 30)
+			throw new IllegalArgumentException("capacity must be between 2 and 2^30");
+
+		capacity = Integer.highestOneBit(capacity - 1) << 1;
+		mFrames = new ByteBuffer[capacity];
+		mSequences = new int[capacity];
+		mFramePool = framePool;
+		mFrameDurationNanos = Math.max(1, frameDurationNanos);
+		mReorderWindow = reorderWindow;
+		setTargetLatencyMs(targetLatencyMs);
+	}
+
+	/**
+	 * 	slot a frame, from its position to its limit, the buffer belongs
+	 * 	to this one from now on. if it holds way more than the target depth
+	 * 	the oldest frames are dropped so that the latency doesn't creep up
+	 *
+	 * @param timestampUs the sender timestamp or 0 if unknown
+	 */
+	public void put(int sequence, long timestampUs, ByteBuffer frame, long arrivalNanos) {
+		put(sequence, timestampUs, frame, arrivalNanos, false);
+	}
+
+	/**
+	 * 	slot a frame rebuilt from the fec parity or retransmitted, it
+	 * 	didn't arrive on schedule so it doesn't count for the jitter
+	 */
+	public void putRecovered(int sequence, ByteBuffer frame) {
+		put(sequence, 0, frame, 0, true);
+	}
+
+	private void put(int sequence, long timestampUs, ByteBuffer frame, long arrivalNanos, boolean recovered) {
+		synchronized (mLock) {
+			if (mClosed) {
+				mFramePool.release(frame);
+				return;
+			}
+
+			int distance = sequence - mNextSequence;
+			if (!mStarted || distance >= 2 * mFrames.length) {
+				// first frame or the sender jumped ahead
+				reset(sequence);
+			} else if (distance < 0 && !recovered && ++mLateInARow >= RESTART_LATE_FRAMES) {
+				// a stray old frame is just late, only a sender that
+				// started over sends nothing but old ones
+				reset(sequence);
+			}
+
+			if (sequence - mNextSequence < 0) {
+				mLateCount++;
+				mFramePool.release(frame);
+				return;
+			}
+			if (!recovered)
+				mLateInARow = 0;
+
+			int slot = slot(sequence);
+			if (mFrames[slot] != null && mSequences[slot] == sequence) {
+				mDuplicateCount++;
+				mFramePool.release(frame);
+				return;
+			}
+
+			if (sequence - mHighestSequence < 0) {
+				if (!recovered)
+					mReorderedCount++;
+			} else {
+				if (!recovered)
+					updateJitter(sequence, timestampUs, arrivalNanos);
+				mHighestSequence = sequence;
+			}
+
+			// make room, this also skips whatever is too old to be waited for
+			int maxDepth = Math.min(mFrames.length, mTargetDepth + Math.max(2, mTargetDepth / 2));
+			while (mHighestSequence - mNextSequence >= maxDepth) {
+				skipHead();
+			}
+
+			mFrames[slot] = frame;
+			mSequences[slot] = sequence;
+			mCount++;
+			mReceivedBytes += frame.remaining();
+			mReceivedCount++;
+
+			mLock.notifyAll();
+		}
+	}
+
+	/**
+	 * 	return the next frame, it blocks while the buffer is empty or
+	 * 	refilling after an underrun. if the next frame is missing it's
+	 * 	given a little time to show up when it's within the reorder window,
+	 * 	then it's reported as lost. the caller has to release the frame
+	 * 	to the pool when it's done with it
+	 *
+	 * @return the frame, {@link #LOST} or null if there was nothing to play
+	 */
+	public ByteBuffer take(long timeoutMs) throws InterruptedException {
+		synchronized (mLock) {
+			if (mCount == 0 && !mBuffering) {
+				mBuffering = true;
+				mUnderrunCount++;
+			}
+
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+			while (!mClosed && (mCount == 0 || (mBuffering && span() < getBufferingDepth()))) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0)
+					return null;
+				TimeUnit.NANOSECONDS.timedWait(mLock, remaining);
+			}
+			if (mClosed)
+				return null;
+
+			mBuffering = false;
+			mPlayed = true;
+
+			int slot = slot(mNextSequence);
+			if (!isNextPresent() && mHighestSequence - mNextSequence < mReorderWindow) {
+				long waitUntil = System.nanoTime() + mFrameDurationNanos / 2;
+				long remaining;
+				while (!mClosed && !isNextPresent() && (remaining = waitUntil - System.nanoTime()) > 0) {
+					TimeUnit.NANOSECONDS.timedWait(mLock, remaining);
+				}
+			}
+
+			// worked out from the last one that arrived, it might not have
+			mTakenTimestampUs = mLastTimestampUs == 0 ? 0
+					: mLastTimestampUs + (mNextSequence - mLastSequence) * mFrameDurationNanos / 1000;
+			if (!isNextPresent()) {
+				mNextSequence++;
+				mLostCount++;
+				return LOST;
+			}
+
+			ByteBuffer frame = mFrames[slot];
+			mFrames[slot] = null;
+			mNextSequence++;
+			mCount--;
+
+			return frame;
+		}
+	}
+
+	/**
+	 * 	the holes older than the reorderGap newest frames, oldest first,
+	 * 	with how many frames are to be played before each of them
+	 *
+	 * @return how many were written in the arrays, up to their length
+	 */
+	public int getMissing(int[] sequences, int[] framesAhead, int reorderGap) {
+		synchronized (mLock) {
+			int count = 0;
+			if (mCount == 0)
+				return 0;
+			for (int sequence = mNextSequence; mHighestSequence - sequence >= reorderGap
+					&& count < sequences.length; sequence++) {
+				int slot = slot(sequence);
+				if (mFrames[slot] == null || mSequences[slot] != sequence) {
+					sequences[count] = sequence;
+					framesAhead[count] = sequence - mNextSequence;
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * 	the sender timestamp of the frame returned by the last take(),
+	 * 	lost or not, 0 if the sender doesn't send any. to be called by
+	 * 	the thread that took it
+	 */
+	public long getTakenTimestampUs() {
+		return mTakenTimestampUs;
+	}
+
+	public void setTargetLatencyMs(int targetLatencyMs) {
+		synchronized (mLock) {
+			mTargetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, targetLatencyMs));
+			updateTargetDepth();
+		}
+	}
+
+	/**
+	 * 	never aim for less than this many frames, whatever the target
+	 * 	latency and the jitter, like the frames of a fec group
+	 */
+	public void setMinTargetDepth(int frames) {
+		synchronized (mLock) {
+			mMinTargetDepth = frames;
+			updateTargetDepth();
+		}
+	}
+
+	/**
+	 * 	start playing as soon as this many frames are in instead of the
+	 * 	target, for a faster start, the resampling makes up for the rest
+	 */
+	public void setStartDepth(int frames) {
+		synchronized (mLock) {
+			mStartDepth = frames;
+			mLock.notifyAll();
+		}
+	}
+
+	/**
+	 * 	wake up the consumer, after this everything is discarded
+	 */
+	public void close() {
+		synchronized (mLock) {
+			mClosed = true;
+			clear();
+			mLock.notifyAll();
+		}
+	}
+
+	/**
+	 * 	number of frames buffered, holes included
+	 */
+	public int getDepth() {
+		synchronized (mLock) {
+			return span();
+		}
+	}
+
+	public int getTargetDepth() {
+		synchronized (mLock) {
+			return mTargetDepth;
+		}
+	}
+
+	public float getJitterMs() {
+		synchronized (mLock) {
+			return (float) (mJitterNanos / 1000000d);
+		}
+	}
+
+	/**
+	 * 	bytes of the frames that made it into the buffer
+	 */
+	public long getReceivedBytes() {
+		synchronized (mLock) {
+			return mReceivedBytes;
+		}
+	}
+
+	/**
+	 * 	frames that made it into the buffer
+	 */
+	public long getReceivedCount() {
+		synchronized (mLock) {
+			return mReceivedCount;
+		}
+	}
+
+	public long getUnderrunCount() {
+		synchronized (mLock) {
+			return mUnderrunCount;
+		}
+	}
+
+	/**
+	 * 	frames received but thrown away to keep the latency down
+	 */
+	public long getDroppedCount() {
+		synchronized (mLock) {
+			return mDroppedCount;
+		}
+	}
+
+	/**
+	 * 	frames that never arrived in time to be played
+	 */
+	public long getLostCount() {
+		synchronized (mLock) {
+			return mLostCount;
+		}
+	}
+
+	public long getLateCount() {
+		synchronized (mLock) {
+			return mLateCount;
+		}
+	}
+
+	public long getDuplicateCount() {
+		synchronized (mLock) {
+			return mDuplicateCount;
+		}
+	}
+
+	public long getReorderedCount() {
+		synchronized (mLock) {
+			return mReorderedCount;
+		}
+	}
+
+	private int slot(int sequence) {
+		return sequence & (mFrames.length - 1);
+	}
+
+	private int span() {
+		return mCount == 0 ? 0 : mHighestSequence - mNextSequence + 1;
+	}
+
+	private boolean isNextPresent() {
+		int slot = slot(mNextSequence);
+		return mFrames[slot] != null && mSequences[slot] == mNextSequence;
+	}
+
+	private void skipHead() {
+		if (isNextPresent()) {
+			int slot = slot(mNextSequence);
+			mFramePool.release(mFrames[slot]);
+			mFrames[slot] = null;
+			mCount--;
+			mDroppedCount++;
+		} else {
+			mLostCount++;
+		}
+		mNextSequence++;
+	}
+
+	private void clear() {
+		for (int i = 0; i < mFrames.length; i++) {
+			mFramePool.release(mFrames[i]);
+			mFrames[i] = null;
+		}
+		mCount = 0;
+	}
+
+	private void reset(int sequence) {
+		clear();
+		mNextSequence = sequence;
+		mHighestSequence = sequence - 1;
+		mLastArrivalNanos = 0;
+		mLateInARow = 0;
+		mBuffering = true;
+		mStarted = true;
+	}
+
+	/**
+	 * 	the depth playback waits for
+	 */
+	private int getBufferingDepth() {
+		return mPlayed ? mTargetDepth : Math.min(mTargetDepth, Math.max(mStartDepth, mMinTargetDepth));
+	}
+
+	/**
+	 * 	transit time variation between consecutive frames, the expected
+	 * 	spacing comes from the sender timestamps when there are any
+	 */
+	private void updateJitter(int sequence, long timestampUs, long arrivalNanos) {
+		if (mLastArrivalNanos != 0) {
+			long expected = timestampUs != 0 && mLastTimestampUs != 0
+					? TimeUnit.MICROSECONDS.toNanos(timestampUs - mLastTimestampUs)
+					: (sequence - mLastSequence) * mFrameDurationNanos;
+			long deviation = Math.abs((arrivalNanos - mLastArrivalNanos) - expected);
+			mJitterNanos += (deviation - mJitterNanos) / 16d;
+			updateTargetDepth();
+		}
+		mLastArrivalNanos = arrivalNanos;
+		mLastTimestampUs = timestampUs;
+		mLastSequence = sequence;
+	}
+
+	/**
+	 * 	enough frames to cover the target latency or a few times
+	 * 	the measured jitter, whatever is bigger, and the minimum
+	 */
+	private void updateTargetDepth() {
+		int latencyFrames = (int) Math.ceil(mTargetLatencyNanos / (double) mFrameDurationNanos);
+		int jitterFrames = (int) Math.ceil(JITTER_MULTIPLIER * mJitterNanos / mFrameDurationNanos);
+		int depth = Math.max(mMinTargetDepth, Math.max(latencyFrames, jitterFrames));
+		mTargetDepth = Math.min(depth, mFrames.length - 1);
+	}
+}
@@ -0,0 +1,150 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.JITTER_BUFFER_CAPACITY;
+import static com.lelloman.audiostreamlistener.Constants.MAX_NACK_PAIRS;
+import static com.lelloman.audiostreamlistener.Constants.MSG_NACK;
+import static com.lelloman.audiostreamlistener.Constants.NACK_INITIAL_RTT_MS;
+import static com.lelloman.audiostreamlistener.Constants.NACK_REORDER_GAP;
+
+/**
+ * 	asks the server to send again the frames missing from the
+ * 	{@link JitterBuffer}, only the ones a retransmission can still
+ * 	reach before they're played: a hole n frames from the head of the
+ * 	buffer is due in n frame durations and a retransmission takes a
+ * 	round trip. all the holes are batched in one MSG_NACK, a hole is
+ * 	asked for again only after a round trip went by without it.
+ * 	the round trip is measured on the retransmitted frames, smoothed
+ * 	like tcp does. it runs on the socket thread, nothing is allocated
+ */
+public class NackScheduler {
+
+	// how much of the round trip is added as a safety margin
+	private static final float RTT_MARGIN = .5f;
+
+	private final UdpChannel mChannel;
+	private final SocketAddress mServerAddress;
+	private final JitterBuffer mJitterBuffer;
+	private final long mFrameDurationNanos;
+
+	private final int[] mMissing = new int[JITTER_BUFFER_CAPACITY];
+	private final int[] mFramesAhead = new int[JITTER_BUFFER_CAPACITY];
+	// when each sequence was last asked for, by slot
+	private final int[] mNackedSequences = new int[JITTER_BUFFER_CAPACITY];
+	private final long[] mNackedNanos = new long[JITTER_BUFFER_CAPACITY];
+	private final ByteBuffer mMessage = ByteBuffer.allocate(4 + MAX_NACK_PAIRS * 8);
+
+	private long mRttNanos = TimeUnit.MILLISECONDS.toNanos(NACK_INITIAL_RTT_MS);
+	private long mNackCount;
+	private long mRequestedCount;
+	private long mRetransmittedCount;
+	private long mTooLateCount;
+
+	public NackScheduler(UdpChannel channel, SocketAddress serverAddress, JitterBuffer jitterBuffer,
+						 long frameDurationNanos) {
+		mChannel = channel;
+		mServerAddress = serverAddress;
+		mJitterBuffer = jitterBuffer;
+		mFrameDurationNanos = frameDurationNanos;
+	}
+
+	/**
+	 * 	a retransmitted frame arrived, if it was asked for once the
+	 * 	round trip is measured
+	 */
+	public void onRetransmitted(int sequence, long now) {
+		mRetransmittedCount++;
+		int slot = slot(sequence);
+		if (mNackedSequences[slot] == sequence && mNackedNanos[slot] != 0) {
+			mRttNanos += (now - mNackedNanos[slot] - mRttNanos) / 8;
+			mNackedNanos[slot] = 0;
+		}
+	}
+
+	/**
+	 * 	look for holes and ask for the ones that can make it
+	 */
+	public void poll(long now) throws IOException {
+		int count = mJitterBuffer.getMissing(mMissing, mFramesAhead, NACK_REORDER_GAP);
+		if (count == 0)
+			return;
+
+		long neededNanos = (long) (mRttNanos * (1 + RTT_MARGIN));
+		int pairs = 0;
+		int first = 0;
+		int mask = 0;
+		mMessage.clear();
+		mMessage.putInt(MSG_NACK);
+		for (int i = 0; i < count; i++) {
+			int sequence = mMissing[i];
+			int slot = slot(sequence);
+			if (mFramesAhead[i] * mFrameDurationNanos < neededNanos) {
+				// counted once, it only gets closer to its deadline
+				if (mNackedSequences[slot] != sequence) {
+					mNackedSequences[slot] = sequence;
+					mNackedNanos[slot] = 0;
+					mTooLateCount++;
+				}
+				continue;
+			}
+			if (mNackedSequences[slot] == sequence && now - mNackedNanos[slot] < neededNanos)
+				continue;
+
+			if (pairs > 0 && sequence - first <= 32) {
+				mask |= 1 << (sequence - first - 1);
+			} else if (pairs < MAX_NACK_PAIRS) {
+				if (pairs > 0)
+					mMessage.putInt(first).putInt(mask);
+				first = sequence;
+				mask = 0;
+				pairs++;
+			} else {
+				break;
+			}
+			mNackedSequences[slot] = sequence;
+			mNackedNanos[slot] = now;
+			mRequestedCount++;
+		}
+		if (pairs == 0)
+			return;
+		mMessage.putInt(first).putInt(mask);
+		mMessage.flip();
+		mChannel.send(mMessage, mServerAddress);
+		mNackCount++;
+	}
+
+	public long getNackCount() {
+		return mNackCount;
+	}
+
+	/**
+	 * 	frames asked for, a frame can be asked for more than once
+	 */
+	public long getRequestedCount() {
+		return mRequestedCount;
+	}
+
+	public long getRetransmittedCount() {
+		return mRetransmittedCount;
+	}
+
+	/**
+	 * 	holes that weren't asked for because they'd be played before a
+	 * 	retransmission could arrive
+	 */
+	public long getTooLateCount() {
+		return mTooLateCount;
+	}
+
+	public float getRttMs() {
+		return mRttNanos / 1e6f;
+	}
+
+	private int slot(int sequence) {
+		return (sequence & Integer.MAX_VALUE) % JITTER_BUFFER_CAPACITY;
+	}
+}
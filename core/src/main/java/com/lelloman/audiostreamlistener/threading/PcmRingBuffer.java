@@ -0,0 +1,288 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 	lock free ring buffer of pcm bytes for one producer thread and one
+ * 	consumer thread, backed by a direct (off heap) or heap ByteBuffer.
+ *
+ * 	bytes can be copied in and out in bulk, or written and read in place
+ * 	with {@link #claim()}/{@link #commitWrite(int)} and
+ * 	{@link #peek()}/{@link #commitRead(int)}, for example to hand the
+ * 	readable region straight to AudioTrack.write(ByteBuffer, ...).
+ *
+ * 	the cursors only grow and are published with ordered stores, each
+ * 	side keeps a cached copy of the other side's cursor and the cursors
+ * 	are padded on their own cache lines, see the classes at the bottom
+ */
+public class PcmRingBuffer extends PcmRingBufferFields {
+
+	private static final AtomicLongFieldUpdater<PcmRingBufferWriteCursor> WRITE_INDEX =
+			AtomicLongFieldUpdater.newUpdater(PcmRingBufferWriteCursor.class, "mWriteIndex");
+	private static final AtomicLongFieldUpdater<PcmRingBufferReadCursor> READ_INDEX =
+			AtomicLongFieldUpdater.newUpdater(PcmRingBufferReadCursor.class, "mReadIndex");
+
+	private final int mCapacity;
+	private final int mMask;
+	// the producer and consumer views over the same memory, reused
+	// so that claim() and peek() don't allocate
+	private final ByteBuffer mWriteView;
+	private final ByteBuffer mReadView;
+
+	/**
+	 * @param capacity bytes, rounded up to a power of 2
+	 */
+	public static PcmRingBuffer allocateDirect(int capacity) {
+		return new PcmRingBuffer(ByteBuffer.allocateDirect(roundUpToPowerOf2(capacity)));
+	}
+
+	/**
+	 * @param capacity bytes, rounded up to a power of 2
+	 */
+	public static PcmRingBuffer allocate(int capacity) {
+		return new PcmRingBuffer(ByteBuffer.allocate(roundUpToPowerOf2(capacity)));
+	}
+
+	private PcmRingBuffer(ByteBuffer buffer) {
+		mCapacity = buffer.capacity();
+		mMask = mCapacity - 1;
+		mWriteView = buffer.duplicate();
+		mReadView = buffer.duplicate();
+	}
+
+	public int capacity() {
+		return mCapacity;
+	}
+
+	/**
+	 * 	bytes that can be read, exact for the consumer
+	 */
+	public int available() {
+		return (int) (mWriteIndex - mReadIndex);
+	}
+
+	/**
+	 * 	bytes that can be written, exact for the producer
+	 */
+	public int free() {
+		return mCapacity - available();
+	}
+
+	public boolean isDirect() {
+		return mWriteView.isDirect();
+	}
+
+	// ---- producer side ----
+
+	/**
+	 * 	copy as many bytes as fit, from the position of src which is
+	 * 	moved past them
+	 *
+	 * @return the number of bytes written
+	 */
+	public int write(ByteBuffer src) {
+		int length = Math.min(src.remaining(), producerFree(src.remaining()));
+		if (length == 0)
+			return 0;
+
+		int srcLimit = src.limit();
+		int index = (int) (mWriteIndex & mMask);
+		int first = Math.min(length, mCapacity - index);
+
+		src.limit(src.position() + first);
+		mWriteView.limit(index + first).position(index);
+		mWriteView.put(src);
+
+		if (first < length) {
+			src.limit(src.position() + length - first);
+			mWriteView.limit(length - first).position(0);
+			mWriteView.put(src);
+		}
+		src.limit(srcLimit);
+
+		WRITE_INDEX.lazySet(this, mWriteIndex + length);
+		return length;
+	}
+
+	/**
+	 * 	copy as many bytes as fit from src
+	 *
+	 * @return the number of bytes written
+	 */
+	public int write(byte[] src, int offset, int length) {
+		length = Math.min(length, producerFree(length));
+		if (length == 0)
+			return 0;
+
+		int index = (int) (mWriteIndex & mMask);
+		int first = Math.min(length, mCapacity - index);
+
+		mWriteView.limit(index + first).position(index);
+		mWriteView.put(src, offset, first);
+		if (first < length) {
+			mWriteView.limit(length - first).position(0);
+			mWriteView.put(src, offset + first, length - first);
+		}
+
+		WRITE_INDEX.lazySet(this, mWriteIndex + length);
+		return length;
+	}
+
+	/**
+	 * 	the contiguous writable region, from its position to its limit,
+	 * 	it might be shorter than {@link #free()} when it wraps. the view
+	 * 	is reused, it's valid until the next producer call
+	 */
+	public ByteBuffer claim() {
+		int free = producerFree(mCapacity);
+		int index = (int) (mWriteIndex & mMask);
+		int length = Math.min(free, mCapacity - index);
+		mWriteView.limit(index + length).position(index);
+		return mWriteView;
+	}
+
+	/**
+	 * 	publish bytes written in the region returned by {@link #claim()}
+	 */
+	public void commitWrite(int length) {
+		if (length < 0 || length > producerFree(length))
+			throw new IllegalArgumentException("can't commit " + length + " bytes");
+		WRITE_INDEX.lazySet(this, mWriteIndex + length);
+	}
+
+	// ---- consumer side ----
+
+	/**
+	 * 	copy as many bytes as available in dst, from its position
+	 *
+	 * @return the number of bytes read
+	 */
+	public int read(ByteBuffer dst) {
+		int length = Math.min(dst.remaining(), consumerAvailable(dst.remaining()));
+		if (length == 0)
+			return 0;
+
+		int index = (int) (mReadIndex & mMask);
+		int first = Math.min(length, mCapacity - index);
+
+		mReadView.limit(index + first).position(index);
+		dst.put(mReadView);
+		if (first < length) {
+			mReadView.limit(length - first).position(0);
+			dst.put(mReadView);
+		}
+
+		READ_INDEX.lazySet(this, mReadIndex + length);
+		return length;
+	}
+
+	/**
+	 * 	copy as many bytes as available in dst
+	 *
+	 * @return the number of bytes read
+	 */
+	public int read(byte[] dst, int offset, int length) {
+		length = Math.min(length, consumerAvailable(length));
+		if (length == 0)
+			return 0;
+
+		int index = (int) (mReadIndex & mMask);
+		int first = Math.min(length, mCapacity - index);
+
+		mReadView.limit(index + first).position(index);
+		mReadView.get(dst, offset, first);
+		if (first < length) {
+			mReadView.limit(length - first).position(0);
+			mReadView.get(dst, offset + first, length - first);
+		}
+
+		READ_INDEX.lazySet(this, mReadIndex + length);
+		return length;
+	}
+
+	/**
+	 * 	the contiguous readable region, from its position to its limit,
+	 * 	it might be shorter than {@link #available()} when it wraps. the
+	 * 	view is reused, it's valid until the next consumer call
+	 */
+	public ByteBuffer peek() {
+		int available = consumerAvailable(mCapacity);
+		int index = (int) (mReadIndex & mMask);
+		int length = Math.min(available, mCapacity - index);
+		mReadView.limit(index + length).position(index);
+		return mReadView;
+	}
+
+	/**
+	 * 	release bytes read from the region returned by {@link #peek()}
+	 */
+	public void commitRead(int length) {
+		if (length < 0 || length > consumerAvailable(length))
+			throw new IllegalArgumentException("can't commit " + length + " bytes");
+		READ_INDEX.lazySet(this, mReadIndex + length);
+	}
+
+	/**
+	 * 	free space seen by the producer, the consumer cursor is read
+	 * 	again only when the cached one says there's not enough room
+	 */
+	private int producerFree(int wanted) {
+		int free = mCapacity - (int) (mWriteIndex - mReadIndexCache);
+		if (free < wanted) {
+			mReadIndexCache = mReadIndex;
+			free = mCapacity - (int) (mWriteIndex - mReadIndexCache);
+		}
+		return free;
+	}
+
+	/**
+	 * 	bytes available seen by the consumer, the producer cursor is
+	 * 	read again only when the cached one says there's not enough
+	 */
+	private int consumerAvailable(int wanted) {
+		int available = (int) (mWriteIndexCache - mReadIndex);
+		if (available < wanted) {
+			mWriteIndexCache = mWriteIndex;
+			available = (int) (mWriteIndexCache - mReadIndex);
+		}
+		return available;
+	}
+
+	private static int roundUpToPowerOf2(int value) {
+		if (value <= 0 || value > 1 << 30)
+			throw new IllegalArgumentException("capacity out of range " + value);
+		return value == 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+	}
+}
+
+/**
+ * 	the fields are spread over a class hierarchy because the jvm doesn't
+ * 	reorder fields across classes, the longs in between keep each cursor,
+ * 	with the cached copy of the other side's cursor, on its own cache line
+ */
+abstract class PcmRingBufferPad0 {
+	long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class PcmRingBufferWriteCursor extends PcmRingBufferPad0 {
+	// written by the producer
+	volatile long mWriteIndex;
+	// the producer's copy of mReadIndex
+	long mReadIndexCache;
+}
+
+abstract class PcmRingBufferPad1 extends PcmRingBufferWriteCursor {
+	long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class PcmRingBufferReadCursor extends PcmRingBufferPad1 {
+	// written by the consumer
+	volatile long mReadIndex;
+	// the consumer's copy of mWriteIndex
+	long mWriteIndexCache;
+}
+
+abstract class PcmRingBufferFields extends PcmRingBufferReadCursor {
+	long p20, p21, p22, p23, p24, p25, p26, p27;
+}
@@ -0,0 +1,135 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import com.lelloman.audiostreamlistener.threading.AudioClient.StreamConfig;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.HANDSHAKE_ATTEMPTS;
+import static com.lelloman.audiostreamlistener.Constants.HANDSHAKE_TIMEOUT_MS;
+import static com.lelloman.audiostreamlistener.Constants.MSG_WELCOME;
+
+/**
+ * 	the handshake of a client that starts the stream with the config
+ * 	of a server session it already has, without waiting for the
+ * 	MSG_WELCOME. the hello is sent again with the handshake backoff
+ * 	until the welcome arrives, on the stream socket among the frames,
+ * 	then its config and session are checked against the ones the
+ * 	stream started with. another session with the same config still
+ * 	plays, another config has to be started again with the welcome one.
+ * 	it runs on the socket thread, the outcome can be read from any thread
+ */
+public class SessionResume {
+
+	private final UdpChannel mChannel;
+	private final SocketAddress mServerAddress;
+	private final ByteBuffer mHello;
+	private final int mNonce;
+	private final StreamConfig mExpectedConfig;
+
+	private long mNextHelloNanos;
+	private long mTimeoutMs = HANDSHAKE_TIMEOUT_MS;
+	private int mAttempts;
+	private volatile boolean mConfirmed;
+	private volatile boolean mRejected;
+	// from the welcome once it arrives
+	private volatile StreamConfig mStreamConfig;
+	private volatile int mSessionToken;
+
+	/**
+	 * @param hello the whole MSG_HELLO, from its position to its limit
+	 * @param streamConfig the config the stream starts with
+	 * @param sessionToken the session it belongs to
+	 */
+	public SessionResume(UdpChannel channel, SocketAddress serverAddress, ByteBuffer hello, int nonce,
+						 StreamConfig streamConfig, int sessionToken) {
+		mChannel = channel;
+		mServerAddress = serverAddress;
+		mHello = ByteBuffer.allocate(hello.remaining());
+		mHello.put(hello.duplicate()).flip();
+		mNonce = nonce;
+		mExpectedConfig = streamConfig;
+		mSessionToken = sessionToken;
+	}
+
+	/**
+	 * 	send the hello if it's time to
+	 */
+	public void poll(long now) throws IOException {
+		if (mConfirmed || mAttempts >= HANDSHAKE_ATTEMPTS || now - mNextHelloNanos < 0)
+			return;
+
+		mHello.rewind();
+		mChannel.send(mHello, mServerAddress);
+		mAttempts++;
+		mNextHelloNanos = now + TimeUnit.MILLISECONDS.toNanos(mTimeoutMs);
+		mTimeoutMs *= 2;
+	}
+
+	/**
+	 * 	read a MSG_WELCOME, from the position of the packet which is
+	 * 	left untouched
+	 *
+	 * @return false if the packet isn't the welcome
+	 */
+	public boolean onReply(ByteBuffer packet) {
+		int offset = packet.position();
+		if (packet.remaining() < 24 || packet.getInt(offset) != MSG_WELCOME
+				|| packet.getInt(offset + 4) < 1 || packet.getInt(offset + 8) != mNonce)
+			return false;
+		if (mConfirmed)
+			return true;
+
+		ByteBuffer welcome = packet.duplicate();
+		welcome.position(offset + 24);
+		mSessionToken = AudioClient.readSessionToken(welcome);
+		try {
+			mStreamConfig = StreamConfig.read(welcome, packet.getInt(offset + 12),
+					packet.getInt(offset + 16), packet.getInt(offset + 20));
+		} catch (IllegalArgumentException e) {
+			mStreamConfig = null;
+		}
+		// a server restarted with the same config streams the same frames
+		mRejected = !mExpectedConfig.equals(mStreamConfig);
+		mConfirmed = true;
+		return true;
+	}
+
+	/**
+	 * 	the welcome arrived with the same config
+	 */
+	public boolean isConfirmed() {
+		return mConfirmed && !mRejected;
+	}
+
+	/**
+	 * 	the welcome arrived with another config
+	 */
+	public boolean isRejected() {
+		return mRejected;
+	}
+
+	/**
+	 * 	the one of the welcome, null until it arrives or if it can't be read
+	 */
+	public StreamConfig getStreamConfig() {
+		return mStreamConfig;
+	}
+
+	/**
+	 * 	the one of the welcome, 0 if the server has none, the one the
+	 * 	stream started with until it arrives
+	 */
+	public int getSessionToken() {
+		return mSessionToken;
+	}
+
+	/**
+	 * 	the hellos sent so far
+	 */
+	public int getAttempts() {
+		return mAttempts;
+	}
+}
@@ -0,0 +1,69 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 	when each phase of the startup of an {@link AudioClient} ended,
+ * 	from when it started, so that the time to first audio can be
+ * 	measured and tracked. the phases are marked from the client, the
+ * 	socket and the player threads, only the first mark of each counts
+ */
+public class StartupTimer {
+
+	// the server address is known
+	public static final int RESOLVED = 0;
+	// the stream config is known and the server is streaming
+	public static final int HANDSHAKE = 1;
+	// the sink is open and the buffers allocated
+	public static final int SINK_READY = 2;
+	public static final int FIRST_FRAME = 3;
+	// the first pcm was written to the sink
+	public static final int FIRST_AUDIO = 4;
+
+	private static final String[] NAMES = {"resolved", "handshake", "sink ready", "first frame", "first audio"};
+
+	private final long mStartNanos;
+	// 0 until the phase is marked
+	private final AtomicLongArray mPhaseNanos = new AtomicLongArray(NAMES.length);
+
+	public StartupTimer() {
+		mStartNanos = System.nanoTime();
+	}
+
+	/**
+	 * @return true if it's the first time the phase is marked
+	 */
+	public boolean mark(int phase) {
+		long elapsed = Math.max(1, System.nanoTime() - mStartNanos);
+		return mPhaseNanos.compareAndSet(phase, 0, elapsed);
+	}
+
+	public boolean isMarked(int phase) {
+		return mPhaseNanos.get(phase) != 0;
+	}
+
+	/**
+	 * @return ms from the start to the end of the phase, -1 if it didn't end yet
+	 */
+	public double getPhaseMs(int phase) {
+		long nanos = mPhaseNanos.get(phase);
+		return nanos == 0 ? -1 : nanos / 1e6;
+	}
+
+	public double getTimeToFirstAudioMs() {
+		return getPhaseMs(FIRST_AUDIO);
+	}
+
+	/**
+	 * 	the phases ended so far, in the order they did
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("startup");
+		for (int phase = 0; phase < NAMES.length; phase++) {
+			if (isMarked(phase))
+				builder.append(String.format(" %s %.1f ms", NAMES[phase], getPhaseMs(phase)));
+		}
+		return builder.toString();
+	}
+}
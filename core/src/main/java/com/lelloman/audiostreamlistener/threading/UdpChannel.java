@@ -0,0 +1,77 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * 	a non blocking {@link DatagramChannel} with a receive timeout,
+ * 	which a blocking channel doesn't have.
+ * 	the selected keys set is never cleared, so select() doesn't allocate
+ * 	an entry for every packet, this means its return value can't be
+ * 	trusted and the channel is just polled every time it returns
+ */
+public class UdpChannel implements Closeable {
+
+	private final DatagramChannel mChannel;
+	private final Selector mSelector;
+
+	public UdpChannel() throws IOException {
+		mChannel = DatagramChannel.open();
+		mChannel.configureBlocking(false);
+		mChannel.socket().bind(null);
+		mSelector = Selector.open();
+		mChannel.register(mSelector, SelectionKey.OP_READ);
+	}
+
+	public void setReceiveBufferSize(int size) throws IOException {
+		mChannel.socket().setReceiveBufferSize(size);
+	}
+
+	public void send(ByteBuffer src, SocketAddress target) throws IOException {
+		mChannel.send(src, target);
+	}
+
+	/**
+	 * 	wait up to timeoutMs for a datagram, on success dst is flipped
+	 * 	so that it goes from 0 to the datagram length
+	 *
+	 * @return the sender or null if nothing arrived in time
+	 */
+	public SocketAddress receive(ByteBuffer dst, long timeoutMs) throws IOException {
+		long deadline = System.currentTimeMillis() + timeoutMs;
+
+		while (true) {
+			dst.clear();
+			SocketAddress sender = mChannel.receive(dst);
+			if (sender != null) {
+				dst.flip();
+				return sender;
+			}
+
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0 || !mSelector.isOpen())
+				return null;
+			mSelector.select(remaining);
+		}
+	}
+
+	public InetSocketAddress getLocalAddress() {
+		return (InetSocketAddress) mChannel.socket().getLocalSocketAddress();
+	}
+
+	/**
+	 * 	can be called from any thread, a pending receive() returns
+	 */
+	@Override
+	public void close() throws IOException {
+		mSelector.wakeup();
+		mChannel.close();
+		mSelector.close();
+	}
+}
@@ -0,0 +1,216 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import com.lelloman.audiostreamlistener.Logger;
+import com.lelloman.audiostreamlistener.sink.AudioSink;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 	coalesces small frames into one {@link AudioSink} write and writes
+ * 	without blocking, whatever the sink doesn't accept stays staged and
+ * 	the caller waits here, explicitly, until the playback head makes
+ * 	room. frames as big as a batch are written without being copied.
+ * 	it's meant to be used by a single thread, the metrics can be read
+ * 	from any thread
+ */
+public class WriteScheduler {
+
+	public static final String TAG = WriteScheduler.class.getSimpleName();
+
+	// the window the write call rate is measured over
+	private static final long RATE_WINDOW_NANOS = 1000000000L;
+
+	private final AudioSink mSink;
+	private final ByteBuffer mStaging;
+	private final int mBatchBytes;
+	// how long to wait when the track is full
+	private final long mWaitNanos;
+
+	private int mStagedFrames;
+
+	// metrics, written by the player thread only
+	private volatile long mWriteCalls;
+	private volatile long mBatches;
+	private volatile long mBatchedFrames;
+	private volatile long mBytesAccepted;
+	private volatile long mShortWrites;
+	private volatile long mStallNanos;
+	private volatile long mErrors;
+	private volatile float mWriteCallRate;
+	private long mRateWindowStart;
+	private long mRateWindowCalls;
+
+	/**
+	 * @param batchBytes frames are staged until there's at least this much
+	 * @param bytesPerSecond playback rate, to know how long to wait for room
+	 */
+	public WriteScheduler(AudioSink sink, int batchBytes, int bytesPerSecond) {
+		mSink = sink;
+		mBatchBytes = batchBytes;
+		// two batches so that a frame always fits behind a partial one
+		mStaging = ByteBuffer.allocateDirect(batchBytes * 2);
+		// a quarter of a batch
+		mWaitNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), batchBytes * 1000000000L / Math.max(1, bytesPerSecond) / 4);
+	}
+
+	/**
+	 * 	stage a frame, from its position to its limit, and write the batch
+	 * 	when it's big enough. when there's no room left it waits for the
+	 * 	track to accept what is staged
+	 */
+	public void write(ByteBuffer frame) throws InterruptedException {
+		// what's staged goes first, a frame bigger than the whole
+		// staging then goes straight to the track like a batch
+		while (mStaging.position() > 0 && mStaging.remaining() < frame.remaining()) {
+			flush();
+		}
+		if (mStaging.position() == 0 && frame.remaining() >= mBatchBytes) {
+			// big enough on its own, no need to copy it
+			while (frame.hasRemaining()) {
+				writeNonBlocking(frame);
+			}
+			mBatches++;
+			mBatchedFrames++;
+			return;
+		}
+
+		mStaging.put(frame);
+		mStagedFrames++;
+
+		if (mStaging.position() >= mBatchBytes)
+			flush();
+	}
+
+	/**
+	 * 	write what's staged as long as the track accepts it, without
+	 * 	waiting. to be called when no more frames are coming for a while
+	 */
+	public void flushPending() {
+		if (mStaging.position() == 0)
+			return;
+
+		mStaging.flip();
+		int accepted = writeToTrack(mStaging);
+		mStaging.compact();
+		if (accepted > 0 && mStaging.position() == 0) {
+			mBatches++;
+			mBatchedFrames += mStagedFrames;
+			mStagedFrames = 0;
+		}
+	}
+
+	/**
+	 * 	write the staged bytes, waiting if the track takes none of them
+	 */
+	private void flush() throws InterruptedException {
+		mStaging.flip();
+		writeNonBlocking(mStaging);
+		mStaging.compact();
+		if (mStaging.position() == 0) {
+			mBatches++;
+			mBatchedFrames += mStagedFrames;
+			mStagedFrames = 0;
+		}
+	}
+
+	private void writeNonBlocking(ByteBuffer buffer) throws InterruptedException {
+		if (writeToTrack(buffer) == 0) {
+			long start = System.nanoTime();
+			TimeUnit.NANOSECONDS.sleep(mWaitNanos);
+			mStallNanos += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * @return how many bytes the track accepted, the position of buffer
+	 * 	is moved past them
+	 */
+	private int writeToTrack(ByteBuffer buffer) {
+		int size = buffer.remaining();
+		int accepted = mSink.write(buffer, size);
+		mWriteCalls++;
+		updateRate();
+
+		if (accepted < 0) {
+			// there's nothing sensible to do with the data, drop it
+			Logger.w(TAG, "write() error " + accepted);
+			mErrors++;
+			buffer.position(buffer.limit());
+			return size;
+		}
+
+		mBytesAccepted += accepted;
+		if (accepted < size)
+			mShortWrites++;
+		return accepted;
+	}
+
+	private void updateRate() {
+		long now = System.nanoTime();
+		if (mRateWindowStart == 0) {
+			mRateWindowStart = now;
+			mRateWindowCalls = mWriteCalls;
+		} else if (now - mRateWindowStart >= RATE_WINDOW_NANOS) {
+			mWriteCallRate = (mWriteCalls - mRateWindowCalls) * 1e9f / (now - mRateWindowStart);
+			mRateWindowStart = now;
+			mRateWindowCalls = mWriteCalls;
+		}
+	}
+
+	public long getWriteCalls() {
+		return mWriteCalls;
+	}
+
+	/**
+	 * 	write calls per second over the last second or so
+	 */
+	public float getWriteCallRate() {
+		return mWriteCallRate;
+	}
+
+	/**
+	 * 	frames per batch, on average
+	 */
+	public float getAverageBatchFrames() {
+		long batches = mBatches;
+		return batches > 0 ? mBatchedFrames / (float) batches : 0;
+	}
+
+	/**
+	 * 	bytes accepted per write call, on average
+	 */
+	public float getAverageBatchBytes() {
+		long calls = mWriteCalls;
+		return calls > 0 ? mBytesAccepted / (float) calls : 0;
+	}
+
+	/**
+	 * 	bytes waiting to be written, only the writing thread can read them
+	 */
+	public int getStagedBytes() {
+		return mStaging.position();
+	}
+
+	public long getBytesAccepted() {
+		return mBytesAccepted;
+	}
+
+	/**
+	 * 	writes the track accepted only partially
+	 */
+	public long getShortWrites() {
+		return mShortWrites;
+	}
+
+	/**
+	 * 	time spent waiting for the track to make room
+	 */
+	public long getStallMs() {
+		return TimeUnit.NANOSECONDS.toMillis(mStallNanos);
+	}
+
+	public long getErrors() {
+		return mErrors;
+	}
+}
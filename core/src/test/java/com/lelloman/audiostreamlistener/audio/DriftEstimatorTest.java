@@ -0,0 +1,67 @@
+package com.lelloman.audiostreamlistener.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DriftEstimatorTest {
+
+	private static final int RATE = 48000;
+	private static final long TICK_NANOS = 10000000L;
+	private static final double TARGET_LEVEL = 4800;
+
+	private final DriftEstimator mDriftEstimator = new DriftEstimator();
+
+	@Test
+	public void fasterSender_isEstimated() {
+		run(200, 300);
+		assertEquals(200, mDriftEstimator.getDriftPpm(), 10);
+		assertEquals(1.0002, mDriftEstimator.getStep(), 1e-5);
+	}
+
+	@Test
+	public void slowerSender_isEstimated() {
+		run(-350, 300);
+		assertEquals(-350, mDriftEstimator.getDriftPpm(), 15);
+		assertEquals(1 - 350e-6, mDriftEstimator.getStep(), 1e-5);
+	}
+
+	@Test
+	public void burst_isNotDrift() {
+		mDriftEstimator.update(1, 0, 0, TARGET_LEVEL, TARGET_LEVEL);
+		// a whole second of audio shows up at once in a 2 second window
+		mDriftEstimator.update(1 + 2000000000L, 3 * RATE, 2 * RATE, TARGET_LEVEL, TARGET_LEVEL);
+
+		assertEquals(0, mDriftEstimator.getDriftPpm(), 0);
+	}
+
+	@Test
+	public void level_nudgesTheStep() {
+		assertEquals(1.001, mDriftEstimator.update(1, 0, 0, TARGET_LEVEL * 1.1, TARGET_LEVEL), 1e-9);
+		mDriftEstimator.reset();
+		assertEquals(.999, mDriftEstimator.update(1, 0, 0, TARGET_LEVEL * .9, TARGET_LEVEL), 1e-9);
+	}
+
+	@Test
+	public void step_isClamped() {
+		mDriftEstimator.update(1, 0, 0, TARGET_LEVEL * 10, TARGET_LEVEL);
+		assertEquals(1 + DriftEstimator.MAX_DEVIATION, mDriftEstimator.getStep(), 0);
+
+		mDriftEstimator.reset();
+		mDriftEstimator.update(1, 0, 0, 0, TARGET_LEVEL);
+		assertEquals(1 - DriftEstimator.MAX_DEVIATION, mDriftEstimator.getStep(), 1e-9);
+	}
+
+	/**
+	 * 	the sender clock off by ppm, the buffer kept at its target
+	 */
+	private void run(double ppm, int seconds) {
+		double received = 0;
+		long played = 0;
+		for (long now = 1; now < seconds * 1000000000L; now += TICK_NANOS) {
+			received += RATE / 100 * (1 + ppm / 1e6);
+			played += RATE / 100;
+			mDriftEstimator.update(now, (long) received, played, TARGET_LEVEL, TARGET_LEVEL);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.lelloman.audiostreamlistener.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FractionalResamplerTest {
+
+	private static final int RATE = 48000;
+	private static final int FRAME_SAMPLES = 480;
+	private static final int FRAMES = 100;
+
+	private final Random mRandom = new Random(42);
+
+	@Test
+	public void stepOfOne_isAPassthrough() {
+		float[] input = new float[FRAME_SAMPLES * FRAMES];
+		for (int i = 0; i < input.length; i++) {
+			input[i] = mRandom.nextFloat() * 2 - 1;
+		}
+
+		float[] output = resample(input, 1, FRAME_SAMPLES);
+
+		// one sample late, the lookahead of the filter is still in it
+		assertTrue(output.length > input.length - 16);
+		assertEquals(0, output[0], 0);
+		for (int i = 1; i < output.length; i++) {
+			assertEquals("at " + i, input[i - 1], output[i], 0);
+		}
+	}
+
+	@Test
+	public void length_followsTheStep() {
+		float[] input = tone(FRAME_SAMPLES * FRAMES);
+		for (double step : new double[]{1 - DriftEstimator.MAX_DEVIATION, .9997, 1.0003, 1 + DriftEstimator.MAX_DEVIATION}) {
+			float[] output = resample(input, step, FRAME_SAMPLES);
+			assertEquals("step " + step, input.length / step, output.length, 16);
+		}
+	}
+
+	@Test
+	public void chunks_joinSeamlessly() {
+		float[] input = tone(FRAME_SAMPLES * FRAMES);
+		for (double step : new double[]{.997, 1.0021}) {
+			float[] whole = resample(input, step, input.length);
+			// odd sizes so that the boundaries fall anywhere in the phase
+			float[] chunked = resample(input, step, 37);
+			assertArrayEquals("step " + step, whole, chunked, 1e-6f);
+		}
+	}
+
+	@Test
+	public void tone_keepsItsPhase() {
+		float[] input = tone(FRAME_SAMPLES * FRAMES);
+		double step = 1.0021;
+		float[] output = resample(input, step, FRAME_SAMPLES);
+
+		// output n is input n * step - 1, past the filter warm up
+		for (int n = 16; n < output.length; n++) {
+			double expected = .5 * Math.sin(2 * Math.PI * 440 * (n * step - 1) / RATE);
+			assertEquals("at " + n, expected, output[n], 2e-3);
+		}
+	}
+
+	private static float[] tone(int samples) {
+		float[] tone = new float[samples];
+		for (int i = 0; i < samples; i++) {
+			tone[i] = (float) (.5 * Math.sin(2 * Math.PI * 440 * i / RATE));
+		}
+		return tone;
+	}
+
+	/**
+	 * 	all of the input, fed chunkSamples at a time
+	 */
+	private static float[] resample(float[] input, double step, int chunkSamples) {
+		FractionalResampler resampler = new FractionalResampler(chunkSamples);
+		resampler.setStep(step);
+		float[] chunk = new float[chunkSamples];
+		float[] out = new float[(int) (chunkSamples / (1 - DriftEstimator.MAX_DEVIATION)) + 32];
+		float[] output = new float[(int) (input.length / (1 - DriftEstimator.MAX_DEVIATION)) + 32];
+		int produced = 0;
+		for (int i = 0; i < input.length; i += chunkSamples) {
+			int count = Math.min(chunkSamples, input.length - i);
+			System.arraycopy(input, i, chunk, 0, count);
+			int n = resampler.process(chunk, count, out);
+			System.arraycopy(out, 0, output, produced, n);
+			produced += n;
+		}
+		float[] result = new float[produced];
+		System.arraycopy(output, 0, result, 0, produced);
+		return result;
+	}
+}
@@ -0,0 +1,144 @@
+package com.lelloman.audiostreamlistener.audio;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_FLOAT;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_16;
+import static com.lelloman.audiostreamlistener.audio.LossConcealer.FADE_REPEAT;
+import static com.lelloman.audiostreamlistener.audio.LossConcealer.SILENCE;
+import static com.lelloman.audiostreamlistener.audio.LossConcealer.WSOLA;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LossConcealerTest {
+
+	private static final int RATE = 48000;
+	// 10 ms, 3 periods of the tone
+	private static final int FRAME_SAMPLES = 480;
+	private static final int TONE_HZ = 300;
+	private static final float AMPLITUDE = .5f;
+	// the steepest the tone gets between two samples, plus some rounding
+	private static final float MAX_STEP = (float) (AMPLITUDE * 2 * Math.PI * TONE_HZ / RATE) * 1.1f;
+
+	private static final int[] STRATEGIES = {SILENCE, FADE_REPEAT, WSOLA};
+
+	@Test
+	public void replacement_hasTheFrameLength() {
+		for (int strategy : STRATEGIES) {
+			for (int channels = 1; channels <= 2; channels++) {
+				int maxFrameSize = FRAME_SAMPLES * FORMAT_PCM_16 * channels;
+				LossConcealer concealer = LossConcealer.create(strategy, RATE, FORMAT_PCM_16, channels, maxFrameSize);
+				concealer.onFrame(ByteBuffer.allocate(maxFrameSize));
+
+				ByteBuffer dst = ByteBuffer.allocate(maxFrameSize + 16);
+				dst.position(8);
+				concealer.conceal(dst, maxFrameSize / 2);
+				assertEquals("strategy " + strategy, 8 + maxFrameSize / 2, dst.limit());
+				assertEquals(8, dst.position());
+			}
+		}
+	}
+
+	@Test
+	public void fadeOut_joinsTheLastFrame() {
+		for (int strategy : new int[]{FADE_REPEAT, WSOLA}) {
+			LossConcealer concealer = concealer(strategy);
+			float[] played = new float[FRAME_SAMPLES * 8];
+			int n = 0;
+			for (int frame = 0; frame < 4; frame++) {
+				n = play(concealer, played, n, tone(frame));
+			}
+			for (int frame = 0; frame < 4; frame++) {
+				n = conceal(concealer, played, n);
+			}
+
+			assertSmooth("strategy " + strategy, played, n);
+		}
+	}
+
+	@Test
+	public void fadeIn_joinsTheNextFrame() {
+		for (int strategy : STRATEGIES) {
+			LossConcealer concealer = concealer(strategy);
+			float[] played = new float[FRAME_SAMPLES * 8];
+			for (int frame = 0; frame < 4; frame++) {
+				concealer.onFrame(tone(frame));
+			}
+			// long enough to be silent, then the tone comes back at its peak
+			for (int frame = 0; frame < 8; frame++) {
+				conceal(concealer, played, 0);
+			}
+			int n = conceal(concealer, played, 0);
+			n = play(concealer, played, n, tone(0));
+
+			assertSmooth("strategy " + strategy, played, n);
+		}
+	}
+
+	@Test
+	public void longLoss_decaysToSilence() {
+		for (int strategy : STRATEGIES) {
+			LossConcealer concealer = concealer(strategy);
+			for (int frame = 0; frame < 4; frame++) {
+				concealer.onFrame(tone(frame));
+			}
+
+			// held for 10 ms then faded out over 50
+			float[] played = new float[FRAME_SAMPLES];
+			float lastPeak = Float.MAX_VALUE;
+			for (int frame = 0; frame < 10; frame++) {
+				conceal(concealer, played, 0);
+				float peak = 0;
+				for (float sample : played) {
+					peak = Math.max(peak, Math.abs(sample));
+				}
+				assertTrue("strategy " + strategy + " frame " + frame, peak <= lastPeak);
+				if (frame >= 6)
+					assertEquals("strategy " + strategy + " frame " + frame, 0, peak, 0);
+				lastPeak = peak;
+			}
+		}
+	}
+
+	private static LossConcealer concealer(int strategy) {
+		return LossConcealer.create(strategy, RATE, FORMAT_FLOAT, FRAME_SAMPLES * FORMAT_FLOAT);
+	}
+
+	/**
+	 * 	a frame of the tone, a cosine so that it starts at its peak
+	 */
+	private static ByteBuffer tone(int frame) {
+		ByteBuffer buffer = ByteBuffer.allocate(FRAME_SAMPLES * FORMAT_FLOAT);
+		for (int i = 0; i < FRAME_SAMPLES; i++) {
+			double t = (frame * FRAME_SAMPLES + i) / (double) RATE;
+			Samples.set(buffer, 0, i, FORMAT_FLOAT, (float) (AMPLITUDE * Math.cos(2 * Math.PI * TONE_HZ * t)));
+		}
+		return buffer;
+	}
+
+	private static int play(LossConcealer concealer, float[] played, int n, ByteBuffer frame) {
+		concealer.onFrame(frame);
+		for (int i = 0; i < FRAME_SAMPLES; i++) {
+			played[n++] = Samples.get(frame, 0, i, FORMAT_FLOAT);
+		}
+		return n;
+	}
+
+	private static int conceal(LossConcealer concealer, float[] played, int n) {
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_SAMPLES * FORMAT_FLOAT);
+		concealer.conceal(frame, frame.capacity());
+		for (int i = 0; i < FRAME_SAMPLES; i++) {
+			played[n++] = Samples.get(frame, 0, i, FORMAT_FLOAT);
+		}
+		return n;
+	}
+
+	private static void assertSmooth(String message, float[] played, int n) {
+		for (int i = 1; i < n; i++) {
+			float step = Math.abs(played[i] - played[i - 1]);
+			assertTrue(message + " jumps by " + step + " at " + i, step <= MAX_STEP);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.lelloman.audiostreamlistener.audio;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OutputBufferControllerTest {
+
+	// samples per ms, 48 khz
+	private static final int RATE = 48;
+	private static final int MIN_SIZE = 20 * RATE;
+	private static final int MAX_SIZE = 100 * RATE;
+
+	private final OutputBufferController mController = new OutputBufferController(MIN_SIZE, MAX_SIZE);
+
+	@Test
+	public void steadyWriter_keepsTheMinimum() {
+		SimulatedSink sink = new SimulatedSink(true);
+		sink.run(30000, 0, 0, 0);
+
+		assertEquals(0, sink.mUnderruns);
+		assertEquals(MIN_SIZE, mController.getSize());
+	}
+
+	@Test
+	public void writerHiccups_growTheBufferUntilTheyStopHurting() {
+		SimulatedSink sink = new SimulatedSink(true);
+		// the writer is 30 ms late every second
+		sink.run(10000, 1000, 30, 0);
+		assertTrue(mController.getGrowCount() > 0);
+		assertTrue(mController.getSize() > MIN_SIZE && mController.getSize() <= MAX_SIZE);
+
+		int underruns = sink.mUnderruns;
+		sink.run(30000, 1000, 30, 0);
+		// probing smaller sizes every now and then costs a few
+		assertTrue(sink.mUnderruns - underruns <= 3);
+	}
+
+	@Test
+	public void inferredUnderruns_growTheBufferToo() {
+		SimulatedSink sink = new SimulatedSink(false);
+		sink.run(10000, 1000, 30, 0);
+
+		assertTrue(mController.getUnderrunCount() > 0);
+		assertTrue(mController.getSize() > MIN_SIZE);
+	}
+
+	@Test
+	public void quietSink_shrinksBackToTheMinimum() {
+		SimulatedSink sink = new SimulatedSink(true);
+		sink.run(10000, 500, 60, 0);
+		assertTrue(mController.getSize() > MIN_SIZE);
+
+		sink.run(120000, 0, 0, 0);
+		assertEquals(MIN_SIZE, mController.getSize());
+		assertTrue(mController.getShrinkCount() > 0);
+	}
+
+	@Test
+	public void starvedWriter_isNotTheSinkFault() {
+		SimulatedSink sink = new SimulatedSink(true);
+		// nothing to write for 50 ms every second
+		sink.run(10000, 1000, 0, 50);
+
+		assertTrue(sink.mUnderruns > 0);
+		assertEquals(0, mController.getUnderrunCount());
+		assertEquals(MIN_SIZE, mController.getSize());
+	}
+
+	/**
+	 * 	a device that plays 10 ms bursts and a writer that tops it up
+	 * 	every 5 ms, up to the size the controller asks for, with a
+	 * 	millisecond clock
+	 */
+	private class SimulatedSink {
+
+		private static final int PERIOD_MS = 10;
+		private static final int WRITE_MS = 5;
+
+		private final boolean mCountsUnderruns;
+		private long mNowMs;
+		private long mPlayed;
+		private long mWritten;
+		private int mUnderruns;
+		private boolean mStarved;
+
+		SimulatedSink(boolean countsUnderruns) {
+			mCountsUnderruns = countsUnderruns;
+		}
+
+		/**
+		 * @param everyMs how often the writer is late or has nothing to write
+		 * @param lateMs how late the writer is
+		 * @param starvedMs how long the writer has nothing to write
+		 */
+		void run(int durationMs, int everyMs, int lateMs, int starvedMs) {
+			long end = mNowMs + durationMs;
+			long nextWrite = mNowMs;
+			while (mNowMs < end) {
+				mNowMs++;
+				if (mNowMs % PERIOD_MS == 0) {
+					int burst = PERIOD_MS * RATE;
+					long queued = mWritten - mPlayed;
+					if (queued < burst)
+						mUnderruns++;
+					mPlayed += Math.min(queued, burst);
+				}
+				if (mNowMs < nextWrite)
+					continue;
+
+				nextWrite = mNowMs + WRITE_MS;
+				if (everyMs > 0 && mNowMs % everyMs < WRITE_MS) {
+					nextWrite += lateMs;
+					if (starvedMs > 0) {
+						nextWrite += starvedMs;
+						mStarved = true;
+						continue;
+					}
+				}
+				mWritten = Math.max(mWritten, mPlayed + mController.getSize());
+				mController.update(TimeUnit.MILLISECONDS.toNanos(mNowMs), mPlayed, mWritten,
+						mCountsUnderruns ? mUnderruns : -1, mStarved);
+				mStarved = false;
+			}
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.lelloman.audiostreamlistener.audio;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_FLOAT;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_16;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_24;
+import static org.junit.Assert.assertEquals;
+
+public class SampleConverterTest {
+
+	private static final short[] PCM_16 = {0, 16384, -16384, Short.MAX_VALUE, Short.MIN_VALUE, -1, 1};
+
+	@Test
+	public void pcm16ToFloat_inPlace() {
+		ByteBuffer data = ByteBuffer.allocate(PCM_16.length * 4);
+		for (int i = 0; i < PCM_16.length; i++) {
+			Samples.setPcm16(data, i * 2, PCM_16[i]);
+		}
+
+		SampleConverter.convert(data, 0, FORMAT_PCM_16, data, 0, FORMAT_FLOAT, PCM_16.length);
+
+		for (int i = 0; i < PCM_16.length; i++) {
+			assertEquals(PCM_16[i] / 32768f, Samples.getFloat(data, i * 4), 0);
+		}
+		assertEquals(ByteOrder.BIG_ENDIAN, data.order());
+	}
+
+	@Test
+	public void pcm16ToPcm24_inPlace() {
+		ByteBuffer data = ByteBuffer.allocate(PCM_16.length * 3);
+		for (int i = 0; i < PCM_16.length; i++) {
+			Samples.setPcm16(data, i * 2, PCM_16[i]);
+		}
+
+		SampleConverter.convert(data, 0, FORMAT_PCM_16, data, 0, FORMAT_PCM_24, PCM_16.length);
+
+		for (int i = 0; i < PCM_16.length; i++) {
+			assertEquals(PCM_16[i] << 8, Samples.getPcm24(data, i * 3));
+		}
+	}
+
+	@Test
+	public void pcm24ToFloat_inPlace() {
+		int[] pcm24 = {0, 0x7fffff, -0x800000, 0x400000, -1};
+		ByteBuffer data = ByteBuffer.allocate(pcm24.length * 4);
+		for (int i = 0; i < pcm24.length; i++) {
+			Samples.setPcm24(data, i * 3, pcm24[i]);
+		}
+
+		SampleConverter.convert(data, 0, FORMAT_PCM_24, data, 0, FORMAT_FLOAT, pcm24.length);
+
+		for (int i = 0; i < pcm24.length; i++) {
+			assertEquals(pcm24[i] / 8388608f, Samples.getFloat(data, i * 4), 0);
+		}
+	}
+
+	@Test
+	public void pcm24ToPcm16_isRoundedAndClamped() {
+		int[] pcm24 = {0x7fffff, 0x7fff80, 0x7fff7f, -0x800000, 127, 128, 383, -128, -129, 0x1234ff};
+		short[] expected = {Short.MAX_VALUE, Short.MAX_VALUE, Short.MAX_VALUE, Short.MIN_VALUE, 0, 1, 1, 0, -1, 0x1235};
+		ByteBuffer src = ByteBuffer.allocate(pcm24.length * 3);
+		for (int i = 0; i < pcm24.length; i++) {
+			Samples.setPcm24(src, i * 3, pcm24[i]);
+		}
+		ByteBuffer dst = ByteBuffer.allocate(pcm24.length * 2);
+
+		SampleConverter.convert(src, 0, FORMAT_PCM_24, dst, 0, FORMAT_PCM_16, pcm24.length);
+
+		for (int i = 0; i < pcm24.length; i++) {
+			assertEquals("0x" + Integer.toHexString(pcm24[i]), expected[i], Samples.getPcm16(dst, i * 2));
+		}
+	}
+
+	@Test
+	public void sixChannels_mixDownToStereo() {
+		// front left and right, center, lfe, surround left and right
+		short[] frame = {100, 200, 300, 400, 500, 600};
+
+		// the center and the even ones on the left, the center and the odd ones on the right
+		ByteBuffer data = pcm16(frame, frame);
+		SampleConverter.downmix(data, 0, FORMAT_PCM_16, 6, 2, 2);
+		for (int f = 0; f < 2; f++) {
+			assertEquals((100 + 300 + 500) / 3, Samples.getPcm16(data, f * 4));
+			assertEquals((200 + 300 + 400 + 600) / 4, Samples.getPcm16(data, f * 4 + 2));
+		}
+
+		data = floats(frame, frame);
+		SampleConverter.downmix(data, 0, FORMAT_FLOAT, 6, 2, 2);
+		for (int f = 0; f < 2; f++) {
+			assertEquals((100 + 300 + 500) / 3f, Samples.getFloat(data, f * 8), .001);
+			assertEquals((200 + 300 + 400 + 600) / 4f, Samples.getFloat(data, f * 8 + 4), .001);
+		}
+	}
+
+	@Test
+	public void threeChannels_mixDownToMono() {
+		short[] first = {300, 600, -300};
+		short[] second = {Short.MAX_VALUE, Short.MAX_VALUE, Short.MAX_VALUE};
+
+		ByteBuffer data = pcm16(first, second);
+		SampleConverter.downmix(data, 0, FORMAT_PCM_16, 3, 1, 2);
+		assertEquals(200, Samples.getPcm16(data, 0));
+		assertEquals(Short.MAX_VALUE, Samples.getPcm16(data, 2));
+
+		data = floats(first, second);
+		SampleConverter.downmix(data, 0, FORMAT_FLOAT, 3, 1, 2);
+		assertEquals(200, Samples.getFloat(data, 0), .001);
+		assertEquals(Short.MAX_VALUE, Samples.getFloat(data, 4), .01);
+	}
+
+	@Test
+	public void threeChannels_mixDownToStereoWithTheCenterOnBothSides() {
+		ByteBuffer data = pcm16(new short[]{100, 200, 600});
+		SampleConverter.downmix(data, 0, FORMAT_PCM_16, 3, 2, 1);
+
+		assertEquals((100 + 600) / 2, Samples.getPcm16(data, 0));
+		assertEquals((200 + 600) / 2, Samples.getPcm16(data, 2));
+	}
+
+	@Test
+	public void converter_mixesDownAfterTheBitDepth() {
+		ByteBuffer src = pcm16(new short[]{100, 200, 300, 400, 500, 600});
+		ByteBuffer dst = ByteBuffer.allocate(6 * 4);
+		SampleConverter converter = new SampleConverter(FORMAT_PCM_16, 6, FORMAT_FLOAT, 2);
+		assertEquals(dst.capacity(), converter.getWorkSize(src.capacity()));
+
+		assertEquals(8, converter.convert(src, dst));
+		assertEquals(8, dst.limit());
+		assertEquals(300 / 32768f, Samples.getFloat(dst, 0), 1e-6);
+		assertEquals(375 / 32768f, Samples.getFloat(dst, 4), 1e-6);
+		assertEquals(0, src.position());
+	}
+
+	private static ByteBuffer pcm16(short[]... frames) {
+		int channels = frames[0].length;
+		ByteBuffer data = ByteBuffer.allocate(frames.length * channels * 2);
+		for (int f = 0; f < frames.length; f++) {
+			for (int c = 0; c < channels; c++) {
+				Samples.setPcm16(data, (f * channels + c) * 2, frames[f][c]);
+			}
+		}
+		return data;
+	}
+
+	private static ByteBuffer floats(short[]... frames) {
+		int channels = frames[0].length;
+		ByteBuffer data = ByteBuffer.allocate(frames.length * channels * 4);
+		for (int f = 0; f < frames.length; f++) {
+			for (int c = 0; c < channels; c++) {
+				Samples.setFloat(data, (f * channels + c) * 4, frames[f][c]);
+			}
+		}
+		return data;
+	}
+}
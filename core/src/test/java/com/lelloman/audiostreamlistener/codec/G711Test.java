@@ -0,0 +1,94 @@
+package com.lelloman.audiostreamlistener.codec;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.lelloman.audiostreamlistener.Constants.CODEC_ALAW;
+import static com.lelloman.audiostreamlistener.Constants.CODEC_MULAW;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class G711Test {
+
+	private static final int SAMPLES = 1 << 16;
+
+	@Test
+	public void muLaw_isWithinTheSegmentStep() {
+		assertWithinSegmentStep(CODEC_MULAW);
+	}
+
+	@Test
+	public void aLaw_isWithinTheSegmentStep() {
+		assertWithinSegmentStep(CODEC_ALAW);
+	}
+
+	@Test
+	public void silence_staysSmall() {
+		for (int codec : new int[]{CODEC_MULAW, CODEC_ALAW}) {
+			short[] decoded = roundTrip(codec, new short[64]);
+			for (short sample : decoded) {
+				assertTrue("codec " + codec + " gave " + sample, Math.abs(sample) <= 8);
+			}
+		}
+	}
+
+	@Test
+	public void truncatedFrame_givesFewerSamples() {
+		short[] samples = new short[256];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = (short) (i * 97);
+		}
+		byte[] encoded = encode(CODEC_MULAW, samples);
+
+		ByteBuffer src = ByteBuffer.allocateDirect(100);
+		src.put(encoded, 0, 100).flip();
+		ByteBuffer dst = ByteBuffer.allocateDirect(samples.length * 2);
+		assertEquals(200, FrameDecoder.create(CODEC_MULAW, samples.length).decode(src, dst));
+		assertEquals(200, dst.limit());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(G711.MULAW_TO_LINEAR[encoded[i] & 0xff], dst.getShort(i * 2));
+		}
+	}
+
+	/**
+	 * 	every 16 bit value, a segment starts at 16 of its steps so
+	 * 	the error is up to a 16th of the sample, 16 in the first ones,
+	 * 	plus what's clipped off at full scale
+	 */
+	private static void assertWithinSegmentStep(int codec) {
+		short[] samples = new short[SAMPLES];
+		for (int i = 0; i < SAMPLES; i++) {
+			samples[i] = (short) (i + Short.MIN_VALUE);
+		}
+		short[] decoded = roundTrip(codec, samples);
+		for (int i = 0; i < SAMPLES; i++) {
+			int error = Math.abs(decoded[i] - samples[i]);
+			int clipped = Math.max(0, Math.abs(samples[i]) - 32124);
+			assertTrue(samples[i] + " decoded as " + decoded[i],
+					error <= Math.max(16, Math.abs(samples[i]) / 16) + clipped);
+		}
+	}
+
+	private static short[] roundTrip(int codec, short[] samples) {
+		byte[] encoded = encode(codec, samples);
+		assertEquals(samples.length, encoded.length);
+
+		ByteBuffer src = ByteBuffer.allocateDirect(encoded.length);
+		src.put(encoded).flip();
+		ByteBuffer dst = ByteBuffer.allocateDirect(samples.length * 2);
+		assertEquals(samples.length * 2, FrameDecoder.create(codec, samples.length).decode(src, dst));
+		short[] decoded = new short[samples.length];
+		dst.asShortBuffer().get(decoded);
+		return decoded;
+	}
+
+	private static byte[] encode(int codec, short[] samples) {
+		ByteBuffer pcm = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+		pcm.asShortBuffer().put(samples);
+		byte[] encoded = new byte[FrameDecoder.getEncodedSize(codec, pcm.capacity())];
+		assertEquals(encoded.length, FrameEncoder.create(codec).encode(pcm.array(), 0, pcm.capacity(), encoded, 0));
+		return encoded;
+	}
+}
@@ -0,0 +1,110 @@
+package com.lelloman.audiostreamlistener.codec;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.lelloman.audiostreamlistener.Constants.CODEC_IMA_ADPCM;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ImaAdpcmTest {
+
+	private static final int SAMPLES = 512;
+	private static final int FRAMES = 10;
+
+	private final byte[][] mFrames = new byte[FRAMES][];
+	private final short[][] mSamples = new short[FRAMES][SAMPLES];
+
+	public ImaAdpcmTest() {
+		FrameEncoder encoder = FrameEncoder.create(CODEC_IMA_ADPCM);
+		for (int frame = 0; frame < FRAMES; frame++) {
+			for (int i = 0; i < SAMPLES; i++) {
+				mSamples[frame][i] = (short) (12000 * Math.sin(2 * Math.PI * 440 * (frame * SAMPLES + i) / 44100.));
+			}
+			mFrames[frame] = encode(encoder, mSamples[frame]);
+		}
+	}
+
+	@Test
+	public void tone_isCloseToTheOriginal() {
+		FrameDecoder decoder = FrameDecoder.create(CODEC_IMA_ADPCM, SAMPLES);
+		// the first frame has to adapt the step from the smallest one
+		for (int frame = 1; frame < FRAMES; frame++) {
+			short[] decoded = decode(decoder, mFrames[frame], SAMPLES);
+			double signal = 0, noise = 0;
+			for (int i = 0; i < SAMPLES; i++) {
+				signal += mSamples[frame][i] * (double) mSamples[frame][i];
+				noise += (decoded[i] - mSamples[frame][i]) * (double) (decoded[i] - mSamples[frame][i]);
+			}
+			double snr = 10 * Math.log10(signal / noise);
+			assertTrue("frame " + frame + " snr " + snr, snr > 30);
+		}
+	}
+
+	@Test
+	public void frames_decodeOnTheirOwn() {
+		FrameDecoder inOrder = FrameDecoder.create(CODEC_IMA_ADPCM, SAMPLES);
+		short[][] decoded = new short[FRAMES][];
+		for (int frame = 0; frame < FRAMES; frame++) {
+			decoded[frame] = decode(inOrder, mFrames[frame], SAMPLES);
+		}
+
+		// from the header alone, backwards and skipping the even ones
+		FrameDecoder lossy = FrameDecoder.create(CODEC_IMA_ADPCM, SAMPLES);
+		for (int frame = FRAMES - 1; frame >= 0; frame -= 2) {
+			assertArrayEquals("frame " + frame, decoded[frame], decode(lossy, mFrames[frame], SAMPLES));
+		}
+	}
+
+	@Test
+	public void header_holdsTheEncoderState() {
+		ImaAdpcm state = new ImaAdpcm();
+		for (int i = 0; i < SAMPLES; i++) {
+			state.encode(mSamples[0][i]);
+		}
+		byte[] second = mFrames[1];
+		assertEquals(state.predictor, (short) ((second[0] & 0xff) | (second[1] << 8)));
+		assertEquals(state.index, second[2]);
+		assertEquals(0, second[3]);
+	}
+
+	@Test
+	public void truncatedFrame_givesFewerSamples() {
+		FrameDecoder decoder = FrameDecoder.create(CODEC_IMA_ADPCM, SAMPLES);
+		short[] whole = decode(decoder, mFrames[3], SAMPLES);
+
+		// 2 samples a byte after the header
+		ByteBuffer src = ByteBuffer.allocateDirect(ImaAdpcm.HEADER_SIZE + 21);
+		src.put(mFrames[3], 0, src.capacity()).flip();
+		ByteBuffer dst = ByteBuffer.allocateDirect(SAMPLES * 2);
+		assertEquals(42 * 2, decoder.decode(src, dst));
+		for (int i = 0; i < 42; i++) {
+			assertEquals(whole[i], dst.getShort(i * 2));
+		}
+
+		// not even the header
+		src.clear().limit(ImaAdpcm.HEADER_SIZE - 1);
+		assertEquals(0, decoder.decode(src, dst));
+	}
+
+	private static byte[] encode(FrameEncoder encoder, short[] samples) {
+		ByteBuffer pcm = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+		pcm.asShortBuffer().put(samples);
+		byte[] encoded = new byte[FrameDecoder.getEncodedSize(CODEC_IMA_ADPCM, pcm.capacity())];
+		assertEquals(encoded.length, encoder.encode(pcm.array(), 0, pcm.capacity(), encoded, 0));
+		return encoded;
+	}
+
+	private static short[] decode(FrameDecoder decoder, byte[] frame, int samples) {
+		ByteBuffer src = ByteBuffer.allocateDirect(frame.length);
+		src.put(frame).flip();
+		ByteBuffer dst = ByteBuffer.allocateDirect(samples * 2);
+		assertEquals(samples * 2, decoder.decode(src, dst));
+		short[] decoded = new short[samples];
+		dst.asShortBuffer().get(decoded);
+		return decoded;
+	}
+}
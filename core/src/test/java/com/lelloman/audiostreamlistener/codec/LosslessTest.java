@@ -0,0 +1,106 @@
+package com.lelloman.audiostreamlistener.codec;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static com.lelloman.audiostreamlistener.Constants.CODEC_LOSSLESS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LosslessTest {
+
+	private static final int SAMPLES = 512;
+
+	private final Random mRandom = new Random(42);
+
+	@Test
+	public void tone_isBitExactAndSmaller() {
+		short[] samples = new short[SAMPLES];
+		for (int i = 0; i < SAMPLES; i++) {
+			samples[i] = (short) (12000 * Math.sin(2 * Math.PI * 440 * i / 44100.) + mRandom.nextGaussian() * 8);
+		}
+		int size = roundTrip(samples);
+		assertTrue("frame of " + size + " bytes", size < SAMPLES);
+	}
+
+	@Test
+	public void silence_isBitExact() {
+		roundTrip(new short[SAMPLES]);
+	}
+
+	@Test
+	public void noise_isSentVerbatim() {
+		short[] samples = new short[SAMPLES];
+		for (int i = 0; i < SAMPLES; i++) {
+			samples[i] = (short) mRandom.nextInt();
+		}
+		int size = roundTrip(samples);
+		assertEquals(Lossless.getMaxFrameSize(SAMPLES * 2), size);
+	}
+
+	@Test
+	public void fullScaleSteps_areBitExact() {
+		short[] samples = new short[SAMPLES];
+		for (int i = 0; i < SAMPLES; i++) {
+			samples[i] = (i / 7) % 2 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+		}
+		samples[100] = 0;
+		roundTrip(samples);
+	}
+
+	@Test
+	public void oddFrameSize_isBitExact() {
+		short[] samples = new short[SAMPLES - 3];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = (short) (i * 37);
+		}
+		roundTrip(samples);
+	}
+
+	@Test
+	public void consecutiveFrames_decodeOnTheirOwn() {
+		FrameEncoder encoder = FrameEncoder.create(CODEC_LOSSLESS);
+		FrameDecoder decoder = FrameDecoder.create(CODEC_LOSSLESS, SAMPLES);
+		for (int frame = 0; frame < 20; frame++) {
+			short[] samples = new short[SAMPLES];
+			for (int i = 0; i < SAMPLES; i++) {
+				samples[i] = (short) (8000 * Math.sin(frame * SAMPLES + i) * mRandom.nextDouble());
+			}
+			assertArrayEquals(samples, decode(decoder, encode(encoder, samples), SAMPLES));
+		}
+	}
+
+	/**
+	 * @return the encoded frame size
+	 */
+	private static int roundTrip(short[] samples) {
+		byte[] encoded = encode(FrameEncoder.create(CODEC_LOSSLESS), samples);
+		short[] decoded = decode(FrameDecoder.create(CODEC_LOSSLESS, samples.length), encoded, samples.length);
+		assertArrayEquals(samples, decoded);
+		return encoded.length;
+	}
+
+	private static byte[] encode(FrameEncoder encoder, short[] samples) {
+		ByteBuffer pcm = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+		pcm.asShortBuffer().put(samples);
+		byte[] encoded = new byte[FrameDecoder.getEncodedSize(CODEC_LOSSLESS, pcm.capacity())];
+		int size = encoder.encode(pcm.array(), 0, pcm.capacity(), encoded, 0);
+		byte[] frame = new byte[size];
+		System.arraycopy(encoded, 0, frame, 0, size);
+		return frame;
+	}
+
+	private static short[] decode(FrameDecoder decoder, byte[] frame, int samples) {
+		ByteBuffer src = ByteBuffer.allocateDirect(frame.length);
+		src.put(frame).flip();
+		ByteBuffer dst = ByteBuffer.allocateDirect(samples * 2);
+		assertEquals(samples * 2, decoder.decode(src, dst));
+		short[] decoded = new short[samples];
+		dst.asShortBuffer().get(decoded);
+		return decoded;
+	}
+}
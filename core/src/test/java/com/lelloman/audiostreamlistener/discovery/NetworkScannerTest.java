@@ -0,0 +1,95 @@
+package com.lelloman.audiostreamlistener.discovery;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_BATCH;
+import static com.lelloman.audiostreamlistener.Constants.MSG_PING;
+import static com.lelloman.audiostreamlistener.Constants.MSG_PONG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NetworkScannerTest {
+
+	private final List<DatagramSocket> mResponders = new ArrayList<>();
+
+	@After
+	public void tearDown() {
+		for (DatagramSocket responder : mResponders) {
+			responder.close();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void earlyPong_doesNotCutTheSweepShort() throws Exception {
+		// the same port on a host early and one late in 127.0.0.0/24
+		int port = respond("127.0.0.2", 0);
+		respond("127.0.0.250", port);
+
+		NetworkScanner scanner = new NetworkScanner(port);
+		scanner.setBroadcast(false);
+		scanner.setRounds(1);
+		// 10 batches a second, the sweep takes way longer than the window
+		scanner.setRate(DISCOVERY_BATCH * 10);
+		scanner.setWindow(50);
+
+		final List<InetAddress> found = Collections.synchronizedList(new ArrayList<InetAddress>());
+		Subnet subnet = Subnet.of((Inet4Address) InetAddress.getByName("127.0.0.1"), 24, 16);
+		scanner.scan(Collections.singletonList(subnet), new NetworkScanner.Listener() {
+			@Override
+			public void onProgress(float progress) {
+			}
+
+			@Override
+			public void onServerFound(InetAddress address) {
+				found.add(address);
+			}
+		});
+
+		assertEquals(subnet.getHostCount(), scanner.getSentCount());
+		assertEquals(2, found.size());
+		assertTrue(found.contains(InetAddress.getByName("127.0.0.2")));
+		assertTrue(found.contains(InetAddress.getByName("127.0.0.250")));
+	}
+
+	/**
+	 * 	a fake server answering MSG_PING on its own thread
+	 *
+	 * @return the port it's on
+	 */
+	private int respond(String host, int port) throws IOException {
+		final DatagramSocket socket = new DatagramSocket(new InetSocketAddress(host, port));
+		mResponders.add(socket);
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				byte[] pong = ByteBuffer.allocate(8).putInt(MSG_PONG).array();
+				DatagramPacket packet = new DatagramPacket(new byte[16], 16);
+				try {
+					while (true) {
+						packet.setLength(16);
+						socket.receive(packet);
+						if (packet.getLength() >= 4 && ByteBuffer.wrap(packet.getData()).getInt() == MSG_PING)
+							socket.send(new DatagramPacket(pong, pong.length, packet.getSocketAddress()));
+					}
+				} catch (IOException e) {
+					// closed
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		return socket.getLocalPort();
+	}
+}
@@ -0,0 +1,49 @@
+package com.lelloman.audiostreamlistener.discovery;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ServerProberTest {
+
+	@Test
+	public void rtt_isTheMedianOfTheAnsweredProbes() throws Exception {
+		ServerProber.Result result = ServerProber.toResult(address(1), new long[]{ms(3), -1, ms(1), ms(40), ms(2)}, null);
+		assertEquals(4, result.replies);
+		assertEquals(2.5f, result.rttMs, 1e-3f);
+
+		// one late reply doesn't change the median
+		result = ServerProber.toResult(address(1), new long[]{ms(2), ms(90), ms(3)}, null);
+		assertEquals(3, result.rttMs, 1e-3f);
+	}
+
+	@Test
+	public void rank_fastestFirst_silentLast() throws Exception {
+		List<ServerProber.Result> results = new ArrayList<>();
+		results.add(ServerProber.toResult(address(1), new long[]{-1, -1}, null));
+		results.add(ServerProber.toResult(address(2), new long[]{ms(8), ms(9)}, null));
+		results.add(ServerProber.toResult(address(3), new long[]{-1, ms(1)}, null));
+		results.add(ServerProber.toResult(address(4), new long[]{-1, -1}, null));
+
+		ServerProber.rank(results);
+
+		assertEquals(address(3), results.get(0).address);
+		assertEquals(address(2), results.get(1).address);
+		// in the order they were given
+		assertEquals(address(1), results.get(2).address);
+		assertEquals(address(4), results.get(3).address);
+		assertEquals(-1, results.get(3).rttMs, 0);
+	}
+
+	private static InetAddress address(int host) throws Exception {
+		return InetAddress.getByAddress(new byte[]{(byte) 192, (byte) 168, 1, (byte) host});
+	}
+
+	private static long ms(long ms) {
+		return ms * 1000000;
+	}
+}
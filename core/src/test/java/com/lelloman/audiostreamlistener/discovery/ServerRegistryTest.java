@@ -0,0 +1,108 @@
+package com.lelloman.audiostreamlistener.discovery;
+
+import com.lelloman.audiostreamlistener.threading.AudioClient.StreamConfig;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.lelloman.audiostreamlistener.Constants.CODEC_LOSSLESS;
+import static com.lelloman.audiostreamlistener.Constants.FEC_XOR;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_16;
+import static com.lelloman.audiostreamlistener.Constants.SESSION_FRESH_MS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ServerRegistryTest {
+
+	private static final long TTL_MS = 1000;
+
+	private final ServerRegistry mRegistry = new ServerRegistry(TTL_MS, 3);
+
+	@Test
+	public void encodeDecode_keepsEverything() {
+		StreamConfig config = new StreamConfig(48000, FORMAT_PCM_16, 1024, 1, CODEC_LOSSLESS, 2, FEC_XOR, 8, 1, 64, 0);
+		mRegistry.onSeen("192.168.1.10", 1.5f, null, 100);
+		mRegistry.onConnected("192.168.1.10", 8080, config, 0xcafe, 200);
+		mRegistry.onSeen("speakers.local", 3.25f, null, 300);
+
+		ServerRegistry decoded = ServerRegistry.decode(mRegistry.encode() + "garbage\n", TTL_MS, 3);
+
+		ServerRegistry.Entry entry = decoded.get("192.168.1.10");
+		assertEquals(8080, entry.port);
+		assertEquals(1.5f, entry.rttMs, 1e-3f);
+		assertEquals(config, entry.streamConfig);
+		assertEquals(0xcafe, entry.sessionToken);
+		assertEquals(0, entry.sessionSeenMs);
+		assertEquals(200, entry.lastSeenMs);
+		entry = decoded.get("speakers.local");
+		assertEquals(0, entry.port);
+		assertNull(entry.streamConfig);
+		assertEquals(2, decoded.getEntries().size());
+	}
+
+	@Test
+	public void newSession_replacesTheConfig() {
+		StreamConfig connected = new StreamConfig(48000, FORMAT_PCM_16, 1024, 1, CODEC_LOSSLESS, 2, FEC_XOR, 8, 1, 64, 1200);
+		StreamConfig announced = new StreamConfig(44100, FORMAT_PCM_16, 1024, 1, CODEC_LOSSLESS, 2, FEC_XOR, 8, 1, 64, 0);
+		mRegistry.onConnected("192.168.1.10", 8080, connected, 1, 100);
+
+		// the same session, the config of the stream is the one that counts
+		mRegistry.onSeen("192.168.1.10", 2, new StreamSession(8080, 1, announced), 200);
+		assertEquals(connected, mRegistry.get("192.168.1.10").streamConfig);
+
+		mRegistry.onSeen("192.168.1.10", 2, new StreamSession(9000, 2, announced), 300);
+		ServerRegistry.Entry entry = mRegistry.get("192.168.1.10");
+		assertEquals(9000, entry.port);
+		assertEquals(announced, entry.streamConfig);
+		assertEquals(2, entry.sessionToken);
+		assertEquals(300, entry.sessionSeenMs);
+	}
+
+	@Test
+	public void savedSession_isFreshOnlyRightAfterDiscovery() {
+		StreamConfig config = new StreamConfig(48000, FORMAT_PCM_16, 1024, 1);
+		mRegistry.onConnected("192.168.1.10", 8080, config, 1, 100);
+		// a stream received isn't the server telling its session
+		assertFalse(mRegistry.get("192.168.1.10").isSessionFresh(100));
+
+		mRegistry.onSeen("192.168.1.10", 2, new StreamSession(8080, 1, config), 1000);
+		ServerRegistry decoded = ServerRegistry.decode(mRegistry.encode(), TTL_MS, 3);
+		ServerRegistry.Entry entry = decoded.get("192.168.1.10");
+		assertTrue(entry.isSessionFresh(1000 + SESSION_FRESH_MS - 1));
+		assertFalse(entry.isSessionFresh(1000 + SESSION_FRESH_MS));
+
+		// connecting again in the same session keeps it
+		mRegistry.onConnected("192.168.1.10", 8080, config, 1, 2000);
+		assertTrue(mRegistry.get("192.168.1.10").isSessionFresh(2000));
+		mRegistry.onConnected("192.168.1.10", 8080, config, 2, 2000);
+		assertFalse(mRegistry.get("192.168.1.10").isSessionFresh(2000));
+	}
+
+	@Test
+	public void linesWithoutSession_areStillRead() {
+		ServerRegistry decoded = ServerRegistry.decode("host 8080 1.500 100 48000 2 1024 1 0 1 0 0 0 0 0\n", TTL_MS, 3);
+
+		ServerRegistry.Entry entry = decoded.get("host");
+		assertEquals(new StreamConfig(48000, 2, 1024, 1, 0, 1, 0, 0, 0, 0, 0), entry.streamConfig);
+		assertEquals(0, entry.sessionToken);
+	}
+
+	@Test
+	public void staleAndOldestServers_areDropped() {
+		mRegistry.onSeen("a", 1, null, 0);
+		mRegistry.onSeen("b", 1, null, 500);
+		mRegistry.onSeen("c", 1, null, 600);
+		mRegistry.onSeen("d", 1, null, 700);
+		// too many, the oldest goes
+		assertNull(mRegistry.get("a"));
+
+		assertTrue(mRegistry.expire(1550));
+		List<ServerRegistry.Entry> entries = mRegistry.getEntries();
+		assertEquals(2, entries.size());
+		assertEquals("d", entries.get(0).host);
+		assertEquals("c", entries.get(1).host);
+	}
+}
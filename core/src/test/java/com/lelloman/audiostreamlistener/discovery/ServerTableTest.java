@@ -0,0 +1,51 @@
+package com.lelloman.audiostreamlistener.discovery;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ServerTableTest {
+
+	private final ServerTable mTable = new ServerTable(6000);
+
+	@Test
+	public void announcements_keepTheServerAlive() throws Exception {
+		assertTrue(mTable.update(InetAddress.getByName("192.168.1.10"), 8080, null, ms(0)));
+		assertFalse(mTable.update(InetAddress.getByName("192.168.1.10"), 8080, null, ms(2000)));
+		assertTrue(mTable.update(InetAddress.getByName("192.168.1.10"), 9000, null, ms(2000)));
+
+		assertFalse(mTable.expire(ms(7000)));
+		assertEquals("[192.168.1.10:8080, 192.168.1.10:9000]", mTable.getServers().toString());
+	}
+
+	@Test
+	public void restartedServer_changes() throws Exception {
+		InetAddress address = InetAddress.getByName("192.168.1.10");
+		assertTrue(mTable.update(address, 8080, new StreamSession(8080, 1, null), ms(0)));
+		assertFalse(mTable.update(address, 8080, new StreamSession(8080, 1, null), ms(2000)));
+		assertTrue(mTable.update(address, 8080, new StreamSession(8080, 2, null), ms(4000)));
+
+		assertEquals(1, mTable.size());
+		assertEquals(2, mTable.getServers().get(0).session.token);
+	}
+
+	@Test
+	public void silentServers_expire() throws Exception {
+		mTable.update(InetAddress.getByName("192.168.1.10"), 8080, null, ms(0));
+		mTable.update(InetAddress.getByName("192.168.1.11"), 8080, null, ms(4000));
+
+		assertTrue(mTable.expire(ms(6000)));
+		assertEquals("[192.168.1.11:8080]", mTable.getServers().toString());
+		assertTrue(mTable.expire(ms(10000)));
+		assertEquals(0, mTable.size());
+	}
+
+	private static long ms(long ms) {
+		return TimeUnit.MILLISECONDS.toNanos(ms);
+	}
+}
@@ -0,0 +1,46 @@
+package com.lelloman.audiostreamlistener.discovery;
+
+import com.lelloman.audiostreamlistener.threading.AudioClient.StreamConfig;
+import com.lelloman.audiostreamlistener.threading.FrameHeader;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static com.lelloman.audiostreamlistener.Constants.CODEC_LOSSLESS;
+import static com.lelloman.audiostreamlistener.Constants.EXT_CODEC;
+import static com.lelloman.audiostreamlistener.Constants.EXT_FRAME_HEADER;
+import static com.lelloman.audiostreamlistener.Constants.EXT_SESSION;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_16;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StreamSessionTest {
+
+	@Test
+	public void session_isReadWithItsConfig() {
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		buffer.putInt(8080).putInt(0x5e55).putInt(48000).putInt(1024).putInt(FORMAT_PCM_16);
+		buffer.putInt(EXT_FRAME_HEADER).putInt(FrameHeader.VERSION).putInt(EXT_CODEC).putInt(CODEC_LOSSLESS);
+		buffer.putInt(EXT_SESSION).putInt(0x5e55);
+		buffer.flip();
+
+		StreamSession session = StreamSession.read(buffer);
+		assertEquals(8080, session.port);
+		assertEquals(0x5e55, session.token);
+		assertEquals(new StreamConfig(48000, FORMAT_PCM_16, 1024, FrameHeader.VERSION, CODEC_LOSSLESS), session.streamConfig);
+	}
+
+	@Test
+	public void olderServers_haveNone() {
+		// just the port of an older announcement
+		ByteBuffer buffer = ByteBuffer.allocate(4);
+		buffer.putInt(8080).flip();
+		assertNull(StreamSession.read(buffer));
+
+		// a session token is never 0
+		buffer = ByteBuffer.allocate(20);
+		buffer.putInt(8080).putInt(0).putInt(48000).putInt(1024).putInt(FORMAT_PCM_16).flip();
+		assertNull(StreamSession.read(buffer));
+	}
+}
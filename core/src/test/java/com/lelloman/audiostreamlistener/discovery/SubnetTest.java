@@ -0,0 +1,53 @@
+package com.lelloman.audiostreamlistener.discovery;
+
+import org.junit.Test;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SubnetTest {
+
+	@Test
+	public void hosts_leaveOutNetworkAndBroadcast() throws Exception {
+		Subnet subnet = Subnet.of(address("192.168.1.77"), 24, 16);
+		assertEquals("192.168.1.0/24", subnet.toString());
+		assertEquals(254, subnet.getHostCount());
+		assertEquals("192.168.1.1", host(subnet, 0));
+		assertEquals("192.168.1.254", host(subnet, 253));
+		assertEquals("192.168.1.255", Subnet.toAddress(subnet.getBroadcast()).getHostAddress());
+
+		Subnet pointToPoint = Subnet.of(address("10.0.0.1"), 31, 16);
+		assertEquals(2, pointToPoint.getHostCount());
+		assertEquals("10.0.0.0", host(pointToPoint, 0));
+	}
+
+	@Test
+	public void wideSubnets_areCutDown() throws Exception {
+		Subnet subnet = Subnet.of(address("10.20.30.40"), 8, 16);
+		assertEquals("10.20.0.0/16", subnet.toString());
+		assertEquals(65534, subnet.getHostCount());
+		assertEquals("10.20.255.254", host(subnet, 65533));
+	}
+
+	@Test
+	public void merge_dropsDuplicatesAndNestedSubnets() throws Exception {
+		Subnet wide = Subnet.of(address("172.16.5.1"), 20, 16);
+		Subnet nested = Subnet.of(address("172.16.5.9"), 24, 16);
+		Subnet other = Subnet.of(address("192.168.0.3"), 24, 16);
+		List<Subnet> merged = NetworkScanner.merge(Arrays.asList(wide, nested, other, other, wide));
+
+		assertEquals(Arrays.asList(other, wide), merged);
+	}
+
+	private static Inet4Address address(String host) throws Exception {
+		return (Inet4Address) InetAddress.getByName(host);
+	}
+
+	private static String host(Subnet subnet, int index) {
+		return Subnet.toAddress(subnet.getHost(index)).getHostAddress();
+	}
+}
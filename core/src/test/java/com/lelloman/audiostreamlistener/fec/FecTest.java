@@ -0,0 +1,146 @@
+package com.lelloman.audiostreamlistener.fec;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static com.lelloman.audiostreamlistener.Constants.FEC_REED_SOLOMON;
+import static com.lelloman.audiostreamlistener.Constants.FEC_XOR;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FecTest {
+
+	private static final int MAX_PAYLOAD = 300;
+
+	private final Random mRandom = new Random(42);
+
+	@Test
+	public void xor_rebuildsAnySingleLoss() {
+		for (int lost = 0; lost < 6; lost++) {
+			assertRebuilt(FEC_XOR, 6, 1, 1L << lost);
+		}
+	}
+
+	@Test
+	public void reedSolomon_rebuildsAsManyLossesAsParity() {
+		// all the ways to lose 3 of 8 frames
+		for (long lost = 0; lost < 1 << 8; lost++) {
+			if (Long.bitCount(lost) == 3)
+				assertRebuilt(FEC_REED_SOLOMON, 8, 3, lost);
+		}
+	}
+
+	@Test
+	public void reedSolomon_usesWhateverParityArrives() {
+		// frames 0 and 5 and the first parity packet lost
+		assertRebuilt(FEC_REED_SOLOMON, 10, 4, 1 | 1 << 5 | 1 << 10);
+	}
+
+	@Test
+	public void tooManyLosses_rebuildNothing() {
+		byte[][] frames = frames(8);
+		FecEncoder encoder = new FecEncoder(FEC_REED_SOLOMON, 8, 2, MAX_PAYLOAD);
+		FecDecoder decoder = new FecDecoder(FEC_REED_SOLOMON, 8, 2, MAX_PAYLOAD);
+		byte[][] parity = encode(encoder, 0, frames);
+		int recovered = 0;
+		for (int i = 3; i < 8; i++) {
+			recovered += decoder.addData(i, ByteBuffer.wrap(frames[i]));
+		}
+		for (int r = 0; r < 2; r++) {
+			recovered += decoder.addParity(0, r, ByteBuffer.wrap(parity[r]));
+		}
+		assertEquals(0, recovered);
+	}
+
+	@Test
+	public void consecutiveGroups_areKeptApart() {
+		FecEncoder encoder = new FecEncoder(FEC_XOR, 4, 1, MAX_PAYLOAD);
+		FecDecoder decoder = new FecDecoder(FEC_XOR, 4, 1, MAX_PAYLOAD);
+		for (int group = 0; group < 10; group++) {
+			byte[][] frames = frames(4);
+			byte[][] parity = encode(encoder, group * 4, frames);
+			int lost = group % 4;
+			for (int i = 0; i < 4; i++) {
+				if (i != lost)
+					assertEquals(0, decoder.addData(group * 4 + i, ByteBuffer.wrap(frames[i])));
+			}
+			assertEquals(1, decoder.addParity(group * 4, 0, ByteBuffer.wrap(parity[0])));
+			assertEquals(group * 4 + lost, decoder.getRecoveredSequence(0));
+			assertArrayEquals(frames[lost], recovered(decoder, 0));
+		}
+		assertEquals(10, decoder.getRecoveredTotal());
+	}
+
+	@Test
+	public void groupJoinedHalfway_sendsNoParity() {
+		FecEncoder encoder = new FecEncoder(FEC_XOR, 4, 1, MAX_PAYLOAD);
+		byte[] frame = new byte[10];
+		assertEquals(false, encoder.add(2, frame, 0, frame.length));
+		assertEquals(false, encoder.add(3, frame, 0, frame.length));
+		for (int i = 4; i < 7; i++) {
+			assertEquals(false, encoder.add(i, frame, 0, frame.length));
+		}
+		assertEquals(true, encoder.add(7, frame, 0, frame.length));
+	}
+
+	/**
+	 * 	a group of frames of random sizes sent with the packets in lost,
+	 * 	a bit per packet, data first and parity after, dropped
+	 */
+	private void assertRebuilt(int scheme, int dataFrames, int parityFrames, long lost) {
+		int sequence = 1000 * dataFrames;
+		byte[][] frames = frames(dataFrames);
+		byte[][] parity = encode(new FecEncoder(scheme, dataFrames, parityFrames, MAX_PAYLOAD), sequence, frames);
+		FecDecoder decoder = new FecDecoder(scheme, dataFrames, parityFrames, MAX_PAYLOAD);
+
+		int recovered = 0;
+		for (int i = 0; i < dataFrames; i++) {
+			if ((lost & 1L << i) == 0)
+				recovered += decoder.addData(sequence + i, ByteBuffer.wrap(frames[i]));
+		}
+		for (int r = 0; r < parityFrames && recovered == 0; r++) {
+			if ((lost & 1L << (dataFrames + r)) == 0)
+				recovered = decoder.addParity(sequence, r, ByteBuffer.wrap(parity[r]));
+		}
+
+		assertEquals(Long.bitCount(lost & ((1L << dataFrames) - 1)), recovered);
+		for (int i = 0; i < recovered; i++) {
+			int column = decoder.getRecoveredSequence(i) - sequence;
+			assertEquals(1L << column, lost & 1L << column);
+			assertArrayEquals(frames[column], recovered(decoder, i));
+		}
+	}
+
+	private byte[][] frames(int count) {
+		byte[][] frames = new byte[count][];
+		for (int i = 0; i < count; i++) {
+			frames[i] = new byte[1 + mRandom.nextInt(MAX_PAYLOAD)];
+			mRandom.nextBytes(frames[i]);
+		}
+		return frames;
+	}
+
+	private static byte[][] encode(FecEncoder encoder, int sequence, byte[][] frames) {
+		for (int i = 0; i < frames.length; i++) {
+			assertEquals(i == frames.length - 1, encoder.add(sequence + i, frames[i], 0, frames[i].length));
+		}
+		byte[][] parity = new byte[encoder.getParityFrames()][];
+		byte[] buffer = new byte[Fec.getMaxParitySize(MAX_PAYLOAD)];
+		for (int r = 0; r < parity.length; r++) {
+			int length = encoder.writeParity(r, buffer, 0);
+			parity[r] = new byte[length];
+			System.arraycopy(buffer, 0, parity[r], 0, length);
+		}
+		return parity;
+	}
+
+	private static byte[] recovered(FecDecoder decoder, int i) {
+		ByteBuffer dst = ByteBuffer.allocate(MAX_PAYLOAD);
+		decoder.getRecovered(i, dst);
+		byte[] frame = new byte[dst.remaining()];
+		dst.get(frame);
+		return frame;
+	}
+}
@@ -0,0 +1,63 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.MSG_CLOCK_REPLY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClockSyncTest {
+
+	// server clock - client clock
+	private static final long OFFSET_US = 5000000;
+
+	private final ClockSync mClockSync = new ClockSync(null, null);
+
+	@Test
+	public void symmetricPaths_giveTheExactOffset() {
+		// 1 ms each way, 100 us in the server
+		assertTrue(reply(10000, 1000, 100, 1000));
+
+		assertTrue(mClockSync.isSynced());
+		assertEquals(OFFSET_US / 1e3f, mClockSync.getOffsetMs(), 1e-3f);
+		assertEquals(2, mClockSync.getRttMs(), 1e-3f);
+		assertEquals(TimeUnit.MICROSECONDS.toNanos(20000), mClockSync.toLocalNanos(20000 + OFFSET_US));
+	}
+
+	@Test
+	public void fastestRoundTrip_wins() {
+		// a reply stuck 20 ms in a queue on the way back
+		reply(10000, 1000, 100, 21000);
+		assertEquals(OFFSET_US / 1e3f - 10, mClockSync.getOffsetMs(), 1e-3f);
+
+		reply(50000, 500, 100, 700);
+		reply(90000, 3000, 100, 3000);
+		assertEquals(1.2f, mClockSync.getRttMs(), 1e-3f);
+		assertEquals(OFFSET_US / 1e3f - .1f, mClockSync.getOffsetMs(), 1e-3f);
+	}
+
+	@Test
+	public void otherPackets_areNotReplies() {
+		ByteBuffer packet = ByteBuffer.allocate(ClockSync.REPLY_SIZE);
+		FrameHeader.write(packet.array(), 0, 0, 1, 1000);
+		assertFalse(mClockSync.onReply(packet, 0));
+		assertFalse(mClockSync.isSynced());
+	}
+
+	/**
+	 * 	a request sent at clientUs that takes upUs to get to the server,
+	 * 	serverUs in there and downUs to come back
+	 */
+	private boolean reply(long clientUs, long upUs, long serverUs, long downUs) {
+		long t2 = clientUs + upUs + OFFSET_US;
+		long t3 = t2 + serverUs;
+		long t4 = t3 - OFFSET_US + downUs;
+		ByteBuffer packet = ByteBuffer.allocate(ClockSync.REPLY_SIZE);
+		packet.putInt(MSG_CLOCK_REPLY).putLong(clientUs).putLong(t2).putLong(t3).flip();
+		return mClockSync.onReply(packet, TimeUnit.MICROSECONDS.toNanos(t4));
+	}
+}
@@ -0,0 +1,106 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FragmentAssemblerTest {
+
+	private static final int FRAGMENT_SIZE = 100;
+	private static final int FRAME_SIZE = FrameHeader.SIZE + 250;
+
+	private final Random mRandom = new Random(42);
+	private final FramePool mFramePool = new FramePool(8, FRAME_SIZE);
+	private final FragmentAssembler mAssembler = new FragmentAssembler(mFramePool, FRAGMENT_SIZE, 2);
+	private final FrameHeader mHeader = new FrameHeader();
+
+	@Test
+	public void fragmentsInAnyOrder_makeTheFrame() {
+		byte[] frame = frame(7, 0);
+		byte[][] fragments = split(frame);
+		assertEquals(3, fragments.length);
+
+		assertNull(add(fragments[2]));
+		assertNull(add(fragments[0]));
+		// a duplicate doesn't count
+		assertNull(add(fragments[0]));
+		ByteBuffer assembled = add(fragments[1]);
+
+		assertEquals(7, header(assembled).sequence);
+		byte[] payload = new byte[assembled.remaining() - FrameHeader.SIZE];
+		assembled.position(FrameHeader.SIZE);
+		assembled.get(payload);
+		byte[] expected = new byte[frame.length - FrameHeader.SIZE];
+		System.arraycopy(frame, FrameHeader.SIZE, expected, 0, expected.length);
+		assertArrayEquals(expected, payload);
+	}
+
+	@Test
+	public void interleavedFrames_areKeptApart() {
+		byte[][] a = split(frame(1, 0));
+		byte[][] b = split(frame(1, FrameHeader.FLAG_PARITY));
+		for (int i = 0; i < a.length - 1; i++) {
+			assertNull(add(a[i]));
+			assertNull(add(b[i]));
+		}
+		assertEquals(0, header(add(a[a.length - 1])).flags & FrameHeader.FLAG_PARITY);
+		assertEquals(FrameHeader.FLAG_PARITY, header(add(b[b.length - 1])).flags & FrameHeader.FLAG_PARITY);
+	}
+
+	@Test
+	public void incompleteFrame_isEvictedByNewerOnes() {
+		assertNull(add(split(frame(1, 0))[0]));
+		byte[][] b = split(frame(2, 0));
+		byte[][] c = split(frame(3, 0));
+		// the third frame in takes the slot of the first one
+		for (int i = 0; i < b.length - 1; i++) {
+			assertNull(add(b[i]));
+			assertNull(add(c[i]));
+		}
+		assertEquals(1, mAssembler.getIncompleteCount());
+		// too old to take a slot back
+		assertNull(add(split(frame(1, 0))[1]));
+		mFramePool.release(add(b[b.length - 1]));
+		mFramePool.release(add(c[c.length - 1]));
+		assertEquals(8, mFramePool.getFreeCount());
+	}
+
+	private byte[] frame(int sequence, int flags) {
+		byte[] frame = new byte[FRAME_SIZE];
+		mRandom.nextBytes(frame);
+		FrameHeader.write(frame, 0, flags, sequence, 1000L * sequence);
+		return frame;
+	}
+
+	private static byte[][] split(byte[] frame) {
+		int payloadSize = FRAGMENT_SIZE - FrameHeader.SIZE;
+		int count = (frame.length - FrameHeader.SIZE + payloadSize - 1) / payloadSize;
+		byte[][] fragments = new byte[count][];
+		for (int i = 0; i < count; i++) {
+			int offset = FrameHeader.SIZE + i * payloadSize;
+			int length = Math.min(payloadSize, frame.length - offset);
+			fragments[i] = new byte[FrameHeader.SIZE + length];
+			System.arraycopy(frame, 0, fragments[i], 0, FrameHeader.SIZE);
+			FrameHeader.writeFragment(fragments[i], 0, i, count);
+			System.arraycopy(frame, offset, fragments[i], FrameHeader.SIZE, length);
+		}
+		return fragments;
+	}
+
+	private ByteBuffer add(byte[] fragment) {
+		ByteBuffer buffer = ByteBuffer.wrap(fragment);
+		mHeader.parse(buffer);
+		return mAssembler.add(mHeader, buffer);
+	}
+
+	private static FrameHeader header(ByteBuffer frame) {
+		FrameHeader header = new FrameHeader();
+		header.parse(frame);
+		return header;
+	}
+}
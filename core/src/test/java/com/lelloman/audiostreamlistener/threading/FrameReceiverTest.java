@@ -0,0 +1,246 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import com.lelloman.audiostreamlistener.threading.AudioClient.StreamConfig;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.EXT_FRAME_HEADER;
+import static com.lelloman.audiostreamlistener.Constants.EXT_SESSION;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_16;
+import static com.lelloman.audiostreamlistener.Constants.FRAGMENT_SLOTS;
+import static com.lelloman.audiostreamlistener.Constants.JITTER_BUFFER_CAPACITY;
+import static com.lelloman.audiostreamlistener.Constants.MSG_WELCOME;
+import static com.lelloman.audiostreamlistener.Constants.STREAM_INFO_MAX_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FrameReceiverTest {
+
+	private static final int DATAGRAM_SIZE = 256;
+	private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final int NONCE = 77;
+	private static final int SESSION_TOKEN = 0x5e55;
+	// frames way smaller than the welcome, like a compressed stream
+	private static final StreamConfig SMALL_FRAMES = new StreamConfig(48000, FORMAT_PCM_16, 32, FrameHeader.VERSION);
+
+	private final UdpChannel mChannel;
+	private final DatagramChannel mSender;
+	private final InetSocketAddress mAddress;
+
+	public FrameReceiverTest() throws IOException {
+		mChannel = new UdpChannel();
+		mSender = DatagramChannel.open();
+		mAddress = new InetSocketAddress("127.0.0.1", mChannel.getLocalAddress().getPort());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		mChannel.close();
+		mSender.close();
+	}
+
+	@Test(timeout = 5000)
+	public void nothingArriving_timesOut() throws IOException {
+		FramePool framePool = new FramePool(4, DATAGRAM_SIZE);
+		JitterBuffer jitterBuffer = jitterBuffer(framePool);
+		FrameReceiver frameReceiver = new FrameReceiver(mChannel, framePool, jitterBuffer, DATAGRAM_SIZE, 0);
+
+		long start = System.nanoTime();
+		assertEquals(-1, frameReceiver.receive(50));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(45));
+		assertEquals(-1, frameReceiver.receive(0));
+
+		// the buffer waiting for a packet is kept, not leaked
+		send(100);
+		assertEquals(100, frameReceiver.receive(1000));
+		assertEquals(1, jitterBuffer.getReceivedCount());
+		assertEquals(3, framePool.getFreeCount());
+	}
+
+	@Test(timeout = 5000)
+	public void drainedPool_dropsThePacketsUntilAFrameIsReleased() throws Exception {
+		FramePool framePool = new FramePool(2, DATAGRAM_SIZE);
+		JitterBuffer jitterBuffer = jitterBuffer(framePool);
+		FrameReceiver frameReceiver = new FrameReceiver(mChannel, framePool, jitterBuffer, DATAGRAM_SIZE, 0);
+
+		for (int i = 0; i < 3; i++) {
+			send(100 + i);
+			assertEquals(100 + i, frameReceiver.receive(1000));
+		}
+		assertEquals(2, jitterBuffer.getReceivedCount());
+		assertEquals(1, frameReceiver.getPoolMissCount());
+		assertEquals(0, framePool.getFreeCount());
+
+		framePool.release(jitterBuffer.take(0));
+		send(50);
+		assertEquals(50, frameReceiver.receive(1000));
+		assertEquals(3, jitterBuffer.getReceivedCount());
+		assertEquals(1, frameReceiver.getPoolMissCount());
+	}
+
+	@Test(timeout = 5000)
+	public void discardedPackets_goBackToThePool() throws IOException {
+		FramePool framePool = new FramePool(4, DATAGRAM_SIZE);
+		JitterBuffer jitterBuffer = jitterBuffer(framePool);
+		FrameReceiver frameReceiver = new FrameReceiver(mChannel, framePool, jitterBuffer, DATAGRAM_SIZE,
+				FrameHeader.VERSION);
+
+		sendFrame(7);
+		sendFrame(7);
+		// no header
+		send(10);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(frameReceiver.receive(1000) > 0);
+		}
+
+		assertEquals(1, jitterBuffer.getReceivedCount());
+		assertEquals(1, jitterBuffer.getDuplicateCount());
+		assertEquals(1, frameReceiver.getInvalidCount());
+		assertEquals(3, framePool.getFreeCount());
+	}
+
+	@Test(timeout = 5000)
+	public void closingTheChannel_endsAPendingReceive() throws Exception {
+		final ByteBuffer buffer = ByteBuffer.allocate(DATAGRAM_SIZE);
+		final Object[] result = new Object[1];
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					result[0] = mChannel.receive(buffer, 60000);
+				} catch (IOException e) {
+					result[0] = e;
+				}
+			}
+		});
+		thread.start();
+		Thread.sleep(100);
+		assertTrue(thread.isAlive());
+
+		mChannel.close();
+		thread.join(1000);
+		assertFalse(thread.isAlive());
+		assertFalse(result[0] instanceof InetSocketAddress);
+	}
+
+	@Test(timeout = 5000)
+	public void fullSizeWelcome_isReadAmongSmallFrames() throws IOException {
+		int datagramSize = SMALL_FRAMES.getDatagramSize();
+		// sized like the client does
+		FramePool framePool = new FramePool(4, Math.max(datagramSize, STREAM_INFO_MAX_SIZE));
+		JitterBuffer jitterBuffer = jitterBuffer(framePool);
+		FrameReceiver frameReceiver = new FrameReceiver(mChannel, framePool, jitterBuffer, datagramSize,
+				FrameHeader.VERSION);
+		SessionResume sessionResume = sessionResume();
+		frameReceiver.setSessionResume(sessionResume);
+
+		sendFrame(1, 32);
+		mSender.send(welcome(), mAddress);
+		// as long as the welcome but not one
+		send(STREAM_INFO_MAX_SIZE);
+		sendFrame(2, 32);
+		assertEquals(FrameHeader.SIZE + 32, frameReceiver.receive(1000));
+		assertEquals(STREAM_INFO_MAX_SIZE, frameReceiver.receive(1000));
+		assertEquals(STREAM_INFO_MAX_SIZE, frameReceiver.receive(1000));
+		assertEquals(FrameHeader.SIZE + 32, frameReceiver.receive(1000));
+
+		assertTrue(sessionResume.isConfirmed());
+		assertEquals(SESSION_TOKEN, sessionResume.getSessionToken());
+		assertEquals(2, jitterBuffer.getReceivedCount());
+		assertEquals(1, frameReceiver.getInvalidCount());
+		assertEquals(2, framePool.getFreeCount());
+	}
+
+	@Test(timeout = 5000)
+	public void fullSizeWelcome_isReadAmongSmallFragments() throws IOException {
+		int fragmentSize = FrameHeader.SIZE + 16;
+		FramePool framePool = new FramePool(4 + FRAGMENT_SLOTS, STREAM_INFO_MAX_SIZE);
+		JitterBuffer jitterBuffer = jitterBuffer(framePool);
+		FrameReceiver frameReceiver = new FrameReceiver(mChannel, framePool, jitterBuffer,
+				SMALL_FRAMES.getDatagramSize(), FrameHeader.VERSION);
+		frameReceiver.setFragmentAssembler(new FragmentAssembler(framePool, fragmentSize, FRAGMENT_SLOTS),
+				fragmentSize);
+		SessionResume sessionResume = sessionResume();
+		frameReceiver.setSessionResume(sessionResume);
+
+		mSender.send(welcome(), mAddress);
+		assertEquals(STREAM_INFO_MAX_SIZE, frameReceiver.receive(1000));
+
+		assertTrue(sessionResume.isConfirmed());
+		assertEquals(SESSION_TOKEN, sessionResume.getSessionToken());
+		assertEquals(0, frameReceiver.getInvalidCount());
+	}
+
+	@Test
+	public void pool_handsOutEveryBufferOnce() {
+		FramePool framePool = new FramePool(2, 16);
+		ByteBuffer first = framePool.acquire();
+		ByteBuffer second = framePool.acquire();
+		assertNotNull(first);
+		assertNotNull(second);
+		assertTrue(first != second);
+		assertNull(framePool.acquire());
+
+		first.putInt(1).flip();
+		framePool.release(first);
+		framePool.release(null);
+		assertEquals(1, framePool.getFreeCount());
+		ByteBuffer again = framePool.acquire();
+		assertTrue(again == first);
+		assertEquals(16, again.remaining());
+
+		framePool.release(again);
+		framePool.release(second);
+		// more than it ever handed out
+		framePool.release(ByteBuffer.allocateDirect(16));
+		assertEquals(2, framePool.getFreeCount());
+	}
+
+	private static JitterBuffer jitterBuffer(FramePool framePool) {
+		return new JitterBuffer(JITTER_BUFFER_CAPACITY, framePool, FRAME_NANOS, 0, 0);
+	}
+
+	private void send(int length) throws IOException {
+		mSender.send(ByteBuffer.allocate(length), mAddress);
+	}
+
+	private void sendFrame(int sequence) throws IOException {
+		sendFrame(sequence, 32);
+	}
+
+	private void sendFrame(int sequence, int payloadSize) throws IOException {
+		byte[] data = new byte[FrameHeader.SIZE + payloadSize];
+		FrameHeader.write(data, 0, 0, sequence, 0);
+		mSender.send(ByteBuffer.wrap(data), mAddress);
+	}
+
+	private static SessionResume sessionResume() {
+		return new SessionResume(null, null, ByteBuffer.allocate(12), NONCE, SMALL_FRAMES, 0);
+	}
+
+	/**
+	 * 	the welcome of SMALL_FRAMES as long as it can get, the session
+	 * 	token last like the server sends it, after features it doesn't know
+	 */
+	private static ByteBuffer welcome() {
+		ByteBuffer welcome = ByteBuffer.allocate(STREAM_INFO_MAX_SIZE);
+		welcome.putInt(MSG_WELCOME).putInt(1).putInt(NONCE).putInt(48000).putInt(32).putInt(FORMAT_PCM_16);
+		welcome.putInt(EXT_FRAME_HEADER).putInt(FrameHeader.VERSION);
+		while (welcome.remaining() > 8) {
+			welcome.putInt(0x7e57).putInt(0);
+		}
+		welcome.putInt(EXT_SESSION).putInt(SESSION_TOKEN);
+		welcome.flip();
+		return welcome;
+	}
+}
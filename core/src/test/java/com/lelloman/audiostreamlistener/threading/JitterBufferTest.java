@@ -0,0 +1,237 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JitterBufferTest {
+
+	private static final int CAPACITY = 64;
+	private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private final FramePool mFramePool = new FramePool(CAPACITY * 2, 4);
+
+	@Test
+	public void inOrderFrames_arePlayedInOrder() throws Exception {
+		JitterBuffer jitterBuffer = jitterBuffer(0);
+		for (int sequence = 0; sequence < 5; sequence++) {
+			put(jitterBuffer, sequence);
+			assertEquals(sequence, take(jitterBuffer));
+		}
+
+		assertEquals(5, jitterBuffer.getReceivedCount());
+		assertEquals(0, jitterBuffer.getLostCount());
+		assertEquals(CAPACITY * 2, mFramePool.getFreeCount());
+	}
+
+	@Test
+	public void reorderedFrames_arePlayedInOrder() throws Exception {
+		JitterBuffer jitterBuffer = jitterBuffer(30);
+		put(jitterBuffer, 0);
+		put(jitterBuffer, 2);
+		put(jitterBuffer, 1);
+
+		assertEquals(0, take(jitterBuffer));
+		assertEquals(1, take(jitterBuffer));
+		assertEquals(2, take(jitterBuffer));
+		assertEquals(1, jitterBuffer.getReorderedCount());
+		assertEquals(0, jitterBuffer.getLostCount());
+	}
+
+	@Test
+	public void duplicates_areDropped() throws Exception {
+		JitterBuffer jitterBuffer = jitterBuffer(0);
+		put(jitterBuffer, 0);
+		put(jitterBuffer, 0);
+
+		assertEquals(0, take(jitterBuffer));
+		assertNull(jitterBuffer.take(0));
+		assertEquals(1, jitterBuffer.getDuplicateCount());
+		assertEquals(CAPACITY * 2, mFramePool.getFreeCount());
+	}
+
+	@Test
+	public void lateFrames_areDropped() throws Exception {
+		JitterBuffer jitterBuffer = jitterBuffer(0);
+		put(jitterBuffer, 0);
+		put(jitterBuffer, 1);
+		take(jitterBuffer);
+		take(jitterBuffer);
+
+		put(jitterBuffer, 0);
+		assertEquals(1, jitterBuffer.getLateCount());
+		assertEquals(0, jitterBuffer.getDepth());
+		assertEquals(CAPACITY * 2, mFramePool.getFreeCount());
+	}
+
+	@Test
+	public void holes_areLost() throws Exception {
+		JitterBuffer jitterBuffer = jitterBuffer(0);
+		put(jitterBuffer, 0);
+		put(jitterBuffer, 2);
+
+		assertEquals(0, take(jitterBuffer));
+		assertSame(JitterBuffer.LOST, jitterBuffer.take(0));
+		assertEquals(2, take(jitterBuffer));
+		assertEquals(1, jitterBuffer.getLostCount());
+	}
+
+	@Test
+	public void strayOldFrame_doesNotFlushTheBuffer() throws Exception {
+		JitterBuffer jitterBuffer = jitterBuffer(100);
+		for (int sequence = 1000; sequence < 1005; sequence++) {
+			put(jitterBuffer, sequence);
+		}
+
+		// way older than the window
+		put(jitterBuffer, 1000 - 3 * CAPACITY);
+
+		assertEquals(5, jitterBuffer.getDepth());
+		assertEquals(1, jitterBuffer.getLateCount());
+		put(jitterBuffer, 1005);
+		assertEquals(6, jitterBuffer.getDepth());
+	}
+
+	@Test
+	public void senderStartingOver_resetsTheBuffer() throws Exception {
+		JitterBuffer jitterBuffer = jitterBuffer(100);
+		for (int sequence = 1000; sequence < 1005; sequence++) {
+			put(jitterBuffer, sequence);
+		}
+
+		// nothing but old frames, it started again from 0
+		for (int sequence = 0; sequence < 10; sequence++) {
+			put(jitterBuffer, sequence);
+		}
+
+		assertEquals(7, jitterBuffer.getLateCount());
+		assertEquals(3, jitterBuffer.getDepth());
+		assertEquals(CAPACITY * 2 - 3, mFramePool.getFreeCount());
+	}
+
+	@Test
+	public void sequence_wrapsAround() throws Exception {
+		// past 2^31, where the int turns negative, and past 2^32 back to 0
+		for (int first : new int[]{Integer.MAX_VALUE - 20, -20}) {
+			JitterBuffer jitterBuffer = jitterBuffer(0);
+			for (int sequence = first; sequence != first + 40; sequence++) {
+				put(jitterBuffer, sequence);
+				assertEquals(sequence, take(jitterBuffer));
+			}
+			assertEquals(0, jitterBuffer.getLostCount());
+			assertEquals(0, jitterBuffer.getLateCount());
+		}
+	}
+
+	@Test
+	public void reorderAndLoss_acrossTheWrap() throws Exception {
+		JitterBuffer jitterBuffer = jitterBuffer(30);
+		put(jitterBuffer, -2);
+		put(jitterBuffer, 1);
+		put(jitterBuffer, 0);
+
+		int[] sequences = new int[4];
+		int[] framesAhead = new int[4];
+		assertEquals(1, jitterBuffer.getMissing(sequences, framesAhead, 0));
+		assertEquals(-1, sequences[0]);
+		assertEquals(1, framesAhead[0]);
+
+		assertEquals(-2, take(jitterBuffer));
+		assertSame(JitterBuffer.LOST, jitterBuffer.take(0));
+		assertEquals(0, take(jitterBuffer));
+		assertEquals(1, take(jitterBuffer));
+		assertEquals(1, jitterBuffer.getReorderedCount());
+		assertEquals(1, jitterBuffer.getLostCount());
+	}
+
+	@Test
+	public void strayOldFrame_fromBeforeTheWrap() throws Exception {
+		JitterBuffer jitterBuffer = jitterBuffer(100);
+		for (int sequence = 0; sequence < 5; sequence++) {
+			put(jitterBuffer, sequence);
+		}
+
+		put(jitterBuffer, -3 * CAPACITY);
+		put(jitterBuffer, Integer.MIN_VALUE);
+
+		assertEquals(5, jitterBuffer.getDepth());
+		assertEquals(2, jitterBuffer.getLateCount());
+	}
+
+	@Test
+	public void anyCapacity_followsTheWrap() throws Exception {
+		// rounded up to 16, with 10 slots the sequences past 2^31 would
+		// land on the ones of the frames before it
+		JitterBuffer jitterBuffer = new JitterBuffer(10, mFramePool, FRAME_NANOS, 90, 0);
+		int sequence = Integer.MAX_VALUE - 20;
+		int next = sequence;
+		for (; sequence != Integer.MAX_VALUE - 11; sequence++) {
+			put(jitterBuffer, sequence);
+		}
+		for (; sequence != Integer.MIN_VALUE + 20; sequence++) {
+			put(jitterBuffer, sequence);
+			assertEquals(next++, take(jitterBuffer));
+		}
+		assertEquals(0, jitterBuffer.getLostCount());
+		assertEquals(0, jitterBuffer.getDroppedCount());
+	}
+
+	@Test
+	public void jitter_growsTheTargetDepth() {
+		JitterBuffer steady = jitterBuffer(20);
+		JitterBuffer jittery = jitterBuffer(20);
+		for (int sequence = 0; sequence < 40; sequence++) {
+			long arrival = sequence * FRAME_NANOS;
+			steady.put(sequence, 0, mFramePool.acquire(), arrival);
+			// every other frame 15 ms late
+			jittery.put(sequence, 0, mFramePool.acquire(), arrival + (sequence % 2) * TimeUnit.MILLISECONDS.toNanos(15));
+		}
+
+		assertEquals(2, steady.getTargetDepth());
+		assertEquals(0, steady.getJitterMs(), .001);
+		assertTrue("jitter " + jittery.getJitterMs(), jittery.getJitterMs() > 10);
+		assertTrue("depth " + jittery.getTargetDepth(), jittery.getTargetDepth() >= 4);
+	}
+
+	@Test
+	public void tooManyFrames_areDroppedToKeepTheLatency() {
+		JitterBuffer jitterBuffer = jitterBuffer(20);
+		for (int sequence = 0; sequence < 10; sequence++) {
+			put(jitterBuffer, sequence);
+		}
+
+		// the target and a little headroom
+		assertEquals(4, jitterBuffer.getDepth());
+		assertEquals(6, jitterBuffer.getDroppedCount());
+		assertEquals(CAPACITY * 2 - 4, mFramePool.getFreeCount());
+	}
+
+	private JitterBuffer jitterBuffer(int targetLatencyMs) {
+		return new JitterBuffer(CAPACITY, mFramePool, FRAME_NANOS, targetLatencyMs, 0);
+	}
+
+	/**
+	 * 	a frame holding its own sequence
+	 */
+	private void put(JitterBuffer jitterBuffer, int sequence) {
+		ByteBuffer frame = mFramePool.acquire();
+		frame.putInt(sequence).flip();
+		jitterBuffer.put(sequence, 0, frame, 0);
+	}
+
+	/**
+	 * @return the sequence held by the frame
+	 */
+	private int take(JitterBuffer jitterBuffer) throws InterruptedException {
+		ByteBuffer frame = jitterBuffer.take(0);
+		int sequence = frame.getInt(0);
+		mFramePool.release(frame);
+		return sequence;
+	}
+}
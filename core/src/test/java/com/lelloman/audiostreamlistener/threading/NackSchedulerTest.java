@@ -0,0 +1,163 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.JITTER_BUFFER_CAPACITY;
+import static com.lelloman.audiostreamlistener.Constants.MAX_NACK_PAIRS;
+import static com.lelloman.audiostreamlistener.Constants.MSG_NACK;
+import static org.junit.Assert.assertEquals;
+
+public class NackSchedulerTest {
+
+	// with the initial 20ms round trip a hole is asked for 3 frames ahead or more
+	private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final long NOW = TimeUnit.SECONDS.toNanos(1);
+
+	private final CapturingChannel mChannel;
+
+	public NackSchedulerTest() throws IOException {
+		mChannel = new CapturingChannel();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		mChannel.close();
+	}
+
+	@Test
+	public void holes_arePackedInPairs() throws IOException {
+		FramePool framePool = new FramePool(JITTER_BUFFER_CAPACITY, 16);
+		JitterBuffer jitterBuffer = new JitterBuffer(JITTER_BUFFER_CAPACITY, framePool, FRAME_NANOS, 1000, 4);
+		List<Integer> holes = Arrays.asList(1, 5, 6, 10, 38, 45);
+		for (int sequence = 0; sequence <= 50; sequence++) {
+			if (!holes.contains(sequence))
+				jitterBuffer.put(sequence, 0, framePool.acquire(), 0);
+		}
+		NackScheduler nackScheduler = new NackScheduler(mChannel, null, jitterBuffer, FRAME_NANOS);
+
+		nackScheduler.poll(NOW);
+
+		// 1 is played in 10ms, 38 is 33 after 5 so it starts another pair
+		assertEquals(1, mChannel.sent.size());
+		assertMessage(mChannel.sent.get(0), 5, 1 | 1 << 4, 38, 1 << 6);
+		assertEquals(1, nackScheduler.getNackCount());
+		assertEquals(5, nackScheduler.getRequestedCount());
+		assertEquals(1, nackScheduler.getTooLateCount());
+	}
+
+	@Test
+	public void holes_areAskedAgainAfterTheRoundTripAndAMargin() throws IOException {
+		FakeJitterBuffer jitterBuffer = new FakeJitterBuffer();
+		jitterBuffer.setMissing(0, 2, 5, 9);
+		NackScheduler nackScheduler = new NackScheduler(mChannel, null, jitterBuffer, FRAME_NANOS);
+
+		nackScheduler.poll(NOW);
+		nackScheduler.poll(NOW + TimeUnit.MILLISECONDS.toNanos(29));
+		assertEquals(1, mChannel.sent.size());
+		assertMessage(mChannel.sent.get(0), 5, 1 << 3);
+
+		// too late holes are counted once
+		nackScheduler.poll(NOW + TimeUnit.MILLISECONDS.toNanos(30));
+		assertEquals(2, mChannel.sent.size());
+		assertMessage(mChannel.sent.get(1), 5, 1 << 3);
+		assertEquals(4, nackScheduler.getRequestedCount());
+		assertEquals(1, nackScheduler.getTooLateCount());
+	}
+
+	@Test
+	public void roundTrip_isMeasuredOnTheRetransmissions() throws IOException {
+		FakeJitterBuffer jitterBuffer = new FakeJitterBuffer();
+		jitterBuffer.setMissing(0, 5);
+		NackScheduler nackScheduler = new NackScheduler(mChannel, null, jitterBuffer, FRAME_NANOS);
+
+		nackScheduler.poll(NOW);
+		nackScheduler.onRetransmitted(5, NOW + TimeUnit.MILLISECONDS.toNanos(100));
+		// 20 + (100 - 20) / 8
+		assertEquals(30, nackScheduler.getRttMs(), .01);
+
+		// 3 frames ahead would have made it with the initial 20ms
+		jitterBuffer.setMissing(5, 8);
+		nackScheduler.poll(NOW + TimeUnit.MILLISECONDS.toNanos(200));
+		assertEquals(1, mChannel.sent.size());
+		assertEquals(1, nackScheduler.getTooLateCount());
+	}
+
+	@Test
+	public void tooManyPairs_areLeftForTheNextMessage() throws IOException {
+		FakeJitterBuffer jitterBuffer = new FakeJitterBuffer();
+		int[] missing = new int[MAX_NACK_PAIRS + 2];
+		for (int i = 0; i < missing.length; i++) {
+			missing[i] = 10 + i * 33;
+		}
+		jitterBuffer.setMissing(0, missing);
+		NackScheduler nackScheduler = new NackScheduler(mChannel, null, jitterBuffer, FRAME_NANOS);
+
+		nackScheduler.poll(NOW);
+		assertEquals(1, mChannel.sent.size());
+		ByteBuffer message = mChannel.sent.get(0);
+		assertEquals(4 + MAX_NACK_PAIRS * 8, message.remaining());
+		assertEquals(missing[MAX_NACK_PAIRS - 1], message.getInt(4 + (MAX_NACK_PAIRS - 1) * 8));
+		assertEquals(MAX_NACK_PAIRS, nackScheduler.getRequestedCount());
+
+		nackScheduler.poll(NOW + 1);
+		assertEquals(2, mChannel.sent.size());
+		assertMessage(mChannel.sent.get(1), missing[MAX_NACK_PAIRS], 0, missing[MAX_NACK_PAIRS + 1], 0);
+	}
+
+	private static void assertMessage(ByteBuffer message, int... pairs) {
+		assertEquals(4 + pairs.length * 4, message.remaining());
+		assertEquals(MSG_NACK, message.getInt());
+		for (int value : pairs) {
+			assertEquals(value, message.getInt());
+		}
+	}
+
+	private static class CapturingChannel extends UdpChannel {
+
+		final List<ByteBuffer> sent = new ArrayList<>();
+
+		CapturingChannel() throws IOException {
+		}
+
+		@Override
+		public void send(ByteBuffer src, SocketAddress target) {
+			ByteBuffer copy = ByteBuffer.allocate(src.remaining());
+			copy.put(src).flip();
+			sent.add(copy);
+		}
+	}
+
+	private static class FakeJitterBuffer extends JitterBuffer {
+
+		private int[] mMissing = new int[0];
+		private int mNextSequence;
+
+		FakeJitterBuffer() {
+			super(JITTER_BUFFER_CAPACITY, null, FRAME_NANOS, 0, 0);
+		}
+
+		void setMissing(int nextSequence, int... missing) {
+			mNextSequence = nextSequence;
+			mMissing = missing;
+		}
+
+		@Override
+		public int getMissing(int[] sequences, int[] framesAhead, int reorderGap) {
+			int count = Math.min(mMissing.length, sequences.length);
+			for (int i = 0; i < count; i++) {
+				sequences[i] = mMissing[i];
+				framesAhead[i] = mMissing[i] - mNextSequence;
+			}
+			return count;
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PcmRingBufferTest {
+
+	private static final int CAPACITY = 128;
+
+	@Test
+	public void capacity_isRoundedUpToAPowerOf2() {
+		assertEquals(128, PcmRingBuffer.allocate(100).capacity());
+		assertEquals(128, PcmRingBuffer.allocateDirect(128).capacity());
+		assertTrue(PcmRingBuffer.allocateDirect(128).isDirect());
+		assertFalse(PcmRingBuffer.allocate(128).isDirect());
+	}
+
+	@Test
+	public void empty_hasNothingToRead() {
+		for (PcmRingBuffer ring : rings()) {
+			assertEquals(0, ring.available());
+			assertEquals(CAPACITY, ring.free());
+			assertEquals(0, ring.read(new byte[16], 0, 16));
+			assertEquals(0, ring.read(ByteBuffer.allocate(16)));
+			assertEquals(0, ring.peek().remaining());
+		}
+	}
+
+	@Test
+	public void full_takesNoMore() {
+		for (PcmRingBuffer ring : rings()) {
+			assertEquals(CAPACITY, ring.write(bytes(0, CAPACITY + 10), 0, CAPACITY + 10));
+			assertEquals(CAPACITY, ring.available());
+			assertEquals(0, ring.free());
+			assertEquals(0, ring.write(new byte[1], 0, 1));
+			ByteBuffer src = ByteBuffer.wrap(new byte[4]);
+			assertEquals(0, ring.write(src));
+			assertEquals(0, src.position());
+			assertEquals(0, ring.claim().remaining());
+
+			byte[] dst = new byte[CAPACITY];
+			assertEquals(CAPACITY, ring.read(dst, 0, CAPACITY));
+			assertArrayEquals(bytes(0, CAPACITY), dst);
+		}
+	}
+
+	@Test
+	public void copies_wrapAround() {
+		for (PcmRingBuffer ring : rings()) {
+			byte[] dst = new byte[100];
+			ring.write(bytes(0, 100), 0, 100);
+			ring.read(dst, 0, 100);
+
+			// 28 bytes before the end, 32 after it
+			assertEquals(60, ring.write(ByteBuffer.wrap(bytes(100, 60))));
+			ByteBuffer read = ByteBuffer.allocate(60);
+			assertEquals(60, ring.read(read));
+			assertArrayEquals(bytes(100, 60), read.array());
+
+			assertEquals(90, ring.write(bytes(160, 90), 0, 90));
+			assertEquals(90, ring.read(dst, 5, 90));
+			byte[] expected = bytes(160, 90);
+			for (int i = 0; i < 90; i++) {
+				assertEquals(expected[i], dst[5 + i]);
+			}
+		}
+	}
+
+	@Test
+	public void inPlace_stopsAtTheEnd() {
+		for (PcmRingBuffer ring : rings()) {
+			ring.write(new byte[100], 0, 100);
+			ring.read(new byte[100], 0, 100);
+
+			ByteBuffer claimed = ring.claim();
+			assertEquals(28, claimed.remaining());
+			claimed.put(bytes(0, 28));
+			ring.commitWrite(28);
+			claimed = ring.claim();
+			assertEquals(100, claimed.remaining());
+			claimed.put(bytes(28, 10));
+			ring.commitWrite(10);
+			assertEquals(38, ring.available());
+
+			ByteBuffer peeked = ring.peek();
+			assertEquals(28, peeked.remaining());
+			byte[] dst = new byte[28];
+			peeked.get(dst);
+			assertArrayEquals(bytes(0, 28), dst);
+			ring.commitRead(28);
+			peeked = ring.peek();
+			assertEquals(10, peeked.remaining());
+			assertEquals(28, peeked.get(peeked.position()));
+			ring.commitRead(10);
+			assertEquals(0, ring.available());
+		}
+	}
+
+	@Test
+	public void overCommit_isRejected() {
+		for (PcmRingBuffer ring : rings()) {
+			ring.write(new byte[10], 0, 10);
+			assertRejected(ring, true, 11);
+			assertRejected(ring, true, -1);
+			assertRejected(ring, false, CAPACITY - 9);
+			assertRejected(ring, false, -1);
+
+			// nothing moved
+			assertEquals(10, ring.available());
+			ring.commitRead(10);
+			ring.commitWrite(CAPACITY);
+			assertEquals(0, ring.free());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void producerAndConsumer_seeTheSameBytes() throws Exception {
+		for (final PcmRingBuffer ring : rings()) {
+			final int total = 1 << 22;
+			final Throwable[] failure = new Throwable[1];
+			Thread producer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Random random = new Random(1);
+					byte[] chunk = new byte[CAPACITY / 2];
+					int written = 0;
+					while (written < total) {
+						int length = Math.min(total - written, 1 + random.nextInt(chunk.length));
+						for (int i = 0; i < length; i++) {
+							chunk[i] = (byte) (written + i);
+						}
+						int offset = 0;
+						while (offset < length) {
+							int n = ring.write(chunk, offset, length - offset);
+							// let the consumer in when it's full, there might be one core
+							if (n == 0)
+								Thread.yield();
+							offset += n;
+						}
+						written += length;
+					}
+				}
+			});
+			Thread consumer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Random random = new Random(2);
+					int read = 0;
+					while (read < total && failure[0] == null) {
+						int length;
+						// half of the time in place
+						if (random.nextBoolean()) {
+							ByteBuffer peeked = ring.peek();
+							length = peeked.remaining();
+							for (int i = 0; i < length; i++) {
+								check(peeked.get(peeked.position() + i), read + i);
+							}
+							ring.commitRead(length);
+							read += length;
+						} else {
+							ByteBuffer dst = ByteBuffer.allocate(1 + random.nextInt(CAPACITY));
+							length = ring.read(dst);
+							for (int i = 0; i < length; i++) {
+								check(dst.get(i), read + i);
+							}
+							read += length;
+						}
+						if (length == 0)
+							Thread.yield();
+					}
+				}
+
+				private void check(byte value, int index) {
+					if (value != (byte) index && failure[0] == null)
+						failure[0] = new AssertionError("byte " + index + " is " + value);
+				}
+			});
+			producer.start();
+			consumer.start();
+			producer.join();
+			consumer.join();
+
+			assertNull(failure[0]);
+			assertEquals(0, ring.available());
+		}
+	}
+
+	private static PcmRingBuffer[] rings() {
+		return new PcmRingBuffer[]{PcmRingBuffer.allocateDirect(CAPACITY), PcmRingBuffer.allocate(CAPACITY)};
+	}
+
+	private static void assertRejected(PcmRingBuffer ring, boolean read, int length) {
+		try {
+			if (read)
+				ring.commitRead(length);
+			else
+				ring.commitWrite(length);
+			fail((read ? "read " : "write ") + length + " committed");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * 	bytes counting up from first
+	 */
+	private static byte[] bytes(int first, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (first + i);
+		}
+		return bytes;
+	}
+}
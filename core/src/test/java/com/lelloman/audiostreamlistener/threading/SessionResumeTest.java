@@ -0,0 +1,70 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import com.lelloman.audiostreamlistener.threading.AudioClient.StreamConfig;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static com.lelloman.audiostreamlistener.Constants.EXT_FRAME_HEADER;
+import static com.lelloman.audiostreamlistener.Constants.EXT_SESSION;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_16;
+import static com.lelloman.audiostreamlistener.Constants.MSG_WELCOME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SessionResumeTest {
+
+	private static final int NONCE = 1234;
+
+	private final StreamConfig mStreamConfig = new StreamConfig(48000, FORMAT_PCM_16, 1024, FrameHeader.VERSION);
+	private final SessionResume mSessionResume = new SessionResume(null, null, ByteBuffer.allocate(12), NONCE,
+			mStreamConfig, 0x5e55);
+
+	@Test
+	public void sameConfig_isConfirmed() {
+		ByteBuffer welcome = welcome(NONCE, 48000, 0x5e55);
+		assertTrue(mSessionResume.onReply(welcome));
+
+		assertTrue(mSessionResume.isConfirmed());
+		assertFalse(mSessionResume.isRejected());
+		assertEquals(0x5e55, mSessionResume.getSessionToken());
+		assertEquals(0, welcome.position());
+	}
+
+	@Test
+	public void newSessionWithTheSameConfig_isConfirmed() {
+		assertTrue(mSessionResume.onReply(welcome(NONCE, 48000, 0xbeef)));
+
+		assertTrue(mSessionResume.isConfirmed());
+		assertEquals(0xbeef, mSessionResume.getSessionToken());
+	}
+
+	@Test
+	public void otherConfig_isRejectedWithTheWelcomeOne() {
+		assertTrue(mSessionResume.onReply(welcome(NONCE, 44100, 0xbeef)));
+
+		assertFalse(mSessionResume.isConfirmed());
+		assertTrue(mSessionResume.isRejected());
+		assertEquals(new StreamConfig(44100, FORMAT_PCM_16, 1024, FrameHeader.VERSION), mSessionResume.getStreamConfig());
+		assertEquals(0xbeef, mSessionResume.getSessionToken());
+	}
+
+	@Test
+	public void otherPackets_areNotTheWelcome() {
+		assertFalse(mSessionResume.onReply(welcome(NONCE + 1, 48000, 0x5e55)));
+		assertFalse(mSessionResume.onReply(ByteBuffer.allocate(64)));
+
+		assertFalse(mSessionResume.isConfirmed());
+		assertFalse(mSessionResume.isRejected());
+	}
+
+	private static ByteBuffer welcome(int nonce, int sampleRate, int sessionToken) {
+		ByteBuffer welcome = ByteBuffer.allocate(40);
+		welcome.putInt(MSG_WELCOME).putInt(1).putInt(nonce).putInt(sampleRate).putInt(1024).putInt(FORMAT_PCM_16);
+		welcome.putInt(EXT_FRAME_HEADER).putInt(FrameHeader.VERSION).putInt(EXT_SESSION).putInt(sessionToken);
+		welcome.flip();
+		return welcome;
+	}
+}
@@ -0,0 +1,55 @@
+package com.lelloman.audiostreamlistener.threading;
+
+import com.lelloman.audiostreamlistener.sink.CountingSink;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class WriteSchedulerTest {
+
+	private static final int BATCH_BYTES = 100;
+
+	private final CountingSink mSink = new CountingSink();
+	private final WriteScheduler mScheduler = new WriteScheduler(mSink, BATCH_BYTES, 48000 * 2);
+
+	@Test(timeout = 1000)
+	public void frameBiggerThanTheStaging_behindASmallOne_isWritten() throws Exception {
+		ByteBuffer small = frame(10, 0);
+		ByteBuffer big = frame(3 * BATCH_BYTES, 10);
+
+		mScheduler.write(small);
+		mScheduler.write(big);
+
+		assertEquals(10 + 3 * BATCH_BYTES, mSink.getBytes());
+		// the same bytes in the same order
+		CountingSink expected = new CountingSink();
+		expected.write(frame(10 + 3 * BATCH_BYTES, 0), 10 + 3 * BATCH_BYTES);
+		assertEquals(expected.getChecksum(), mSink.getChecksum());
+	}
+
+	@Test
+	public void smallFrames_areBatched() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			mScheduler.write(frame(20, i * 20));
+		}
+
+		assertEquals(2, mSink.getWrites());
+		assertEquals(200, mSink.getBytes());
+		assertEquals(5, mScheduler.getAverageBatchFrames(), 1e-3f);
+	}
+
+	/**
+	 * 	bytes counting up from first
+	 */
+	private static ByteBuffer frame(int size, int first) {
+		ByteBuffer frame = ByteBuffer.allocate(size);
+		for (int i = 0; i < size; i++) {
+			frame.put((byte) (first + i));
+		}
+		frame.flip();
+		return frame;
+	}
+}
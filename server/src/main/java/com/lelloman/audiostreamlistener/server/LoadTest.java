@@ -0,0 +1,207 @@
+package com.lelloman.audiostreamlistener.server;
+
+import com.lelloman.audiostreamlistener.threading.FrameHeader;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.DEFAULT_PORT;
+import static com.lelloman.audiostreamlistener.Constants.EXT_FRAME_HEADER;
+import static com.lelloman.audiostreamlistener.Constants.MSG_START_STREAM;
+import static com.lelloman.audiostreamlistener.Constants.MSG_STREAM_INFO;
+
+/**
+ * 	simulated listeners for a {@link StreamServer}, or any server
+ * 	speaking the protocol. the listeners are added in steps and for
+ * 	every step it reports how many of the frames sent made it, the
+ * 	sequence numbers of the frame header tell how many were sent.
+ * 	all the listeners share one selector, on a single box the load
+ * 	test competes with the server for the cpu so its numbers are
+ * 	a lower bound
+ *
+ * 	--host 127.0.0.1 --port 8080 --steps 100,200,400,800 --seconds 10
+ */
+public class LoadTest {
+
+	// the server forgets listeners it doesn't hear from, if it's told to
+	private static final long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+	// a step is fine if at least this much is delivered
+	private static final double MIN_DELIVERY = .999;
+
+	private static class Probe {
+		final DatagramChannel channel;
+		long firstSequence = -1;
+		long lastSequence;
+		long received;
+
+		Probe(DatagramChannel channel) {
+			this.channel = channel;
+		}
+
+		long expected() {
+			return firstSequence < 0 ? 0 : lastSequence - firstSequence + 1;
+		}
+	}
+
+	private final InetSocketAddress mServer;
+	private final Selector mSelector;
+	private final List<Probe> mProbes = new ArrayList<>();
+	private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(64 * 1024);
+	private final ByteBuffer mControl = ByteBuffer.allocate(64);
+
+	private LoadTest(InetSocketAddress server) throws IOException {
+		mServer = server;
+		mSelector = Selector.open();
+	}
+
+	/**
+	 * 	ask for the stream info with the frame header, the header is
+	 * 	negotiated per host so all the probes get it
+	 */
+	private void negotiate() throws IOException {
+		try (DatagramSocket socket = new DatagramSocket()) {
+			socket.setSoTimeout(1000);
+			mControl.clear();
+			mControl.putInt(MSG_STREAM_INFO).putInt(EXT_FRAME_HEADER).putInt(FrameHeader.VERSION);
+			socket.send(new DatagramPacket(mControl.array(), mControl.position(), mServer));
+
+			DatagramPacket packet = new DatagramPacket(mControl.array(), mControl.capacity());
+			int[] info = new int[3];
+			for (int i = 0; i < info.length; i++) {
+				packet.setLength(mControl.capacity());
+				socket.receive(packet);
+				info[i] = ByteBuffer.wrap(packet.getData(), 0, packet.getLength()).getInt();
+			}
+			if (packet.getLength() < 12)
+				throw new IOException("the server doesn't send the frame header");
+			log("server %s Hz, %s bytes frames, %s bit", info[0], info[1], info[2] * 8);
+		}
+	}
+
+	private void addProbes(int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			DatagramChannel channel = DatagramChannel.open();
+			channel.configureBlocking(false);
+			channel.socket().setReceiveBufferSize(256 * 1024);
+			channel.connect(mServer);
+			Probe probe = new Probe(channel);
+			channel.register(mSelector, SelectionKey.OP_READ, probe);
+			mProbes.add(probe);
+			sendStart(probe);
+		}
+	}
+
+	private void sendStart(Probe probe) throws IOException {
+		mControl.clear();
+		mControl.putInt(MSG_START_STREAM).flip();
+		probe.channel.write(mControl);
+	}
+
+	/**
+	 * @return the fraction of the frames sent that were received
+	 */
+	private double runStep(long durationNanos) throws IOException {
+		for (Probe probe : mProbes) {
+			probe.firstSequence = -1;
+			probe.received = 0;
+		}
+
+		FrameHeader header = new FrameHeader();
+		long start = System.nanoTime();
+		long nextRefresh = start + REFRESH_NANOS;
+		long now;
+		while ((now = System.nanoTime()) - start < durationNanos) {
+			mSelector.select(100);
+			Iterator<SelectionKey> iterator = mSelector.selectedKeys().iterator();
+			while (iterator.hasNext()) {
+				SelectionKey key = iterator.next();
+				iterator.remove();
+				Probe probe = (Probe) key.attachment();
+				while (true) {
+					mBuffer.clear();
+					if (probe.channel.receive(mBuffer) == null)
+						break;
+					mBuffer.flip();
+					if (!header.parse(mBuffer))
+						continue;
+					long sequence = header.sequence & 0xffffffffL;
+					if (probe.firstSequence < 0)
+						probe.firstSequence = sequence;
+					probe.lastSequence = sequence;
+					probe.received++;
+				}
+			}
+
+			if (now - nextRefresh >= 0) {
+				for (Probe probe : mProbes) {
+					sendStart(probe);
+				}
+				nextRefresh = now + REFRESH_NANOS;
+			}
+		}
+
+		long received = 0;
+		long expected = 0;
+		int lossy = 0;
+		int silent = 0;
+		for (Probe probe : mProbes) {
+			received += probe.received;
+			expected += probe.expected();
+			if (probe.received == 0)
+				silent++;
+			else if (probe.received < probe.expected())
+				lossy++;
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		double delivery = expected == 0 ? 0 : received / (double) expected;
+		log("%5d listeners  %9.0f packets/s  delivered %6.2f%%  lossy %s  silent %s",
+				mProbes.size(), received / seconds, 100 * delivery, lossy, silent);
+		return silent > 0 ? 0 : delivery;
+	}
+
+	private void close() throws IOException {
+		for (Probe probe : mProbes) {
+			probe.channel.close();
+		}
+		mSelector.close();
+	}
+
+	private static void log(String msg, Object... args) {
+		System.out.println(String.format(msg, args));
+	}
+
+	public static void main(String[] args) throws IOException {
+		Options options = new Options(args);
+		InetSocketAddress server = new InetSocketAddress(options.getString("host", "127.0.0.1"),
+				options.getInt("port", DEFAULT_PORT));
+		long durationNanos = TimeUnit.SECONDS.toNanos(options.getInt("seconds", 10));
+
+		LoadTest loadTest = new LoadTest(server);
+		loadTest.negotiate();
+
+		int served = 0;
+		try {
+			for (String step : options.getString("steps", "100,200,400,800").split(",")) {
+				int listeners = Integer.parseInt(step.trim());
+				loadTest.addProbes(listeners - loadTest.mProbes.size());
+				if (loadTest.runStep(durationNanos) < MIN_DELIVERY)
+					break;
+				served = listeners;
+			}
+		} finally {
+			loadTest.close();
+		}
+		log("served %s listeners with at least %.1f%% delivered", served, 100 * MIN_DELIVERY);
+	}
+}
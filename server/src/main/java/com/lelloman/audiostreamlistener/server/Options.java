@@ -0,0 +1,41 @@
+package com.lelloman.audiostreamlistener.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 	--name value command line options
+ */
+class Options {
+
+	private final Map<String, String> mValues = new HashMap<>();
+
+	Options(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			if (!args[i].startsWith("--"))
+				throw new IllegalArgumentException("unexpected argument " + args[i]);
+			String name = args[i].substring(2);
+			String value = i + 1 < args.length && !args[i + 1].startsWith("--") ? args[++i] : "true";
+			mValues.put(name, value);
+		}
+	}
+
+	String getString(String name, String defaultValue) {
+		String value = mValues.get(name);
+		return value == null ? defaultValue : value;
+	}
+
+	int getInt(String name, int defaultValue) {
+		String value = mValues.get(name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+
+	double getDouble(String name, double defaultValue) {
+		String value = mValues.get(name);
+		return value == null ? defaultValue : Double.parseDouble(value);
+	}
+
+	boolean has(String name) {
+		return mValues.containsKey(name);
+	}
+}
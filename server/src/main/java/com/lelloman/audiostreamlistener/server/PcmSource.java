@@ -0,0 +1,25 @@
+package com.lelloman.audiostreamlistener.server;
+
+import java.io.IOException;
+
+/**
+ * 	the pcm the server streams, interleaved channels in one of the
+ * 	sample formats of the client, 8 bit unsigned, 16 and 24 bit signed
+ * 	or 32 bit float, little endian
+ */
+public interface PcmSource {
+
+	int getSampleRate();
+
+	/**
+	 * 	bytes per sample, one of the FORMAT_ constants
+	 */
+	int getBitDepth();
+
+	int getChannels();
+
+	/**
+	 * 	fill exactly length bytes, a source never runs out
+	 */
+	void read(byte[] dst, int offset, int length) throws IOException;
+}
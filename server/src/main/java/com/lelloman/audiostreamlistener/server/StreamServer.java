@@ -0,0 +1,1165 @@
+package com.lelloman.audiostreamlistener.server;
+
+import com.lelloman.audiostreamlistener.audio.SampleConverter;
+import com.lelloman.audiostreamlistener.codec.FrameDecoder;
+import com.lelloman.audiostreamlistener.codec.FrameEncoder;
+import com.lelloman.audiostreamlistener.fec.Fec;
+import com.lelloman.audiostreamlistener.fec.FecEncoder;
+import com.lelloman.audiostreamlistener.threading.FrameHeader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.lelloman.audiostreamlistener.Constants.ANNOUNCE_PORT;
+import static com.lelloman.audiostreamlistener.Constants.CODEC_ALAW;
+import static com.lelloman.audiostreamlistener.Constants.CODEC_IMA_ADPCM;
+import static com.lelloman.audiostreamlistener.Constants.CODEC_LOSSLESS;
+import static com.lelloman.audiostreamlistener.Constants.CODEC_MULAW;
+import static com.lelloman.audiostreamlistener.Constants.CODEC_PCM;
+import static com.lelloman.audiostreamlistener.Constants.DEFAULT_ANNOUNCE_INTERVAL_MS;
+import static com.lelloman.audiostreamlistener.Constants.DEFAULT_PORT;
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_GROUP;
+import static com.lelloman.audiostreamlistener.Constants.DISCOVERY_PORT;
+import static com.lelloman.audiostreamlistener.Constants.EXT_CHANNELS;
+import static com.lelloman.audiostreamlistener.Constants.EXT_CODEC;
+import static com.lelloman.audiostreamlistener.Constants.EXT_FEC;
+import static com.lelloman.audiostreamlistener.Constants.EXT_FEC_GROUP;
+import static com.lelloman.audiostreamlistener.Constants.EXT_FRAME_HEADER;
+import static com.lelloman.audiostreamlistener.Constants.EXT_MAX_DATAGRAM;
+import static com.lelloman.audiostreamlistener.Constants.EXT_NACK;
+import static com.lelloman.audiostreamlistener.Constants.EXT_SAMPLE_FORMAT;
+import static com.lelloman.audiostreamlistener.Constants.EXT_SESSION;
+import static com.lelloman.audiostreamlistener.Constants.FEC_NONE;
+import static com.lelloman.audiostreamlistener.Constants.FEC_REED_SOLOMON;
+import static com.lelloman.audiostreamlistener.Constants.FEC_XOR;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_16;
+import static com.lelloman.audiostreamlistener.Constants.HANDSHAKE_VERSION;
+import static com.lelloman.audiostreamlistener.Constants.MAX_NACK_PAIRS;
+import static com.lelloman.audiostreamlistener.Constants.MSG_ANNOUNCE;
+import static com.lelloman.audiostreamlistener.Constants.MSG_CLOCK;
+import static com.lelloman.audiostreamlistener.Constants.MSG_CLOCK_REPLY;
+import static com.lelloman.audiostreamlistener.Constants.MSG_HELLO;
+import static com.lelloman.audiostreamlistener.Constants.MSG_NACK;
+import static com.lelloman.audiostreamlistener.Constants.MSG_PING;
+import static com.lelloman.audiostreamlistener.Constants.MSG_PONG;
+import static com.lelloman.audiostreamlistener.Constants.MSG_START_STREAM;
+import static com.lelloman.audiostreamlistener.Constants.MSG_STREAM_INFO;
+import static com.lelloman.audiostreamlistener.Constants.MSG_WELCOME;
+
+/**
+ * 	reference server for the app, one {@link PcmSource} is paced in
+ * 	frames of buffer size bytes and every frame is sent to all the
+ * 	listeners, everything runs in a single selector loop, no thread
+ * 	per client.
+ * 	the stream can be compressed with a codec, the listeners that
+ * 	didn't offer it get plain pcm, every frame is encoded once.
+ * 	a source that isn't 16 bit mono goes as it is to the listeners
+ * 	that read its format and channels, the others get it converted
+ * 	to 16 bit mono, which every client plays.
+ * 	with fec every group of frames is followed by its parity packets,
+ * 	for the listeners that can decode them, computed once per payload.
+ * 	the last frames of each payload are kept to be sent again to the
+ * 	listeners that ask for them with MSG_NACK.
+ * 	the packets bigger than the datagrams a listener wants are split in
+ * 	fragments, each with a copy of the header.
+ * 	the frame timestamps are the time each frame was due, on a clock
+ * 	that starts with the stream, MSG_CLOCK reads that clock so that
+ * 	the clients can sync to it.
+ * 	the discovery port is on DISCOVERY_GROUP too and takes broadcasts,
+ * 	so one ping finds every server, and the server can announce itself
+ * 	every now and then to the clients that just listen.
+ * 	the pongs and the announcements carry the stream port and the
+ * 	config a client that takes every feature gets, with the session
+ * 	token that stays the same for as long as the server runs, so a
+ * 	client that has the config of the session can start receiving
+ * 	as soon as it says MSG_HELLO.
+ *
+ * 	a client says MSG_HELLO with the features it has and gets the
+ * 	whole config back in one MSG_WELCOME, its socket is a listener
+ * 	from then on. the older clients ask for the stream info and start
+ * 	the stream from two different sockets, so the features negotiated
+ * 	with MSG_STREAM_INFO are remembered per host and applied to the
+ * 	listeners that host registers with MSG_START_STREAM, until the
+ * 	last of them goes away.
+ * 	only the senders on a local network can become listeners or get
+ * 	the stream info, unless any sender is accepted, so that a spoofed
+ * 	request can't point the stream at someone else out there.
+ * 	there's no message to stop a stream, listeners go away when they
+ * 	haven't been heard of for the listener timeout, if one is set,
+ * 	or when the oldest one makes room for a new one
+ */
+public class StreamServer implements Runnable {
+
+	// a frame is sent on time if it's late by less than this
+	private static final long LATE_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	// when the loop falls behind by more than this it starts over
+	private static final int MAX_FRAMES_BEHIND = 10;
+	private static final int SEND_BUFFER_SIZE = 4 * 1024 * 1024;
+	private static final long STATS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+	// the payloads a listener can get
+	private static final int PAYLOAD_PCM = 0;
+	private static final int PAYLOAD_ENCODED = 1;
+	private static final int PAYLOAD_CONVERTED = 2;
+
+	// what a host asked for with MSG_STREAM_INFO
+	private static class Features {
+		int headerVersion;
+		int codec = CODEC_PCM;
+		// gets 16 bit mono instead of the source format
+		boolean converted;
+		boolean fec;
+		boolean nack;
+		// split the bigger packets in fragments of this size, 0 for none
+		int fragmentSize;
+		long negotiatedNanos;
+
+		Features(boolean converted) {
+			this.converted = converted;
+		}
+	}
+
+	private static class Listener {
+		final SocketAddress address;
+		final int headerVersion;
+		// one of the PAYLOAD_ constants
+		final int payload;
+		final boolean fec;
+		final boolean nack;
+		final int fragmentSize;
+		final long startedNanos;
+		long lastSeenNanos;
+		long dropped;
+
+		Listener(SocketAddress address, Features features, long now) {
+			this.address = address;
+			this.headerVersion = features.headerVersion;
+			this.payload = features.converted ? PAYLOAD_CONVERTED
+					: (features.codec != CODEC_PCM ? PAYLOAD_ENCODED : PAYLOAD_PCM);
+			this.fec = features.fec;
+			this.nack = features.nack;
+			this.fragmentSize = features.fragmentSize;
+			this.startedNanos = now;
+			this.lastSeenNanos = now;
+		}
+	}
+
+	private final PcmSource mSource;
+	private final int mBufferSize;
+	// the source is 16 bit mono, nothing to convert for anyone
+	private final boolean mPlainSource;
+	// for the listeners that don't send MSG_STREAM_INFO
+	private final Features mDefaultFeatures;
+	private final int mMaxListeners;
+	private final long mListenerTimeoutNanos;
+	private final long mFrameDurationNanos;
+
+	private final Selector mSelector;
+	private final DatagramChannel mStreamChannel;
+	private final DatagramChannel mDiscoveryChannel;
+
+	private final List<Listener> mListeners = new ArrayList<>();
+	private final Map<SocketAddress, Listener> mListenersByAddress = new HashMap<>();
+	// the features negotiated by each host, no more hosts than listeners
+	private final Map<InetAddress, Features> mFeatures = new LinkedHashMap<InetAddress, Features>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<InetAddress, Features> eldest) {
+			return size() > mMaxListeners;
+		}
+	};
+	// the networks of the interfaces, read again with the stats
+	private List<InterfaceAddress> mInterfaceAddresses = new ArrayList<>();
+	private boolean mAcceptAnySender;
+
+	private final ByteBuffer mReceiveBuffer = ByteBuffer.allocate(256);
+	private final ByteBuffer mReplyBuffer = ByteBuffer.allocate(128);
+	// header followed by the pcm, the listeners without header get
+	// the same buffer from the pcm on
+	private final byte[] mFrameData;
+	private final ByteBuffer mFrame;
+	// the same with the payload encoded, for the listeners using the codec
+	private final int mCodec;
+	private final FrameEncoder mEncoder;
+	private final byte[] mEncodedData;
+	private final ByteBuffer mEncodedFrame;
+	// the codecs with variable size frames don't fill all of it
+	private int mEncodedLength;
+	private int mEncodedListeners;
+	// and converted to 16 bit mono, the payload is a view of the data
+	// past the header with room for all the channels before the mix down
+	private final SampleConverter mConverter;
+	private final byte[] mConvertedData;
+	private final ByteBuffer mConvertedPayload;
+	private final ByteBuffer mConvertedFrame;
+	private final int mConvertedBufferSize;
+	private int mConvertedLength;
+	private int mConvertedListeners;
+	// the parity of each payload, FEC_NONE if there's none
+	private int mFecScheme = FEC_NONE;
+	private int mFecDataFrames;
+	private int mFecParityFrames;
+	private final FecEncoder[] mFecEncoders = new FecEncoder[3];
+	private byte[] mParityData;
+	private ByteBuffer mParityFrame;
+	private int mFecListeners;
+	// the frames sent last of each payload, flagged FLAG_RETRANSMIT,
+	// in slots by sequence. 0 frames for no retransmissions
+	private int mNackHistory;
+	private final ByteBuffer[][] mHistory = new ByteBuffer[3][];
+	private final int[][] mHistorySequences = new int[3][];
+	private int mNackListeners;
+	// the header of the packet being split, and the bytes the copy in
+	// front of a fragment takes the place of
+	private final byte[] mFragmentHeader = new byte[FrameHeader.SIZE];
+	private final byte[] mOverwritten = new byte[FrameHeader.SIZE];
+	private int mSequence;
+	// the clock of the frame timestamps starts here
+	private long mClockStartNanos;
+	// 0 for no announcements
+	private long mAnnounceIntervalNanos;
+	// never 0, which is no session
+	private final int mSessionToken;
+
+	// stats since the last report
+	private long mSent;
+	private long mDropped;
+	private long mLateFrames;
+	private long mSkippedFrames;
+	private long mFanOutNanos;
+	private long mStatsFrames;
+	private long mEncodedFrames;
+	private long mEncodedBytes;
+	private long mParitySent;
+	private long mNacks;
+	private long mRetransmitted;
+	private long mFragmented;
+	private long mRejected;
+
+	private volatile boolean mRunning = true;
+
+	/**
+	 * @param port where the stream is requested, 0 for any
+	 * @param discoveryPort where pings are answered as well, -1 for none
+	 * @param listenerTimeoutMs 0 to keep the listeners until they're evicted
+	 * @param codec offered to the clients that can decode it, pcm for none
+	 */
+	public StreamServer(PcmSource source, int port, int discoveryPort, int bufferSize,
+						int maxListeners, long listenerTimeoutMs, int codec) throws IOException {
+		int sampleFrameSize = source.getBitDepth() * source.getChannels();
+		if (bufferSize <= 0 || bufferSize % sampleFrameSize != 0)
+			throw new IllegalArgumentException("buffer size must be a multiple of the bit depth times the channels");
+		mPlainSource = source.getBitDepth() == FORMAT_PCM_16 && source.getChannels() == 1;
+		if (codec != CODEC_PCM && !mPlainSource)
+			throw new IllegalArgumentException("the codecs need a 16 bit mono source");
+		mDefaultFeatures = new Features(!mPlainSource);
+
+		mSource = source;
+		mBufferSize = bufferSize;
+		mMaxListeners = maxListeners;
+		mListenerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(listenerTimeoutMs);
+		mFrameDurationNanos = bufferSize * 1000000000L / ((long) source.getSampleRate() * sampleFrameSize);
+
+		mFrameData = new byte[FrameHeader.SIZE + bufferSize];
+		mFrame = ByteBuffer.wrap(mFrameData);
+		mCodec = codec;
+		mEncoder = FrameEncoder.create(codec);
+		mEncodedData = new byte[FrameHeader.SIZE + FrameDecoder.getEncodedSize(codec, bufferSize)];
+		mEncodedFrame = ByteBuffer.wrap(mEncodedData);
+		mConvertedBufferSize = bufferSize / sampleFrameSize * FORMAT_PCM_16;
+		mConverter = mPlainSource ? null
+				: new SampleConverter(source.getBitDepth(), source.getChannels(), FORMAT_PCM_16, 1);
+		int workSize = mPlainSource ? 0 : mConverter.getWorkSize(bufferSize);
+		mConvertedData = new byte[FrameHeader.SIZE + workSize];
+		mConvertedFrame = ByteBuffer.wrap(mConvertedData);
+		mConvertedPayload = ByteBuffer.wrap(mConvertedData, FrameHeader.SIZE, workSize).slice();
+
+		mSelector = Selector.open();
+		mStreamChannel = openChannel(port);
+		mStreamChannel.setOption(StandardSocketOptions.SO_SNDBUF, SEND_BUFFER_SIZE);
+		mDiscoveryChannel = discoveryPort >= 0 ? openDiscoveryChannel(discoveryPort) : null;
+
+		Random random = new Random();
+		int sessionToken;
+		do {
+			sessionToken = random.nextInt();
+		} while (sessionToken == 0);
+		mSessionToken = sessionToken;
+		readInterfaceAddresses();
+	}
+
+	/**
+	 * 	send parityFrames parity packets after every dataFrames frames to
+	 * 	the listeners that offer the scheme, it has to be called before
+	 * 	{@link #run()}
+	 */
+	public void setFec(int scheme, int dataFrames, int parityFrames) {
+		Fec.checkGroup(scheme, dataFrames, parityFrames);
+		mFecScheme = scheme;
+		mFecDataFrames = dataFrames;
+		mFecParityFrames = parityFrames;
+		mFecEncoders[PAYLOAD_PCM] = new FecEncoder(scheme, dataFrames, parityFrames, mBufferSize);
+		mFecEncoders[PAYLOAD_ENCODED] = new FecEncoder(scheme, dataFrames, parityFrames,
+				mEncodedData.length - FrameHeader.SIZE);
+		mFecEncoders[PAYLOAD_CONVERTED] = new FecEncoder(scheme, dataFrames, parityFrames,
+				mConvertedData.length - FrameHeader.SIZE);
+		int maxPayloadSize = Math.max(mBufferSize, Math.max(mEncodedData.length, mConvertedData.length));
+		mParityData = new byte[FrameHeader.SIZE + Fec.getMaxParitySize(maxPayloadSize)];
+		mParityFrame = ByteBuffer.wrap(mParityData);
+	}
+
+	/**
+	 * 	keep that many of the last frames of each payload for the listeners
+	 * 	that send MSG_NACK, it has to be called before {@link #run()}
+	 */
+	public void setNackHistory(int frames) {
+		mNackHistory = frames;
+		if (frames <= 0)
+			return;
+		int[] sizes = {mFrameData.length, mEncodedData.length, mConvertedData.length};
+		for (int payload = 0; payload < sizes.length; payload++) {
+			mHistory[payload] = new ByteBuffer[frames];
+			mHistorySequences[payload] = new int[frames];
+			for (int i = 0; i < frames; i++) {
+				mHistory[payload][i] = ByteBuffer.allocate(sizes[payload]);
+				mHistory[payload][i].limit(0);
+			}
+		}
+	}
+
+	/**
+	 * 	send MSG_ANNOUNCE every intervalMs, 0 for never. it goes from the
+	 * 	discovery port so it needs one, it has to be called before
+	 * 	{@link #run()}
+	 */
+	public void setAnnounceInterval(long intervalMs) {
+		if (intervalMs > 0 && mDiscoveryChannel == null)
+			throw new IllegalStateException("announcements need a discovery port");
+		mAnnounceIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, intervalMs));
+	}
+
+	/**
+	 * 	take MSG_HELLO, MSG_STREAM_INFO and MSG_START_STREAM from senders
+	 * 	outside of the local networks too, it has to be called before
+	 * 	{@link #run()}
+	 */
+	public void setAcceptAnySender(boolean acceptAnySender) {
+		mAcceptAnySender = acceptAnySender;
+	}
+
+	public int getPort() {
+		return ((InetSocketAddress) mStreamChannel.socket().getLocalSocketAddress()).getPort();
+	}
+
+	/**
+	 * 	the event loop, until {@link #stop()}
+	 */
+	@Override
+	public void run() {
+		log("streaming %s Hz %s bit %s channels, %s bytes frames every %.2f ms on port %s",
+				mSource.getSampleRate(), mSource.getBitDepth() * 8, mSource.getChannels(), mBufferSize,
+				mFrameDurationNanos / 1e6, getPort());
+
+		long nextFrameNanos = System.nanoTime();
+		mClockStartNanos = nextFrameNanos;
+		long nextStatsNanos = nextFrameNanos + STATS_INTERVAL_NANOS;
+		long nextAnnounceNanos = nextFrameNanos;
+
+		try {
+			while (mRunning) {
+				long waitNanos = nextFrameNanos - System.nanoTime();
+				if (waitNanos >= TimeUnit.MILLISECONDS.toNanos(1)) {
+					mSelector.select(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+				} else {
+					mSelector.selectNow();
+				}
+				handleSelectedKeys();
+
+				long now = System.nanoTime();
+				if (now - nextFrameNanos > MAX_FRAMES_BEHIND * mFrameDurationNanos) {
+					long behind = (now - nextFrameNanos) / mFrameDurationNanos;
+					mSkippedFrames += behind;
+					nextFrameNanos += behind * mFrameDurationNanos;
+				}
+				while (now - nextFrameNanos >= 0) {
+					if (now - nextFrameNanos > LATE_FRAME_NANOS)
+						mLateFrames++;
+					sendFrame(nextFrameNanos);
+					nextFrameNanos += mFrameDurationNanos;
+				}
+
+				if (now - nextStatsNanos >= 0) {
+					expireListeners(now);
+					readInterfaceAddresses();
+					logStats();
+					nextStatsNanos = now + STATS_INTERVAL_NANOS;
+				}
+				if (mAnnounceIntervalNanos > 0 && now - nextAnnounceNanos >= 0) {
+					announce();
+					nextAnnounceNanos = now + mAnnounceIntervalNanos;
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			close();
+		}
+		log("stopped");
+	}
+
+	/**
+	 * 	can be called from any thread
+	 */
+	public void stop() {
+		mRunning = false;
+		mSelector.wakeup();
+	}
+
+	public int getListenerCount() {
+		return mListeners.size();
+	}
+
+	private DatagramChannel openChannel(int port) throws IOException {
+		DatagramChannel channel = DatagramChannel.open();
+		channel.configureBlocking(false);
+		channel.socket().bind(new InetSocketAddress(port));
+		channel.register(mSelector, SelectionKey.OP_READ);
+		return channel;
+	}
+
+	/**
+	 * 	ipv4 only, to join the group and take broadcasts. the group is
+	 * 	joined on every interface that can do multicast, one that can't
+	 * 	is skipped
+	 */
+	private DatagramChannel openDiscoveryChannel(int port) throws IOException {
+		DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+		channel.socket().bind(new InetSocketAddress(port));
+		InetAddress group = InetAddress.getByName(DISCOVERY_GROUP);
+		for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+			if (!networkInterface.isUp() || !networkInterface.supportsMulticast())
+				continue;
+			try {
+				channel.join(group, networkInterface);
+			} catch (IOException e) {
+				log("can't join %s on %s: %s", DISCOVERY_GROUP, networkInterface.getName(), e.getMessage());
+			}
+		}
+		channel.register(mSelector, SelectionKey.OP_READ);
+		return channel;
+	}
+
+	/**
+	 * 	MSG_ANNOUNCE and the stream port to the group and to the broadcast
+	 * 	address of every interface, read every time as they come and go
+	 */
+	private void announce() throws IOException {
+		mReplyBuffer.clear();
+		mReplyBuffer.putInt(MSG_ANNOUNCE);
+		putSession();
+		mReplyBuffer.flip();
+		sendAnnouncement(InetAddress.getByName(DISCOVERY_GROUP));
+		for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+			if (!networkInterface.isUp() || networkInterface.isLoopback())
+				continue;
+			for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
+				if (interfaceAddress.getAddress() instanceof Inet4Address && interfaceAddress.getBroadcast() != null)
+					sendAnnouncement(interfaceAddress.getBroadcast());
+			}
+		}
+	}
+
+	private void sendAnnouncement(InetAddress target) {
+		mReplyBuffer.rewind();
+		try {
+			mDiscoveryChannel.send(mReplyBuffer, new InetSocketAddress(target, ANNOUNCE_PORT));
+		} catch (IOException e) {
+			// no route that way, the others may work
+			log("can't announce to %s: %s", target.getHostAddress(), e.getMessage());
+		}
+	}
+
+	private void handleSelectedKeys() throws IOException {
+		Iterator<SelectionKey> iterator = mSelector.selectedKeys().iterator();
+		while (iterator.hasNext()) {
+			DatagramChannel channel = (DatagramChannel) iterator.next().channel();
+			iterator.remove();
+
+			SocketAddress sender;
+			while (true) {
+				mReceiveBuffer.clear();
+				sender = channel.receive(mReceiveBuffer);
+				if (sender == null)
+					break;
+				mReceiveBuffer.flip();
+				if (mReceiveBuffer.remaining() >= 4)
+					handleMessage(channel, sender, mReceiveBuffer.getInt());
+			}
+		}
+	}
+
+	private void handleMessage(DatagramChannel channel, SocketAddress sender, int msg) throws IOException {
+		if (msg == MSG_PING) {
+			pong(channel, sender);
+		} else if (channel == mStreamChannel && (msg == MSG_HELLO || msg == MSG_STREAM_INFO || msg == MSG_START_STREAM)
+				&& !mAcceptAnySender && !isLocal(((InetSocketAddress) sender).getAddress())) {
+			mRejected++;
+		} else if (channel == mStreamChannel && msg == MSG_HELLO) {
+			welcome(sender);
+		} else if (channel == mStreamChannel && msg == MSG_STREAM_INFO) {
+			sendStreamInfo(sender);
+		} else if (channel == mStreamChannel && msg == MSG_START_STREAM) {
+			Features features = mFeatures.get(((InetSocketAddress) sender).getAddress());
+			addListener(sender, features == null ? mDefaultFeatures : features);
+		} else if (channel == mStreamChannel && msg == MSG_NACK) {
+			retransmit(sender);
+		} else if (channel == mStreamChannel && msg == MSG_CLOCK) {
+			replyClock(sender);
+		}
+	}
+
+	/**
+	 * 	loopback, a private or link local range, or on the network of
+	 * 	one of the interfaces
+	 */
+	private boolean isLocal(InetAddress address) {
+		if (isPrivate(address))
+			return true;
+		for (int i = 0, size = mInterfaceAddresses.size(); i < size; i++) {
+			InterfaceAddress interfaceAddress = mInterfaceAddresses.get(i);
+			if (isOnNetwork(address, interfaceAddress.getAddress(), interfaceAddress.getNetworkPrefixLength()))
+				return true;
+		}
+		return false;
+	}
+
+	static boolean isPrivate(InetAddress address) {
+		return address.isLoopbackAddress() || address.isSiteLocalAddress() || address.isLinkLocalAddress()
+				// the ipv6 unique local addresses, fc00::/7
+				|| address instanceof Inet6Address && (address.getAddress()[0] & 0xfe) == 0xfc;
+	}
+
+	/**
+	 * 	the first prefixLength bits of the two addresses are the same
+	 */
+	static boolean isOnNetwork(InetAddress address, InetAddress network, int prefixLength) {
+		byte[] a = address.getAddress();
+		byte[] b = network.getAddress();
+		if (a.length != b.length || prefixLength <= 0)
+			return false;
+		int bytes = Math.min(prefixLength / 8, a.length);
+		for (int i = 0; i < bytes; i++) {
+			if (a[i] != b[i])
+				return false;
+		}
+		int bits = prefixLength % 8;
+		if (bits == 0 || bytes == a.length)
+			return true;
+		int mask = 0xff00 >> bits;
+		return (a[bytes] & mask) == (b[bytes] & mask);
+	}
+
+	/**
+	 * 	the interfaces come and go, a failed read keeps the last ones
+	 */
+	private void readInterfaceAddresses() {
+		List<InterfaceAddress> interfaceAddresses = new ArrayList<>();
+		try {
+			for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+				if (networkInterface.isUp())
+					interfaceAddresses.addAll(networkInterface.getInterfaceAddresses());
+			}
+		} catch (SocketException e) {
+			log("can't read the interfaces: %s", e.getMessage());
+			return;
+		}
+		mInterfaceAddresses = interfaceAddresses;
+	}
+
+	/**
+	 * 	a probe id after MSG_PING is sent back after MSG_PONG, so that
+	 * 	the client can time each ping, 0 if there's none, then the session
+	 */
+	private void pong(DatagramChannel channel, SocketAddress sender) throws IOException {
+		mReplyBuffer.clear();
+		mReplyBuffer.putInt(MSG_PONG);
+		mReplyBuffer.putInt(mReceiveBuffer.remaining() >= 4 ? mReceiveBuffer.getInt() : 0);
+		putSession();
+		mReplyBuffer.flip();
+		channel.send(mReplyBuffer, sender);
+	}
+
+	/**
+	 * 	the stream port, the session token and what a MSG_WELCOME has
+	 * 	after the nonce for a client that takes every feature and any
+	 * 	datagram size, in the reply buffer
+	 */
+	private void putSession() {
+		Features features = new Features(false);
+		features.headerVersion = FrameHeader.VERSION;
+		features.codec = mCodec;
+		features.fec = mFecScheme != FEC_NONE;
+		features.nack = mNackHistory > 0;
+		mReplyBuffer.putInt(getPort()).putInt(mSessionToken);
+		mReplyBuffer.putInt(mSource.getSampleRate()).putInt(mBufferSize);
+		putFeatures(features);
+	}
+
+	/**
+	 * 	the client clock back, with the server one when the request was
+	 * 	read and when the reply is sent
+	 */
+	private void replyClock(SocketAddress sender) throws IOException {
+		long receivedUs = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - mClockStartNanos);
+		if (mReceiveBuffer.remaining() < 8)
+			return;
+		long clientUs = mReceiveBuffer.getLong();
+
+		mReplyBuffer.clear();
+		mReplyBuffer.putInt(MSG_CLOCK_REPLY).putLong(clientUs).putLong(receivedUs);
+		mReplyBuffer.putLong(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - mClockStartNanos));
+		mReplyBuffer.flip();
+		mStreamChannel.send(mReplyBuffer, sender);
+	}
+
+	/**
+	 * 	one reply to MSG_HELLO with the whole config, the sender becomes
+	 * 	a listener straight away. a repeated hello, the welcome was lost,
+	 * 	refreshes the listener and gets another welcome
+	 */
+	private void welcome(SocketAddress sender) throws IOException {
+		if (mReceiveBuffer.remaining() < 8)
+			return;
+		int version = Math.min(mReceiveBuffer.getInt(), HANDSHAKE_VERSION);
+		int nonce = mReceiveBuffer.getInt();
+		if (version < 1)
+			return;
+		Features features = readFeatures();
+
+		mReplyBuffer.clear();
+		mReplyBuffer.putInt(MSG_WELCOME).putInt(version).putInt(nonce);
+		mReplyBuffer.putInt(mSource.getSampleRate());
+		mReplyBuffer.putInt(features.converted ? mConvertedBufferSize : mBufferSize);
+		putFeatures(features);
+		mReplyBuffer.flip();
+		mStreamChannel.send(mReplyBuffer, sender);
+
+		if (!mListenersByAddress.containsKey(sender))
+			log("welcome to %s, %s", sender, describe(features));
+		addListener(sender, features);
+	}
+
+	/**
+	 * 	three replies, sample rate, buffer size and bit depth, the
+	 * 	accepted extensions are appended to the last one
+	 */
+	private void sendStreamInfo(SocketAddress sender) throws IOException {
+		Features features = readFeatures();
+		features.negotiatedNanos = System.nanoTime();
+		InetAddress host = ((InetSocketAddress) sender).getAddress();
+		// again at the end, it's the newest
+		mFeatures.remove(host);
+		mFeatures.put(host, features);
+
+		reply(mStreamChannel, sender, mSource.getSampleRate());
+		reply(mStreamChannel, sender, features.converted ? mConvertedBufferSize : mBufferSize);
+
+		mReplyBuffer.clear();
+		putFeatures(features);
+		mReplyBuffer.flip();
+		mStreamChannel.send(mReplyBuffer, sender);
+
+		log("stream info to %s, %s", sender, describe(features));
+	}
+
+	/**
+	 * 	the features the client offers, the key/value ints left in the
+	 * 	receive buffer, that this server has
+	 */
+	private Features readFeatures() {
+		Features features = new Features(!mPlainSource);
+		boolean readsFormat = false;
+		int maxChannels = 1;
+		while (mReceiveBuffer.remaining() >= 8) {
+			int key = mReceiveBuffer.getInt();
+			int value = mReceiveBuffer.getInt();
+			if (key == EXT_FRAME_HEADER && value == FrameHeader.VERSION)
+				features.headerVersion = value;
+			else if (key == EXT_CODEC && value == mCodec)
+				features.codec = value;
+			else if (key == EXT_SAMPLE_FORMAT && value == mSource.getBitDepth())
+				readsFormat = true;
+			else if (key == EXT_CHANNELS)
+				maxChannels = value;
+			else if (key == EXT_FEC && value == mFecScheme)
+				features.fec = true;
+			else if (key == EXT_NACK && mNackHistory > 0)
+				features.nack = true;
+			else if (key == EXT_MAX_DATAGRAM)
+				features.fragmentSize = value;
+		}
+		if (readsFormat && maxChannels >= mSource.getChannels())
+			features.converted = false;
+		// the parity packets are told apart by their header
+		features.fec = features.fec && features.headerVersion > 0;
+		features.nack = features.nack && features.headerVersion > 0;
+		features.fragmentSize = features.headerVersion > 0 && features.fragmentSize > 0
+				? Math.max(features.fragmentSize, getMinFragmentSize()) : 0;
+		return features;
+	}
+
+	/**
+	 * 	the bit depth followed by the accepted features, in the reply buffer
+	 */
+	private void putFeatures(Features features) {
+		mReplyBuffer.putInt(features.converted ? FORMAT_PCM_16 : mSource.getBitDepth());
+		if (features.headerVersion > 0)
+			mReplyBuffer.putInt(EXT_FRAME_HEADER).putInt(features.headerVersion);
+		if (features.codec != CODEC_PCM)
+			mReplyBuffer.putInt(EXT_CODEC).putInt(features.codec);
+		if (!mPlainSource && !features.converted) {
+			mReplyBuffer.putInt(EXT_SAMPLE_FORMAT).putInt(mSource.getBitDepth());
+			mReplyBuffer.putInt(EXT_CHANNELS).putInt(mSource.getChannels());
+		}
+		if (features.fec) {
+			mReplyBuffer.putInt(EXT_FEC).putInt(mFecScheme);
+			mReplyBuffer.putInt(EXT_FEC_GROUP).putInt(mFecDataFrames << 8 | mFecParityFrames);
+		}
+		if (features.nack)
+			mReplyBuffer.putInt(EXT_NACK).putInt(mNackHistory);
+		if (features.fragmentSize > 0)
+			mReplyBuffer.putInt(EXT_MAX_DATAGRAM).putInt(features.fragmentSize);
+		mReplyBuffer.putInt(EXT_SESSION).putInt(mSessionToken);
+	}
+
+	private static String describe(Features features) {
+		return String.format("header version %s codec %s%s%s%s datagrams up to %s", features.headerVersion,
+				features.codec, features.converted ? " converted to 16 bit mono" : "", features.fec ? " with fec" : "",
+				features.nack ? " with nack" : "", features.fragmentSize > 0 ? features.fragmentSize : "any size");
+	}
+
+	/**
+	 * 	the smallest fragments the biggest packet can be split in
+	 */
+	private int getMinFragmentSize() {
+		int maxLength = Math.max(mFrameData.length, Math.max(mEncodedData.length, mConvertedData.length));
+		if (mParityData != null)
+			maxLength = Math.max(maxLength, mParityData.length);
+		int maxPayload = maxLength - FrameHeader.SIZE;
+		return FrameHeader.SIZE + (maxPayload + FrameHeader.MAX_FRAGMENTS - 1) / FrameHeader.MAX_FRAGMENTS;
+	}
+
+	/**
+	 * 	the client sends MSG_START_STREAM or MSG_HELLO a few times,
+	 * 	the repeated ones just refresh the listener
+	 */
+	private void addListener(SocketAddress sender, Features features) {
+		long now = System.nanoTime();
+		Listener listener = mListenersByAddress.get(sender);
+		if (listener != null) {
+			listener.lastSeenNanos = now;
+			return;
+		}
+
+		if (mListeners.size() >= mMaxListeners)
+			removeListener(0);
+
+		listener = new Listener(sender, features, now);
+		if (listener.payload == PAYLOAD_ENCODED)
+			mEncodedListeners++;
+		if (listener.payload == PAYLOAD_CONVERTED)
+			mConvertedListeners++;
+		if (listener.fec)
+			mFecListeners++;
+		if (listener.nack)
+			mNackListeners++;
+		mListeners.add(listener);
+		mListenersByAddress.put(sender, listener);
+	}
+
+	private void removeListener(int index) {
+		Listener listener = mListeners.remove(index);
+		mListenersByAddress.remove(listener.address);
+		if (listener.payload == PAYLOAD_ENCODED)
+			mEncodedListeners--;
+		if (listener.payload == PAYLOAD_CONVERTED)
+			mConvertedListeners--;
+		if (listener.fec)
+			mFecListeners--;
+		if (listener.nack)
+			mNackListeners--;
+
+		// the host forgets the features it started with along with its
+		// last listener, not the ones it just negotiated again
+		InetAddress host = ((InetSocketAddress) listener.address).getAddress();
+		Features features = mFeatures.get(host);
+		if (features != null && features.negotiatedNanos - listener.startedNanos <= 0 && !hasListener(host))
+			mFeatures.remove(host);
+	}
+
+	private boolean hasListener(InetAddress host) {
+		for (int i = 0, size = mListeners.size(); i < size; i++) {
+			if (((InetSocketAddress) mListeners.get(i).address).getAddress().equals(host))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 	the listeners not heard of for the timeout, and the features of
+	 * 	the hosts that negotiated them as long ago and started nothing
+	 */
+	private void expireListeners(long now) {
+		if (mListenerTimeoutNanos <= 0)
+			return;
+		for (int i = mListeners.size() - 1; i >= 0; i--) {
+			if (now - mListeners.get(i).lastSeenNanos > mListenerTimeoutNanos)
+				removeListener(i);
+		}
+		Iterator<Map.Entry<InetAddress, Features>> iterator = mFeatures.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<InetAddress, Features> entry = iterator.next();
+			if (now - entry.getValue().negotiatedNanos > mListenerTimeoutNanos && !hasListener(entry.getKey()))
+				iterator.remove();
+		}
+	}
+
+	/**
+	 * 	read the next frame from the source and send it to everyone,
+	 * 	a send that doesn't fit in the socket buffer is dropped
+	 *
+	 * @param frameNanos when the frame was due
+	 */
+	private void sendFrame(long frameNanos) throws IOException {
+		mSource.read(mFrameData, FrameHeader.SIZE, mBufferSize);
+		long timestampUs = TimeUnit.NANOSECONDS.toMicros(frameNanos - mClockStartNanos);
+		int sequence = mSequence++;
+		FrameHeader.write(mFrameData, 0, 0, sequence, timestampUs);
+		if (mEncodedListeners > 0) {
+			System.arraycopy(mFrameData, 0, mEncodedData, 0, FrameHeader.SIZE);
+			mEncodedLength = FrameHeader.SIZE
+					+ mEncoder.encode(mFrameData, FrameHeader.SIZE, mBufferSize, mEncodedData, FrameHeader.SIZE);
+			mEncodedFrames++;
+			mEncodedBytes += mEncodedLength - FrameHeader.SIZE;
+		}
+		if (mConvertedListeners > 0) {
+			System.arraycopy(mFrameData, 0, mConvertedData, 0, FrameHeader.SIZE);
+			mFrame.limit(mFrameData.length).position(FrameHeader.SIZE);
+			mConvertedLength = FrameHeader.SIZE + mConverter.convert(mFrame, mConvertedPayload);
+		}
+		// a payload nobody gets skips groups, its encoder catches up at the next one
+		boolean pcmParity = false, encodedParity = false, convertedParity = false;
+		if (mFecListeners > 0) {
+			pcmParity = mFecEncoders[PAYLOAD_PCM].add(sequence, mFrameData, FrameHeader.SIZE, mBufferSize);
+			if (mEncodedListeners > 0)
+				encodedParity = mFecEncoders[PAYLOAD_ENCODED].add(sequence, mEncodedData, FrameHeader.SIZE,
+						mEncodedLength - FrameHeader.SIZE);
+			if (mConvertedListeners > 0)
+				convertedParity = mFecEncoders[PAYLOAD_CONVERTED].add(sequence, mConvertedData, FrameHeader.SIZE,
+						mConvertedLength - FrameHeader.SIZE);
+		}
+
+		if (mNackListeners > 0) {
+			remember(PAYLOAD_PCM, sequence, timestampUs, mFrameData, mFrameData.length);
+			if (mEncodedListeners > 0)
+				remember(PAYLOAD_ENCODED, sequence, timestampUs, mEncodedData, mEncodedLength);
+			if (mConvertedListeners > 0)
+				remember(PAYLOAD_CONVERTED, sequence, timestampUs, mConvertedData, mConvertedLength);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0, size = mListeners.size(); i < size; i++) {
+			Listener listener = mListeners.get(i);
+			ByteBuffer frame;
+			if (listener.payload == PAYLOAD_CONVERTED) {
+				frame = mConvertedFrame;
+				frame.limit(mConvertedLength);
+			} else if (listener.payload == PAYLOAD_PCM) {
+				frame = mFrame;
+				frame.limit(mFrameData.length);
+			} else {
+				frame = mEncodedFrame;
+				frame.limit(mEncodedLength);
+			}
+			frame.position(listener.headerVersion > 0 ? 0 : FrameHeader.SIZE);
+			send(frame, listener);
+		}
+		if (pcmParity)
+			sendParity(PAYLOAD_PCM, sequence, timestampUs);
+		if (encodedParity)
+			sendParity(PAYLOAD_ENCODED, sequence, timestampUs);
+		if (convertedParity)
+			sendParity(PAYLOAD_CONVERTED, sequence, timestampUs);
+		mFanOutNanos += System.nanoTime() - start;
+		mStatsFrames++;
+	}
+
+	/**
+	 * 	the parity packets of the group the last frame completed, to the
+	 * 	fec listeners of a payload
+	 */
+	private void sendParity(int payload, int lastSequence, long timestampUs) throws IOException {
+		FecEncoder encoder = mFecEncoders[payload];
+		int groupSequence = lastSequence - (mFecDataFrames - 1);
+		for (int index = 0; index < mFecParityFrames; index++) {
+			FrameHeader.write(mParityData, 0, FrameHeader.FLAG_PARITY, index, groupSequence, timestampUs);
+			int length = FrameHeader.SIZE + encoder.writeParity(index, mParityData, FrameHeader.SIZE);
+			for (int i = 0, size = mListeners.size(); i < size; i++) {
+				Listener listener = mListeners.get(i);
+				if (listener.fec && listener.payload == payload) {
+					mParityFrame.limit(length).position(0);
+					send(mParityFrame, listener);
+					mParitySent++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 	copy a frame with its header in the history of its payload
+	 */
+	private void remember(int payload, int sequence, long timestampUs, byte[] frame, int length) {
+		int slot = (sequence & Integer.MAX_VALUE) % mNackHistory;
+		ByteBuffer copy = mHistory[payload][slot];
+		System.arraycopy(frame, 0, copy.array(), 0, length);
+		FrameHeader.write(copy.array(), 0, FrameHeader.FLAG_RETRANSMIT, sequence, timestampUs);
+		copy.limit(length);
+		mHistorySequences[payload][slot] = sequence;
+	}
+
+	/**
+	 * 	send again the frames a MSG_NACK asks for that are still in the
+	 * 	history, the client already left out the ones that would be late
+	 */
+	private void retransmit(SocketAddress sender) throws IOException {
+		Listener listener = mListenersByAddress.get(sender);
+		if (listener == null || !listener.nack)
+			return;
+		listener.lastSeenNanos = System.nanoTime();
+		mNacks++;
+
+		for (int pairs = 0; pairs < MAX_NACK_PAIRS && mReceiveBuffer.remaining() >= 8; pairs++) {
+			int first = mReceiveBuffer.getInt();
+			int mask = mReceiveBuffer.getInt();
+			retransmit(listener, first);
+			for (int i = 0; mask != 0; i++, mask >>>= 1) {
+				if ((mask & 1) != 0)
+					retransmit(listener, first + 1 + i);
+			}
+		}
+	}
+
+	private void retransmit(Listener listener, int sequence) throws IOException {
+		if (sequence - mSequence >= 0 || mSequence - sequence > mNackHistory)
+			return;
+		int slot = (sequence & Integer.MAX_VALUE) % mNackHistory;
+		ByteBuffer frame = mHistory[listener.payload][slot];
+		if (mHistorySequences[listener.payload][slot] != sequence || frame.limit() == 0)
+			return;
+		frame.position(0);
+		send(frame, listener);
+		mRetransmitted++;
+	}
+
+	/**
+	 * 	a packet with its header, split in fragments if it's bigger than
+	 * 	the listener wants
+	 */
+	private void send(ByteBuffer frame, Listener listener) throws IOException {
+		if (listener.fragmentSize > 0 && frame.remaining() > listener.fragmentSize) {
+			sendFragments(frame, listener);
+		} else {
+			sendDatagram(frame, listener);
+		}
+	}
+
+	/**
+	 * 	every fragment goes out of the packet buffer with a copy of the
+	 * 	header written in front of its piece of the payload, over the end
+	 * 	of the previous one, which is put back after the send
+	 */
+	private void sendFragments(ByteBuffer frame, Listener listener) throws IOException {
+		byte[] data = frame.array();
+		int start = frame.position();
+		int end = frame.limit();
+		int payloadSize = listener.fragmentSize - FrameHeader.SIZE;
+		int count = (end - start - FrameHeader.SIZE + payloadSize - 1) / payloadSize;
+		System.arraycopy(data, start, mFragmentHeader, 0, FrameHeader.SIZE);
+		for (int i = 0; i < count; i++) {
+			int offset = start + i * payloadSize;
+			System.arraycopy(data, offset, mOverwritten, 0, FrameHeader.SIZE);
+			System.arraycopy(mFragmentHeader, 0, data, offset, FrameHeader.SIZE);
+			FrameHeader.writeFragment(data, offset, i, count);
+			frame.limit(Math.min(end, offset + listener.fragmentSize)).position(offset);
+			sendDatagram(frame, listener);
+			System.arraycopy(mOverwritten, 0, data, offset, FrameHeader.SIZE);
+		}
+		mFragmented++;
+	}
+
+	private void sendDatagram(ByteBuffer frame, Listener listener) throws IOException {
+		if (mStreamChannel.send(frame, listener.address) == 0) {
+			listener.dropped++;
+			mDropped++;
+		} else {
+			mSent++;
+		}
+	}
+
+	private void reply(DatagramChannel channel, SocketAddress target, int msg) throws IOException {
+		mReplyBuffer.clear();
+		mReplyBuffer.putInt(msg).flip();
+		channel.send(mReplyBuffer, target);
+	}
+
+	/**
+	 * 	the fan out time per listener is what bounds how many
+	 * 	listeners can be served, a frame has to be out before the
+	 * 	next one is due
+	 */
+	private void logStats() {
+		if (mStatsFrames == 0)
+			return;
+
+		double fanOutUs = mFanOutNanos / 1000d / mStatsFrames;
+		double frameUs = mFrameDurationNanos / 1000d;
+		long sends = mSent + mDropped;
+		String capacity = sends == 0 ? "-" : String.valueOf((long) (mFrameDurationNanos * (double) sends / mFanOutNanos));
+		log("listeners %s sent %s dropped %s late frames %s skipped %s fan out %.1f us/frame (%.1f%% of %.0f us), ~%s listeners max",
+				mListeners.size(), mSent, mDropped, mLateFrames, mSkippedFrames,
+				fanOutUs, 100 * fanOutUs / frameUs, frameUs, capacity);
+		if (mEncodedFrames > 0)
+			log("encoded payload %.1f%% of the pcm", 100d * mEncodedBytes / (mEncodedFrames * mBufferSize));
+		if (mParitySent > 0)
+			log("parity packets %s, %.1f%% of the sends", mParitySent, 100d * mParitySent / sends);
+		if (mFragmented > 0)
+			log("packets split in fragments %s", mFragmented);
+		if (mNacks > 0)
+			log("nacks %s retransmitted %s, %.1f%% of the sends", mNacks, mRetransmitted, 100d * mRetransmitted / sends);
+		if (mRejected > 0)
+			log("requests from outside of the local networks %s", mRejected);
+
+		mSent = 0;
+		mDropped = 0;
+		mLateFrames = 0;
+		mSkippedFrames = 0;
+		mFanOutNanos = 0;
+		mStatsFrames = 0;
+		mEncodedFrames = 0;
+		mEncodedBytes = 0;
+		mParitySent = 0;
+		mNacks = 0;
+		mRetransmitted = 0;
+		mFragmented = 0;
+		mRejected = 0;
+	}
+
+	private void close() {
+		try {
+			mStreamChannel.close();
+			if (mDiscoveryChannel != null)
+				mDiscoveryChannel.close();
+			mSelector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static int parseCodec(String name) {
+		switch (name) {
+			case "pcm":
+				return CODEC_PCM;
+			case "mulaw":
+				return CODEC_MULAW;
+			case "alaw":
+				return CODEC_ALAW;
+			case "adpcm":
+				return CODEC_IMA_ADPCM;
+			case "lossless":
+				return CODEC_LOSSLESS;
+			default:
+				throw new IllegalArgumentException("unknown codec " + name);
+		}
+	}
+
+	private static int parseFec(String name) {
+		switch (name) {
+			case "none":
+				return FEC_NONE;
+			case "xor":
+				return FEC_XOR;
+			case "rs":
+				return FEC_REED_SOLOMON;
+			default:
+				throw new IllegalArgumentException("unknown fec " + name);
+		}
+	}
+
+	private static void log(String msg, Object... args) {
+		System.out.println(String.format(msg, args));
+	}
+
+	/**
+	 * 	--wav file.wav or --rate 44100 --bits 8|16|24|32 --channels 1 --tone 440,
+	 * 	32 bit is float, then
+	 * 	--port 8080 --discovery-port 8383 --buffer-size 1024
+	 * 	(512 samples per channel by default) --max-listeners 1024 --listener-timeout-ms 0
+	 * 	--codec pcm|mulaw|alaw|adpcm|lossless
+	 * 	--fec none|xor|rs --fec-group 8 --fec-parity 2, xor has 1 parity
+	 * 	--nack-history 64, 0 to ignore MSG_NACK
+	 * 	--announce-interval-ms 2000, 0 for no MSG_ANNOUNCE
+	 * 	--accept-any-sender to stream outside of the local networks
+	 */
+	public static void main(String[] args) throws IOException {
+		Options options = new Options(args);
+
+		PcmSource source;
+		if (options.has("wav")) {
+			source = new WavFileSource(new File(options.getString("wav", null)));
+		} else {
+			source = new ToneSource(options.getInt("rate", 44100), options.getInt("bits", 16) / 8,
+					options.getInt("channels", 1), options.getDouble("tone", 440));
+		}
+
+		StreamServer server = new StreamServer(source,
+				options.getInt("port", DEFAULT_PORT),
+				options.getInt("discovery-port", DISCOVERY_PORT),
+				options.getInt("buffer-size", 512 * source.getBitDepth() * source.getChannels()),
+				options.getInt("max-listeners", 1024),
+				options.getInt("listener-timeout-ms", 0),
+				parseCodec(options.getString("codec", "pcm")));
+		int fec = parseFec(options.getString("fec", "none"));
+		if (fec != FEC_NONE)
+			server.setFec(fec, options.getInt("fec-group", 8), fec == FEC_XOR ? 1 : options.getInt("fec-parity", 2));
+		server.setNackHistory(options.getInt("nack-history", 64));
+		server.setAcceptAnySender(options.has("accept-any-sender"));
+		if (options.getInt("discovery-port", DISCOVERY_PORT) >= 0)
+			server.setAnnounceInterval(options.getInt("announce-interval-ms", DEFAULT_ANNOUNCE_INTERVAL_MS));
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+		server.run();
+	}
+}
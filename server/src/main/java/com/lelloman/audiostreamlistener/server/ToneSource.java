@@ -0,0 +1,84 @@
+package com.lelloman.audiostreamlistener.server;
+
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_FLOAT;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_16;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_24;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_8;
+import static com.lelloman.audiostreamlistener.Constants.MAX_CHANNELS;
+
+/**
+ * 	a sine wave, good enough to hear glitches. with more channels
+ * 	the n-th one plays n times the frequency, so they can be told apart
+ */
+public class ToneSource implements PcmSource {
+
+	private final int mSampleRate;
+	private final int mBitDepth;
+	private final int mChannels;
+	private final double mPhaseStep;
+	private double mPhase;
+
+	public ToneSource(int sampleRate, int bitDepth, double frequency) {
+		this(sampleRate, bitDepth, 1, frequency);
+	}
+
+	public ToneSource(int sampleRate, int bitDepth, int channels, double frequency) {
+		if (bitDepth < FORMAT_PCM_8 || bitDepth > FORMAT_FLOAT)
+			throw new IllegalArgumentException("bit depth must be 1 to 4 bytes");
+		if (channels < 1 || channels > MAX_CHANNELS)
+			throw new IllegalArgumentException("1 to " + MAX_CHANNELS + " channels");
+		mSampleRate = sampleRate;
+		mBitDepth = bitDepth;
+		mChannels = channels;
+		mPhaseStep = 2 * Math.PI * frequency / sampleRate;
+	}
+
+	@Override
+	public int getSampleRate() {
+		return mSampleRate;
+	}
+
+	@Override
+	public int getBitDepth() {
+		return mBitDepth;
+	}
+
+	@Override
+	public int getChannels() {
+		return mChannels;
+	}
+
+	@Override
+	public void read(byte[] dst, int offset, int length) {
+		int end = offset + length;
+		int sampleFrameSize = mBitDepth * mChannels;
+		for (int i = offset; i + sampleFrameSize <= end; ) {
+			for (int c = 0; c < mChannels; c++, i += mBitDepth) {
+				write(dst, i, .5 * Math.sin(mPhase * (c + 1)));
+			}
+			mPhase += mPhaseStep;
+			if (mPhase > 2 * Math.PI)
+				mPhase -= 2 * Math.PI;
+		}
+	}
+
+	private void write(byte[] dst, int i, double value) {
+		switch (mBitDepth) {
+			case FORMAT_PCM_8:
+				dst[i] = (byte) (128 + (int) (value * 127));
+				break;
+			case FORMAT_PCM_16:
+			case FORMAT_PCM_24:
+				int sample = (int) (value * ((1 << (mBitDepth * 8 - 1)) - 1));
+				for (int b = 0; b < mBitDepth; b++) {
+					dst[i + b] = (byte) (sample >> (b * 8));
+				}
+				break;
+			default:
+				int bits = Float.floatToRawIntBits((float) value);
+				for (int b = 0; b < 4; b++) {
+					dst[i + b] = (byte) (bits >> (b * 8));
+				}
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.lelloman.audiostreamlistener.server;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_FLOAT;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_8;
+import static com.lelloman.audiostreamlistener.Constants.MAX_CHANNELS;
+
+/**
+ * 	a wav file, read in memory and played in loop. 8, 16 and 24 bit
+ * 	pcm or 32 bit float, the extensible format too, with up to
+ * 	MAX_CHANNELS channels
+ */
+public class WavFileSource implements PcmSource {
+
+	private static final int WAVE_FORMAT_PCM = 1;
+	private static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+	private static final int WAVE_FORMAT_EXTENSIBLE = 0xfffe;
+
+	private final int mSampleRate;
+	private final int mBitDepth;
+	private final int mChannels;
+	private final byte[] mData;
+	private int mPosition;
+
+	public WavFileSource(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			if (readTag(in) != 0x52494646 /* RIFF */)
+				throw new IOException("not a riff file");
+			readIntLe(in);
+			if (readTag(in) != 0x57415645 /* WAVE */)
+				throw new IOException("not a wave file");
+
+			int sampleRate = 0;
+			int bitDepth = 0;
+			int channels = 0;
+			byte[] data = null;
+			while (data == null) {
+				int tag = readTag(in);
+				int size = readIntLe(in);
+				if (tag == 0x666d7420 /* fmt  */) {
+					int format = readShortLe(in);
+					channels = readShortLe(in);
+					sampleRate = readIntLe(in);
+					readIntLe(in);
+					readShortLe(in);
+					bitDepth = readShortLe(in) / 8;
+					int read = 16;
+					if (format == WAVE_FORMAT_EXTENSIBLE && size >= 26) {
+						// cb size, valid bits and channel mask, then the
+						// guid of the sub format which starts with the format
+						in.skipBytes(8);
+						format = readShortLe(in);
+						read += 10;
+					}
+					in.skipBytes(size - read + (size & 1));
+					boolean pcm = format == WAVE_FORMAT_PCM && bitDepth >= FORMAT_PCM_8 && bitDepth < FORMAT_FLOAT;
+					boolean floats = format == WAVE_FORMAT_IEEE_FLOAT && bitDepth == FORMAT_FLOAT;
+					if (!pcm && !floats)
+						throw new IOException("only 8, 16 and 24 bit pcm and 32 bit float are supported");
+					if (channels < 1 || channels > MAX_CHANNELS)
+						throw new IOException("1 to " + MAX_CHANNELS + " channels are supported");
+				} else if (tag == 0x64617461 /* data */) {
+					if (bitDepth == 0)
+						throw new IOException("data chunk before fmt chunk");
+					data = new byte[size / (bitDepth * channels) * bitDepth * channels];
+					in.readFully(data);
+				} else {
+					in.skipBytes(size + (size & 1));
+				}
+			}
+			if (data.length == 0)
+				throw new IOException("no samples");
+
+			mSampleRate = sampleRate;
+			mBitDepth = bitDepth;
+			mChannels = channels;
+			mData = data;
+		}
+	}
+
+	@Override
+	public int getSampleRate() {
+		return mSampleRate;
+	}
+
+	@Override
+	public int getBitDepth() {
+		return mBitDepth;
+	}
+
+	@Override
+	public int getChannels() {
+		return mChannels;
+	}
+
+	@Override
+	public void read(byte[] dst, int offset, int length) {
+		while (length > 0) {
+			int chunk = Math.min(length, mData.length - mPosition);
+			System.arraycopy(mData, mPosition, dst, offset, chunk);
+			mPosition = (mPosition + chunk) % mData.length;
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+
+	private static int readTag(DataInputStream in) throws IOException {
+		return in.readInt();
+	}
+
+	private static int readIntLe(DataInputStream in) throws IOException {
+		return Integer.reverseBytes(in.readInt());
+	}
+
+	private static int readShortLe(DataInputStream in) throws IOException {
+		return Short.reverseBytes(in.readShort()) & 0xffff;
+	}
+}
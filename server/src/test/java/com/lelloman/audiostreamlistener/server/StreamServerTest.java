@@ -0,0 +1,176 @@
+package com.lelloman.audiostreamlistener.server;
+
+import com.lelloman.audiostreamlistener.threading.FrameHeader;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.lelloman.audiostreamlistener.Constants.CODEC_PCM;
+import static com.lelloman.audiostreamlistener.Constants.EXT_FRAME_HEADER;
+import static com.lelloman.audiostreamlistener.Constants.EXT_SESSION;
+import static com.lelloman.audiostreamlistener.Constants.FORMAT_PCM_16;
+import static com.lelloman.audiostreamlistener.Constants.HANDSHAKE_VERSION;
+import static com.lelloman.audiostreamlistener.Constants.MSG_HELLO;
+import static com.lelloman.audiostreamlistener.Constants.MSG_START_STREAM;
+import static com.lelloman.audiostreamlistener.Constants.MSG_STREAM_INFO;
+import static com.lelloman.audiostreamlistener.Constants.MSG_WELCOME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StreamServerTest {
+
+	private static final int RATE = 48000;
+	// 10 ms
+	private static final int BUFFER_SIZE = 960;
+	private static final int TIMEOUT_MS = 2000;
+
+	private final List<DatagramSocket> mSockets = new ArrayList<>();
+	private StreamServer mServer;
+	private Thread mServerThread;
+
+	@After
+	public void tearDown() throws InterruptedException {
+		for (DatagramSocket socket : mSockets) {
+			socket.close();
+		}
+		if (mServer != null) {
+			mServer.stop();
+			mServerThread.join(TIMEOUT_MS);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void hello_getsTheWelcomeAndTheStream() throws IOException {
+		startServer(16);
+		DatagramSocket client = socket("127.0.0.1");
+
+		send(client, ByteBuffer.allocate(20).putInt(MSG_HELLO).putInt(HANDSHAKE_VERSION).putInt(42)
+				.putInt(EXT_FRAME_HEADER).putInt(FrameHeader.VERSION));
+
+		ByteBuffer welcome = receive(client);
+		assertEquals(MSG_WELCOME, welcome.getInt());
+		assertEquals(HANDSHAKE_VERSION, welcome.getInt());
+		assertEquals(42, welcome.getInt());
+		assertEquals(RATE, welcome.getInt());
+		assertEquals(BUFFER_SIZE, welcome.getInt());
+		assertEquals(FORMAT_PCM_16, welcome.getInt());
+		assertEquals(EXT_FRAME_HEADER, welcome.getInt());
+		assertEquals(FrameHeader.VERSION, welcome.getInt());
+		assertEquals(EXT_SESSION, welcome.getInt());
+		assertTrue(welcome.getInt() != 0);
+
+		assertFramesInOrder(client);
+	}
+
+	@Test(timeout = 10000)
+	public void legacyHandshake_appliesTheFeaturesOfTheHost() throws IOException {
+		startServer(16);
+		DatagramSocket control = socket("127.0.0.1");
+		DatagramSocket stream = socket("127.0.0.1");
+
+		negotiateHeader(control);
+		send(stream, ByteBuffer.allocate(4).putInt(MSG_START_STREAM));
+
+		assertFramesInOrder(stream);
+	}
+
+	@Test(timeout = 10000)
+	public void evictedHost_forgetsItsFeatures() throws IOException {
+		startServer(1);
+		DatagramSocket control = socket("127.0.0.1");
+		DatagramSocket stream = socket("127.0.0.1");
+		negotiateHeader(control);
+		send(stream, ByteBuffer.allocate(4).putInt(MSG_START_STREAM));
+		assertFramesInOrder(stream);
+
+		// a listener from another host takes the only place
+		DatagramSocket other = socket("127.0.0.2");
+		send(other, ByteBuffer.allocate(12).putInt(MSG_HELLO).putInt(HANDSHAKE_VERSION).putInt(1));
+		assertEquals(MSG_WELCOME, receive(other).getInt());
+
+		// starting again without asking, it's a plain pcm listener
+		DatagramSocket again = socket("127.0.0.1");
+		send(again, ByteBuffer.allocate(4).putInt(MSG_START_STREAM));
+		for (int i = 0; i < 5; i++) {
+			assertEquals(BUFFER_SIZE, receive(again).remaining());
+		}
+	}
+
+	@Test
+	public void localAddresses_areTold() throws IOException {
+		assertTrue(StreamServer.isPrivate(InetAddress.getByName("127.0.0.1")));
+		assertTrue(StreamServer.isPrivate(InetAddress.getByName("192.168.1.20")));
+		assertTrue(StreamServer.isPrivate(InetAddress.getByName("10.1.2.3")));
+		assertTrue(StreamServer.isPrivate(InetAddress.getByName("fe80::1")));
+		assertTrue(StreamServer.isPrivate(InetAddress.getByName("fd12::1")));
+		assertFalse(StreamServer.isPrivate(InetAddress.getByName("8.8.8.8")));
+		assertFalse(StreamServer.isPrivate(InetAddress.getByName("2001:db8::1")));
+
+		InetAddress network = InetAddress.getByName("100.64.12.0");
+		assertTrue(StreamServer.isOnNetwork(InetAddress.getByName("100.64.13.7"), network, 23));
+		assertFalse(StreamServer.isOnNetwork(InetAddress.getByName("100.64.14.7"), network, 23));
+		assertFalse(StreamServer.isOnNetwork(InetAddress.getByName("::1"), network, 8));
+	}
+
+	private void startServer(int maxListeners) throws IOException {
+		mServer = new StreamServer(new ToneSource(RATE, FORMAT_PCM_16, 440), 0, -1, BUFFER_SIZE,
+				maxListeners, 0, CODEC_PCM);
+		mServerThread = new Thread(mServer);
+		mServerThread.start();
+	}
+
+	private DatagramSocket socket(String host) throws IOException {
+		DatagramSocket socket = new DatagramSocket(new InetSocketAddress(host, 0));
+		socket.setSoTimeout(TIMEOUT_MS);
+		mSockets.add(socket);
+		return socket;
+	}
+
+	/**
+	 * 	MSG_STREAM_INFO asking for the frame header, and its three replies
+	 */
+	private void negotiateHeader(DatagramSocket control) throws IOException {
+		send(control, ByteBuffer.allocate(12).putInt(MSG_STREAM_INFO).putInt(EXT_FRAME_HEADER)
+				.putInt(FrameHeader.VERSION));
+		assertEquals(RATE, receive(control).getInt());
+		assertEquals(BUFFER_SIZE, receive(control).getInt());
+		ByteBuffer features = receive(control);
+		assertEquals(FORMAT_PCM_16, features.getInt());
+		assertEquals(EXT_FRAME_HEADER, features.getInt());
+		assertEquals(FrameHeader.VERSION, features.getInt());
+	}
+
+	private void assertFramesInOrder(DatagramSocket client) throws IOException {
+		FrameHeader frameHeader = new FrameHeader();
+		int last = 0;
+		for (int i = 0; i < 10; i++) {
+			ByteBuffer frame = receive(client);
+			assertEquals(FrameHeader.SIZE + BUFFER_SIZE, frame.remaining());
+			assertTrue(frameHeader.parse(frame));
+			if (i > 0)
+				assertEquals(last + 1, frameHeader.sequence);
+			last = frameHeader.sequence;
+		}
+	}
+
+	private void send(DatagramSocket socket, ByteBuffer message) throws IOException {
+		socket.send(new DatagramPacket(message.array(), message.position(),
+				new InetSocketAddress("127.0.0.1", mServer.getPort())));
+	}
+
+	private static ByteBuffer receive(DatagramSocket socket) throws IOException {
+		DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
+		socket.receive(packet);
+		return ByteBuffer.wrap(packet.getData(), 0, packet.getLength());
+	}
+}